@@ -38,6 +38,8 @@ public class GenericDevice extends DefaultDevice implements Serializable {
 
 	/**
 	 * Constructor
+	 * Devices and services bound to the same address and port share one HTTP
+	 * server, which routes requests by the path derived from the device name.
 	 * 
 	 * @param name name of the device
 	 * @param portType	device type
@@ -45,6 +47,7 @@ public class GenericDevice extends DefaultDevice implements Serializable {
 	 * @param namespace namespace
 	 * @param httpBindIP IP address for HTTP binding
 	 * @param portDevice device port for HTTP binding
+	 * @param portService service port for HTTP binding
 	 * 
 	 */
 	public GenericDevice(String name,
@@ -82,6 +85,27 @@ public class GenericDevice extends DefaultDevice implements Serializable {
 		this.addService(service);
 	}
 	
+	/**
+	 * Constructor for a device sharing its HTTP port with other devices.
+	 * Device and service are reached through the paths <i>nameDevice</i> and
+	 * <i>nameService</i> of the shared HTTP server, so names must be unique.
+	 * 
+	 * @param name name of the device
+	 * @param portType	device type
+	 * @param manufaturer manufacturer
+	 * @param namespace namespace
+	 * @param httpBindIP IP address for HTTP binding
+	 * @param port shared port for device and service HTTP binding
+	 */
+	public GenericDevice(String name,
+			String portType,
+			String manufacturer,
+			String namespace,
+			String httpBindIP, 
+			int port) {
+		this(name, portType, manufacturer, namespace, httpBindIP, port, port);
+	}
+	
 	public void addOperation(String opName, OperationCommand command){
 		service.addOperation(new GenericOperation(opName, namespace, command));
 	}
@@ -413,7 +413,7 @@ public final class DPWSFramework {
 			}
 
 			// thread pool
-			threadpool = new ThreadPool(FrameworkProperties.getInstance().getThreadPoolSize());
+			createThreadPool();
 
 			// platform toolkit
 			createToolkit();
@@ -775,6 +775,13 @@ public final class DPWSFramework {
 	 * have an own thread pool. All threads created by the framework are created
 	 * with this thread pool.
 	 * </p>
+	 * <p>
+	 * The implementation can be chosen with the
+	 * {@link FrameworkProperties#PROP_THREADPOOL_CLASS} property, the queue
+	 * size and rejection policy with
+	 * {@link FrameworkProperties#PROP_THREADPOOL_QUEUE_SIZE} and
+	 * {@link FrameworkProperties#PROP_THREADPOOL_REJECTION_POLICY}.
+	 * </p>
 	 * 
 	 * @return the thread pool.
 	 */
@@ -1077,6 +1084,33 @@ public final class DPWSFramework {
 		}
 	}
 
+	private static void createThreadPool() {
+		FrameworkProperties props = FrameworkProperties.getInstance();
+		String poolClassName = props.getThreadPoolClass();
+		if (poolClassName == null && hasModule(PLATFORM_SE_MODULE) && !onCldcLibrary()) {
+			poolClassName = "org.ws4d.java.platform.util.SEThreadPool";
+		}
+		threadpool = null;
+		if (poolClassName != null) {
+			try {
+				Class clazz = Class.forName(poolClassName);
+				threadpool = (ThreadPool) clazz.newInstance();
+			} catch (ClassNotFoundException e) {
+				Log.error("Configured Thread Pool [" + poolClassName + "] not found, falling back to default implementation");
+			} catch (Exception e) {
+				Log.error("Unable to create instance of configured Thread Pool [" + poolClassName + "], falling back to default implementation");
+				Log.printStackTrace(e);
+			}
+		}
+		if (threadpool == null) {
+			threadpool = new ThreadPool();
+		}
+		threadpool.configure(props.getThreadPoolSize(), ThreadPool.DEFAULT_TIMEOUT, props.getThreadPoolQueueSize(), props.getThreadPoolRejectionPolicy());
+		if (props.isVirtualThreads() && threadpool.setVirtualThreads(true)) {
+			Log.info("Connection and datagram handlers run on virtual threads.");
+		}
+	}
+
 	private static void createToolkit() {
 		if (toolkit != null) {
 			return;
@@ -20,46 +20,97 @@ import org.ws4d.java.configuration.AttachmentProperties;
 import org.ws4d.java.io.fs.FileSystem;
 import org.ws4d.java.structures.HashMap;
 import org.ws4d.java.structures.Iterator;
+import org.ws4d.java.structures.LinkedList;
+import org.ws4d.java.structures.LinkedMap;
 import org.ws4d.java.types.InternetMediaType;
 import org.ws4d.java.util.Log;
 import org.ws4d.java.util.ObjectPool;
 import org.ws4d.java.util.ObjectPool.InstanceCreator;
+import org.ws4d.java.util.TimedEntry;
+import org.ws4d.java.util.WatchDog;
 
 /**
- * 
+ * The attachment store of the framework.
+ * <p>
+ * Received attachments are kept in memory as long as they fit into the
+ * {@link AttachmentProperties#getMemoryBudget() memory budget} of the store,
+ * otherwise they are spilled into files at
+ * {@link AttachmentProperties#getStorePath()}. If configured, attachments
+ * not used for {@link AttachmentProperties#getAttachmentTimeout() some time}
+ * are evicted by the {@link WatchDog}, and the least recently used resolved
+ * ones are evicted as soon as all attachments together exceed the
+ * {@link AttachmentProperties#getMaxStoreSize() maximum store size}. Both
+ * limits are off by default.
+ * </p>
+ * <p>
+ * Evicting an attachment only removes it from the store. Attachments which
+ * have already been resolved belong to the application and files stored for
+ * {@link #POLICY_EXT_STORAGE} belong to the user, so neither is disposed of.
+ * Only attachments evicted before they were resolved are disposed of, which
+ * deletes the files they were spilled into.
+ * </p>
  */
 public class DefaultAttachmentStore extends AttachmentStore {
 
-	private static final AttachmentProperties	PROPS		= AttachmentProperties.getInstance();
+	private static final AttachmentProperties	PROPS			= AttachmentProperties.getInstance();
 
-	private static final ObjectPool				BUFFERS		= new ObjectPool(new InstanceCreator() {
+	private static final ObjectPool				BUFFERS			= new ObjectPool(new InstanceCreator() {
 
-																/*
-																 * (non-Javadoc
-																 * )
-																 * @see org
-																 * .ws4d . java.
-																 * util.
-																 * ObjectPool .
-																 * InstanceCreator
-																 * #
-																 * createInstance
-																 * ()
-																 */
-																public Object createInstance() {
-																	return new byte[PROPS.getReadBufferSize()];
-																}
+																	/*
+																	 * (non-Javadoc
+																	 * )
+																	 * @see org
+																	 * .ws4d . java.
+																	 * util.
+																	 * ObjectPool .
+																	 * InstanceCreator
+																	 * #
+																	 * createInstance
+																	 * ()
+																	 */
+																	public Object createInstance() {
+																		return new byte[PROPS.getReadBufferSize()];
+																	}
 
-															}, 1);
+																}, 1);
 
-	// key = StoreKey, value = DefaultAttachment instance
-	private final HashMap						attachments	= new HashMap();
+	/** maximum time in ms between two sweeps for timed out attachments */
+	private static final long					SWEEP_INTERVAL	= 5000;
+
+	// key = StoreKey, value = StoredAttachment, the least recently used first
+	private final LinkedMap						attachments		= new LinkedMap(true);
 
 	// key = StoreKey, value = the same StoreKey
-	private final HashMap						lockKeys	= new HashMap();
+	private final HashMap						lockKeys		= new HashMap();
 
 	private final FileSystem					fs;
 
+	private long								bytesInMemory	= 0;
+
+	private long								bytesOnDisk		= 0;
+
+	private long								spills			= 0;
+
+	private long								evictions		= 0;
+
+	/** whether the sweeper is registered at the watchdog */
+	private boolean								sweeping		= false;
+
+	private final TimedEntry					sweeper			= new TimedEntry() {
+
+																	protected void timedOut() {
+																		evict();
+																		synchronized (attachments) {
+																			if (attachments.isEmpty()) {
+																				sweeping = false;
+																				return;
+																			}
+																		}
+																		WatchDog.getInstance().register(this, sweepInterval());
+																	}
+
+																};
+
 	/**
 	 * Returns the number of bytes read in. The stream <code>from</code> is
 	 * always completely read out unless a <code>java.io.IOException</code>
@@ -175,6 +226,36 @@ public class DefaultAttachmentStore extends AttachmentStore {
 		}
 	}
 
+	/**
+	 * Reads from <code>from</code> into <code>out</code> until the stream ends
+	 * or more than <code>limit</code> bytes have been read.
+	 * 
+	 * @param from the stream to read from
+	 * @param limit the number of bytes after which to stop reading
+	 * @param out the stream in which to write the bytes read
+	 * @return <code>true</code> if <code>from</code> was read to its end
+	 * @throws IOException if reading from <code>from</code> or writing to
+	 *             <code>out</code> failed for any reason
+	 */
+	private static boolean readUpTo(InputStream from, int limit, OutputStream out) throws IOException {
+		byte[] buffy = (byte[]) BUFFERS.acquire();
+		try {
+			int size = 0;
+			int j = from.read(buffy);
+			while (j > 0) {
+				out.write(buffy, 0, j);
+				size += j;
+				if (size > limit) {
+					return false;
+				}
+				j = from.read(buffy);
+			}
+			return true;
+		} finally {
+			BUFFERS.release(buffy);
+		}
+	}
+
 	/**
 	 * 
 	 */
@@ -226,6 +307,10 @@ public class DefaultAttachmentStore extends AttachmentStore {
 		 * it within a byte array
 		 */
 		AbstractAttachment attachment;
+		// bytes of a successfully stored attachment
+		long size = 0;
+		// whether the attachment is a file of POLICY_EXT_STORAGE
+		boolean external = false;
 
 		int storePolicy = getStorePolicy();
 		if (storePolicy == POLICY_EXT_STORAGE && fs == null) {
@@ -238,14 +323,14 @@ public class DefaultAttachmentStore extends AttachmentStore {
 			attachment = new InputStreamAttachment(from);
 		} else if (storePolicy == POLICY_EXT_STORAGE) {
 			// store content of 'from' within file system repository
-			// we make cid unique within FS store by means of a timestamp
-			String filePath = PROPS.getStorePath() + fs.fileSeparator() + System.currentTimeMillis() + "_" + fs.escapeFileName(context.getInstanceId() + ":" + context.getMessageNumber() + ":" + cid);
+			String filePath = newFilePath(context, cid);
 			try {
 				OutputStream out = fs.writeFile(filePath);
-				readOut(from, PROPS.getMaxAttachmentSize(), out);
+				size = readOut(from, PROPS.getMaxAttachmentSize(), out);
 				out.flush();
 				out.close();
 				attachment = new FileAttachment(filePath, false);
+				external = true;
 			} catch (AttachmentException e) {
 				fs.deleteFile(filePath);
 				attachment = new MemoryAttachment(e);
@@ -254,13 +339,45 @@ public class DefaultAttachmentStore extends AttachmentStore {
 				Log.error(ae.toString());
 				attachment = new MemoryAttachment(ae);
 			}
+		} else if (fs != null && PROPS.getSpoolThreshold() > 0) {
+			/*
+			 * POLICY_MEM_BUFFER, but attachments above the threshold are
+			 * spooled into the file system repository instead of growing a
+			 * buffer on the heap
+			 */
+			String filePath = null;
+			try {
+				ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+				if (readUpTo(from, Math.min(PROPS.getSpoolThreshold(), PROPS.getMaxMemBufferSize()), buffer)) {
+					size = buffer.size();
+					attachment = keepInMemory(buffer.toByteArray(), context, cid);
+				} else {
+					filePath = newFilePath(context, cid);
+					OutputStream out = fs.writeFile(filePath);
+					try {
+						buffer.writeTo(out);
+						size = buffer.size() + readOut(from, Math.max(PROPS.getMaxAttachmentSize() - buffer.size(), 1), out);
+					} finally {
+						out.close();
+					}
+					attachment = new FileAttachment(filePath, false);
+				}
+			} catch (AttachmentException e) {
+				fs.deleteFile(filePath);
+				attachment = new MemoryAttachment(e);
+			} catch (IOException e) {
+				fs.deleteFile(filePath);
+				AttachmentException ae = new AttachmentException("Reading from stream or spooling into attachment store failed: " + e);
+				Log.error(ae.toString());
+				attachment = new MemoryAttachment(ae);
+			}
 		} else {
 			// POLICY_MEM_BUFFER is the default one
 			try {
 				ByteArrayOutputStream out = new ByteArrayOutputStream();
-				readOut(from, PROPS.getMaxMemBufferSize(), out);
+				size = readOut(from, PROPS.getMaxMemBufferSize(), out);
 				out.close();
-				attachment = new MemoryAttachment(out.toByteArray());
+				attachment = keepInMemory(out.toByteArray(), context, cid);
 			} catch (AttachmentException e) {
 				attachment = new MemoryAttachment(e);
 			} catch (IOException e) {
@@ -273,15 +390,43 @@ public class DefaultAttachmentStore extends AttachmentStore {
 		attachment.setContentType(mimeType);
 		attachment.setTransferEncoding(transferEncoding);
 
+		/*
+		 * memory is accounted when it is taken, see keepInMemory(), attachments
+		 * which failed have no size
+		 */
+		StoredAttachment stored;
+		if (attachment instanceof MemoryAttachment) {
+			stored = new StoredAttachment(attachment, size, 0);
+		} else if (attachment instanceof FileAttachment) {
+			stored = new StoredAttachment(attachment, 0, size);
+		} else {
+			stored = new StoredAttachment(attachment, 0, 0);
+		}
+		stored.external = external;
+
 		StoreKey key = new StoreKey(context, cid);
 		StoreKey lockKey = null;
+		boolean full;
 		synchronized (attachments) {
-			attachments.put(key, attachment);
+			StoredAttachment old = (StoredAttachment) attachments.put(key, stored);
+			if (old != null) {
+				bytesInMemory -= old.memory;
+				bytesOnDisk -= old.disk;
+			}
+			bytesOnDisk += stored.disk;
 			lockKey = (StoreKey)lockKeys.remove(key);
+			full = isFull();
+			if (!sweeping && PROPS.getAttachmentTimeout() > 0) {
+				sweeping = true;
+				WatchDog.getInstance().register(sweeper, sweepInterval());
+			}
 		}
 		if (lockKey != null) {
 			lockKey.notifyWaiters();
 		}
+		if (full) {
+			evict();
+		}
 	}
 
 	/*
@@ -307,15 +452,17 @@ public class DefaultAttachmentStore extends AttachmentStore {
 		StoreKey key = new StoreKey(context, cid);
 		StoreKey lockKey;
 		synchronized (attachments) {
-			attachment = (IncomingAttachment) attachments.get(key);
-			if (attachment == null) {
+			StoredAttachment stored = (StoredAttachment) attachments.get(key);
+			if (stored == null) {
 				lockKey = (StoreKey)lockKeys.get(key);
 				if (lockKey == null) {
 					lockKey = key;
 					lockKeys.put(lockKey, lockKey);
 				}
 			} else {
-				return attachment;
+				stored.lastUsed = System.currentTimeMillis();
+				stored.resolved = true;
+				return (IncomingAttachment) stored.attachment;
 			}
 		}
 		
@@ -330,7 +477,14 @@ public class DefaultAttachmentStore extends AttachmentStore {
 		}
 		
 		synchronized (attachments) {
-			attachment = (IncomingAttachment) attachments.get(key);
+			StoredAttachment stored = (StoredAttachment) attachments.get(key);
+			if (stored == null) {
+				attachment = null;
+			} else {
+				stored.lastUsed = System.currentTimeMillis();
+				stored.resolved = true;
+				attachment = (IncomingAttachment) stored.attachment;
+			}
 		}
 		if (attachment == null) {
 			throw new AttachmentException("Attachment not found for " + context + " and content ID " + cid);
@@ -347,12 +501,197 @@ public class DefaultAttachmentStore extends AttachmentStore {
 			fs.deleteFile(PROPS.getStorePath());
 			synchronized (attachments) {
 				attachments.clear();
+				bytesInMemory = 0;
+				bytesOnDisk = 0;
 				for (Iterator iter = lockKeys.values().iterator(); iter.hasNext();) {
 					((StoreKey)iter.next()).notifyWaiters();
 				}
 				lockKeys.clear();
 			}
 		}
+		WatchDog.getInstance().unregister(sweeper);
+		synchronized (attachments) {
+			sweeping = false;
+		}
+	}
+
+	/**
+	 * @return the number of attachments in the store.
+	 */
+	public int getAttachmentCount() {
+		synchronized (attachments) {
+			return attachments.size();
+		}
+	}
+
+	/**
+	 * @return the number of bytes of the attachments kept in memory.
+	 */
+	public long getBytesInMemory() {
+		synchronized (attachments) {
+			return bytesInMemory;
+		}
+	}
+
+	/**
+	 * @return the number of bytes of the attachments stored in files.
+	 */
+	public long getBytesOnDisk() {
+		synchronized (attachments) {
+			return bytesOnDisk;
+		}
+	}
+
+	/**
+	 * @return the number of attachments spilled into files because they did
+	 *         not fit into the memory budget.
+	 */
+	public long getSpillCount() {
+		synchronized (attachments) {
+			return spills;
+		}
+	}
+
+	/**
+	 * @return the number of attachments evicted because they timed out or the
+	 *         store was full.
+	 */
+	public long getEvictionCount() {
+		synchronized (attachments) {
+			return evictions;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		synchronized (attachments) {
+			return "DefaultAttachmentStore [ attachments=" + attachments.size() + ", bytesInMemory=" + bytesInMemory + ", bytesOnDisk=" + bytesOnDisk + ", spills=" + spills + ", evictions=" + evictions + " ]";
+		}
+	}
+
+	/**
+	 * Returns an attachment for the given bytes, which stays in memory if it
+	 * fits into the memory budget, else it is spilled into the file system
+	 * repository. The bytes kept in memory are accounted right away.
+	 */
+	private AbstractAttachment keepInMemory(byte[] bytes, ContextID context, String cid) {
+		long budget = PROPS.getMemoryBudget();
+		synchronized (attachments) {
+			if (budget <= 0 || fs == null || bytesInMemory + bytes.length <= budget) {
+				bytesInMemory += bytes.length;
+				return new MemoryAttachment(bytes);
+			}
+		}
+		String filePath = newFilePath(context, cid);
+		try {
+			OutputStream out = fs.writeFile(filePath);
+			try {
+				out.write(bytes);
+			} finally {
+				out.close();
+			}
+			synchronized (attachments) {
+				spills++;
+			}
+			return new FileAttachment(filePath, false);
+		} catch (IOException e) {
+			fs.deleteFile(filePath);
+			Log.warn("Cannot spill attachment into attachment store, keeping it in memory: " + e);
+			synchronized (attachments) {
+				bytesInMemory += bytes.length;
+			}
+			return new MemoryAttachment(bytes);
+		}
+	}
+
+	/**
+	 * Returns whether the store exceeds its maximum size or, if attachments
+	 * cannot be spilled, its memory budget. Must be called while holding the
+	 * lock of {@link #attachments}.
+	 */
+	private boolean isFull() {
+		long maxStoreSize = PROPS.getMaxStoreSize();
+		long budget = PROPS.getMemoryBudget();
+		return (maxStoreSize > 0 && bytesInMemory + bytesOnDisk > maxStoreSize) || (budget > 0 && bytesInMemory > budget);
+	}
+
+	/**
+	 * Evicts the attachments which timed out and, while the store is full, the
+	 * least recently used resolved ones. Only attachments which were neither
+	 * resolved nor stored for {@link #POLICY_EXT_STORAGE} are disposed of.
+	 */
+	private void evict() {
+		long timeout = PROPS.getAttachmentTimeout();
+		long now = System.currentTimeMillis();
+		LinkedList evicted = new LinkedList();
+		synchronized (attachments) {
+			for (Iterator it = attachments.values().iterator(); it.hasNext();) {
+				StoredAttachment stored = (StoredAttachment) it.next();
+				if (!(timeout > 0 && now - stored.lastUsed >= timeout)) {
+					if (!isFull()) {
+						// all others were used later
+						break;
+					}
+					if (!stored.resolved) {
+						// nobody got it yet
+						continue;
+					}
+				}
+				it.remove();
+				bytesInMemory -= stored.memory;
+				bytesOnDisk -= stored.disk;
+				evictions++;
+				if (!stored.resolved && !stored.external) {
+					evicted.add(stored.attachment);
+				}
+			}
+		}
+		for (Iterator it = evicted.iterator(); it.hasNext();) {
+			((AbstractAttachment) it.next()).dispose();
+		}
+	}
+
+	private static long sweepInterval() {
+		return Math.min(PROPS.getAttachmentTimeout(), SWEEP_INTERVAL);
+	}
+
+	/**
+	 * Returns a new path for an attachment within the file system repository.
+	 * The content ID is made unique within the repository by means of a
+	 * timestamp.
+	 */
+	private String newFilePath(ContextID context, String cid) {
+		return PROPS.getStorePath() + fs.fileSeparator() + System.currentTimeMillis() + "_" + fs.escapeFileName(context.getInstanceId() + ":" + context.getMessageNumber() + ":" + cid);
+	}
+
+	/**
+	 * An attachment within the store and the bytes it takes.
+	 */
+	private static class StoredAttachment {
+
+		final AbstractAttachment	attachment;
+
+		final long					memory;
+
+		final long					disk;
+
+		long						lastUsed	= System.currentTimeMillis();
+
+		/** whether the attachment was handed out by resolve() */
+		boolean						resolved	= false;
+
+		/** whether the attachment is a file stored for POLICY_EXT_STORAGE */
+		boolean						external	= false;
+
+		StoredAttachment(AbstractAttachment attachment, long memory, long disk) {
+			this.attachment = attachment;
+			this.memory = memory;
+			this.disk = disk;
+		}
+
 	}
 
 	private static class StoreKey {
@@ -19,6 +19,7 @@ import org.ws4d.java.DPWSFramework;
 import org.ws4d.java.attachment.interfaces.incoming.IncomingFileAttachment;
 import org.ws4d.java.configuration.AttachmentProperties;
 import org.ws4d.java.io.fs.FileSystem;
+import org.ws4d.java.io.fs.FileTransferTarget;
 import org.ws4d.java.service.parameter.ParameterValue;
 import org.ws4d.java.types.InternetMediaType;
 import org.ws4d.java.util.IDGenerator;
@@ -47,6 +48,11 @@ import org.ws4d.java.util.Log;
  * will always return {@link #FILE_ATTACHMENT} for instances of this class.
  * </p>
  * <p>
+ * When serialized to a {@link FileTransferTarget}, e.g. the response stream of
+ * a non-blocking server connection, the file is transferred directly instead
+ * of being copied through a buffer.
+ * </p>
+ * <p>
  * This class may be used only on platforms including file system support (e.g.
  * Java Standard Edition).
  * </p>
@@ -343,7 +349,16 @@ class FileAttachment extends AbstractAttachment implements IncomingFileAttachmen
 	 * @see org.ws4d.java.attachment.Attachment#serialize(java.io.OutputStream)
 	 */
 	public void serialize(OutputStream out) throws IOException {
-		DefaultAttachmentStore.readOut(FS.readFile(filePath), out);
+		InputStream in = FS.readFile(filePath);
+		try {
+			if (out instanceof FileTransferTarget && ((FileTransferTarget) out).isTransferable(in)) {
+				((FileTransferTarget) out).transfer(in, FS.fileSize(filePath));
+			} else {
+				DefaultAttachmentStore.readOut(in, out);
+			}
+		} finally {
+			in.close();
+		}
 	}
 
 	/*
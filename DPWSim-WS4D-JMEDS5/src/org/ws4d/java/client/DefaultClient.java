@@ -42,7 +42,7 @@ import org.ws4d.java.structures.ArrayList;
 import org.ws4d.java.structures.DataStructure;
 import org.ws4d.java.structures.HashMap;
 import org.ws4d.java.structures.Iterator;
-import org.ws4d.java.structures.MessageIdBuffer;
+import org.ws4d.java.structures.MessageIdFilter;
 import org.ws4d.java.types.EndpointReference;
 import org.ws4d.java.types.QNameSet;
 import org.ws4d.java.types.ScopeSet;
@@ -522,12 +522,12 @@ public class DefaultClient implements DeviceListener, ServiceListener, SearchCal
 
 		HelloRegisterKey key = new HelloRegisterKey(search, binding);
 
-		HelloReceiver helloReceiver = new HelloReceiver(helloListener == null ? this : helloListener, search);
-
 		if (helloReceivers.containsKey(key)) {
 			return;
 		}
 
+		HelloReceiver helloReceiver = new HelloReceiver(helloListener == null ? this : helloListener, search);
+
 		helloReceivers.put(key, helloReceiver);
 
 		try {
@@ -595,6 +595,8 @@ public class DefaultClient implements DeviceListener, ServiceListener, SearchCal
 
 			if (helloReceiver == null) return;
 
+			helloReceiver.messageIdBuffer.dispose();
+
 			try {
 				CommunicationManager manager = CommunicationManagerRegistry.getManager(binding.getCommunicationManagerId());
 
@@ -728,7 +730,7 @@ public class DefaultClient implements DeviceListener, ServiceListener, SearchCal
 
 	private final class HelloReceiver extends DefaultIncomingMessageListener {
 
-		private final MessageIdBuffer	messageIdBuffer		= new MessageIdBuffer();
+		private final MessageIdFilter	messageIdBuffer		= new MessageIdFilter();
 
 		private final SearchParameter	search;
 
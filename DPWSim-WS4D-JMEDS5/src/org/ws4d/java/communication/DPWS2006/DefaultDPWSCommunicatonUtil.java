@@ -54,10 +54,10 @@ public class DefaultDPWSCommunicatonUtil implements CommunicationUtil {
 		}
 		switch (versionInfo) {
 			case DPWSConstants.DPWS_VERSION2009:
-				helper = new DefaultConstantsHelper2009();
+				helper = DefaultConstantsHelper2009.getInstance();
 				break;
 			case DPWSConstants2006.DPWS_VERSION2006:
-				helper = new DefaultConstantsHelper2006();
+				helper = DefaultConstantsHelper2006.getInstance();
 				break;
 		}
 		return helper;
@@ -62,7 +62,7 @@ import org.ws4d.java.structures.HashSet;
 import org.ws4d.java.structures.Iterator;
 import org.ws4d.java.structures.LinkedSet;
 import org.ws4d.java.structures.List;
-import org.ws4d.java.structures.MessageIdBuffer;
+import org.ws4d.java.structures.MessageIdFilter;
 import org.ws4d.java.structures.Set;
 import org.ws4d.java.types.InternetMediaType;
 import org.ws4d.java.types.QNameSet;
@@ -70,7 +70,9 @@ import org.ws4d.java.types.URI;
 import org.ws4d.java.types.XAddressInfo;
 import org.ws4d.java.util.Log;
 import org.ws4d.java.util.MIMEUtil;
+import org.ws4d.java.util.TimedEntry;
 import org.ws4d.java.util.WS4DIllegalStateException;
+import org.ws4d.java.util.WatchDog;
 
 /**
  * 
@@ -87,7 +89,7 @@ public class DPWSCommunicationManager implements CommunicationManager {
 
 	private static final CommunicationUtil		DPWS_UTIL						= DefaultDPWSCommunicatonUtil.getInstance();
 
-	protected static final MessageIdBuffer		SENT_MULTICAST_MESSAGE_IDS		= new MessageIdBuffer();
+	protected static final MessageIdFilter		SENT_MULTICAST_MESSAGE_IDS		= new MessageIdFilter();
 
 	private volatile boolean					stopped							= true;
 
@@ -1203,10 +1205,8 @@ public class DPWSCommunicationManager implements CommunicationManager {
 
 		final Waiter waiter = new Waiter();
 
-		final DPWSCommunicationManager myself = this;
-
 		// send without letting the caller wait
-		Runnable r = new Runnable() {
+		final Runnable r = new Runnable() {
 
 			/*
 			 * (non-Javadoc)
@@ -1231,14 +1231,6 @@ public class DPWSCommunicationManager implements CommunicationManager {
 				}
 
 				int messageType = message.getType();
-				if (messageType == DPWSMessageConstants.HELLO_MESSAGE || messageType == DPWSMessageConstants.PROBE_MATCHES_MESSAGE) {
-					try {
-						Thread.sleep(myself.getRandomApplicationDelay(message.getProtocolInfo().getVersion()));
-					} catch (InterruptedException e) {
-						// void
-					}
-				}
-
 				SOAPoverUDPClient client = null;
 
 				DPWSProtocolData protocolData = new DPWSProtocolData(dpwsDomain.getInterfaceName(), ProtocolData.DIRECTION_OUT, localHostAddress.getAddressWithoutNicId(), 0, targetMulticastAddress.getAddressWithoutNicId(), DPWSConstants.DPWS_MCAST_PORT, false);
@@ -1283,6 +1275,22 @@ public class DPWSCommunicationManager implements CommunicationManager {
 
 		};
 
+		int messageType = message.getType();
+		if (messageType == DPWSMessageConstants.HELLO_MESSAGE || messageType == DPWSMessageConstants.PROBE_MATCHES_MESSAGE) {
+			/*
+			 * the watch dog waits out the random application delay, so no
+			 * thread sleeps while many devices answer the same probe
+			 */
+			WatchDog.getInstance().register(new TimedEntry() {
+
+				protected void timedOut() {
+					r.run();
+				}
+
+			}, getRandomApplicationDelay(message.getProtocolInfo().getVersion()));
+			return;
+		}
+
 		DPWSFramework.getThreadPool().execute(r);
 		/*
 		 * make sure we return after actually having started the send
@@ -1309,7 +1317,7 @@ public class DPWSCommunicationManager implements CommunicationManager {
 		 * For DPWS the "attachmentSep" is the MIME boundary.
 		 */
 		if (attachmentSep == null) {
-			SOAPMessageGeneratorFactory.getInstance().getMessage2SOAPGeneratorForCurrentThread().generateSOAPMessage(out, message, pd);
+			SOAPMessageGeneratorFactory.getInstance().generateSOAPMessage(out, message, pd);
 		} else {
 			MIMEUtil.writeBoundary(out, attachmentSep.getBytes(), false, false);
 			MIMEBodyHeader mimeHeader = new MIMEBodyHeader();
@@ -1318,7 +1326,7 @@ public class DPWSCommunicationManager implements CommunicationManager {
 			mimeHeader.setHeaderField(MIMEConstants.MIME_HEADER_CONTENT_TRANSFER_ENCODING, HTTPConstants.HTTP_HEADERVALUE_TRANSFERENCODING_BINARY);
 
 			mimeHeader.toStream(out);
-			SOAPMessageGeneratorFactory.getInstance().getMessage2SOAPGeneratorForCurrentThread().generateSOAPMessage(out, message, pd);
+			SOAPMessageGeneratorFactory.getInstance().generateSOAPMessage(out, message, pd);
 			out.flush();
 
 			while (!attachments.isEmpty() && DPWSFramework.hasModule(DPWSFramework.ATTACHMENT_MODULE)) {
@@ -26,7 +26,7 @@ import org.ws4d.java.types.XAddressInfo;
 /**
  *
  */
-public class FaultAwareResponseCallback implements ResponseCallback {
+public class FaultAwareResponseCallback implements NoContentResponseCallback {
 
 	private final ResponseCallback	callback;
 
@@ -170,6 +170,19 @@ public class FaultAwareResponseCallback implements ResponseCallback {
 		}
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see
+	 * org.ws4d.java.communication.NoContentResponseCallback#handleNoContent
+	 * (org.ws4d.java.message.Message, org.ws4d.java.communication.ProtocolData)
+	 */
+	public synchronized void handleNoContent(Message request, ProtocolData protocolData) {
+		responseReceived = true;
+		if (callback instanceof NoContentResponseCallback) {
+			((NoContentResponseCallback) callback).handleNoContent(request, protocolData);
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see
@@ -126,7 +126,7 @@ final class IncomingMIMEReceiver implements MIMEHandler, MessageReceiver {
 			r = this;
 		}
 
-		SOAPMessageGeneratorFactory.getInstance().getSOAP2MessageGeneratorForCurrentThread().deliverMessage(part.getBodyInputStream(), r, protocolData);
+		SOAPMessageGeneratorFactory.getInstance().deliverMessage(part.getBodyInputStream(), r, protocolData);
 		MIMEEntityOutput response;
 		synchronized (this.responses) {
 			response = (MIMEEntityOutput) this.responses.remove(Thread.currentThread());
@@ -11,6 +11,8 @@ package org.ws4d.java.communication;
 
 import org.ws4d.java.DPWSFramework;
 import org.ws4d.java.communication.DPWS2006.DefaultDPWSCommunicatonUtil;
+import org.ws4d.java.configuration.DPWSProperties;
+import org.ws4d.java.configuration.FrameworkProperties;
 import org.ws4d.java.communication.connection.ip.IPAddress;
 import org.ws4d.java.communication.monitor.MonitorStreamFactory;
 import org.ws4d.java.communication.monitor.MonitoringContext;
@@ -27,6 +29,7 @@ import org.ws4d.java.message.SOAPException;
 import org.ws4d.java.message.SOAPHeader;
 import org.ws4d.java.message.discovery.ByeMessage;
 import org.ws4d.java.message.discovery.HelloMessage;
+import org.ws4d.java.message.discovery.ProbeMatch;
 import org.ws4d.java.message.discovery.ProbeMatchesMessage;
 import org.ws4d.java.message.discovery.ProbeMessage;
 import org.ws4d.java.message.discovery.ResolveMatchesMessage;
@@ -47,8 +50,12 @@ import org.ws4d.java.message.metadata.GetResponseMessage;
 import org.ws4d.java.service.OperationDescription;
 import org.ws4d.java.structures.HashSet;
 import org.ws4d.java.structures.Iterator;
-import org.ws4d.java.structures.MessageIdBuffer;
+import org.ws4d.java.structures.MessageIdFilter;
+import org.ws4d.java.types.QName;
+import org.ws4d.java.types.XAddressInfo;
 import org.ws4d.java.util.Log;
+import org.ws4d.java.util.TimedEntry;
+import org.ws4d.java.util.WatchDog;
 
 /**
  *
@@ -57,6 +64,15 @@ final class IncomingUDPReceiver extends SOAPoverUDPDatagramHandler {
 
 	private static final MessageInformer		MESSAGE_INFORMER		= MessageInformer.getInstance();
 
+	/** number of probe listeners asked by one pool task */
+	private static final int					PROBE_LISTENERS_PER_TASK	= 256;
+
+	/** estimated size of a ProbeMatches message without the matches */
+	private static final int					PROBE_MATCHES_OVERHEAD		= 800;
+
+	/** estimated size of the elements of one ProbeMatch around its values */
+	private static final int					PROBE_MATCH_OVERHEAD		= 250;
+
 	private final DefaultMessageDiscarder		discarder				= new RelevanceMessageDiscarder();
 
 	private final DefaultDPWSCommunicatonUtil	util					= DefaultDPWSCommunicatonUtil.getInstance();
@@ -187,13 +203,14 @@ final class IncomingUDPReceiver extends SOAPoverUDPDatagramHandler {
 		final long receiveTime = System.currentTimeMillis();
 		IncomingSOAPReceiver.markIncoming(probe);
 
-		boolean first = true;
-		for (Iterator it = probeResolveListeners.iterator(); it.hasNext();) {
-			final IncomingMessageListener receiver = (IncomingMessageListener) it.next();
-			final boolean final_first = first;
-			if (first) {
-				first = false;
-			}
+		/*
+		 * one task asks up to PROBE_LISTENERS_PER_TASK listeners, so many
+		 * co-hosted devices do not need a task each
+		 */
+		final Object[] receivers = probeResolveListeners.toArray();
+		for (int i = 0; i < receivers.length; i += PROBE_LISTENERS_PER_TASK) {
+			final int from = i;
+			final int to = Math.min(i + PROBE_LISTENERS_PER_TASK, receivers.length);
 			Runnable r = new Runnable() {
 
 				/*
@@ -201,46 +218,188 @@ final class IncomingUDPReceiver extends SOAPoverUDPDatagramHandler {
 				 * @see java.lang.Runnable#run()
 				 */
 				public void run() {
-					ProtocolData pdOut = protocolData.createSwappedProtocolData();
-					try {
-						ProbeMatchesMessage probeMatches = receiver.handle(probe, protocolData);
-						if (final_first) {
-							MESSAGE_INFORMER.forwardMessage(probe, protocolData);
-						}
-						if (probeMatches != null) {
-							
-							IncomingSOAPReceiver.markOutgoing(probeMatches);
-							// Check for Messageversion, if Version = 2006 the
-							// Namespaces and some attributs must be changed
-							util.changeOutgoingMessage(probeMatches.getProtocolInfo().getVersion(), probeMatches);
-
-							CommunicationManager comMan = DPWSFramework.getCommunicationManager(pdOut.getCommunicationManagerId());
-
-							// wait APP_MAX_DELAY before responding
-							long sendTime = receiveTime + comMan.getRandomApplicationDelay(probe.getProtocolInfo().getVersion());
-							long waitTime = sendTime - System.currentTimeMillis();
-							if (waitTime > 0) {
-								try {
-									Thread.sleep(waitTime);
-								} catch (InterruptedException e) {
-									// void
-								}
-							}
-							// respond with datagram to the given destination
-							respond(probeMatches, new IPAddress(pdOut.getDestinationHost()), pdOut.getDestinationPort(), pdOut);
-							MESSAGE_INFORMER.forwardMessage(probeMatches, pdOut);
-						}
-					} catch (SOAPException e) {
-						if (final_first) {
-							MESSAGE_INFORMER.forwardMessage(e.getFault(), pdOut);
-						}
-					}
+					answerProbe(probe, protocolData, receivers, from, to, receiveTime);
 				}
 			};
 			DPWSFramework.getThreadPool().execute(r);
 		}
 	}
 
+	/**
+	 * Asks some of the probe listeners for matches and sends them. If
+	 * {@link DPWSProperties#PROP_DPWS_PROBE_MATCHES_PER_MESSAGE} allows,
+	 * matches of several devices are packed into one ProbeMatches message,
+	 * which needs one datagram and one application delay. A message is only
+	 * packed as long as its estimated size fits into a datagram.
+	 * <p>
+	 * The responses of the devices are not changed. Matches of more than one
+	 * device are copied into a new message, which takes the message ID and
+	 * the AppSequence of the first one.
+	 * </p>
+	 * 
+	 * @param probe the received probe
+	 * @param protocolData protocol data of the probe
+	 * @param receivers all probe listeners
+	 * @param from index of the first listener to ask
+	 * @param to index after the last listener to ask
+	 * @param receiveTime time the probe was received
+	 */
+	private void answerProbe(ProbeMessage probe, ProtocolData protocolData, Object[] receivers, int from, int to, long receiveTime) {
+		int matchesPerMessage = DPWSProperties.getInstance().getProbeMatchesPerMessage();
+		int maxSize = FrameworkProperties.getInstance().getMaxDatagramSize();
+		// first response of the current message and the matches added to it
+		ProbeMatchesMessage first = null;
+		ProbeMatchesMessage packed = null;
+		int packedSize = 0;
+		for (int i = from; i < to; i++) {
+			IncomingMessageListener receiver = (IncomingMessageListener) receivers[i];
+			ProbeMatchesMessage probeMatches;
+			try {
+				probeMatches = receiver.handle(probe, protocolData);
+				if (i == 0) {
+					MESSAGE_INFORMER.forwardMessage(probe, protocolData);
+				}
+			} catch (SOAPException e) {
+				if (i == 0) {
+					MESSAGE_INFORMER.forwardMessage(e.getFault(), protocolData.createSwappedProtocolData());
+				}
+				continue;
+			}
+			if (probeMatches == null) {
+				continue;
+			}
+			if (matchesPerMessage <= 1 || probeMatches.isSecure()) {
+				scheduleProbeMatches(probeMatches, probe, protocolData, receiveTime);
+				continue;
+			}
+			int size = 0;
+			for (Iterator it = probeMatches.getProbeMatches().iterator(); it.hasNext();) {
+				size += estimateSize((ProbeMatch) it.next());
+			}
+			if (first != null && packedSize + size > maxSize) {
+				scheduleProbeMatches(packed != null ? packed : first, probe, protocolData, receiveTime);
+				first = null;
+				packed = null;
+			}
+			if (first == null) {
+				first = probeMatches;
+				packedSize = PROBE_MATCHES_OVERHEAD + size;
+			} else {
+				if (packed == null) {
+					packed = createPackedProbeMatches(first);
+				}
+				addProbeMatches(packed, probeMatches);
+				packedSize += size;
+			}
+			if ((packed != null ? packed : first).getProbeMatchCount() >= matchesPerMessage) {
+				scheduleProbeMatches(packed != null ? packed : first, probe, protocolData, receiveTime);
+				first = null;
+				packed = null;
+			}
+		}
+		if (first != null) {
+			scheduleProbeMatches(packed != null ? packed : first, probe, protocolData, receiveTime);
+		}
+	}
+
+	/**
+	 * Creates the message for the matches of several devices. It takes the
+	 * header of the first device's response, but neither its matches nor its
+	 * body template.
+	 * 
+	 * @param first response of the first device
+	 * @return the new message containing the matches of the first device
+	 */
+	private static ProbeMatchesMessage createPackedProbeMatches(ProbeMatchesMessage first) {
+		ProbeMatchesMessage packed = new ProbeMatchesMessage(first.getHeader());
+		addProbeMatches(packed, first);
+		return packed;
+	}
+
+	private static void addProbeMatches(ProbeMatchesMessage packed, ProbeMatchesMessage probeMatches) {
+		for (Iterator it = probeMatches.getProbeMatches().iterator(); it.hasNext();) {
+			packed.addProbeMatch((ProbeMatch) it.next());
+		}
+	}
+
+	/**
+	 * Estimates the serialized size of a probe match from the length of its
+	 * values.
+	 * 
+	 * @param match the probe match
+	 * @return the estimated size in bytes
+	 */
+	private static int estimateSize(ProbeMatch match) {
+		int size = PROBE_MATCH_OVERHEAD;
+		if (match.getEndpointReference() != null) {
+			size += match.getEndpointReference().getAddress().toString().length();
+		}
+		if (match.getTypes() != null) {
+			for (Iterator it = match.getTypes().iterator(); it.hasNext();) {
+				QName type = (QName) it.next();
+				// prefix and namespace declaration
+				size += 2 * type.getNamespace().length() + type.getLocalPart().length() + 20;
+			}
+		}
+		if (match.getScopes() != null && match.getScopes().size() > 0) {
+			String[] scopes = match.getScopes().getScopesAsStringArray();
+			for (int i = 0; i < scopes.length; i++) {
+				size += scopes[i].length() + 1;
+			}
+		}
+		if (match.getXAddressInfoSet() != null) {
+			for (Iterator it = match.getXAddressInfoSet().iterator(); it.hasNext();) {
+				size += ((XAddressInfo) it.next()).getXAddress().toString().length() + 1;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Sends a probe matches message after the random application delay.
+	 * 
+	 * @param probeMatches the response
+	 * @param probe the received probe
+	 * @param protocolData protocol data of the probe
+	 * @param receiveTime time the probe was received
+	 */
+	private void scheduleProbeMatches(final ProbeMatchesMessage probeMatches, ProbeMessage probe, ProtocolData protocolData, long receiveTime) {
+		final ProtocolData pdOut = protocolData.createSwappedProtocolData();
+		IncomingSOAPReceiver.markOutgoing(probeMatches);
+		// Check for Messageversion, if Version = 2006 the
+		// Namespaces and some attributs must be changed
+		util.changeOutgoingMessage(probeMatches.getProtocolInfo().getVersion(), probeMatches);
+
+		CommunicationManager comMan = DPWSFramework.getCommunicationManager(pdOut.getCommunicationManagerId());
+
+		// wait APP_MAX_DELAY before responding
+		long sendTime = receiveTime + comMan.getRandomApplicationDelay(probe.getProtocolInfo().getVersion());
+		long waitTime = sendTime - System.currentTimeMillis();
+		if (waitTime > 0) {
+			// let the watch dog wait instead of this thread
+			WatchDog.getInstance().register(new TimedEntry() {
+
+				protected void timedOut() {
+					respondProbeMatches(probeMatches, pdOut);
+				}
+
+			}, waitTime);
+		} else {
+			respondProbeMatches(probeMatches, pdOut);
+		}
+	}
+
+	/**
+	 * Sends a probe matches message as datagram to the sender of the probe.
+	 * 
+	 * @param probeMatches the response
+	 * @param pdOut protocol data with the destination of the response
+	 */
+	private void respondProbeMatches(ProbeMatchesMessage probeMatches, ProtocolData pdOut) {
+		respond(probeMatches, new IPAddress(pdOut.getDestinationHost()), pdOut.getDestinationPort(), pdOut);
+		MESSAGE_INFORMER.forwardMessage(probeMatches, pdOut);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see
@@ -603,7 +762,7 @@ final class IncomingUDPReceiver extends SOAPoverUDPDatagramHandler {
 
 	private class RelevanceMessageDiscarder extends DefaultMessageDiscarder {
 
-		private final MessageIdBuffer	duplicateMessageIds	= new MessageIdBuffer();
+		private final MessageIdFilter	duplicateMessageIds	= new MessageIdFilter();
 
 		/*
 		 * (non-Javadoc)
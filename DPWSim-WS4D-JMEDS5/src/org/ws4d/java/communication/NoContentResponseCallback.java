@@ -0,0 +1,34 @@
+/*******************************************************************************
+ * Copyright (c) 2009 MATERNA Information & Communications. All rights reserved.
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html. For further
+ * project-related information visit http://www.ws4d.org. The most recent
+ * version of the JMEDS framework can be obtained from
+ * http://sourceforge.net/projects/ws4d-javame.
+ ******************************************************************************/
+package org.ws4d.java.communication;
+
+import org.ws4d.java.message.Message;
+
+/**
+ * A {@link ResponseCallback} which is also told when the other side accepted
+ * a request without a response message, e.g. with HTTP 202 Accepted for a
+ * one-way message such as a notification. Other response callbacks are not
+ * called in this case.
+ */
+public interface NoContentResponseCallback extends ResponseCallback {
+
+	/**
+	 * Called when the other side accepted a previously
+	 * {@link CommunicationManager#send(Message, ProtocolDomain, ResponseCallback)
+	 * sent} request message with an empty response. No response message
+	 * follows.
+	 * 
+	 * @param request the original request message
+	 * @param protocolData protocol (aka. technology) specific addressing
+	 *            information attached to the empty response
+	 */
+	public void handleNoContent(Message request, ProtocolData protocolData);
+
+}
@@ -10,6 +10,7 @@
 package org.ws4d.java.communication;
 
 import org.ws4d.java.communication.protocol.soap.generator.MessageReceiver;
+import org.ws4d.java.communication.protocol.soap.generator.NoContentMessageReceiver;
 import org.ws4d.java.communication.protocol.soap.generator.UnexpectedMessageException;
 import org.ws4d.java.dispatch.MessageInformer;
 import org.ws4d.java.message.FaultMessage;
@@ -40,7 +41,7 @@ import org.ws4d.java.util.Log;
 /**
  *
  */
-final class SOAPResponseReceiver implements MessageReceiver {
+final class SOAPResponseReceiver implements NoContentMessageReceiver {
 
 	private static final MessageInformer	MESSAGE_INFORMER	= MessageInformer.getInstance();
 
@@ -308,6 +309,18 @@ final class SOAPResponseReceiver implements MessageReceiver {
 		MESSAGE_INFORMER.forwardMessage(fault, protocolData);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see
+	 * org.ws4d.java.communication.protocol.soap.generator.NoContentMessageReceiver
+	 * #receiveNoContent(org.ws4d.java.communication.ProtocolData)
+	 */
+	public void receiveNoContent(ProtocolData protocolData) {
+		if (callback instanceof NoContentResponseCallback) {
+			((NoContentResponseCallback) callback).handleNoContent(request, protocolData);
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see org.ws4d.java.communication.protocol.soap.generator.MessageReceiver#
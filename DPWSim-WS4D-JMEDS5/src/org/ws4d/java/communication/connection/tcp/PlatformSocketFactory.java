@@ -12,6 +12,7 @@ package org.ws4d.java.communication.connection.tcp;
 import java.io.IOException;
 
 import org.ws4d.java.communication.connection.ip.IPAddress;
+import org.ws4d.java.configuration.FrameworkProperties;
 
 /**
  * Creates server and client sockets.
@@ -19,7 +20,9 @@ import org.ws4d.java.communication.connection.ip.IPAddress;
 public class PlatformSocketFactory extends SocketFactory {
 
 	/**
-	 * Creates an SE ServerSocket.
+	 * Creates an SE ServerSocket. If the
+	 * {@link FrameworkProperties#PROP_NON_BLOCKING_TCP} property is set, the
+	 * ServerSocket is non-blocking.
 	 * 
 	 * @param adr IP address.
 	 * @param port port
@@ -27,6 +30,9 @@ public class PlatformSocketFactory extends SocketFactory {
 	 * @throws IOException
 	 */
 	public ServerSocket createServerSocket(IPAddress adr, int port) throws IOException {
+		if (FrameworkProperties.getInstance().isNonBlockingTCP()) {
+			return new SENIOServerSocket(adr, port);
+		}
 		return new SEServerSocket(adr, port);
 	}
 
@@ -0,0 +1,621 @@
+/*******************************************************************************
+ * Copyright (c) 2009 MATERNA Information & Communications. All rights reserved.
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html. For further
+ * project-related information visit http://www.ws4d.org. The most recent
+ * version of the JMEDS framework can be obtained from
+ * http://sourceforge.net/projects/ws4d-javame.
+ ******************************************************************************/
+package org.ws4d.java.communication.connection.tcp;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import org.ws4d.java.DPWSFramework;
+import org.ws4d.java.communication.DPWSProtocolData;
+import org.ws4d.java.communication.ProtocolException;
+import org.ws4d.java.communication.connection.ip.IPAddress;
+import org.ws4d.java.communication.protocol.http.HTTPRequestFramer;
+import org.ws4d.java.communication.protocol.http.HTTPRequestTooLargeException;
+import org.ws4d.java.communication.protocol.http.HTTPResponseUtil;
+import org.ws4d.java.configuration.HTTPProperties;
+import org.ws4d.java.io.fs.FileTransferTarget;
+import org.ws4d.java.structures.LinkedList;
+import org.ws4d.java.util.Log;
+import org.ws4d.java.util.TimedEntry;
+import org.ws4d.java.util.WatchDog;
+
+/**
+ * This class encapsulates an SE listening socket based on a non-blocking
+ * <code>java.nio</code> channel.
+ * <p>
+ * One selector thread accepts the connections and reads the incoming HTTP
+ * requests. Idle keep-alive connections do not occupy a thread. As soon as
+ * a request is complete, it is handed to the connection handler of the
+ * {@link TCPListener} in the thread pool. While the handler works on a
+ * request, further data of the connection is not read. If the handler has
+ * read the request to its end and keeps the connection, it is given back to
+ * the selector.
+ * </p>
+ * <p>
+ * Request bodies are kept in memory until the request is complete, up to
+ * {@link HTTPProperties#getMaxRequestSize()} bytes. Larger requests are
+ * answered with <code>413 Request Entity Too Large</code>. Files
+ * written to a response, e.g. attachments, are transferred from their channel
+ * to the connection without being copied into the heap.
+ * </p>
+ */
+public class SENIOServerSocket implements SelectingServerSocket {
+
+	/** time in ms until idle connections are closed */
+	private static final long			IDLE_TIMEOUT		= 20000;
+
+	/** time in ms to wait for a full send buffer */
+	private static final long			WRITE_TIMEOUT		= 20000;
+
+	private static final int			READ_BUFFER_SIZE	= 8192;
+
+	private static final int			WRITE_BUFFER_SIZE	= 8192;
+
+	private IPAddress					ipAddress			= null;
+
+	private int							port				= -1;
+
+	private final ServerSocketChannel	server;
+
+	private final Selector				selector;
+
+	/** connections given back by the handlers */
+	private final LinkedList			released			= new LinkedList();
+
+	private volatile boolean			closed				= false;
+
+	public SENIOServerSocket(IPAddress ipAddress, int port) throws IOException {
+		InetAddress adr = InetAddress.getByName(ipAddress.getAddress());
+		try {
+			server = ServerSocketChannel.open();
+			// as java.net.ServerSocket does
+			server.socket().setReuseAddress(true);
+			server.socket().bind(new InetSocketAddress(adr, port), 0);
+			server.configureBlocking(false);
+			if (port == 0) {
+				port = server.socket().getLocalPort();
+			}
+			selector = Selector.open();
+			server.register(selector, SelectionKey.OP_ACCEPT);
+		} catch (Exception e) {
+			throw new IOException(e.getMessage() + " for " + ipAddress + " at port " + port);
+		}
+		this.ipAddress = ipAddress;
+		this.port = port;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.ws4d.java.communication.connection.tcp.ServerSocket#accept()
+	 */
+	public Socket accept() throws IOException {
+		throw new IOException("Connections of a non-blocking server socket are handled by serve().");
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see
+	 * org.ws4d.java.communication.connection.tcp.SelectingServerSocket#serve
+	 * (org.ws4d.java.communication.connection.tcp.TCPListener)
+	 */
+	public void serve(TCPListener listener) throws IOException {
+		ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+		try {
+			while (!closed) {
+				selector.select();
+				if (closed) {
+					break;
+				}
+				resumeReleased(listener);
+
+				java.util.Iterator it = selector.selectedKeys().iterator();
+				while (it.hasNext()) {
+					SelectionKey key = (SelectionKey) it.next();
+					it.remove();
+					if (!key.isValid()) {
+						continue;
+					}
+					if (key.isAcceptable()) {
+						acceptAll(listener);
+					} else if (key.isReadable()) {
+						read(listener, (NIOConnection) key.attachment(), readBuffer);
+					}
+				}
+			}
+		} finally {
+			closeAll();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.ws4d.java.communication.connection.tcp.ServerSocket#close()
+	 */
+	public void close() throws IOException {
+		closed = true;
+		selector.wakeup();
+		server.close();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.ws4d.java.communication.connection.tcp.ServerSocket#getAddress()
+	 */
+	public IPAddress getIPAddress() {
+		return ipAddress;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.ws4d.java.communication.connection.tcp.ServerSocket#getPort()
+	 */
+	public int getPort() {
+		return port;
+	}
+
+	// ---------------------------- PRIVATE ----------------------------
+
+	private void acceptAll(TCPListener listener) {
+		SocketChannel channel;
+		while (true) {
+			try {
+				channel = server.accept();
+			} catch (IOException e) {
+				Log.warn("Cannot accept TCP connection for " + ipAddress + " and port " + port + ". " + e.getMessage());
+				return;
+			}
+			if (channel == null) {
+				return;
+			}
+			NIOConnection connection = new NIOConnection(channel);
+			if (!listener.isAllowed(connection.socket)) {
+				connection.close();
+				continue;
+			}
+			try {
+				channel.configureBlocking(false);
+				connection.data = listener.createProtocolData(connection.socket);
+				connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+			} catch (IOException e) {
+				Log.warn("Cannot handle TCP connection. " + e.getMessage());
+				connection.close();
+				continue;
+			}
+			WatchDog.getInstance().register(connection.idleTimeout, IDLE_TIMEOUT);
+			if (Log.isDebug()) {
+				Log.debug("<I-TCP> From " + connection.socket.getRemoteAddress() + "@" + connection.socket.getRemotePort() + " to " + ipAddress + "@" + port + ", non-blocking", Log.DEBUG_LAYER_COMMUNICATION);
+			}
+		}
+	}
+
+	private void read(TCPListener listener, NIOConnection connection, ByteBuffer readBuffer) {
+		try {
+			int n;
+			do {
+				readBuffer.clear();
+				n = connection.channel.read(readBuffer);
+				if (n < 0) {
+					connection.close();
+					return;
+				}
+				connection.framer.append(readBuffer.array(), 0, n);
+			} while (n == readBuffer.capacity());
+		} catch (IOException e) {
+			connection.close();
+			return;
+		} catch (HTTPRequestTooLargeException e) {
+			Log.warn("Closing HTTP connection. " + e.getMessage() + ".");
+			rejectTooLarge(connection, e.getMessage());
+			connection.close();
+			return;
+		} catch (ProtocolException e) {
+			Log.warn("Closing HTTP connection. Invalid HTTP request: " + e.getMessage() + ".");
+			connection.close();
+			return;
+		}
+		if (connection.framer.hasComplete()) {
+			dispatch(listener, connection);
+		} else {
+			// data arrived, the connection is not idle
+			WatchDog.getInstance().update(connection.idleTimeout, IDLE_TIMEOUT);
+		}
+	}
+
+	/**
+	 * Answers a request which exceeds the maximum request size. The response
+	 * is written as far as the send buffer takes it, the selector thread does
+	 * not wait for the client.
+	 */
+	private void rejectTooLarge(NIOConnection connection, String note) {
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			HTTPResponseUtil.sendRequestEntityTooLarge(out, note);
+			connection.channel.write(ByteBuffer.wrap(out.toByteArray()));
+		} catch (IOException e) {
+			// the connection is closed anyway
+		}
+	}
+
+	/**
+	 * Hands the complete requests of a connection to the handler.
+	 */
+	private void dispatch(TCPListener listener, NIOConnection connection) {
+		WatchDog.getInstance().unregister(connection.idleTimeout);
+		connection.key.interestOps(0);
+
+		RequestInputStream in = new RequestInputStream(connection.framer.takeComplete());
+		ExchangeSocket socket = new ExchangeSocket(connection, in);
+		TCPConnection tcpConnection = listener.createConnection(in, new ChannelOutputStream(connection), socket, connection.data);
+		socket.tcpConnection = tcpConnection;
+		if (!DPWSFramework.getThreadPool().executeHandler(new Exchange(listener.getHandler(), tcpConnection, connection))) {
+			// the selector thread never runs a handler itself
+			Log.warn("Thread pool queue full. Closing incoming TCP connection (" + connection.data.getInstanceId() + ").");
+			connection.close();
+		}
+	}
+
+	/**
+	 * Reads again from the connections given back by the handlers.
+	 */
+	private void resumeReleased(TCPListener listener) {
+		while (true) {
+			NIOConnection connection;
+			synchronized (released) {
+				if (released.isEmpty()) {
+					return;
+				}
+				connection = (NIOConnection) released.removeFirst();
+			}
+			if (!connection.key.isValid()) {
+				continue;
+			}
+			if (connection.framer.hasComplete()) {
+				// pipelined request
+				dispatch(listener, connection);
+			} else {
+				connection.key.interestOps(SelectionKey.OP_READ);
+				WatchDog.getInstance().register(connection.idleTimeout, IDLE_TIMEOUT);
+			}
+		}
+	}
+
+	private void release(NIOConnection connection) {
+		synchronized (released) {
+			released.add(connection);
+		}
+		selector.wakeup();
+	}
+
+	private void closeAll() {
+		java.util.Iterator it = selector.keys().iterator();
+		while (it.hasNext()) {
+			Object attachment = ((SelectionKey) it.next()).attachment();
+			if (attachment instanceof NIOConnection) {
+				((NIOConnection) attachment).close();
+			}
+		}
+		try {
+			selector.close();
+		} catch (IOException e) {
+			// void
+		}
+	}
+
+	/**
+	 * State of an accepted connection.
+	 */
+	private class NIOConnection {
+
+		final SocketChannel			channel;
+
+		final SESocket				socket;
+
+		final HTTPRequestFramer		framer		= new HTTPRequestFramer();
+
+		SelectionKey				key;
+
+		DPWSProtocolData			data;
+
+		/**
+		 * waits until a full send buffer takes data again, opened when first
+		 * needed and kept with the connection
+		 */
+		private Selector			writeSelector	= null;
+
+		final TimedEntry			idleTimeout	= new TimedEntry() {
+
+													protected void timedOut() {
+														if (Log.isDebug()) {
+															Log.debug("<I> Idle TCP connection (" + data.getInstanceId() + ") timeout after " + IDLE_TIMEOUT + "ms.", Log.DEBUG_LAYER_COMMUNICATION);
+														}
+														close();
+													}
+
+												};
+
+		NIOConnection(SocketChannel channel) {
+			this.channel = channel;
+			this.socket = new SESocket(channel.socket(), ipAddress);
+		}
+
+		void close() {
+			WatchDog.getInstance().unregister(idleTimeout);
+			try {
+				channel.close();
+			} catch (IOException e) {
+				// void
+			}
+			Selector selector;
+			synchronized (this) {
+				selector = writeSelector;
+				writeSelector = null;
+			}
+			if (selector != null) {
+				try {
+					selector.close();
+				} catch (IOException e) {
+					// void
+				}
+			}
+		}
+
+		/**
+		 * Waits until the channel can be written to. Only the handler of the
+		 * current exchange writes to the connection.
+		 */
+		void awaitWritable() throws IOException {
+			Selector selector;
+			synchronized (this) {
+				if (writeSelector == null) {
+					if (!channel.isOpen()) {
+						throw new IOException("Connection closed");
+					}
+					writeSelector = Selector.open();
+					channel.register(writeSelector, SelectionKey.OP_WRITE);
+				}
+				selector = writeSelector;
+			}
+			try {
+				selector.selectedKeys().clear();
+				if (selector.select(WRITE_TIMEOUT) == 0) {
+					if (!channel.isOpen()) {
+						throw new IOException("Connection closed");
+					}
+					throw new IOException("Write timeout after " + WRITE_TIMEOUT + "ms");
+				}
+			} catch (ClosedSelectorException e) {
+				throw new IOException("Connection closed");
+			}
+		}
+
+	}
+
+	/**
+	 * Runs the connection handler for the complete requests of a connection.
+	 */
+	private class Exchange implements Runnable {
+
+		private final TCPConnectionHandler	handler;
+
+		private final TCPConnection			tcpConnection;
+
+		private final NIOConnection			connection;
+
+		Exchange(TCPConnectionHandler handler, TCPConnection tcpConnection, NIOConnection connection) {
+			this.handler = handler;
+			this.tcpConnection = tcpConnection;
+			this.connection = connection;
+		}
+
+		public void run() {
+			try {
+				handler.handle(tcpConnection);
+			} catch (IOException e) {
+				if (!tcpConnection.isClosed()) {
+					Log.warn("<I> Incoming TCP connection (" + tcpConnection.getIdentifier() + "). " + e.getMessage() + ".");
+				}
+			} finally {
+				try {
+					tcpConnection.close();
+				} catch (IOException e) {
+					connection.close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * The socket of one exchange. Closing it gives the connection back to the
+	 * selector if the handler has read all requests and keeps the connection,
+	 * else the connection is closed.
+	 */
+	private class ExchangeSocket implements Socket {
+
+		private final NIOConnection			connection;
+
+		private final RequestInputStream	in;
+
+		/** the connection of the handler, closing it closes this socket */
+		TCPConnection						tcpConnection	= null;
+
+		ExchangeSocket(NIOConnection connection, RequestInputStream in) {
+			this.connection = connection;
+			this.in = in;
+		}
+
+		public java.io.InputStream getInputStream() throws IOException {
+			return in;
+		}
+
+		public OutputStream getOutputStream() throws IOException {
+			throw new IOException("Use the output stream of the TCP connection.");
+		}
+
+		public void close() throws IOException {
+			// Connection: close was sent or received if the handler does not keep it
+			if (in.isAtEnd() && tcpConnection.isKeepAlive() && !closed && connection.channel.isOpen()) {
+				release(connection);
+			} else {
+				connection.close();
+			}
+		}
+
+		public IPAddress getRemoteAddress() {
+			return connection.socket.getRemoteAddress();
+		}
+
+		public int getRemotePort() {
+			return connection.socket.getRemotePort();
+		}
+
+		public IPAddress getLocalAddress() {
+			return connection.socket.getLocalAddress();
+		}
+
+		public int getLocalPort() {
+			return connection.socket.getLocalPort();
+		}
+
+	}
+
+	/**
+	 * Input stream over the complete requests. Remembers whether it has been
+	 * read to its end.
+	 */
+	private static class RequestInputStream extends ByteArrayInputStream {
+
+		private boolean	atEnd	= false;
+
+		RequestInputStream(byte[] buf) {
+			super(buf);
+		}
+
+		public synchronized int read() {
+			int b = super.read();
+			if (b == -1) {
+				atEnd = true;
+			}
+			return b;
+		}
+
+		public synchronized int read(byte[] b, int off, int len) {
+			int n = super.read(b, off, len);
+			if (n == -1 || (n == 0 && len > 0)) {
+				atEnd = true;
+			}
+			return n;
+		}
+
+		synchronized boolean isAtEnd() {
+			return atEnd;
+		}
+
+		public void close() {
+			// keep the end state
+		}
+
+	}
+
+	/**
+	 * Buffered output stream writing to a non-blocking channel. Files are
+	 * transferred to the channel directly.
+	 */
+	private static class ChannelOutputStream extends OutputStream implements FileTransferTarget {
+
+		private final NIOConnection	connection;
+
+		private final SocketChannel	channel;
+
+		private final ByteBuffer	buffer	= ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+
+		ChannelOutputStream(NIOConnection connection) {
+			this.connection = connection;
+			this.channel = connection.channel;
+		}
+
+		public void write(int b) throws IOException {
+			if (!buffer.hasRemaining()) {
+				drain();
+			}
+			buffer.put((byte) b);
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				if (!buffer.hasRemaining()) {
+					drain();
+				}
+				int n = Math.min(len, buffer.remaining());
+				buffer.put(b, off, n);
+				off += n;
+				len -= n;
+			}
+		}
+
+		public void flush() throws IOException {
+			drain();
+		}
+
+		public void close() throws IOException {
+			// the channel stays open for the next request
+			drain();
+		}
+
+		public boolean isTransferable(InputStream in) {
+			return in instanceof FileInputStream;
+		}
+
+		public void transfer(InputStream in, long count) throws IOException {
+			drain();
+			FileChannel file = ((FileInputStream) in).getChannel();
+			long position = file.position();
+			long end = position + count;
+			while (position < end) {
+				long n = file.transferTo(position, end - position, channel);
+				if (n > 0) {
+					position += n;
+				} else if (position >= file.size()) {
+					throw new IOException("File ended " + (end - position) + " bytes early");
+				} else {
+					connection.awaitWritable();
+				}
+			}
+			file.position(position);
+		}
+
+		private void drain() throws IOException {
+			buffer.flip();
+			try {
+				while (buffer.hasRemaining()) {
+					if (channel.write(buffer) == 0) {
+						connection.awaitWritable();
+					}
+				}
+			} finally {
+				buffer.clear();
+			}
+		}
+
+	}
+
+}
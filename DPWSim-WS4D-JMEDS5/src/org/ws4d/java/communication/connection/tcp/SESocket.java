@@ -46,6 +46,12 @@ public class SESocket implements Socket {
 	public SESocket(IPAddress host, int port) throws IOException {
 		String adr = host.getAddressWithoutNicId();
 		socket = new java.net.Socket(adr, port);
+		/*
+		 * the output stream is buffered and flushed once per message, so the
+		 * last segment of a message must not wait for the acknowledgement of
+		 * the previous one
+		 */
+		socket.setTcpNoDelay(true);
 		this.port = socket.getLocalPort();
 	}
 
@@ -0,0 +1,34 @@
+/*******************************************************************************
+ * Copyright (c) 2009 MATERNA Information & Communications. All rights reserved.
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html. For further
+ * project-related information visit http://www.ws4d.org. The most recent
+ * version of the JMEDS framework can be obtained from
+ * http://sourceforge.net/projects/ws4d-javame.
+ ******************************************************************************/
+package org.ws4d.java.communication.connection.tcp;
+
+import java.io.IOException;
+
+/**
+ * Server socket which serves all its connections from one thread instead of
+ * returning them by {@link #accept()}.
+ * <p>
+ * The {@link TCPListener} calls {@link #serve(TCPListener)} instead of its
+ * accept loop. The implementation reads the requests of idle connections
+ * without a thread per connection, and hands complete requests to the
+ * connection handler of the listener in the thread pool.
+ * </p>
+ */
+interface SelectingServerSocket extends ServerSocket {
+
+	/**
+	 * Serves incoming connections until the server socket is closed.
+	 * 
+	 * @param listener the listener, provides the connection handler.
+	 * @throws IOException if the server socket fails.
+	 */
+	void serve(TCPListener listener) throws IOException;
+
+}
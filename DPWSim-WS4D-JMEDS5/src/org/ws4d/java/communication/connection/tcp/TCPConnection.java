@@ -37,6 +37,8 @@ public class TCPConnection {
 
 	private boolean					closed		= false;
 
+	private volatile boolean		keepAlive	= true;
+
 	private boolean					fstRead		= true;
 
 	private boolean					fstWrite	= true;
@@ -106,6 +108,28 @@ public class TCPConnection {
 		closed = true;
 	}
 
+	/**
+	 * Returns <code>false</code> if the connection must not take further
+	 * requests, e.g. because <code>Connection: close</code> was sent or
+	 * received.
+	 * 
+	 * @return <code>true</code> if the connection may be kept open after the
+	 *         current requests.
+	 */
+	public boolean isKeepAlive() {
+		return keepAlive;
+	}
+
+	/**
+	 * Sets whether the connection may take further requests.
+	 * 
+	 * @param keepAlive <code>false</code> if the connection must be closed
+	 *            after the current requests.
+	 */
+	public void setKeepAlive(boolean keepAlive) {
+		this.keepAlive = keepAlive;
+	}
+
 	/**
 	 * Returns the identifier for this connection.
 	 * 
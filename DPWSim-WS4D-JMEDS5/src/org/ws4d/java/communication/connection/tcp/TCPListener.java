@@ -106,7 +106,22 @@ public class TCPListener implements Runnable {
 			running = true;
 			lockObj.notifyAll();
 		}
-		
+
+		if (serverSocket instanceof SelectingServerSocket) {
+			/*
+			 * Non-blocking server socket, serves all connections from this
+			 * thread.
+			 */
+			try {
+				((SelectingServerSocket) serverSocket).serve(this);
+			} catch (IOException e) {
+				if (isRunning()) {
+					Log.error("TCP listener failure: " + e.getMessage() + ". TCP listener shutdown for " + ipAddress + " and port " + port + ".");
+				}
+			}
+			return;
+		}
+
 		while (isRunning()) {
 			try {
 				/*
@@ -122,7 +137,7 @@ public class TCPListener implements Runnable {
 					continue;
 				}
 
-				if (!IPProperties.getInstance().isAllowedByIPFilter(socket.getRemoteAddress())) {
+				if (!isAllowed(socket)) {
 					continue;
 				}
 
@@ -142,31 +157,16 @@ public class TCPListener implements Runnable {
 					continue;
 				}
 
-				DPWSProtocolData data = null;
-
-				if (socket.getRemoteAddress() == null) {
-					/*
-					 * TODO: CLDC quick fix! It's not possible to retrieve the
-					 * remote address from the CLDC socket. :-(
-					 */
-					data = new DPWSProtocolData(null, ProtocolData.DIRECTION_IN, null, socket.getRemotePort(), socket.getLocalAddress().getAddressWithoutNicId(), socket.getLocalPort(), true);
-				} else {
-					data = new DPWSProtocolData(null, ProtocolData.DIRECTION_IN, socket.getRemoteAddress().getAddressWithoutNicId(), socket.getRemotePort(), socket.getLocalAddress().getAddressWithoutNicId(), socket.getLocalPort(), true);
-				}
+				DPWSProtocolData data = createProtocolData(socket);
 
 				if (BUFFERED_INPUT) {
 					in = new BufferedInputStream(in);
 				}
 
-				if (DPWSFramework.getMonitorStreamFactory() != null) {
-					in = new MonitoredInputStream(in, data);
-					out = new MonitoredOutputStream(out, data.createSwappedProtocolData());
-				}
-
 				/*
 				 * Create incoming TCP connection.
 				 */
-				TCPConnection connection = new TCPConnection(in, out, socket, data);
+				TCPConnection connection = createConnection(in, out, socket, data);
 
 				/*
 				 * Store connection for the KILL method! ;-)
@@ -184,7 +184,15 @@ public class TCPListener implements Runnable {
 				/*
 				 * Handle incoming TCP connection in an own thread.
 				 */
-				DPWSFramework.getThreadPool().execute(new TCPConnectionThread(connection, handler));
+				if (!DPWSFramework.getThreadPool().executeHandler(new TCPConnectionThread(connection, handler))) {
+					Log.warn("Thread pool queue full. Closing incoming TCP connection (" + connection.getIdentifier() + ").");
+					connections.remove(connection);
+					try {
+						connection.close();
+					} catch (IOException e) {
+						// not an accept failure
+					}
+				}
 			} catch (IOException e) {
 				if (isRunning()) {
 					if (retryCount++ < ACCEPT_RETRIES) {
@@ -206,6 +214,61 @@ public class TCPListener implements Runnable {
 		}
 	}
 
+	/**
+	 * Checks the remote address of an incoming connection against the IP
+	 * filter.
+	 * 
+	 * @param socket the socket of the incoming connection.
+	 * @return <code>true</code> if the connection may be handled.
+	 */
+	boolean isAllowed(Socket socket) {
+		return IPProperties.getInstance().isAllowedByIPFilter(socket.getRemoteAddress());
+	}
+
+	/**
+	 * Creates the transport information for an incoming connection.
+	 * 
+	 * @param socket the socket of the incoming connection.
+	 * @return the transport information.
+	 */
+	DPWSProtocolData createProtocolData(Socket socket) {
+		if (socket.getRemoteAddress() == null) {
+			/*
+			 * TODO: CLDC quick fix! It's not possible to retrieve the remote
+			 * address from the CLDC socket. :-(
+			 */
+			return new DPWSProtocolData(null, ProtocolData.DIRECTION_IN, null, socket.getRemotePort(), socket.getLocalAddress().getAddressWithoutNicId(), socket.getLocalPort(), true);
+		}
+		return new DPWSProtocolData(null, ProtocolData.DIRECTION_IN, socket.getRemoteAddress().getAddressWithoutNicId(), socket.getRemotePort(), socket.getLocalAddress().getAddressWithoutNicId(), socket.getLocalPort(), true);
+	}
+
+	/**
+	 * Creates the connection object for an incoming connection. The streams
+	 * are monitored if a monitor is set.
+	 * 
+	 * @param in the input stream of the connection.
+	 * @param out the output stream of the connection.
+	 * @param socket the socket of the connection.
+	 * @param data the transport information.
+	 * @return the connection.
+	 */
+	TCPConnection createConnection(InputStream in, OutputStream out, Socket socket, DPWSProtocolData data) {
+		if (DPWSFramework.getMonitorStreamFactory() != null) {
+			in = new MonitoredInputStream(in, data);
+			out = new MonitoredOutputStream(out, data.createSwappedProtocolData());
+		}
+		return new TCPConnection(in, out, socket, data);
+	}
+
+	/**
+	 * Returns the handler of the incoming connections.
+	 * 
+	 * @return the TCP connection handler.
+	 */
+	TCPConnectionHandler getHandler() {
+		return handler;
+	}
+
 	/**
 	 * Indicates whether this listener is running or not.
 	 * 
@@ -36,6 +36,8 @@ public class Datagram {
 
 	private IPAddress				socketAddress		= null;
 
+	private boolean					released			= false;
+
 	private int						sPort				= -1;
 
 	/**
@@ -179,9 +181,16 @@ public class Datagram {
 	}
 
 	/**
-	 * Returns this datagram into the pool of reusable datagram objects.
+	 * Returns this datagram into the pool of reusable datagram objects. Only
+	 * the first call has an effect.
 	 */
 	public void release() {
+		synchronized (this) {
+			if (released) {
+				return;
+			}
+			released = true;
+		}
 		if (creator != null) {
 			creator.release(this);
 		}
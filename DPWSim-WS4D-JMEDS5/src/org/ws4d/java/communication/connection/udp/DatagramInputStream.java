@@ -14,9 +14,9 @@ import java.io.IOException;
 import java.io.InputStream;
 
 /**
- * Internal datagram stream. This stream throws away the internal
- * <code>BufferedInputStream</code> if the whole datagram packet has been read.
- * This should provide better memory usage.
+ * Internal datagram stream. Reads the content of a datagram. Closing the
+ * stream returns the buffer of the datagram to its pool, the datagram must
+ * not be used afterwards.
  */
 public class DatagramInputStream extends InputStream {
 
@@ -24,73 +24,25 @@ public class DatagramInputStream extends InputStream {
 
 	private InputStream	in		= null;
 
-	private int			r		= 0;
-
-	private int			size	= 0;
-
 	public DatagramInputStream(Datagram datagram) {
 		this.datagram = datagram;
-		in = new ByteArrayInputStream(datagram.getData());
-		// in = new BufferedInputStream(new ByteArrayInputStream(data), size);
-		// CHANGED SSch It seems to better to use the content length and not the
-		// length of the buffer
-		// this.size = datagram.getLength();
-		this.size = datagram.getContentLength();
+		// pooled buffers are longer than the content
+		in = new ByteArrayInputStream(datagram.getData(), 0, datagram.getContentLength());
 	}
 
 	public int read() throws IOException {
 		if (in == null) return -1;
-		if (r > size) {
-			if (in != null) {
-				// return to pool
-				datagram.release();
-				in = null;
-			}
-			return -1;
-		}
-		int i = in.read();
-		r++;
-		return i;
+		return in.read();
 	}
 
 	public int read(byte[] buffer) throws IOException {
 		if (in == null) return -1;
-		if (r > size) {
-			if (in != null) {
-				// return to pool
-				datagram.release();
-				in = null;
-			}
-			return -1;
-		}
-		int i = in.read(buffer);
-		if (i < 0) {
-			// return to pool
-			datagram.release();
-			return -1;
-		}
-		r += i;
-		return i;
+		return in.read(buffer);
 	}
 
 	public int read(byte[] buffer, int off, int len) throws IOException {
 		if (in == null) return -1;
-		if (r > size) {
-			if (in != null) {
-				// return to pool
-				datagram.release();
-				in = null;
-			}
-			return -1;
-		}
-		int i = in.read(buffer, off, len);
-		if (i < 0) {
-			// return to pool
-			datagram.release();
-			return -1;
-		}
-		r += i;
-		return i;
+		return in.read(buffer, off, len);
 	}
 
 	public int available() throws IOException {
@@ -101,6 +53,7 @@ public class DatagramInputStream extends InputStream {
 	public void close() throws IOException {
 		// Bugfix SSch 2011-01-13 in may be null
 		if (in != null) in.close();
+		in = null;
 		// return to pool
 		if (datagram != null) datagram.release();
 	}
@@ -115,10 +115,14 @@ public class SEDatagramSocket implements DatagramSocket {
 	 */
 	public Datagram receive() throws IOException {
 		// get pooled buffer
-		byte[] buffer = new byte[FrameworkProperties.getInstance().getMaxDatagramSize()]; // (byte[])
-																							// BUFFERS.acquire();
+		byte[] buffer = (byte[]) BUFFERS.acquire();
 		DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-		socket.receive(packet);
+		try {
+			socket.receive(packet);
+		} catch (IOException e) {
+			BUFFERS.release(buffer);
+			throw e;
+		}
 		Datagram dgram = new Datagram(this, buffer, packet.getLength());
 		dgram.setSocketAddress(this.socketAddress);
 		dgram.setSocketPort(this.port);
@@ -151,7 +155,7 @@ public class SEDatagramSocket implements DatagramSocket {
 	 */
 	public void release(Datagram datagram) {
 		// return pooled buffer
-		// BUFFERS.release(datagram.getData());
+		BUFFERS.release(datagram.getData());
 	}
 
 	/*
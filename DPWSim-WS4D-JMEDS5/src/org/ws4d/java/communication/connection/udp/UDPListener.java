@@ -16,14 +16,20 @@ import org.ws4d.java.communication.DPWSDiscoveryBinding;
 import org.ws4d.java.communication.DPWSProtocolData;
 import org.ws4d.java.communication.ProtocolData;
 import org.ws4d.java.communication.connection.ip.IPAddress;
+import org.ws4d.java.configuration.FrameworkProperties;
 import org.ws4d.java.configuration.IPProperties;
 import org.ws4d.java.constants.DPWSConstants;
+import org.ws4d.java.structures.LinkedList;
 import org.ws4d.java.util.Log;
 
 /**
  * UDP listener which allows to listen for incoming UDP packets.
  * <p>
- * Each incoming packet will be handled in a separate thread.
+ * Each incoming packet will be handled in a separate thread. If the
+ * {@link FrameworkProperties#PROP_UDP_BATCH_SIZE} property is greater than
+ * one, the packets are queued instead and handed to the thread pool in
+ * batches. A batch is handled by one thread, one packet after the other, and
+ * another thread is only used if more than a full batch is waiting.
  * </p>
  * <h2>DPWS Multicast</h2>
  * <p>
@@ -55,6 +61,14 @@ public class UDPListener implements Runnable {
 
 	private String				iface				= null;
 
+	private final int			batchSize;
+
+	/** datagrams waiting for a batch handler */
+	private final LinkedList	batchQueue			= new LinkedList();
+
+	/** number of running batch handlers, guarded by batchQueue */
+	private int					batchHandlers		= 0;
+
 	/**
 	 * Creates a UDP listener for the given address and port.
 	 * <p>
@@ -93,6 +107,7 @@ public class UDPListener implements Runnable {
 		this.handler = handler;
 		this.ipAddress = ipAddress;
 		this.iface = ifaceName;
+		this.batchSize = FrameworkProperties.getInstance().getUDPBatchSize();
 
 		// Changed SSch Now the UDPListener could be used not only for WS-D but
 		// also for generic Multicast
@@ -136,13 +151,21 @@ public class UDPListener implements Runnable {
 				}
 
 				if (!IPProperties.getInstance().isAllowedByIPFilter(datagram.getIPAddress())) {
+					datagram.release();
 					continue;
 				}
 
 				/*
 				 * Create and handle the incoming UDP connection.
 				 */
-				DPWSFramework.getThreadPool().execute(new UDPDatagramThread(datagram, handler));
+				if (batchSize > 1) {
+					enqueue(datagram);
+				} else if (!DPWSFramework.getThreadPool().executeHandler(new UDPDatagramThread(datagram, handler))) {
+					if (Log.isDebug()) {
+						Log.debug("Thread pool queue full. Incoming UDP datagram (" + datagram.getIdentifier() + ") dropped.", Log.DEBUG_LAYER_COMMUNICATION);
+					}
+					datagram.release();
+				}
 			} catch (Exception e) {
 				if (isRunning()) {
 					if (retryCount++ < ACCEPT_RETRIES) {
@@ -165,6 +188,66 @@ public class UDPListener implements Runnable {
 
 	}
 
+	/**
+	 * Queues a datagram for the batch handlers. Starts a new batch handler if
+	 * there is none or if the running ones are behind by more than a batch
+	 * each. If the thread pool rejects the new handler while no other one
+	 * runs, the queued datagrams are dropped, as nothing would handle them.
+	 * 
+	 * @param datagram the received datagram.
+	 */
+	private void enqueue(Datagram datagram) {
+		boolean start = false;
+		synchronized (batchQueue) {
+			batchQueue.add(datagram);
+			if (batchHandlers == 0 || batchQueue.size() > batchHandlers * batchSize) {
+				batchHandlers++;
+				start = true;
+			}
+		}
+		if (!start || DPWSFramework.getThreadPool().executeHandler(new UDPBatchThread())) {
+			return;
+		}
+		Datagram[] dropped = null;
+		synchronized (batchQueue) {
+			batchHandlers--;
+			if (batchHandlers == 0) {
+				dropped = new Datagram[batchQueue.size()];
+				for (int i = 0; i < dropped.length; i++) {
+					dropped[i] = (Datagram) batchQueue.removeFirst();
+				}
+			}
+		}
+		if (dropped == null) {
+			// the running handlers take the queued datagrams
+			return;
+		}
+		if (Log.isDebug()) {
+			Log.debug("Thread pool queue full. " + dropped.length + " incoming UDP datagrams dropped.", Log.DEBUG_LAYER_COMMUNICATION);
+		}
+		for (int i = 0; i < dropped.length; i++) {
+			dropped[i].release();
+		}
+	}
+
+	/**
+	 * Handles a datagram and returns its buffer to the pool afterwards.
+	 * 
+	 * @param datagram the datagram.
+	 */
+	private void handle(Datagram datagram) {
+		try {
+			if (Log.isDebug()) {
+				Log.debug("<I-UDP> From " + datagram.getIPAddress() + "@" + datagram.getPort() + " to " + datagram.getSocketAddress() + "@" + datagram.getSocketPort() + ", " + datagram, Log.DEBUG_LAYER_COMMUNICATION);
+			}
+			handler.handle(datagram, new DPWSProtocolData(iface, ProtocolData.DIRECTION_IN, datagram.getIPAddress().getAddressWithoutNicId(), datagram.getPort(), ipAddress.getAddressWithoutNicId(), port, false));
+		} catch (IOException e) {
+			Log.warn("Incoming UDP datagram (" + datagram.getIdentifier() + ") could not be handled. " + e.getMessage() + ".");
+		} finally {
+			datagram.release();
+		}
+	}
+
 	/**
 	 * Returns the datagram socket which is used for incoming datagram packets.
 	 * 
@@ -286,13 +369,33 @@ public class UDPListener implements Runnable {
 		}
 
 		public void run() {
-			try {
-				if (Log.isDebug()) {
-					Log.debug("<I-UDP> From " + datagram.getIPAddress() + "@" + datagram.getPort() + " to " + datagram.getSocketAddress() + "@" + datagram.getSocketPort() + ", " + datagram, Log.DEBUG_LAYER_COMMUNICATION);
+			UDPListener.this.handle(datagram);
+		}
+	}
+
+	/**
+	 * This thread handles queued datagrams in batches until the queue is
+	 * empty.
+	 */
+	private class UDPBatchThread implements Runnable {
+
+		public void run() {
+			Datagram[] batch = new Datagram[batchSize];
+			while (true) {
+				int count = 0;
+				synchronized (batchQueue) {
+					while (count < batchSize && !batchQueue.isEmpty()) {
+						batch[count++] = (Datagram) batchQueue.removeFirst();
+					}
+					if (count == 0) {
+						batchHandlers--;
+						return;
+					}
+				}
+				for (int i = 0; i < count; i++) {
+					handle(batch[i]);
+					batch[i] = null;
 				}
-				handler.handle(datagram, new DPWSProtocolData(iface, ProtocolData.DIRECTION_IN, datagram.getIPAddress().getAddressWithoutNicId(), datagram.getPort(), ipAddress.getAddressWithoutNicId(), port, false));
-			} catch (IOException e) {
-				Log.warn("Incoming UDP datagram (" + datagram.getIdentifier() + ") could not be handled. " + e.getMessage() + ".");
 			}
 		}
 	}
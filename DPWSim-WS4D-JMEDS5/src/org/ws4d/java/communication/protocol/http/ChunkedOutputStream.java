@@ -10,18 +10,44 @@
 package org.ws4d.java.communication.protocol.http;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 
+import org.ws4d.java.configuration.FrameworkProperties;
 import org.ws4d.java.constants.HTTPConstants;
 import org.ws4d.java.constants.Specialchars;
+import org.ws4d.java.io.fs.FileTransferTarget;
+import org.ws4d.java.util.BoundedObjectPool;
+import org.ws4d.java.util.ObjectPool.InstanceCreator;
 
 /**
  * A nice chunked HTTP output stream. Creates chunks from the incoming data.
  * WARNING: The stream MUST be finished in order to write the last chunk header!
+ * <p>
+ * Buffers of the default chunk size are taken from a pool and given back with
+ * the last chunk. Writes larger than the buffer go to the stream as one chunk
+ * without being copied.
+ * </p>
+ * <p>
+ * If the underlying stream is a {@link FileTransferTarget}, files are passed
+ * on to it as chunks of their own.
+ * </p>
  */
-public class ChunkedOutputStream extends OutputStream {
+public class ChunkedOutputStream extends OutputStream implements FileTransferTarget {
 
-	private static final int	CHUNK_SIZE	= 8192;
+	private static final int				CHUNK_SIZE	= 8192;
+
+	/**
+	 * Idle buffers of {@link #CHUNK_SIZE}. ATTENTION! To get the correct
+	 * property values, the framework must be started before.
+	 */
+	private static final BoundedObjectPool	BUFFERS		= new BoundedObjectPool(new InstanceCreator() {
+
+															public Object createInstance() {
+																return new byte[CHUNK_SIZE];
+															}
+
+														}, FrameworkProperties.getInstance().getThreadPoolSize());
 
 	private OutputStream		out			= null;
 
@@ -38,7 +64,7 @@ public class ChunkedOutputStream extends OutputStream {
 	public ChunkedOutputStream(OutputStream out, int chunkSize, boolean trailer) {
 		this.out = out;
 		this.trailer = trailer;
-		buffer = new byte[chunkSize];
+		buffer = (chunkSize == CHUNK_SIZE) ? (byte[]) BUFFERS.acquire() : new byte[chunkSize];
 	}
 
 	public ChunkedOutputStream(OutputStream out, boolean trailer) {
@@ -90,6 +116,34 @@ public class ChunkedOutputStream extends OutputStream {
 		}
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see
+	 * org.ws4d.java.io.fs.FileTransferTarget#isTransferable(java.io.InputStream)
+	 */
+	public boolean isTransferable(InputStream in) {
+		return !last && (out instanceof FileTransferTarget) && ((FileTransferTarget) out).isTransferable(in);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.ws4d.java.io.fs.FileTransferTarget#transfer(java.io.InputStream,
+	 * long)
+	 */
+	public void transfer(InputStream in, long count) throws IOException {
+		flushBuffer();
+		while (count > 0) {
+			int size = (int) Math.min(count, Integer.MAX_VALUE);
+			HTTPChunkHeader chunk = new HTTPChunkHeader(size, null, null);
+			chunk.toStream(out);
+			((FileTransferTarget) out).transfer(in, size);
+			totalLength += size;
+			count -= size;
+			out.write(Specialchars.CR);
+			out.write(Specialchars.LF);
+		}
+	}
+
 	/**
 	 * NECESSARY! Writes the last chunk to stream.
 	 * 
@@ -130,6 +184,9 @@ public class ChunkedOutputStream extends OutputStream {
 	private void last() throws IOException {
 		if (last) return;
 		flushBuffer();
+		if (buffer.length == CHUNK_SIZE) {
+			BUFFERS.release(buffer);
+		}
 		buffer = null;
 		// last chunk!
 		HTTPChunkHeader chunk = new HTTPChunkHeader(0, null, null);
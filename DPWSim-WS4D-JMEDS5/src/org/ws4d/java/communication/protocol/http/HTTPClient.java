@@ -28,20 +28,23 @@ import org.ws4d.java.configuration.HTTPProperties;
 import org.ws4d.java.constants.HTTPConstants;
 import org.ws4d.java.message.Message;
 import org.ws4d.java.structures.HashMap;
-import org.ws4d.java.structures.Iterator;
 import org.ws4d.java.structures.LinkedList;
-import org.ws4d.java.structures.Queue;
 import org.ws4d.java.types.InternetMediaType;
 import org.ws4d.java.util.Log;
 import org.ws4d.java.util.Sync;
 import org.ws4d.java.util.TimedEntry;
-import org.ws4d.java.util.WatchDog;
 
 /**
  * Client for asynchronous HTTP communication.
  * <p>
  * This client allows the asynchronous communication over HTTP.
  * </p>
+ * <p>
+ * Each client is one connection of the {@link HTTPClientPool} of its
+ * destination. The requests given to a client are sent in order by its writer
+ * thread, and its reader thread reads the responses in the same order. A
+ * client takes several requests at once only if pipelining is enabled.
+ * </p>
  * <h3>Example</h3>
  * <p>
  * HTTPClient client = HTTPClient.create("http://127.0.0.1:8080/hello");<br />
@@ -54,7 +57,7 @@ import org.ws4d.java.util.WatchDog;
  * // Close the communication<br />
  * client.close();
  * </p>
- * 
+ *
  * @see HTTPRequest
  */
 public class HTTPClient extends TimedEntry {
@@ -64,7 +67,12 @@ public class HTTPClient extends TimedEntry {
 	/**
 	 * Indicates whether this client is closed or not.
 	 */
-	private boolean						closed					= false;
+	private volatile boolean			closed					= false;
+
+	/**
+	 * Indicates that this client does not take further requests.
+	 */
+	private volatile boolean			retired					= false;
 
 	/**
 	 * The underlying simple HTTP client which allows the HTTP communication.
@@ -89,39 +97,23 @@ public class HTTPClient extends TimedEntry {
 	/**
 	 * Keep-alive mode (get first mode from framework).
 	 */
-	private boolean						keepalive				= true;
+	private volatile boolean			keepalive				= true;
 
 	/**
-	 * Flag for the asynchronous writer. Indicates that the writer is done.
+	 * The pool this client belongs to.
 	 */
-	private boolean						writerReady				= false;
+	private final HTTPClientPool		pool;
 
 	/**
-	 * Flag for the asynchronous reader. Indicates that the reader is done.
+	 * Number of requests given to this client and not yet finished. Guarded
+	 * by the pool.
 	 */
-	private boolean						readerReady				= false;
-
-	private Queue						pendingRequests			= null;
+	int									outstanding				= 0;
 
 	/**
 	 * Timeout limit for the watch dog.
 	 */
-	private static long					REQUEST_TIMEOUT			= 5000;
-
-	/**
-	 * 
-	 */
-	private static boolean				multipleCons			= true;
-
-	/**
-	 * Table of HTTP clients.
-	 */
-	private static HashMap				allClients				= new HashMap();
-
-	/**
-	 * Table of HTTP clients which can be reused for requests.
-	 */
-	private static HashMap				freeClients				= new HashMap();
+	static long							REQUEST_TIMEOUT			= 5000;
 
 	/**
 	 * The thread pool for the threads started by this client.
@@ -132,122 +124,26 @@ public class HTTPClient extends TimedEntry {
 	 * Kill all existing and provided HTTP clients with the {@link #kill()}
 	 * method.
 	 */
-	public synchronized static void killAllClients() {
-		Iterator it = allClients.values().iterator();
-		while (it.hasNext()) {
-			LinkedList l = (LinkedList) it.next();
-			if (l != null) {
-				Iterator jt = l.iterator();
-				while (jt.hasNext()) {
-					HTTPClient hc = (HTTPClient) jt.next();
-					hc.kill(false);
-					jt.remove();
-				}
-			}
-			it.remove();
-		}
+	public static void killAllClients() {
+		HTTPClientPool.closeAll(true);
 	}
 
 	/**
 	 * Close all existing and provided HTTP clients with the {@link #close()}
 	 * method.
 	 */
-	public synchronized static void closeAllClients() {
-		Iterator it = allClients.values().iterator();
-		while (it.hasNext()) {
-			LinkedList l = (LinkedList) it.next();
-			if (l != null) {
-				Iterator jt = l.iterator();
-				while (jt.hasNext()) {
-					HTTPClient hc = (HTTPClient) jt.next();
-					hc.close(false);
-					jt.remove();
-				}
-			}
-			it.remove();
-		}
-	}
-
-	/**
-	 * Adds a HTTP client to the list of existing and provided clients.
-	 * 
-	 * @param client the client to add.
-	 * @return the client which was added.
-	 */
-	private static HTTPClient addClient(HTTPClient client) {
-		LinkedList c = (LinkedList) allClients.get(client.simpleHTTPClient.getDestination());
-		if (c == null) {
-			c = new LinkedList();
-			allClients.put(client.simpleHTTPClient.getDestination(), c);
-		}
-		c.add(client);
-		return client;
-	}
-
-	/**
-	 * Removes a HTTP client from the list of existing and provided clients.
-	 * 
-	 * @param client to remove.
-	 */
-	private static void removeClient(HTTPClient client) {
-		LinkedList c = (LinkedList) allClients.get(client.simpleHTTPClient.getDestination());
-		c.remove(client);
-		if (c.size() == 0) {
-			allClients.remove(client.simpleHTTPClient.getDestination());
-		}
-	}
-
-	/**
-	 * Adds a HTTP client to the list of free clients.
-	 * 
-	 * @param client the client to add.
-	 */
-	private synchronized static void addFreeClient(HTTPClient client) {
-		HTTPRequest request = client.getPendingRequest();
-		if (request != null) {
-			client.requester.setRequest(request);
-			return;
-		}
-		synchronized (freeClients) {
-			LinkedList frees = (LinkedList) freeClients.get(client.simpleHTTPClient.getDestination());
-			if (frees == null) {
-				frees = new LinkedList();
-				frees.addFirst(client);
-				freeClients.put(client.simpleHTTPClient.getDestination(), frees);
-			} else {
-				frees.addFirst(client);
-			}
-			WatchDog.getInstance().register(client, REQUEST_TIMEOUT);
-		}
-	}
-
-	/**
-	 * Removes a HTTP client from the list of free clients.
-	 * 
-	 * @param client the client to remove.
-	 */
-	private synchronized static boolean removeFreeClient(HTTPClient client) {
-		boolean result = false;
-		synchronized (freeClients) {
-			WatchDog.getInstance().unregister(client);
-			LinkedList frees = (LinkedList) freeClients.get(client.simpleHTTPClient.getDestination());
-			if (frees != null) {
-				result = frees.remove(client);
-				if (frees.size() == 0) {
-					freeClients.remove(client.simpleHTTPClient.getDestination());
-				}
-			}
-		}
-		return result;
+	public static void closeAllClients() {
+		HTTPClientPool.closeAll(false);
 	}
 
 	/**
 	 * Creates HTTP client based on host and port.
-	 * 
-	 * @param host the host address to connect to.
-	 * @param port the port on the host.
+	 *
+	 * @param dest the destination to connect to.
+	 * @param pool the pool of the destination.
 	 */
-	private HTTPClient(HTTPClientDestination dest) {
+	HTTPClient(HTTPClientDestination dest, HTTPClientPool pool) {
+		this.pool = pool;
 		simpleHTTPClient = new SimpleHTTPClient(dest);
 		keepalive = properties.getHTTPClientKeepAlive();
 		responder = new AsyncResponseReader(this);
@@ -262,7 +158,7 @@ public class HTTPClient extends TimedEntry {
 	 * returned by the {@link HTTPRequest#getResponseHandler(InternetMediaType)}
 	 * method.
 	 * </p>
-	 * 
+	 *
 	 * @param type the Internet media type.
 	 * @param handler the handler which will handle the HTTP response.
 	 * @see HTTPRequest
@@ -280,7 +176,7 @@ public class HTTPClient extends TimedEntry {
 	 * depends on the thread scheduler and the Object.notifiy() method.
 	 * </p>
 	 */
-	public synchronized static void exchange(HTTPClientDestination dest) {
+	public static void exchange(HTTPClientDestination dest) {
 		exchange(dest, "/");
 	}
 
@@ -292,10 +188,10 @@ public class HTTPClient extends TimedEntry {
 	 * into a request queue and will be started as soon as possible. The speed
 	 * depends on the thread scheduler and the Object.notifiy() method.
 	 * </p>
-	 * 
+	 *
 	 * @param request the HTTP request path.
 	 */
-	public synchronized static void exchange(HTTPClientDestination dest, String request) {
+	public static void exchange(HTTPClientDestination dest, String request) {
 		exchange(dest, new DefaultHTTPGetRequest(request));
 	}
 
@@ -307,11 +203,11 @@ public class HTTPClient extends TimedEntry {
 	 * into a request queue and will be started as soon as possible. The speed
 	 * depends on the thread scheduler and the Object.notifiy() method..
 	 * </p>
-	 * 
+	 *
 	 * @param request the HTTP request.
 	 */
-	public synchronized static void exchange(HTTPClientDestination dest, HTTPRequest request) {
-		addRequest(dest, request);
+	public static void exchange(HTTPClientDestination dest, HTTPRequest request) {
+		HTTPClientPool.forDestination(dest).exchange(request);
 	}
 
 	/**
@@ -319,7 +215,7 @@ public class HTTPClient extends TimedEntry {
 	 * <p>
 	 * This request is used as default for the {@link #exchange()} method.
 	 * </p>
-	 * 
+	 *
 	 * @return the HTTP path.
 	 */
 	public String getPresetRequest() {
@@ -328,7 +224,7 @@ public class HTTPClient extends TimedEntry {
 
 	/**
 	 * Returns the TCP connection for this HTTP client.
-	 * 
+	 *
 	 * @return the TCP connection
 	 * @see TCPConnection
 	 */
@@ -355,13 +251,10 @@ public class HTTPClient extends TimedEntry {
 	 * </p>
 	 */
 	public synchronized void close() {
-		close(true);
-	}
-
-	private void close(boolean remove) {
 		if (closed) return;
-		removeFreeClient(this);
 		closed = true;
+		retired = true;
+		pool.remove(this);
 		requester.stop();
 		responder.stop();
 		try {
@@ -369,9 +262,6 @@ public class HTTPClient extends TimedEntry {
 		} catch (IOException e) {
 			Log.error("Cannot close client connection. " + e.getMessage());
 		}
-		if (remove) {
-			removeClient(this);
-		}
 	}
 
 	/**
@@ -387,13 +277,10 @@ public class HTTPClient extends TimedEntry {
 	 * </p>
 	 */
 	public synchronized void kill() {
-		kill(true);
-	}
-
-	private void kill(boolean remove) {
 		if (closed) return;
-		removeFreeClient(this);
 		closed = true;
+		retired = true;
+		pool.remove(this);
 		/*
 		 * Close the internal client before killing threads. This will close all
 		 * connections.
@@ -405,15 +292,12 @@ public class HTTPClient extends TimedEntry {
 		}
 		requester.stop();
 		responder.kill();
-		if (remove) {
-			removeClient(this);
-		}
 	}
 
 	/**
 	 * Returns <code>true</code> if the client is closed and cannot be used for
 	 * a request or <code>false</code> if the client can still be used.
-	 * 
+	 *
 	 * @return <code>true</code> if the client is closed and cannot be used for
 	 *         a request or <code>false</code> if the client can still be used.
 	 */
@@ -421,17 +305,38 @@ public class HTTPClient extends TimedEntry {
 		return closed;
 	}
 
+	/**
+	 * Returns <code>true</code> if this client may take further requests.
+	 */
+	boolean isReusable() {
+		return keepalive && !retired;
+	}
+
+	/**
+	 * Gives a request to this client. If the client was retired in the
+	 * meantime, the request goes back to the pool.
+	 */
+	void send(HTTPRequest request) {
+		if (!requester.enqueue(request)) {
+			LinkedList unsent = new LinkedList();
+			unsent.add(request);
+			pool.retire(this, unsent);
+		}
+	}
+
 	/**
 	 * Eats the omitted bytes.
-	 * 
+	 *
 	 * @return the amount of bytes eaten.
 	 * @throws IOException
 	 */
 	private int eat(InputStream body) throws IOException {
 		if (body == null) return 0;
 		int n = 0;
-		while (body.read() != -1) {
-			n++;
+		byte[] b = new byte[1024];
+		int k;
+		while ((k = body.read(b, 0, b.length)) != -1) {
+			n += k;
 		}
 		return n;
 	}
@@ -450,104 +355,41 @@ public class HTTPClient extends TimedEntry {
 			}
 		}
 
-		if (!removeFreeClient(this)) return;
+		if (!pool.evict(this)) return;
 
 		close();
 	}
 
-	private synchronized void writerReady() {
-		if (readerReady) {
-			if (keepalive && requester.running && responder.running) {
-				readerReady = false;
-				addFreeClient(this);
-			} else {
-				closeAndProcessPendingRequest();
-			}
-		} else {
-			writerReady = true;
-		}
-	}
-
-	private synchronized void readerReady() {
-		if (writerReady) {
-			if (keepalive && requester.running && responder.running) {
-				writerReady = false;
-				addFreeClient(this);
-			} else {
-				closeAndProcessPendingRequest();
-			}
-		} else {
-			readerReady = true;
-		}
-	}
-
-	private static void addRequest(HTTPClientDestination dest, HTTPRequest request) {
-		/*
-		 * Check for HTTP client.
-		 */
-		HTTPClient hc = null;
-		synchronized (freeClients) {
-			LinkedList frees = (LinkedList) freeClients.get(dest);
-			if (frees == null) {
-				LinkedList c = (LinkedList) allClients.get(dest);
-				int cons = (c == null ? 0 : c.size());
-				if (!multipleCons) {
-					if (c != null) {
-						hc = (HTTPClient) c.getFirst();
-						hc.queueRequest(request);
-						return;
-					}
-				} else if (cons >= dest.getMaxConnections()) {
-					if (c != null) {
-						hc = (HTTPClient) c.getFirst();
-						hc.queueRequest(request);
-						return;
-					}
-				}
-				hc = new HTTPClient(dest);
-				addClient(hc);
-			} else {
-				hc = (HTTPClient) frees.removeFirst();
-				WatchDog.getInstance().unregister(hc);
-				if (frees.size() == 0) {
-					freeClients.remove(dest);
-				}
-			}
+	/**
+	 * Stops taking requests, e.g. because the connection failed or the server
+	 * closes it. The requests not yet sent go back to the pool.
+	 *
+	 * @param resend requests sent but not processed by the server, which go
+	 *            back to the pool before the unsent ones, or
+	 *            <code>null</code>.
+	 */
+	private void retire(LinkedList resend) {
+		LinkedList unsent = requester.retire();
+		if (resend == null) {
+			resend = new LinkedList();
 		}
-
-		/*
-		 * Do not queue any requests if the client is already closed.
-		 */
-		if (hc.isClosed()) {
-			throw new RuntimeException("Cannot send request. HTTP client closed.");
+		if (unsent != null) {
+			resend.addAll(unsent);
 		}
-		hc.requester.setRequest(request);
-	}
-
-	private void queueRequest(HTTPRequest request) {
-		if (pendingRequests == null) {
-			pendingRequests = new Queue();
+		if (resend.size() > 0 || unsent != null) {
+			pool.retire(this, resend);
 		}
-		pendingRequests.enqueue(request);
 	}
 
-	private HTTPRequest getPendingRequest() {
-		if (pendingRequests == null) {
-			return null;
-		}
-		return (HTTPRequest) pendingRequests.get();
-	}
-
-	private void closeAndProcessPendingRequest() {
-		close();
-		HTTPRequest request = getPendingRequest();
-		if (request != null) {
-			HTTPClientDestination dest = simpleHTTPClient.getDestination();
-			HTTPClient hc = new HTTPClient(dest);
-			addClient(hc);
-			hc.pendingRequests = pendingRequests;
-			hc.requester.setRequest(request);
+	/**
+	 * Reports the failure of a request and finishes it.
+	 */
+	private void failed(HTTPRequest request, ProtocolData pd, Exception e, boolean response) {
+		if (!closed) {
+			ExceptionNotification eNotification = new ExceptionNotification(pd, request, e, response);
+			eNotification.start();
 		}
+		pool.requestDone(this);
 	}
 
 	/**
@@ -559,30 +401,35 @@ public class HTTPClient extends TimedEntry {
 		/**
 		 * Indicates whether this thread should work or not.
 		 */
-		private volatile boolean		running			= true;
+		private volatile boolean	running			= true;
 
 		/**
-		 * This entry will be set by the {@link AsyncRequesterWriter} which
-		 * allows this reader to know every thing about the request.
-		 * <p>
+		 * The requests sent by the {@link AsyncRequesterWriter} whose
+		 * responses are not yet read, in order. Guarded by
+		 * <code>waitForRequest</code>.
 		 */
-		private volatile HTTPRequest	request			= null;
+		private final LinkedList	inFlight		= new LinkedList();
+
+		/**
+		 * Set as soon as this reader takes no further requests.
+		 */
+		private boolean				finished		= false;
 
 		/**
 		 * This object is used to wait until a request is made.
 		 */
-		private Object		waitForRequest	= new Object();
+		private Object				waitForRequest	= new Object();
 
 		/**
 		 * This object is used to wait until the whole response was read before
 		 * stopping the thread.
 		 */
-		private Object		lockResponse	= new Object();
+		private Object				lockResponse	= new Object();
 
 		/**
 		 * Reference of the outer class.
 		 */
-		private HTTPClient	client			= null;
+		private HTTPClient			client			= null;
 
 		/**
 		 * Creates a reader and starts it as thread.
@@ -598,16 +445,32 @@ public class HTTPClient extends TimedEntry {
 		 * <p>
 		 * This will put this thread into a blocking read on the input stream.
 		 * </p>
-		 * 
-		 * @param entry This entry contains every interesting information about
-		 *            the request made.
+		 *
+		 * @param request the request made.
+		 * @return <code>false</code> if this reader does not read any further
+		 *         responses.
 		 */
-		public void notifyAboutRequest(HTTPRequest request) {
+		public boolean notifyAboutRequest(HTTPRequest request) {
 			synchronized (waitForRequest) {
-				this.request = request;
+				if (finished) {
+					return false;
+				}
+				inFlight.add(request);
 				waitForRequest.notifyAll();
+				return true;
 			}
+		}
 
+		/**
+		 * Takes back a request whose response is not yet being read.
+		 *
+		 * @param request the request.
+		 * @return <code>true</code> if the request was taken back.
+		 */
+		public boolean cancel(HTTPRequest request) {
+			synchronized (waitForRequest) {
+				return inFlight.remove(request);
+			}
 		}
 
 		public void justNotify() {
@@ -629,159 +492,205 @@ public class HTTPClient extends TimedEntry {
 				 * Should we work? ;-)
 				 */
 				RUNNING: while (running) {
-					ProtocolData pd = null;
+					HTTPRequest request;
 
 					/*
 					 * Wait until the request sender notifies us.
 					 */
 					synchronized (waitForRequest) {
-						while (request == null) {
+						while (inFlight.size() == 0) {
 							waitForRequest.wait(500);
 							/*
 							 * Check for "stop". Maybe we should not continue
 							 * sending. Check for keep alive too...
 							 */
 							if (!running) {
-								if (request != null) {
-									throw new RuntimeException("HTTP response was not handled. HTTP reader not running.");
-								}
-
 								break RUNNING;
 							}
 						}
+						request = (HTTPRequest) inFlight.removeFirst();
+					}
 
+					if (!readResponse(request)) {
+						break;
 					}
 
-					MonitorStreamFactory monFac = DPWSFramework.getMonitorStreamFactory();
+					if (!keepalive) {
+						/*
+						 * The server closes the connection and ignores the
+						 * requests sent after this one, so they are sent
+						 * again over another connection.
+						 */
+						client.retire(takeInFlight());
+						pool.requestDone(client);
+						break;
+					}
 
-					/*
-					 * Try to read the response. This will block on the input
-					 * stream.
-					 */
-					synchronized (lockResponse) {
-						try {
-							Sync streamLock = new Sync();
+					pool.requestDone(client);
+				}
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+			running = false;
+			failInFlight();
+			client.retire(null);
+		}
 
-							TCPClient c = simpleHTTPClient.getTCPClient();
-							TCPConnection connection = c.getConnection();
-							pd = connection.getProtocolData().createSwappedProtocolData();
+		/**
+		 * Reads the response to the given request and passes it to the
+		 * handler. A failure is reported to the request.
+		 *
+		 * @return <code>false</code> if the response could not be read.
+		 */
+		private boolean readResponse(HTTPRequest request) {
+			ProtocolData pd = null;
 
-							MonitoringContext context = null;
+			MonitorStreamFactory monFac = DPWSFramework.getMonitorStreamFactory();
 
-							if (monFac != null) {
-								context = monFac.getNewMonitoringContextIn(pd);
-							}
+			IOException failure;
 
-							HTTPResponseHeader response = simpleHTTPClient.getResponseHeader();
+			/*
+			 * Try to read the response. This will block on the input stream.
+			 */
+			synchronized (lockResponse) {
+				try {
+					Sync streamLock = new Sync();
 
-							InputStream in = simpleHTTPClient.getResponseBody(streamLock);
+					TCPClient c = simpleHTTPClient.getTCPClient();
+					TCPConnection connection = c.getConnection();
+					pd = connection.getProtocolData().createSwappedProtocolData();
 
-							if (Log.isDebug()) {
-								Log.debug("<I> " + response + " from " + pd.getDestinationAddress() + ", " + connection, Log.DEBUG_LAYER_COMMUNICATION);
-							}
+					MonitoringContext context = null;
 
-							String encoding = response.getHeaderFieldValue(HTTPConstants.HTTP_HEADER_TRANSFER_ENCODING);
-							int contentLength = (response.getHeaderFieldValue(HTTPConstants.HTTP_HEADER_CONTENT_LENGTH) != null) ? Integer.parseInt(response.getHeaderFieldValue(HTTPConstants.HTTP_HEADER_CONTENT_LENGTH).trim()) : -1;
-							String contenttype = response.getHeaderFieldValue(HTTPConstants.HTTP_HEADER_CONTENT_TYPE);
-							InternetMediaType mediaType = new InternetMediaType(contenttype);
-
-							String con = response.getHeaderFieldValue(HTTPConstants.HTTP_HEADER_CONNECTION);
-							if (HTTPConstants.HTTP_HEADERVALUE_CONNECTION_CLOSE.equals(con)) {
-								/*
-								 * The server wishes to close the connection
-								 * after the response is done.
-								 */
-								keepalive = false;
-								requester.notifyKeepAliveDisabled();
-							}
+					if (monFac != null) {
+						context = monFac.getNewMonitoringContextIn(pd);
+					}
 
-							/*
-							 * Check for response handler belonging to the
-							 * request.
-							 */
-							HTTPResponseHandler handler = request.getResponseHandler(mediaType);
+					HTTPResponseHeader response = simpleHTTPClient.getResponseHeader();
 
-							/*
-							 * No handler found inside the request? Check the
-							 * internal table.
-							 */
-							if (handler == null) {
-								handler = (HTTPResponseHandler) handlers.get(mediaType);
-							}
+					InputStream in = simpleHTTPClient.getResponseBody(streamLock);
 
-							/*
-							 * If no handler was found, the consumer thread will
-							 * be started and will finish after eating all
-							 * omitted bytes. This should NOT happen. A client
-							 * should not start a request without a handler
-							 * which can handle the incoming response.
-							 */
+					if (Log.isDebug()) {
+						Log.debug("<I> " + response + " from " + pd.getDestinationAddress() + ", " + connection, Log.DEBUG_LAYER_COMMUNICATION);
+					}
 
-							if ((HTTPConstants.HTTP_HEADERVALUE_TRANSFERCODING_CHUNKED.equals(encoding) || contentLength > 0)) {
-								/*
-								 * HTTP response contains content, read it.
-								 */
-								StreamConsumerThread consumer = new StreamConsumerThread(handler, response, in, request, context);
-
-								/*
-								 * Wait until the current response is fully
-								 * read.
-								 */
-								streamLock.reset();
-								synchronized (streamLock) {
-									while (!streamLock.isNotified()) {
-										try {
-											DPWSFramework.getThreadPool().execute(consumer);
-											streamLock.wait();
-										} catch (InterruptedException e) {
-											streamLock.notifyNow();
-										}
-									}
-								}
-								Exception e = streamLock.getException();
-								if (e != null) {
-									if (e instanceof IOException) {
-										throw (IOException) e;
-									} else {
-										Log.error("A problem occured during stream read. " + e.getMessage());
-									}
-								}
-							} else {
-								/*
-								 * This response has no HTTP body, we will pass
-								 * "null" to the handler.
-								 */
-								StreamConsumerThread consumer = new StreamConsumerThread(handler, response, null, request, context);
-								DPWSFramework.getThreadPool().execute(consumer);
+					String encoding = response.getHeaderFieldValue(HTTPConstants.HTTP_HEADER_TRANSFER_ENCODING);
+					int contentLength = (response.getHeaderFieldValue(HTTPConstants.HTTP_HEADER_CONTENT_LENGTH) != null) ? Integer.parseInt(response.getHeaderFieldValue(HTTPConstants.HTTP_HEADER_CONTENT_LENGTH).trim()) : -1;
+					String contenttype = response.getHeaderFieldValue(HTTPConstants.HTTP_HEADER_CONTENT_TYPE);
+					InternetMediaType mediaType = new InternetMediaType(contenttype);
 
-							}
+					String con = response.getHeaderFieldValue(HTTPConstants.HTTP_HEADER_CONNECTION);
+					if (HTTPConstants.HTTP_HEADERVALUE_CONNECTION_CLOSE.equals(con)) {
+						/*
+						 * The server wishes to close the connection after the
+						 * response is done.
+						 */
+						keepalive = false;
+					}
+
+					/*
+					 * Check for response handler belonging to the request.
+					 */
+					HTTPResponseHandler handler = request.getResponseHandler(mediaType);
+
+					/*
+					 * No handler found inside the request? Check the internal
+					 * table.
+					 */
+					if (handler == null) {
+						handler = (HTTPResponseHandler) handlers.get(mediaType);
+					}
+
+					/*
+					 * If no handler was found, the consumer thread will be started
+					 * and will finish after eating all omitted bytes. This should
+					 * NOT happen. A client should not start a request without a
+					 * handler which can handle the incoming response.
+					 */
+
+					if ((HTTPConstants.HTTP_HEADERVALUE_TRANSFERCODING_CHUNKED.equals(encoding) || contentLength > 0)) {
+						/*
+						 * HTTP response contains content, read it.
+						 */
+						StreamConsumerThread consumer = new StreamConsumerThread(handler, response, in, request, context);
 
-						} catch (IOException e) {
-							if (!closed) {
-								/*
-								 * We cannot handle response?
-								 */
-								Log.error("Cannot handle HTTP response. " + e.getMessage());
-								ExceptionNotification eNotification = new ExceptionNotification(pd, request, e, true);
-								eNotification.start();
+						/*
+						 * Wait until the current response is fully read.
+						 */
+						streamLock.reset();
+						synchronized (streamLock) {
+							while (!streamLock.isNotified()) {
+								try {
+									DPWSFramework.getThreadPool().execute(consumer);
+									streamLock.wait();
+								} catch (InterruptedException e) {
+									streamLock.notifyNow();
+								}
 							}
 						}
-
-						request = null;
+						Exception e = streamLock.getException();
+						if (e != null) {
+							if (e instanceof IOException) {
+								throw (IOException) e;
+							} else {
+								Log.error("A problem occured during stream read. " + e.getMessage());
+							}
+						}
+					} else {
+						/*
+						 * This response has no HTTP body, we will pass "null" to
+						 * the handler.
+						 */
+						StreamConsumerThread consumer = new StreamConsumerThread(handler, response, null, request, context);
+						DPWSFramework.getThreadPool().execute(consumer);
 
 					}
+					return true;
+				} catch (IOException e) {
+					failure = e;
+				}
+			}
 
-					if (!keepalive) {
-						break;
-					}
+			if (!closed) {
+				/*
+				 * We cannot handle response?
+				 */
+				Log.error("Cannot handle HTTP response. " + failure.getMessage());
+			}
+			client.retire(null);
+			failed(request, pd, failure, true);
+			return false;
+		}
 
-					client.readerReady();
-				}
-			} catch (InterruptedException e) {
-				e.printStackTrace();
+		/**
+		 * Takes no further requests and returns those whose responses were
+		 * not read.
+		 */
+		private LinkedList takeInFlight() {
+			synchronized (waitForRequest) {
+				finished = true;
+				LinkedList left = new LinkedList();
+				left.addAll(inFlight);
+				inFlight.clear();
+				return left;
+			}
+		}
+
+		/**
+		 * Takes no further requests and fails those whose responses were not
+		 * read.
+		 */
+		private void failInFlight() {
+			Object[] left = takeInFlight().toArray();
+			if (left.length == 0) {
+				return;
+			}
+			TCPConnection connection = getTCPConnection();
+			ProtocolData pd = (connection == null) ? null : connection.getProtocolData().createSwappedProtocolData();
+			IOException e = new IOException("HTTP connection closed before the response was received.");
+			for (int i = 0; i < left.length; i++) {
+				failed((HTTPRequest) left[i], pd, e, true);
 			}
-			running = false;
-			client.readerReady();
 		}
 
 		/**
@@ -821,9 +730,10 @@ public class HTTPClient extends TimedEntry {
 	private class AsyncRequesterWriter implements Runnable {
 
 		/**
-		 * The request which should be send.
+		 * The requests which should be sent, in order. Guarded by
+		 * <code>lockRequest</code>.
 		 */
-		private volatile HTTPRequest	request		= null;
+		private final LinkedList		requests	= new LinkedList();
 
 		/**
 		 * Indicates whether this thread should work or not.
@@ -831,15 +741,14 @@ public class HTTPClient extends TimedEntry {
 		private volatile boolean		running		= true;
 
 		/**
-		 * This object is used to wait until the whole request was sent before
-		 * stopping the thread.
+		 * This object is used to wait until a request is queued.
 		 */
-		private Object		lockRequest	= new Object();
+		private Object					lockRequest	= new Object();
 
 		/**
 		 * The parent asynchronous HTTP client.
 		 */
-		private HTTPClient	client		= null;
+		private HTTPClient				client		= null;
 
 		/**
 		 * Creates a writer and starts it as thread.
@@ -850,19 +759,41 @@ public class HTTPClient extends TimedEntry {
 		}
 
 		/**
-		 * Sets an HTTP request.
-		 * 
+		 * Queues an HTTP request.
+		 *
 		 * @param request the HTTP request.
+		 * @return <code>false</code> if the client was retired and the
+		 *         request was not queued.
 		 */
-		public synchronized void setRequest(HTTPRequest request) {
+		public boolean enqueue(HTTPRequest request) {
 			synchronized (lockRequest) {
-				this.request = request;
+				if (retired) {
+					return false;
+				}
+				requests.add(request);
 				lockRequest.notifyAll();
+				return true;
 			}
 		}
 
-		public void notifyKeepAliveDisabled() {
-			running = false;
+		/**
+		 * Marks the client as retired and takes the requests not yet sent.
+		 *
+		 * @return the requests not yet sent, or <code>null</code> if the
+		 *         client was retired before.
+		 */
+		public LinkedList retire() {
+			synchronized (lockRequest) {
+				if (retired) {
+					return null;
+				}
+				retired = true;
+				LinkedList unsent = new LinkedList();
+				unsent.addAll(requests);
+				requests.clear();
+				lockRequest.notifyAll();
+				return unsent;
+			}
 		}
 
 		/*
@@ -872,165 +803,164 @@ public class HTTPClient extends TimedEntry {
 		public void run() {
 			try {
 				RUNNING: while (running) {
-					/*
-					 * Wait until a element is queued.
-					 */
-					ProtocolData pd = null;
-
-					boolean gotException = false;
+					HTTPRequest request;
 
 					/*
-					 * Try to send the request
+					 * Wait until a element is queued.
 					 */
 					synchronized (lockRequest) {
-
-						while (request == null) {
-							lockRequest.wait(500);
+						while (requests.size() == 0) {
 							/*
 							 * Check for "stop". Maybe we should not continue
-							 * sending. Check for keep alive too...
+							 * sending.
 							 */
-							if (!running) {
-								/*
-								 * Unregister watch dog if leaving here.
-								 */
-								if (request != null) {
-									throw new RuntimeException("HTTP request was not send. HTTP writer was not running.");
-								}
-
+							if (!running || retired) {
 								break RUNNING;
 							}
+							lockRequest.wait(500);
 						}
+						if (retired) {
+							break RUNNING;
+						}
+						request = (HTTPRequest) requests.removeFirst();
+					}
 
-						MonitorStreamFactory monFac = DPWSFramework.getMonitorStreamFactory();
+					/*
+					 * Try to send the request
+					 */
+					writeRequest(request);
+				}
 
-						try {
+			} catch (InterruptedException e) {
+				// TODO Auto-generated catch block
+				e.printStackTrace();
+			}
+			running = false;
+		}
 
-							HTTPRequestHeader header = request.getRequestHeader();
-							/*
-							 * Open the connection if necessary. Notify the
-							 * reader about the request. Send the request.
-							 */
-							simpleHTTPClient.explicitConnect();
+		/**
+		 * Sends the given request. A failure is reported to the request, and
+		 * the connection is closed.
+		 */
+		private void writeRequest(HTTPRequest request) {
+			ProtocolData pd = null;
 
-							responder.notifyAboutRequest(request);
+			boolean notified = false;
 
-							TCPClient c = simpleHTTPClient.getTCPClient();
-							TCPConnection con = c.getConnection();
-							pd = con.getProtocolData();
+			MonitorStreamFactory monFac = DPWSFramework.getMonitorStreamFactory();
 
-							if (Log.isDebug()) {
-								Log.debug("<O> " + header + " to " + pd.getDestinationAddress() + ", " + con, Log.DEBUG_LAYER_COMMUNICATION);
-							}
+			try {
 
-							MonitoringContext context = null;
+				HTTPRequestHeader header = request.getRequestHeader();
+				/*
+				 * Open the connection if necessary. Notify the reader about the
+				 * request. Send the request.
+				 */
+				simpleHTTPClient.explicitConnect();
 
-							if (monFac != null) {
-								context = monFac.getNewMonitoringContextOut(pd);
-							}
+				notified = responder.notifyAboutRequest(request);
+				if (!notified) {
+					/*
+					 * The reader has stopped and the client is being retired,
+					 * the request goes to another connection.
+					 */
+					send(request);
+					return;
+				}
 
-							String enc = header.getHeaderFieldValue(HTTPConstants.HTTP_HEADER_TRANSFER_ENCODING);
+				TCPClient c = simpleHTTPClient.getTCPClient();
+				TCPConnection con = c.getConnection();
+				pd = con.getProtocolData();
 
-							int contentLength = (header.getHeaderFieldValue(HTTPConstants.HTTP_HEADER_CONTENT_LENGTH) != null) ? Integer.parseInt(header.getHeaderFieldValue(HTTPConstants.HTTP_HEADER_CONTENT_LENGTH).trim()) : -1;
+				if (Log.isDebug()) {
+					Log.debug("<O> " + header + " to " + pd.getDestinationAddress() + ", " + con, Log.DEBUG_LAYER_COMMUNICATION);
+				}
 
-							OutputStream requestBody = null;
+				MonitoringContext context = null;
 
-							/*
-							 * No HTTP Content-Length set and it is not
-							 * chunked?! We MUST calculate the content length to
-							 * send a correct HTTP message. WILL NOT WORK FOR
-							 * STREAMS!
-							 */
-							if (!HTTPConstants.HTTP_HEADERVALUE_TRANSFERCODING_CHUNKED.equals(enc) && contentLength == -1) {
-								header.removeHeaderFieldValue(HTTPConstants.HTTP_HEADER_TRANSFER_ENCODING);
-								enc = null;
-								requestBody = simpleHTTPClient.exchange(header, false);
-								ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-								request.serializeRequestBody(buffer, pd, context); // TODO
-								int size = buffer.size();
-								((HTTPOutputStream) requestBody).setLength(size);
-								header.addHeaderFieldValue(HTTPConstants.HTTP_HEADER_CONTENT_LENGTH, Integer.toString(size));
-
-								simpleHTTPClient.sendHeader();
-
-								byte[] b = buffer.toByteArray();
-								requestBody.write(b);
-								requestBody.flush();
-							} else {
-								requestBody = simpleHTTPClient.exchange(header, true);
-								request.serializeRequestBody(requestBody, pd, context); // TODO
-							}
+				if (monFac != null) {
+					context = monFac.getNewMonitoringContextOut(pd);
+				}
 
-							/*
-							 * Was chunked? Write last chunk.
-							 */
-							if (HTTPConstants.HTTP_HEADERVALUE_TRANSFERCODING_CHUNKED.equals(enc)) {
-								ChunkedOutputStream.writeLastChunk((ChunkedOutputStream) requestBody);
-								requestBody.flush();
-							}
+				String enc = header.getHeaderFieldValue(HTTPConstants.HTTP_HEADER_TRANSFER_ENCODING);
 
-							if (monFac != null) {
-								Message m = context.getMessage();
-								if (m != null) {
-									monFac.send(pd, context, m);
-								}
-								
-								monFac.resetMonitoringContextOut(pd);
-							}
-						} catch (IOException e) {
-							gotException = true;
-							if (!closed) {
-								Log.error("Cannot send HTTP request. " + e.getMessage() + ". Resetting TCP connection (" + ((pd == null) ? "no address known" : pd.toString()) + ").");
-								simpleHTTPClient.resetConnection();
-								ExceptionNotification eNotification = new ExceptionNotification(pd, request, e, false);
-								eNotification.start();
-							}
-						}
+				int contentLength = (header.getHeaderFieldValue(HTTPConstants.HTTP_HEADER_CONTENT_LENGTH) != null) ? Integer.parseInt(header.getHeaderFieldValue(HTTPConstants.HTTP_HEADER_CONTENT_LENGTH).trim()) : -1;
 
-						request = null;
-					}
+				OutputStream requestBody = null;
 
-					if (!keepalive) {
-						break;
-					}
+				/*
+				 * No HTTP Content-Length set and it is not chunked?! We MUST
+				 * calculate the content length to send a correct HTTP message.
+				 * WILL NOT WORK FOR STREAMS!
+				 */
+				if (!HTTPConstants.HTTP_HEADERVALUE_TRANSFERCODING_CHUNKED.equals(enc) && contentLength == -1) {
+					header.removeHeaderFieldValue(HTTPConstants.HTTP_HEADER_TRANSFER_ENCODING);
+					enc = null;
+					requestBody = simpleHTTPClient.exchange(header, false);
+					ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+					request.serializeRequestBody(buffer, pd, context); // TODO
+					int size = buffer.size();
+					((HTTPOutputStream) requestBody).setLength(size);
+					header.addHeaderFieldValue(HTTPConstants.HTTP_HEADER_CONTENT_LENGTH, Integer.toString(size));
+
+					simpleHTTPClient.sendHeader();
+
+					byte[] b = buffer.toByteArray();
+					requestBody.write(b);
+					requestBody.flush();
+				} else {
+					requestBody = simpleHTTPClient.exchange(header, true);
+					request.serializeRequestBody(requestBody, pd, context); // TODO
+				}
 
-					client.writerReady();
-					if (gotException) {
-						/*
-						 * the reader may not receive any response for the
-						 * current request; in consequence, it will not call
-						 * readerReady() itself and this HTTPClient will not be
-						 * cleaned-up by watch dog. that's why we do this from
-						 * here
-						 */
-						readerReady();
-					}
+				/*
+				 * Was chunked? Write last chunk.
+				 */
+				if (HTTPConstants.HTTP_HEADERVALUE_TRANSFERCODING_CHUNKED.equals(enc)) {
+					ChunkedOutputStream.writeLastChunk((ChunkedOutputStream) requestBody);
+					requestBody.flush();
 				}
 
-			} catch (InterruptedException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+				if (monFac != null) {
+					Message m = context.getMessage();
+					if (m != null) {
+						monFac.send(pd, context, m);
+					}
+
+					monFac.resetMonitoringContextOut(pd);
+				}
+			} catch (IOException e) {
+				if (!closed) {
+					Log.error("Cannot send HTTP request. " + e.getMessage() + ". Closing TCP connection (" + ((pd == null) ? "no address known" : pd.toString()) + ").");
+				}
+				client.retire(null);
+				/*
+				 * If the reader already waits for the response, closing the
+				 * connection makes it fail the request.
+				 */
+				if (!notified || responder.cancel(request)) {
+					failed(request, pd, e, false);
+				}
+				try {
+					simpleHTTPClient.close();
+				} catch (IOException e1) {
+					Log.error("Cannot close client connection. " + e1.getMessage());
+				}
 			}
-			running = false;
-			client.writerReady();
 		}
 
 		/**
 		 * Stops the request writer as soon as possible.
 		 * <p>
-		 * This method allows the writer to complete queued requests. If it is
-		 * necessary to kill the writer immediately the {@link #kill()} method
-		 * should be used.
+		 * This method allows the writer to complete the request it is sending.
+		 * Requests not yet sent are dropped.
 		 * </p>
 		 */
 		public void stop() {
 			if (running == false) return;
 			running = false;
 			synchronized (lockRequest) {
-				/*
-				 * wait until request is done
-				 */
-				request = null;
+				requests.clear();
 				lockRequest.notifyAll();
 			}
 
@@ -29,6 +29,9 @@ public class HTTPClientDestination {
 
 	private String					alias	= null;
 
+	/**
+	 * Maximum number of connections by host, if not the default.
+	 */
 	private static final HashMap	maxCon	= new HashMap();
 
 	private int						hashCode;
@@ -65,16 +68,32 @@ public class HTTPClientDestination {
 		hashCode = prime * hashCode + ((host == null) ? 0 : host.hashCode());
 		hashCode = prime * hashCode + port;
 		hashCode = prime * hashCode + (secure ? 1231 : 1237);
-
-		setMaxConnections(HTTPClient.MAX_CLIENT_CONNECTIONS);
 	}
 
+	/**
+	 * Sets the maximum number of connections to the host of this destination.
+	 *
+	 * @param maxConnections the maximum number of connections.
+	 */
 	public void setMaxConnections(int maxConnections) {
-		maxCon.put(host, new Integer(maxConnections));
+		synchronized (maxCon) {
+			maxCon.put(host, new Integer(maxConnections));
+		}
 	}
 
+	/**
+	 * Returns the maximum number of connections to the host of this
+	 * destination, {@link HTTPClient#MAX_CLIENT_CONNECTIONS} unless set
+	 * otherwise.
+	 *
+	 * @return the maximum number of connections.
+	 */
 	public int getMaxConnections() {
-		return ((Integer) maxCon.get(host)).intValue();
+		Integer max;
+		synchronized (maxCon) {
+			max = (Integer) maxCon.get(host);
+		}
+		return (max == null) ? HTTPClient.MAX_CLIENT_CONNECTIONS : max.intValue();
 	}
 
 	/*
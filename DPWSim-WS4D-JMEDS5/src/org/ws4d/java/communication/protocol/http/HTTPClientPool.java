@@ -0,0 +1,467 @@
+/*******************************************************************************
+ * Copyright (c) 2009 MATERNA Information & Communications. All rights reserved.
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html. For further
+ * project-related information visit http://www.ws4d.org. The most recent
+ * version of the JMEDS framework can be obtained from
+ * http://sourceforge.net/projects/ws4d-javame.
+ ******************************************************************************/
+package org.ws4d.java.communication.protocol.http;
+
+import java.io.IOException;
+
+import org.ws4d.java.configuration.DPWSProperties;
+import org.ws4d.java.configuration.HTTPProperties;
+import org.ws4d.java.structures.Iterator;
+import org.ws4d.java.structures.LinkedList;
+import org.ws4d.java.structures.LockedMap;
+import org.ws4d.java.util.TimedEntry;
+import org.ws4d.java.util.WatchDog;
+
+/**
+ * The connections of the {@link HTTPClient} to one destination.
+ * <p>
+ * A request is given to an idle connection if there is one. Otherwise a new
+ * connection is opened, unless the destination already has its
+ * {@link HTTPClientDestination#getMaxConnections() maximum number} of
+ * connections. Then the request is pipelined on the least busy connection if
+ * {@link HTTPProperties#getPipelineDepth() pipelining} is enabled, or waits
+ * until a connection has finished a request. A request fails if it waits
+ * longer than the {@link DPWSProperties#getHTTPClientRequestTimeout() request
+ * timeout}, or if the pool is closed.
+ * </p>
+ * <p>
+ * Each pool has its own monitor, which is only held to pick a connection, so
+ * requests to different destinations never wait for each other. Idle
+ * connections are closed by the {@link WatchDog}, and a pool without
+ * connections is dropped after the same timeout.
+ * </p>
+ */
+public class HTTPClientPool extends TimedEntry {
+
+	/** pools by destination */
+	private static final LockedMap		pools		= new LockedMap();
+
+	private final HTTPClientDestination	destination;
+
+	/** all connections which take requests */
+	private final LinkedList			clients		= new LinkedList();
+
+	/** connections without outstanding requests, the latest first */
+	private final LinkedList			idle		= new LinkedList();
+
+	/** requests waiting for a connection, as {@link Waiting} entries */
+	private final LinkedList			waiting		= new LinkedList();
+
+	/** <code>true</code> if the pool was dropped and takes no requests */
+	private boolean						dropped		= false;
+
+	private final int					pipelineDepth;
+
+	private long						hits		= 0;
+
+	private long						misses		= 0;
+
+	private long						pipelined	= 0;
+
+	private long						waits		= 0;
+
+	private long						evicted		= 0;
+
+	private HTTPClientPool(HTTPClientDestination destination) {
+		this.destination = destination;
+		this.pipelineDepth = Math.max(HTTPProperties.getInstance().getPipelineDepth(), 1);
+	}
+
+	/**
+	 * Returns the pool for the given destination.
+	 *
+	 * @param destination the destination.
+	 * @return the pool, or <code>null</code> if no request was sent to the
+	 *         destination yet.
+	 */
+	public static HTTPClientPool getPool(HTTPClientDestination destination) {
+		return (HTTPClientPool) pools.get(destination);
+	}
+
+	/**
+	 * Returns the pool for the given destination and creates it if necessary.
+	 */
+	static HTTPClientPool forDestination(HTTPClientDestination destination) {
+		HTTPClientPool pool = (HTTPClientPool) pools.get(destination);
+		if (pool != null) {
+			return pool;
+		}
+		pools.exclusiveLock();
+		try {
+			pool = (HTTPClientPool) pools.get(destination);
+			if (pool == null) {
+				pool = new HTTPClientPool(destination);
+				pools.put(destination, pool);
+			}
+			return pool;
+		} finally {
+			pools.releaseExclusiveLock();
+		}
+	}
+
+	/**
+	 * Closes the connections of all pools and fails the waiting requests.
+	 *
+	 * @param kill <code>true</code> if the connections should be killed,
+	 *            <code>false</code> if they should be closed.
+	 */
+	static void closeAll(boolean kill) {
+		Object[] all;
+		pools.exclusiveLock();
+		try {
+			all = pools.values().toArray();
+			pools.clear();
+		} finally {
+			pools.releaseExclusiveLock();
+		}
+		for (int i = 0; i < all.length; i++) {
+			((HTTPClientPool) all[i]).close(kill);
+		}
+	}
+
+	/**
+	 * Sends the given request over a connection of this pool.
+	 *
+	 * @param request the request.
+	 */
+	void exchange(HTTPRequest request) {
+		HTTPClient client;
+		synchronized (this) {
+			if (dropped) {
+				client = null;
+			} else if (idle.size() > 0) {
+				client = (HTTPClient) idle.removeFirst();
+				WatchDog.getInstance().unregister(client);
+				hits++;
+			} else if (clients.size() < destination.getMaxConnections()) {
+				client = newClient();
+				misses++;
+			} else if ((client = leastBusy()) != null) {
+				hits++;
+				pipelined++;
+			} else {
+				waiting.add(new Waiting(request));
+				waits++;
+				return;
+			}
+			if (client != null) {
+				client.outstanding++;
+			}
+		}
+		if (client == null) {
+			// dropped meanwhile
+			forDestination(destination).exchange(request);
+			return;
+		}
+		client.send(request);
+	}
+
+	/**
+	 * Called when the given connection has finished a request, i.e. when the
+	 * response was read or the request failed.
+	 */
+	void requestDone(HTTPClient client) {
+		HTTPClient next = null;
+		HTTPRequest request = null;
+		boolean close = false;
+		synchronized (this) {
+			client.outstanding--;
+			if (client.isReusable()) {
+				if (waiting.size() > 0) {
+					next = client;
+					request = nextWaiting();
+					next.outstanding++;
+					hits++;
+				} else if (client.outstanding == 0) {
+					idle.addFirst(client);
+					WatchDog.getInstance().register(client, HTTPClient.REQUEST_TIMEOUT);
+				}
+			} else {
+				remove(client);
+				close = (client.outstanding == 0);
+				if (waiting.size() > 0 && clients.size() < destination.getMaxConnections()) {
+					next = newClient();
+					request = nextWaiting();
+					next.outstanding++;
+					misses++;
+				}
+			}
+		}
+		if (close) {
+			client.close();
+		}
+		if (next != null) {
+			next.send(request);
+		}
+	}
+
+	/**
+	 * Called when the given connection can not take further requests. The
+	 * requests which it has not yet sent are given to other connections.
+	 *
+	 * @param client the connection.
+	 * @param unsent the requests not yet sent, in order.
+	 */
+	void retire(HTTPClient client, LinkedList unsent) {
+		LinkedList dispatch = new LinkedList();
+		boolean close;
+		synchronized (this) {
+			remove(client);
+			client.outstanding -= unsent.size();
+			close = (client.outstanding == 0);
+			// requests given to the connection before those waiting
+			while (unsent.size() > 0) {
+				waiting.addFirst(new Waiting((HTTPRequest) unsent.removeLast()));
+			}
+			while (waiting.size() > 0 && clients.size() < destination.getMaxConnections()) {
+				HTTPClient next = newClient();
+				next.outstanding++;
+				misses++;
+				dispatch.add(next);
+				dispatch.add(nextWaiting());
+			}
+		}
+		if (close) {
+			client.close();
+		}
+		for (Iterator it = dispatch.iterator(); it.hasNext();) {
+			HTTPClient next = (HTTPClient) it.next();
+			next.send((HTTPRequest) it.next());
+		}
+	}
+
+	/**
+	 * Takes the given connection out of this pool if it is idle.
+	 *
+	 * @return <code>true</code> if the connection was idle and can be closed.
+	 */
+	synchronized boolean evict(HTTPClient client) {
+		if (!idle.remove(client)) {
+			return false;
+		}
+		clients.remove(client);
+		evicted++;
+		dropIfUnused();
+		return true;
+	}
+
+	/**
+	 * Takes the given connection out of this pool.
+	 */
+	synchronized void remove(HTTPClient client) {
+		WatchDog.getInstance().unregister(client);
+		if (clients.remove(client)) {
+			idle.remove(client);
+			dropIfUnused();
+		}
+	}
+
+	/**
+	 * @return the destination of the connections.
+	 */
+	public HTTPClientDestination getDestination() {
+		return destination;
+	}
+
+	/**
+	 * @return the number of open connections.
+	 */
+	public synchronized int getConnectionCount() {
+		return clients.size();
+	}
+
+	/**
+	 * @return the number of connections without outstanding requests.
+	 */
+	public synchronized int getIdleCount() {
+		return idle.size();
+	}
+
+	/**
+	 * @return the number of requests waiting for a connection.
+	 */
+	public synchronized int getWaitingCount() {
+		return waiting.size();
+	}
+
+	/**
+	 * @return the number of requests sent over a connection which was already
+	 *         open.
+	 */
+	public synchronized long getHitCount() {
+		return hits;
+	}
+
+	/**
+	 * @return the number of requests for which a new connection was opened.
+	 */
+	public synchronized long getMissCount() {
+		return misses;
+	}
+
+	/**
+	 * @return the number of requests pipelined on a busy connection.
+	 */
+	public synchronized long getPipelinedCount() {
+		return pipelined;
+	}
+
+	/**
+	 * @return the number of requests which had to wait for a connection.
+	 */
+	public synchronized long getWaitCount() {
+		return waits;
+	}
+
+	/**
+	 * @return the number of idle connections closed after the timeout.
+	 */
+	public synchronized long getEvictedCount() {
+		return evicted;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public synchronized String toString() {
+		return "HTTPClientPool [ destination=" + destination.getHost() + ":" + destination.getPort() + ", connections=" + clients.size() + ", idle=" + idle.size() + ", waiting=" + waiting.size() + ", hits=" + hits + ", misses=" + misses + ", pipelined=" + pipelined + ", waits=" + waits + ", evicted=" + evicted + " ]";
+	}
+
+	/**
+	 * Returns the connection with the fewest outstanding requests which may
+	 * take one more, or <code>null</code>.
+	 */
+	private HTTPClient leastBusy() {
+		if (pipelineDepth < 2) {
+			return null;
+		}
+		HTTPClient least = null;
+		for (Iterator it = clients.iterator(); it.hasNext();) {
+			HTTPClient client = (HTTPClient) it.next();
+			if (client.outstanding < pipelineDepth && client.isReusable() && (least == null || client.outstanding < least.outstanding)) {
+				least = client;
+			}
+		}
+		return least;
+	}
+
+	private HTTPClient newClient() {
+		HTTPClient client = new HTTPClient(destination, this);
+		if (clients.size() == 0) {
+			WatchDog.getInstance().unregister(this);
+		}
+		clients.add(client);
+		return client;
+	}
+
+	/**
+	 * Takes the first waiting request. The monitor MUST be held by the caller.
+	 */
+	private HTTPRequest nextWaiting() {
+		Waiting w = (Waiting) waiting.removeFirst();
+		WatchDog.getInstance().unregister(w);
+		return w.request;
+	}
+
+	/**
+	 * Lets the {@link WatchDog} drop this pool if it has no connections. The
+	 * monitor MUST be held by the caller.
+	 */
+	private void dropIfUnused() {
+		if (clients.size() == 0 && waiting.size() == 0) {
+			WatchDog.getInstance().register(this, HTTPClient.REQUEST_TIMEOUT);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.ws4d.java.util.TimedEntry#timedOut()
+	 */
+	protected void timedOut() {
+		pools.exclusiveLock();
+		try {
+			synchronized (this) {
+				if (clients.size() > 0 || waiting.size() > 0) {
+					return;
+				}
+				dropped = true;
+			}
+			if (pools.get(destination) == this) {
+				pools.remove(destination);
+			}
+		} finally {
+			pools.releaseExclusiveLock();
+		}
+	}
+
+	private void close(boolean kill) {
+		Object[] all;
+		Object[] failed;
+		synchronized (this) {
+			dropped = true;
+			WatchDog.getInstance().unregister(this);
+			all = clients.toArray();
+			for (int i = 0; i < all.length; i++) {
+				WatchDog.getInstance().unregister((HTTPClient) all[i]);
+			}
+			failed = waiting.toArray();
+			for (int i = 0; i < failed.length; i++) {
+				WatchDog.getInstance().unregister((Waiting) failed[i]);
+			}
+			clients.clear();
+			idle.clear();
+			waiting.clear();
+		}
+		for (int i = 0; i < all.length; i++) {
+			if (kill) {
+				((HTTPClient) all[i]).kill();
+			} else {
+				((HTTPClient) all[i]).close();
+			}
+		}
+		for (int i = 0; i < failed.length; i++) {
+			((Waiting) failed[i]).fail(new IOException("HTTP client closed before a connection to " + destination.getHost() + ":" + destination.getPort() + " was free."));
+		}
+	}
+
+	/**
+	 * A request waiting for a connection. Fails when the request timeout is
+	 * reached.
+	 */
+	private class Waiting extends TimedEntry {
+
+		final HTTPRequest	request;
+
+		Waiting(HTTPRequest request) {
+			this.request = request;
+			WatchDog.getInstance().register(this, DPWSProperties.getInstance().getHTTPClientRequestTimeout());
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.ws4d.java.util.TimedEntry#timedOut()
+		 */
+		protected void timedOut() {
+			synchronized (HTTPClientPool.this) {
+				if (!waiting.remove(this)) {
+					return;
+				}
+			}
+			fail(new IOException("No HTTP connection to " + destination.getHost() + ":" + destination.getPort() + " was free within " + DPWSProperties.getInstance().getHTTPClientRequestTimeout() + " ms."));
+		}
+
+		void fail(IOException e) {
+			request.requestSendFailed(e, null);
+		}
+
+	}
+
+}
@@ -0,0 +1,238 @@
+/*******************************************************************************
+ * Copyright (c) 2009 MATERNA Information & Communications. All rights reserved.
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html. For further
+ * project-related information visit http://www.ws4d.org. The most recent
+ * version of the JMEDS framework can be obtained from
+ * http://sourceforge.net/projects/ws4d-javame.
+ ******************************************************************************/
+package org.ws4d.java.communication.protocol.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.ws4d.java.constants.Specialchars;
+
+/**
+ * Read buffer for the HTTP connection stream.
+ * <p>
+ * The bytes of the connection are read in blocks into a window. HTTP
+ * protocol lines are {@link #readLine() taken} from the window as a whole
+ * instead of byte by byte, and bodies are copied out of it with
+ * {@link #read(byte[], int, int)}. The methods of {@link HTTPUtil},
+ * {@link HTTPRequestUtil#handleRequest(InputStream)} and
+ * {@link HTTPResponseUtil#handleResponse(InputStream)} use the lines when
+ * given a buffer, and fall back to reading single bytes for any other stream.
+ * </p>
+ * <p>
+ * A buffer MUST be created once per connection and used for all requests or
+ * responses on it, since it reads ahead. It is not synchronized, a
+ * connection is read by one thread at a time.
+ * </p>
+ */
+public class HTTPInputBuffer extends InputStream {
+
+	/** default size of the window in bytes */
+	public static final int		DEFAULT_SIZE	= 4096;
+
+	/** maximal length of a protocol line in bytes */
+	public static final int		MAX_LINE_SIZE	= 65536;
+
+	private final InputStream	in;
+
+	private final byte[]		buffer;
+
+	/** next byte to return */
+	private int					pos				= 0;
+
+	/** end of the valid bytes */
+	private int					limit			= 0;
+
+	public HTTPInputBuffer(InputStream in) {
+		this(in, DEFAULT_SIZE);
+	}
+
+	public HTTPInputBuffer(InputStream in, int size) {
+		this.in = in;
+		this.buffer = new byte[size];
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.InputStream#read()
+	 */
+	public int read() throws IOException {
+		if (pos == limit && !fill()) {
+			return -1;
+		}
+		return buffer[pos++] & 0xFF;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.InputStream#read(byte[], int, int)
+	 */
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (pos == limit) {
+			if (len >= buffer.length) {
+				/*
+				 * Nothing buffered, large reads need no copy.
+				 */
+				return readAvailable(b, off, len);
+			}
+			if (!fill()) {
+				return -1;
+			}
+		}
+		int n = limit - pos;
+		if (n > len) {
+			n = len;
+		}
+		System.arraycopy(buffer, pos, b, off, n);
+		pos += n;
+		return n;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.InputStream#skip(long)
+	 */
+	public long skip(long n) throws IOException {
+		if (n <= 0) {
+			return 0;
+		}
+		if (pos == limit) {
+			return in.skip(n);
+		}
+		int k = limit - pos;
+		if (k > n) {
+			k = (int) n;
+		}
+		pos += k;
+		return k;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.InputStream#available()
+	 */
+	public int available() throws IOException {
+		return (limit - pos) + in.available();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.InputStream#close()
+	 */
+	public void close() throws IOException {
+		pos = limit = 0;
+		in.close();
+	}
+
+	/**
+	 * Reads a single protocol line. HTTP defines the sequence CR LF as the
+	 * end-of-line marker (see RFC2616 2.2), a single LF is accepted too. The
+	 * bytes are taken as ISO-8859-1 characters.
+	 *
+	 * @return the line without the end-of-line marker, or <code>null</code> if
+	 *         the stream ended before the first byte of the line.
+	 * @throws IOException if the stream ended within the line or the line is
+	 *             longer than {@link #MAX_LINE_SIZE}.
+	 */
+	public String readLine() throws IOException {
+		char[] line = null;
+		int length = 0;
+		while (true) {
+			if (pos == limit && !fill()) {
+				if (line == null) {
+					return null;
+				}
+				throw new IOException(HTTPRequestUtil.FAULT_UNEXPECTED_END + " (" + new String(line, 0, length) + ")");
+			}
+			int end = pos;
+			while (end < limit && buffer[end] != Specialchars.LF) {
+				end++;
+			}
+			boolean found = end < limit;
+			int n = end - pos;
+			if (line == null) {
+				if (found) {
+					/*
+					 * Common case, the whole line is in the window.
+					 */
+					if (n > 0 && buffer[end - 1] == Specialchars.CR) {
+						n--;
+					}
+					String s = toString(buffer, pos, n);
+					pos = end + 1;
+					return s;
+				}
+				line = new char[Math.max(n, 128)];
+			}
+			if (length + n > MAX_LINE_SIZE) {
+				throw new IOException("HTTP protocol line too long.");
+			}
+			if (length + n > line.length) {
+				char[] tmp = new char[Math.max(line.length * 2, length + n)];
+				System.arraycopy(line, 0, tmp, 0, length);
+				line = tmp;
+			}
+			for (int i = pos; i < end; i++) {
+				line[length++] = (char) (buffer[i] & 0xFF);
+			}
+			pos = found ? end + 1 : end;
+			if (found) {
+				if (length > 0 && line[length - 1] == Specialchars.CR) {
+					length--;
+				}
+				return new String(line, 0, length);
+			}
+		}
+	}
+
+	private boolean fill() throws IOException {
+		int n = readAvailable(buffer, 0, buffer.length);
+		if (n <= 0) {
+			return false;
+		}
+		pos = 0;
+		limit = n;
+		return true;
+	}
+
+	/**
+	 * Reads what is available, but at least one byte. Some streams of the
+	 * framework block until the whole length is read, which would stall a
+	 * short request on a persistent connection.
+	 */
+	private int readAvailable(byte[] b, int off, int len) throws IOException {
+		int available = in.available();
+		if (available > 0) {
+			return in.read(b, off, (available < len) ? available : len);
+		}
+		int v = in.read();
+		if (v == -1) {
+			return -1;
+		}
+		b[off] = (byte) v;
+		available = in.available();
+		if (available <= 0 || len == 1) {
+			return 1;
+		}
+		int n = in.read(b, off + 1, (available < len - 1) ? available : len - 1);
+		return (n < 0) ? 1 : n + 1;
+	}
+
+	private static String toString(byte[] b, int off, int len) {
+		char[] c = new char[len];
+		for (int i = 0; i < len; i++) {
+			c[i] = (char) (b[off + i] & 0xFF);
+		}
+		return new String(c);
+	}
+
+}
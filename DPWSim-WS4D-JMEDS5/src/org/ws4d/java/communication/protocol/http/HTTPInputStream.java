@@ -14,27 +14,28 @@ import java.io.InputStream;
 
 import org.ws4d.java.communication.ProtocolException;
 import org.ws4d.java.constants.HTTPConstants;
-import org.ws4d.java.io.buffered.BufferedInputStream;
 import org.ws4d.java.util.Sync;
 
 /**
  * HTTP input stream wrapper. This class wraps the input stream and controls the
  * length of data read.
+ * <p>
+ * Bodies with a content length and chunked bodies can be read in blocks with
+ * {@link #read(byte[], int, int)}, each call reads at most up to the end of
+ * the body or the current chunk from the wrapped stream.
+ * </p>
  */
 public class HTTPInputStream extends InputStream {
 
 	private InputStream			in				= null;
 
-	private int					size			= 0;
-
-	private int					read			= 0;
+	/** bytes left of the body or of the current chunk */
+	private int					remaining		= 0;
 
 	private String				encoding		= null;
 
 	private boolean				end				= false;
 
-	private InputStream			wrapped			= null;
-
 	protected HTTPChunkHeader	chunkedheader	= null;
 
 	protected boolean			chunked			= false;
@@ -57,10 +58,8 @@ public class HTTPInputStream extends InputStream {
 		if (HTTPConstants.HTTP_HEADERVALUE_TRANSFERCODING_CHUNKED.equals(encoding)) {
 			chunked = true;
 		}
-		if (size < 0) {
-			this.size = 0;
-		} else {
-			this.size = size;
+		if (!chunked && size > 0) {
+			remaining = size;
 		}
 		this.notify = notify;
 	}
@@ -79,9 +78,6 @@ public class HTTPInputStream extends InputStream {
 					notify.notifyNow();
 				}
 			}
-			if (wrapped != null) {
-				wrapped.close();
-			}
 			in.close();
 		} catch (IOException e) {
 			if (notify != null) {
@@ -102,20 +98,14 @@ public class HTTPInputStream extends InputStream {
 			if (in == null) {
 				throw new IOException("InputStream not available");
 			}
-			if (end) {
-				if (notify != null) {
-					synchronized (notify) {
-						notify.notifyNow();
-					}
-				}
-				return -1;
-			}
-
 			int k = -1;
-			if (!chunked) {
-				k = readNonChunked();
-			} else {
-				k = readChunked();
+			if (prepare()) {
+				k = in.read();
+				if (k == -1) {
+					end = true;
+				} else {
+					remaining--;
+				}
 			}
 			if (notify != null && k == -1) {
 				synchronized (notify) {
@@ -133,58 +123,81 @@ public class HTTPInputStream extends InputStream {
 		}
 	}
 
-	private int readNonChunked() throws IOException {
-		/*
-		 * HTTP body not chunked
-		 */
-		if (size > 0) {
-			if (wrapped == null) {
-				wrapped = wrap(size);
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.InputStream#read(byte[], int, int)
+	 */
+	public synchronized int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		try {
+			if (in == null) {
+				throw new IOException("InputStream not available");
+			}
+			int n = -1;
+			if (prepare()) {
+				n = in.read(b, off, (len < remaining) ? len : remaining);
+				if (n == -1) {
+					end = true;
+				} else {
+					remaining -= n;
+				}
+			}
+			if (notify != null && n == -1) {
+				synchronized (notify) {
+					notify.notifyNow();
+				}
 			}
-			read++;
-			return wrapped.read();
+			return n;
+		} catch (IOException e) {
+			if (notify != null) {
+				synchronized (notify) {
+					notify.notifyNow(e);
+				}
+			}
+			throw e;
 		}
-		/*
-		 * The size MUST NOT be < 0.
-		 */
-		return -1;
 	}
 
-	private int readChunked() throws IOException {
-		/*
-		 * HTTP body chunked
-		 */
-		if (chunkedheader == null) {
-			readChunkHeader();
-		}
-
-		int chunksize = chunkedheader.getSize();
-
-		if (chunksize == 0) {
-			end = true;
-			return -1;
+	/**
+	 * Moves on to the next chunk if the current one is read completely.
+	 * 
+	 * @return <code>false</code> if the body has ended.
+	 */
+	private boolean prepare() throws IOException {
+		if (end) {
+			return false;
 		}
-
-		if (wrapped == null) {
-			wrapped = wrap(chunksize);
+		if (!chunked) {
+			/*
+			 * HTTP body not chunked, the size MUST NOT be < 0.
+			 */
+			if (remaining == 0) {
+				end = true;
+				return false;
+			}
+			return true;
 		}
-		int k = wrapped.read();
-
 		/*
-		 * Chunk done ...
+		 * HTTP body chunked
 		 */
-		if (k == -1) {
-			chunkedheader = null;
-			wrapped = null;
-			read = 0;
-			/*
-			 * next chunk ...
-			 */
-			HTTPUtil.readRequestLine(in);
-			return readChunked();
+		while (remaining == 0) {
+			if (chunkedheader != null) {
+				/*
+				 * Chunk done, next chunk ...
+				 */
+				chunkedheader = null;
+				HTTPUtil.readRequestLine(in);
+			}
+			readChunkHeader();
+			remaining = chunkedheader.getSize();
+			if (remaining == 0) {
+				end = true;
+				return false;
+			}
 		}
-		read++;
-		return k;
+		return true;
 	}
 
 	private void readChunkHeader() throws IOException {
@@ -196,15 +209,6 @@ public class HTTPInputStream extends InputStream {
 		}
 	}
 
-	private InputStream wrap(int size) {
-		// if (CommunicationConstants.BUFFERED_INPUT) {
-		// return new BufferedInputStream(in, size);
-		// } else {
-		// return new WrappedInputStream(in, size);
-		// }
-		return new WrappedInputStream(in, size);
-	}
-
 	/*
 	 * (non-Javadoc)
 	 * @see java.io.InputStream#available()
@@ -212,14 +216,15 @@ public class HTTPInputStream extends InputStream {
 	public int available() throws IOException {
 		try {
 			if (end) return 0;
-			if (!chunked) {
-				return size - read;
-			}
-			if (chunkedheader == null) {
+			if (chunked && chunkedheader == null) {
 				// read first chunk header
 				readChunkHeader();
+				remaining = chunkedheader.getSize();
+				if (remaining == 0) {
+					end = true;
+				}
 			}
-			return (chunkedheader.getSize() - read);
+			return remaining;
 		} catch (IOException e) {
 			if (notify != null) {
 				synchronized (notify) {
@@ -265,69 +270,4 @@ public class HTTPInputStream extends InputStream {
 		return true;
 	}
 
-	/**
-	 * This input stream handles chunks if no {@link BufferedInputStream} is
-	 * used.
-	 */
-	private class WrappedInputStream extends InputStream {
-
-		private int			size	= 0;
-
-		private int			read	= 0;
-
-		private InputStream	in		= null;
-
-		WrappedInputStream(InputStream in, int size) {
-			this.in = in;
-			this.size = size;
-		}
-
-		/*
-		 * (non-Javadoc)
-		 * @see java.io.InputStream#available()
-		 */
-		public int available() throws IOException {
-			return read - size;
-		}
-
-		public int read() throws IOException {
-			if (read == size) return -1;
-			read++;
-			return in.read();
-		}
-
-		private HTTPInputStream getOuterType() {
-			return HTTPInputStream.this;
-		}
-
-		/*
-		 * (non-Javadoc)
-		 * @see java.lang.Object#hashCode()
-		 */
-		public int hashCode() {
-			final int prime = 31;
-			int result = 1;
-			result = prime * result + getOuterType().hashCode();
-			result = prime * result + ((in == null) ? 0 : in.hashCode());
-			return result;
-		}
-
-		/*
-		 * (non-Javadoc)
-		 * @see java.lang.Object#equals(java.lang.Object)
-		 */
-		public boolean equals(Object obj) {
-			if (this == obj) return true;
-			if (obj == null) return false;
-			if (getClass() != obj.getClass()) return false;
-			WrappedInputStream other = (WrappedInputStream) obj;
-			if (!getOuterType().equals(other.getOuterType())) return false;
-			if (in == null) {
-				if (other.in != null) return false;
-			} else if (!in.equals(other.in)) return false;
-			return true;
-		}
-
-	}
-
 }
@@ -10,15 +10,22 @@
 package org.ws4d.java.communication.protocol.http;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 
+import org.ws4d.java.io.fs.FileTransferTarget;
+
 /**
  * HTTP stream which writes bytes for a given length.
  * <p>
  * This stream should be used to write the HTTP body.
  * </p>
+ * <p>
+ * If the underlying stream is a {@link FileTransferTarget}, files are passed
+ * on to it.
+ * </p>
  */
-public class HTTPOutputStream extends OutputStream {
+public class HTTPOutputStream extends OutputStream implements FileTransferTarget {
 
 	private long			length	= 0;
 
@@ -68,6 +75,29 @@ public class HTTPOutputStream extends OutputStream {
 		}
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see
+	 * org.ws4d.java.io.fs.FileTransferTarget#isTransferable(java.io.InputStream)
+	 */
+	public boolean isTransferable(InputStream in) {
+		return (out instanceof FileTransferTarget) && ((FileTransferTarget) out).isTransferable(in);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.ws4d.java.io.fs.FileTransferTarget#transfer(java.io.InputStream,
+	 * long)
+	 */
+	public void transfer(InputStream in, long count) throws IOException {
+		if (count > length) {
+			throw new IOException("Cannot transfer " + count + " bytes, only " + length + " bytes of the HTTP body are left.");
+		}
+		((FileTransferTarget) out).transfer(in, count);
+		length -= count;
+		write = true;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see java.io.OutputStream#flush()
@@ -0,0 +1,327 @@
+/*******************************************************************************
+ * Copyright (c) 2009 MATERNA Information & Communications. All rights reserved.
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html. For further
+ * project-related information visit http://www.ws4d.org. The most recent
+ * version of the JMEDS framework can be obtained from
+ * http://sourceforge.net/projects/ws4d-javame.
+ ******************************************************************************/
+package org.ws4d.java.communication.protocol.http;
+
+import org.ws4d.java.communication.ProtocolException;
+import org.ws4d.java.configuration.HTTPProperties;
+import org.ws4d.java.constants.HTTPConstants;
+
+/**
+ * Finds the boundaries of HTTP requests in data which arrives piece by piece.
+ * <p>
+ * The bytes read from a connection are {@link #append(byte[], int, int)
+ * appended}. Only as much of the requests is parsed as is needed to find
+ * their ends: the header end, the <code>Content-Length</code> or the chunks
+ * of a chunked body. Each byte is examined once, no matter how many pieces a
+ * request arrives in. Complete requests can be {@link #takeComplete() taken}
+ * and passed to the normal HTTP request parsing.
+ * </p>
+ * <p>
+ * A request is kept in memory until it is complete, so its size is limited.
+ * A request which exceeds the limit, or announces a larger body, causes an
+ * {@link HTTPRequestTooLargeException}.
+ * </p>
+ */
+public class HTTPRequestFramer {
+
+	/** maximal size of a request header in bytes */
+	public static final int		MAX_HEADER_SIZE		= 65536;
+
+	/** largest array some virtual machines can allocate */
+	private static final int	MAX_BUFFER_SIZE		= Integer.MAX_VALUE - 8;
+
+	private static final int	STATE_HEADER		= 0;
+
+	private static final int	STATE_BODY			= 1;
+
+	private static final int	STATE_CHUNK_SIZE	= 2;
+
+	private static final int	STATE_CHUNK_DATA	= 3;
+
+	private static final int	STATE_TRAILER		= 4;
+
+	private byte[]				buffer;
+
+	/** maximal size of a request in bytes */
+	private final int			maxRequestSize;
+
+	private int					count				= 0;
+
+	/** next byte to examine */
+	private int					pos					= 0;
+
+	/** start of the request being parsed */
+	private int					requestStart		= 0;
+
+	/** end of the last complete request */
+	private int					completeEnd			= 0;
+
+	private int					state				= STATE_HEADER;
+
+	/** bytes missing of the body or of the current chunk */
+	private long				remaining			= 0;
+
+	public HTTPRequestFramer() {
+		this(1024);
+	}
+
+	public HTTPRequestFramer(int initialSize) {
+		this(initialSize, HTTPProperties.getInstance().getMaxRequestSize());
+	}
+
+	/**
+	 * @param initialSize initial size of the buffer in bytes.
+	 * @param maxRequestSize maximal size of a request, i.e. of its header and
+	 *            body, in bytes.
+	 */
+	public HTTPRequestFramer(int initialSize, int maxRequestSize) {
+		buffer = new byte[initialSize];
+		this.maxRequestSize = maxRequestSize;
+	}
+
+	/**
+	 * Appends data read from the connection and parses as far as possible.
+	 * 
+	 * @param b the data.
+	 * @param off offset of the data.
+	 * @param len length of the data.
+	 * @throws ProtocolException if the data is no valid HTTP request.
+	 * @throws HTTPRequestTooLargeException if the request exceeds the maximal
+	 *             request size.
+	 */
+	public void append(byte[] b, int off, int len) throws ProtocolException {
+		long needed = (long) count + len;
+		if (needed > buffer.length) {
+			if (needed > MAX_BUFFER_SIZE) {
+				throw new HTTPRequestTooLargeException("HTTP request exceeds " + maxRequestSize + " bytes");
+			}
+			byte[] tmp = new byte[(int) Math.min(Math.max((long) buffer.length * 2, needed), MAX_BUFFER_SIZE)];
+			System.arraycopy(buffer, 0, tmp, 0, count);
+			buffer = tmp;
+		}
+		System.arraycopy(b, off, buffer, count, len);
+		count += len;
+		while (parse()) {
+			// next request or next part
+		}
+		if (count - requestStart > maxRequestSize) {
+			throw new HTTPRequestTooLargeException("HTTP request exceeds " + maxRequestSize + " bytes");
+		}
+	}
+
+	/**
+	 * Returns <code>true</code> if at least one complete request can be taken.
+	 * 
+	 * @return <code>true</code> if a complete request is available.
+	 */
+	public boolean hasComplete() {
+		return completeEnd > 0;
+	}
+
+	/**
+	 * Returns <code>true</code> if data of an incomplete request is buffered.
+	 * 
+	 * @return <code>true</code> if an incomplete request is buffered.
+	 */
+	public boolean hasPartial() {
+		return count > completeEnd;
+	}
+
+	/**
+	 * Removes the complete requests from the buffer. If pipelining clients sent
+	 * several requests, all of them are returned in order.
+	 * 
+	 * @return the bytes of the complete requests, or <code>null</code> if there
+	 *         is none.
+	 */
+	public byte[] takeComplete() {
+		if (completeEnd == 0) {
+			return null;
+		}
+		byte[] result = new byte[completeEnd];
+		System.arraycopy(buffer, 0, result, 0, completeEnd);
+		System.arraycopy(buffer, completeEnd, buffer, 0, count - completeEnd);
+		count -= completeEnd;
+		pos -= completeEnd;
+		requestStart -= completeEnd;
+		completeEnd = 0;
+		return result;
+	}
+
+	/**
+	 * Parses the next part of the current request.
+	 * 
+	 * @return <code>true</code> if a part was parsed.
+	 */
+	private boolean parse() throws ProtocolException {
+		switch (state) {
+			case STATE_HEADER: {
+				int end = indexOfHeaderEnd();
+				if (end < 0) {
+					if (count - requestStart > MAX_HEADER_SIZE) {
+						throw new ProtocolException("HTTP request header exceeds " + MAX_HEADER_SIZE + " bytes");
+					}
+					return false;
+				}
+				long contentLength = 0;
+				boolean chunked = false;
+				int lineStart = requestStart;
+				while (lineStart < end) {
+					int lineEnd = indexOfLineEnd(lineStart, end + 2);
+					int colon = indexOf(':', lineStart, lineEnd);
+					if (colon > lineStart) {
+						String name = new String(buffer, lineStart, colon - lineStart).trim();
+						if (HTTPConstants.HTTP_HEADER_CONTENT_LENGTH.equalsIgnoreCase(name)) {
+							try {
+								contentLength = Long.parseLong(new String(buffer, colon + 1, lineEnd - colon - 1).trim());
+							} catch (NumberFormatException e) {
+								throw new ProtocolException("Invalid content length");
+							}
+						} else if (HTTPConstants.HTTP_HEADER_TRANSFER_ENCODING.equalsIgnoreCase(name)) {
+							String value = new String(buffer, colon + 1, lineEnd - colon - 1).trim();
+							chunked = HTTPConstants.HTTP_HEADERVALUE_TRANSFERCODING_CHUNKED.equalsIgnoreCase(value);
+						}
+					}
+					lineStart = lineEnd + 2;
+				}
+				pos = end + 4;
+				if (contentLength < 0) {
+					throw new ProtocolException("Invalid content length");
+				}
+				if (contentLength > maxRequestSize - (pos - requestStart)) {
+					throw new HTTPRequestTooLargeException("HTTP request body of " + contentLength + " bytes exceeds " + maxRequestSize + " bytes");
+				}
+				if (chunked) {
+					state = STATE_CHUNK_SIZE;
+				} else if (contentLength > 0) {
+					remaining = contentLength;
+					state = STATE_BODY;
+				} else {
+					finishRequest();
+				}
+				return true;
+			}
+			case STATE_BODY:
+			case STATE_CHUNK_DATA: {
+				int available = count - pos;
+				if (available < remaining) {
+					pos = count;
+					remaining -= available;
+					return false;
+				}
+				pos += (int) remaining;
+				remaining = 0;
+				if (state == STATE_BODY) {
+					finishRequest();
+				} else {
+					state = STATE_CHUNK_SIZE;
+				}
+				return true;
+			}
+			case STATE_CHUNK_SIZE: {
+				int lineEnd = indexOfLineEnd(pos, count);
+				if (lineEnd < 0) {
+					if (count - pos > MAX_HEADER_SIZE) {
+						throw new ProtocolException("HTTP chunk header exceeds " + MAX_HEADER_SIZE + " bytes");
+					}
+					return false;
+				}
+				int sizeEnd = indexOf(';', pos, lineEnd);
+				if (sizeEnd < 0) {
+					sizeEnd = lineEnd;
+				}
+				long size;
+				try {
+					size = Long.parseLong(new String(buffer, pos, sizeEnd - pos).trim(), 16);
+				} catch (NumberFormatException e) {
+					throw new ProtocolException("Invalid chunk size");
+				}
+				pos = lineEnd + 2;
+				if (size < 0) {
+					throw new ProtocolException("Invalid chunk size");
+				}
+				if (size > maxRequestSize - (pos - requestStart)) {
+					throw new HTTPRequestTooLargeException("HTTP chunk of " + size + " bytes exceeds " + maxRequestSize + " bytes");
+				}
+				if (size == 0) {
+					state = STATE_TRAILER;
+				} else {
+					// chunk data and the CRLF behind it
+					remaining = size + 2;
+					state = STATE_CHUNK_DATA;
+				}
+				return true;
+			}
+			case STATE_TRAILER: {
+				int lineEnd = indexOfLineEnd(pos, count);
+				if (lineEnd < 0) {
+					if (count - pos > MAX_HEADER_SIZE) {
+						throw new ProtocolException("HTTP trailer exceeds " + MAX_HEADER_SIZE + " bytes");
+					}
+					return false;
+				}
+				boolean last = (lineEnd == pos);
+				pos = lineEnd + 2;
+				if (last) {
+					finishRequest();
+				}
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void finishRequest() {
+		completeEnd = pos;
+		requestStart = pos;
+		state = STATE_HEADER;
+	}
+
+	/**
+	 * Searches CRLF CRLF behind the start of the current request. Continues the
+	 * search where the last one stopped.
+	 * 
+	 * @return the index of the first CR, or <code>-1</code>.
+	 */
+	private int indexOfHeaderEnd() {
+		int i = Math.max(pos, requestStart);
+		// leading empty lines before a request are allowed (RFC 2616 4.1)
+		while (i == requestStart && i + 1 < count && buffer[i] == '\r' && buffer[i + 1] == '\n') {
+			i += 2;
+			requestStart = i;
+		}
+		for (; i + 3 < count; i++) {
+			if (buffer[i + 3] == '\n' && buffer[i + 2] == '\r' && buffer[i + 1] == '\n' && buffer[i] == '\r') {
+				return i;
+			}
+		}
+		pos = i;
+		return -1;
+	}
+
+	private int indexOfLineEnd(int from, int to) {
+		for (int i = from; i + 1 < to; i++) {
+			if (buffer[i] == '\r' && buffer[i + 1] == '\n') {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private int indexOf(char c, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (buffer[i] == c) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+}
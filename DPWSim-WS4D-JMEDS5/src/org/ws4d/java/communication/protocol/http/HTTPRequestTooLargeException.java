@@ -0,0 +1,26 @@
+/*******************************************************************************
+ * Copyright (c) 2009 MATERNA Information & Communications. All rights reserved.
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html. For further
+ * project-related information visit http://www.ws4d.org. The most recent
+ * version of the JMEDS framework can be obtained from
+ * http://sourceforge.net/projects/ws4d-javame.
+ ******************************************************************************/
+package org.ws4d.java.communication.protocol.http;
+
+import org.ws4d.java.communication.ProtocolException;
+
+/**
+ * Thrown by the {@link HTTPRequestFramer} if a request exceeds the maximum
+ * request size. The server answers with
+ * <code>413 Request Entity Too Large</code>.
+ */
+public class HTTPRequestTooLargeException extends ProtocolException {
+
+	private static final long	serialVersionUID	= 4622350912730521094L;
+
+	public HTTPRequestTooLargeException(String message) {
+		super(message);
+	}
+}
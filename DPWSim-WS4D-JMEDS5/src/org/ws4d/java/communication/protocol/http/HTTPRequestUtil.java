@@ -29,6 +29,7 @@ import org.ws4d.java.communication.protocol.http.header.HTTPRequestHeader;
 import org.ws4d.java.communication.protocol.http.header.HTTPResponseHeader;
 import org.ws4d.java.constants.HTTPConstants;
 import org.ws4d.java.constants.MIMEConstants;
+import org.ws4d.java.constants.Specialchars;
 import org.ws4d.java.security.DPWSSecurityManager;
 import org.ws4d.java.security.SecurityManager;
 import org.ws4d.java.structures.HashMap;
@@ -84,7 +85,20 @@ public class HTTPRequestUtil {
 		String method = null;
 		String request = null;
 		String version = null;
-		method = HTTPUtil.readElement(in, delta);
+		String line = null;
+		int sp = -1;
+		if (in instanceof HTTPInputBuffer) {
+			/*
+			 * Request-Line = Method SP Request-URI SP HTTP-Version CRLF
+			 */
+			line = ((HTTPInputBuffer) in).readLine();
+			if (line != null) {
+				sp = line.indexOf(Specialchars.SP);
+				method = (sp < 0) ? line : line.substring(0, sp);
+			}
+		} else {
+			method = HTTPUtil.readElement(in, delta);
+		}
 		if (method == null || method.length() == 0) {
 			return null;
 		} else {
@@ -100,11 +114,20 @@ public class HTTPRequestUtil {
 				throw new ProtocolException(HTTPRequestUtil.FAULT_METHOD_NOT_SUPPORTED + " (" + method + ")");
 			}
 		}
-		// Read the HTTP request
-		request = HTTPUtil.readElement(in);
+		if (line != null) {
+			int sp2 = line.indexOf(Specialchars.SP, sp + 1);
+			if (sp < 0 || sp2 < 0) {
+				throw new ProtocolException(HTTPRequestUtil.FAULT_MALFORMED_REQUEST);
+			}
+			request = line.substring(sp + 1, sp2);
+			version = HTTPUtil.checkRequestVersion(line.substring(sp2 + 1));
+		} else {
+			// Read the HTTP request
+			request = HTTPUtil.readElement(in);
 
-		// Read the HTTP version
-		version = HTTPUtil.readRequestVersion(in);
+			// Read the HTTP version
+			version = HTTPUtil.readRequestVersion(in);
+		}
 
 		// Read the HTTP header fields
 		HashMap headerfields = new HashMap();
@@ -315,7 +338,7 @@ public class HTTPRequestUtil {
 			 */
 			DPWSProtocolData pd_in = (DPWSProtocolData) pd_out.createSwappedProtocolData();
 
-			InputStream in = tcpSocket.getInputStream();
+			InputStream in = new HTTPInputBuffer(tcpSocket.getInputStream());
 			
 			if (DPWSFramework.getMonitorStreamFactory() != null) {
 				in = new MonitoredInputStream(in, pd_in);
@@ -17,6 +17,7 @@ import org.ws4d.java.communication.ProtocolException;
 import org.ws4d.java.communication.protocol.http.header.HTTPResponseHeader;
 import org.ws4d.java.constants.HTTPConstants;
 import org.ws4d.java.constants.MIMEConstants;
+import org.ws4d.java.constants.Specialchars;
 import org.ws4d.java.html.HTMLDocument;
 import org.ws4d.java.html.SimpleHTML;
 import org.ws4d.java.structures.ByteArray;
@@ -213,6 +214,24 @@ public class HTTPResponseUtil {
 		}
 	}
 
+	/**
+	 * Sends an HTTP request entity too large and asks the client to close the
+	 * connection, as the rest of the request is not read.
+	 * 
+	 * @param out stream to work with.
+	 * @param note the error note.
+	 * @throws IOException if the response cannot be written.
+	 */
+	public static void sendRequestEntityTooLarge(OutputStream out, String note) throws IOException {
+		HTTPResponseHeader header = getResponseHeader(413);
+		header.addHeaderFieldValue(HTTPConstants.HTTP_HEADER_CONNECTION, HTTPConstants.HTTP_HEADERVALUE_CONNECTION_CLOSE);
+		header.toStream(out);
+		if (note != null) {
+			out.write(note.getBytes());
+		}
+		out.flush();
+	}
+
 	/**
 	 * Sends an HTTP version not supported.
 	 * 
@@ -364,6 +383,9 @@ public class HTTPResponseUtil {
 			case 404:
 				phrase = HTTPStatus.HTTP_404;
 				break;
+			case 413:
+				phrase = HTTPStatus.HTTP_413;
+				break;
 			case 415:
 				phrase = HTTPStatus.HTTP_415;
 				break;
@@ -386,15 +408,30 @@ public class HTTPResponseUtil {
 		String status = null;
 		String reason = null;
 
-		version = HTTPUtil.readElement(in);
+		if (in instanceof HTTPInputBuffer) {
+			/*
+			 * Status-Line = HTTP-Version SP Status-Code SP Reason-Phrase CRLF
+			 */
+			String line = ((HTTPInputBuffer) in).readLine();
+			if (line == null) {
+				throw new IOException(HTTPRequestUtil.FAULT_UNEXPECTED_END);
+			}
+			int sp = line.indexOf(Specialchars.SP);
+			int sp2 = (sp < 0) ? -1 : line.indexOf(Specialchars.SP, sp + 1);
+			version = (sp < 0) ? line : line.substring(0, sp);
+			status = (sp < 0) ? null : line.substring(sp + 1, (sp2 < 0) ? line.length() : sp2);
+			reason = (sp2 < 0) ? "" : line.substring(sp2 + 1);
+		} else {
+			version = HTTPUtil.readElement(in);
 
-		// if (!version.equals(HTTPConstants.HTTP_VERSION11)) {
-		// throw new ProtocolException("Unsupported HTTP version.");
-		// }
+			// if (!version.equals(HTTPConstants.HTTP_VERSION11)) {
+			// throw new ProtocolException("Unsupported HTTP version.");
+			// }
 
-		status = HTTPUtil.readElement(in);
+			status = HTTPUtil.readElement(in);
 
-		reason = HTTPUtil.readRequestLine(in);
+			reason = HTTPUtil.readRequestLine(in);
+		}
 
 		// Read the HTTP header fields
 		HashMap headerfields = new HashMap();
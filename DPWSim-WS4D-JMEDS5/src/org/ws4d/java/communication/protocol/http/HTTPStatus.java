@@ -42,6 +42,8 @@ public interface HTTPStatus {
 
 	static final String	HTTP_404	= "Not Found";
 
+	static final String	HTTP_413	= "Request Entity Too Large";
+
 	static final String	HTTP_415	= "Unsupported Media Type";
 
 	static final String	HTTP_500	= "Internal Server Error";
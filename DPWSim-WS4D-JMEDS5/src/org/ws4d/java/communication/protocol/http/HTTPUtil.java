@@ -71,6 +71,13 @@ public class HTTPUtil {
 	 * @return the protocol line.
 	 */
 	public static String readRequestLine(InputStream in) throws IOException {
+		if (in instanceof HTTPInputBuffer) {
+			String line = ((HTTPInputBuffer) in).readLine();
+			if (line == null) {
+				throw new IOException(HTTPRequestUtil.FAULT_UNEXPECTED_END);
+			}
+			return line;
+		}
 		int i;
 		StringBuffer buffer = new StringBuffer();
 		int j = 0;
@@ -162,6 +169,32 @@ public class HTTPUtil {
 		throw new IOException(HTTPRequestUtil.FAULT_UNEXPECTED_END);
 	}
 
+	/**
+	 * Checks the HTTP version taken from a request line. (see RFC2616 3.1)
+	 * 
+	 * @param version the version string.
+	 * @return the version string.
+	 * @throws ProtocolException if the version is not "HTTP" "/" 1*DIGIT "."
+	 *             1*DIGIT
+	 */
+	static String checkRequestVersion(String version) throws ProtocolException {
+		int len = version.length();
+		if (len < 8 || !version.startsWith("HTTP/")) {
+			throw new ProtocolException(HTTPRequestUtil.FAULT_MALFORMED_REQUEST);
+		}
+		int dot = version.indexOf('.', 5);
+		if (dot < 6 || dot == len - 1) {
+			throw new ProtocolException(HTTPRequestUtil.FAULT_MALFORMED_REQUEST);
+		}
+		for (int i = 5; i < len; i++) {
+			char c = version.charAt(i);
+			if ((c < '0' || c > '9') && i != dot) {
+				throw new ProtocolException(HTTPRequestUtil.FAULT_MALFORMED_REQUEST);
+			}
+		}
+		return version;
+	}
+
 	/**
 	 * Reads a HTTP header fields from the input stream. To learn more about
 	 * HTTP header fields, take a look at RFC2616 4.2, 4.5, 5.3, 6.2, 7.1
@@ -170,6 +203,10 @@ public class HTTPUtil {
 	 * @param headerfields <code>Hashtable</code> to store the fields in.
 	 */
 	public static void readHeaderFields(InputStream in, HashMap headerfields) throws IOException, ProtocolException {
+		if (in instanceof HTTPInputBuffer) {
+			readHeaderFields((HTTPInputBuffer) in, headerfields);
+			return;
+		}
 
 		String fieldname = null;
 		String fieldvalue = null;
@@ -268,6 +305,78 @@ public class HTTPUtil {
 		throw new IOException(HTTPRequestUtil.FAULT_UNEXPECTED_END + " (" + buffer.toString() + ")");
 	}
 
+	/**
+	 * Reads the HTTP header fields line by line from the buffer.
+	 */
+	private static void readHeaderFields(HTTPInputBuffer in, HashMap headerfields) throws IOException, ProtocolException {
+		String fieldname = null;
+		StringBuffer fieldvalue = null;
+		String line;
+		while ((line = in.readLine()) != null) {
+			if (line.length() == 0) {
+				// empty line, header ends here
+				if (fieldname != null) {
+					headerfields.put(fieldname, fieldvalue.toString().trim());
+				}
+				return;
+			}
+			char c = line.charAt(0);
+			if ((c == Specialchars.SP || c == Specialchars.HT) && fieldname != null) {
+				// folded field-value continues
+				fieldvalue.append((char) Specialchars.SP).append(line.replace((char) Specialchars.HT, (char) Specialchars.SP));
+				continue;
+			}
+			if (fieldname != null) {
+				headerfields.put(fieldname, fieldvalue.toString().trim());
+			}
+			int colon = line.indexOf(Specialchars.COL);
+			if (colon < 0) {
+				throw new ProtocolException(HTTPRequestUtil.FAULT_MALFORMED_HEADERFIELD + " (" + line + ")");
+			}
+			for (int i = 0; i < colon; i++) {
+				if (!isTokenChar(line.charAt(i))) {
+					throw new ProtocolException(HTTPRequestUtil.FAULT_MALFORMED_HEADERFIELD + " (" + line.substring(0, i) + ")");
+				}
+			}
+			fieldname = line.substring(0, colon).toLowerCase();
+			fieldvalue = new StringBuffer(line.length() - colon);
+			fieldvalue.append(line.substring(colon + 1).replace((char) Specialchars.HT, (char) Specialchars.SP));
+		}
+		throw new IOException(HTTPRequestUtil.FAULT_UNEXPECTED_END + " (" + (fieldname == null ? "" : fieldname) + ")");
+	}
+
+	/**
+	 * Returns <code>true</code> if the character may be part of a token. No
+	 * CTL (ascii 0-31) and no separators are allowed. (see RFC2616 2.2)
+	 */
+	private static boolean isTokenChar(char c) {
+		if (c <= 0x1F) {
+			return false;
+		}
+		switch (c) {
+			case 0x28:
+			case 0x29:
+			case 0x3C:
+			case 0x3D:
+			case 0x3E:
+			case 0x40:
+			case 0x2C:
+			case 0x3F:
+			case 0x3B:
+			case 0x2F:
+			case 0x5C:
+			case 0x5B:
+			case 0x5D:
+			case 0x7B:
+			case 0x7D:
+			case 0x22:
+			case Specialchars.SP:
+			case Specialchars.HT:
+				return false;
+		}
+		return true;
+	}
+
 	/**
 	 * Reads the HTTP chunk header from stream.
 	 * 
@@ -277,6 +386,9 @@ public class HTTPUtil {
 	 * @throws ProtocolException
 	 */
 	public static HTTPChunkHeader readChunkHeader(InputStream in) throws IOException, ProtocolException {
+		if (in instanceof HTTPInputBuffer) {
+			return readChunkHeader((HTTPInputBuffer) in);
+		}
 		int chunksize = 0;
 		HashMap chunkextensions = null;
 		HashMap chunktrailer = null;
@@ -340,6 +452,59 @@ public class HTTPUtil {
 		return new HTTPChunkHeader(chunksize, chunkextensions, chunktrailer);
 	}
 
+	/**
+	 * Reads the HTTP chunk header as one line from the buffer.
+	 */
+	private static HTTPChunkHeader readChunkHeader(HTTPInputBuffer in) throws IOException, ProtocolException {
+		String line = in.readLine();
+		if (line == null) {
+			throw new IOException(HTTPRequestUtil.FAULT_UNEXPECTED_END);
+		}
+		int len = line.length();
+		int i = 0;
+		while (i < len && Character.digit(line.charAt(i), 16) >= 0) {
+			i++;
+		}
+		int chunksize;
+		try {
+			chunksize = Integer.parseInt(line.substring(0, i), 16);
+		} catch (NumberFormatException e) {
+			throw new IOException(HTTPRequestUtil.FAULT_MALFORMED_CHUNK + " (" + line + ")");
+		}
+
+		HashMap chunkextensions = null;
+		int ext = line.indexOf(Specialchars.SCOL, i);
+		while (ext >= 0) {
+			int next = line.indexOf(Specialchars.SCOL, ext + 1);
+			String extension = line.substring(ext + 1, (next < 0) ? len : next);
+			int eq = extension.indexOf(Specialchars.EQ);
+			if (eq < 0) {
+				throw new ProtocolException(HTTPRequestUtil.FAULT_MALFORMED_CHUNK + " (" + extension + ")");
+			}
+			for (int k = 0; k < eq; k++) {
+				if (!isTokenChar(extension.charAt(k))) {
+					throw new ProtocolException(HTTPRequestUtil.FAULT_MALFORMED_CHUNK + " (" + extension.substring(0, k) + ")");
+				}
+			}
+			if (chunkextensions == null) {
+				chunkextensions = new HashMap();
+			}
+			chunkextensions.put(extension.substring(0, eq).trim().toLowerCase(), extension.substring(eq + 1));
+			ext = next;
+		}
+
+		HashMap chunktrailer = null;
+		if (chunksize == 0) {
+			chunktrailer = new HashMap();
+			// check for trailer
+			readHeaderFields(in, chunktrailer);
+			if (chunktrailer.size() == 0) {
+				chunktrailer = null;
+			}
+		}
+		return new HTTPChunkHeader(chunksize, chunkextensions, chunktrailer);
+	}
+
 	/**
 	 * Reads the chunk extension from stream. (RFC 2616, 3.6.1)
 	 * 
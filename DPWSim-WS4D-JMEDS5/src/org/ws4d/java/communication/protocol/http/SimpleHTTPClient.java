@@ -57,6 +57,11 @@ public class SimpleHTTPClient {
 
 	private OutputStream			out				= null;
 
+	/**
+	 * Read buffer for the connection, kept for all responses on it.
+	 */
+	private HTTPInputBuffer			inBuffer		= null;
+
 	private Object					lock			= new Object();
 
 	/**
@@ -134,6 +139,7 @@ public class SimpleHTTPClient {
 		if (connection == null) {
 			client = TCPClient.connect(destination.getHost(), destination.getPort(), destination.isSecure(), destination.getAlias());
 			connection = client.getConnection();
+			inBuffer = null;
 		}
 	}
 
@@ -145,6 +151,7 @@ public class SimpleHTTPClient {
 	public synchronized void resetConnection() {
 		if (connection != null) {
 			connection = null;
+			inBuffer = null;
 		}
 	}
 
@@ -218,10 +225,14 @@ public class SimpleHTTPClient {
 			if (connection == null) {
 				client = TCPClient.connect(destination.getHost(), destination.getPort(), destination.isSecure(), destination.getAlias());
 				connection = client.getConnection();
+				inBuffer = null;
 			}
 
 			synchronized (lock) {
-				in = connection.getInputStream();
+				if (inBuffer == null) {
+					inBuffer = new HTTPInputBuffer(connection.getInputStream());
+				}
+				in = inBuffer;
 				out = connection.getOutputStream();
 				lock.notifyAll();
 			}
@@ -292,6 +303,14 @@ public class SimpleHTTPClient {
 		return new HTTPOutputStream(out, length);
 	}
 
+	/**
+	 * Writes the header given to {@link #exchange(HTTPRequestHeader, boolean)}
+	 * to the connection. The header is not flushed, so it leaves together with
+	 * the body once the body is flushed, instead of in a segment of its own
+	 * which the body would have to wait behind for the acknowledgement.
+	 * 
+	 * @throws IOException Throws exception if writing the HTTP header fails.
+	 */
 	public void sendHeader() throws IOException {
 		/*
 		 * Establish connection
@@ -300,16 +319,19 @@ public class SimpleHTTPClient {
 			if (connection == null) {
 				client = TCPClient.connect(destination.getHost(), destination.getPort(), destination.isSecure(), destination.getAlias());
 				connection = client.getConnection();
+				inBuffer = null;
 			}
 
 			synchronized (lock) {
-				in = connection.getInputStream();
+				if (inBuffer == null) {
+					inBuffer = new HTTPInputBuffer(connection.getInputStream());
+				}
+				in = inBuffer;
 				out = connection.getOutputStream();
 				lock.notifyAll();
 			}
 		}
 		requestHeader.toStream(out);
-		out.flush();
 	}
 
 	/**
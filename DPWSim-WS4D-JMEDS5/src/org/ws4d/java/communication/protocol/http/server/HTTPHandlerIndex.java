@@ -0,0 +1,319 @@
+/*******************************************************************************
+ * Copyright (c) 2009 MATERNA Information & Communications. All rights reserved.
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html. For further
+ * project-related information visit http://www.ws4d.org. The most recent
+ * version of the JMEDS framework can be obtained from
+ * http://sourceforge.net/projects/ws4d-javame.
+ ******************************************************************************/
+package org.ws4d.java.communication.protocol.http.server;
+
+import org.ws4d.java.types.InternetMediaType;
+
+/**
+ * Index of the HTTP handlers registered at one {@link HTTPServer}, keyed on
+ * the decoded path and the content type.
+ * <p>
+ * {@link #get(String, InternetMediaType, boolean)} looks up the request path
+ * itself, and every path above it when backtracking, without creating any
+ * objects and without locking. The hash of a leading part of the path is
+ * computed on the way, as the string hash of a prefix is an intermediate
+ * result of the hash of the whole string.
+ * </p>
+ * <p>
+ * Registering and unregistering are synchronized. They never change the chain
+ * of entries in a bucket, but replace it, so a lookup running at the same time
+ * sees either the old or the new chain.
+ * </p>
+ */
+class HTTPHandlerIndex {
+
+	private static final Typed[]	NO_TYPED		= new Typed[0];
+
+	private static final int		INITIAL_SIZE	= 64;
+
+	private volatile Entry[]		table			= new Entry[INITIAL_SIZE];
+
+	/** number of registered handlers */
+	private int						size			= 0;
+
+	/** number of entries, i.e. of paths */
+	private int						entries			= 0;
+
+	/**
+	 * Registers a handler for the given path and content type.
+	 *
+	 * @param path the decoded absolute path.
+	 * @param type the content type, or <code>null</code> for every type.
+	 * @param handler the handler.
+	 * @return the handler registered before, or <code>null</code>.
+	 */
+	synchronized HTTPRequestHandler put(String path, InternetMediaType type, HTTPRequestHandler handler) {
+		int hash = path.hashCode();
+		Entry[] t = table;
+		Entry entry = find(t, path, path.length(), hash);
+		if (entry == null) {
+			if (entries >= t.length - (t.length >> 2)) {
+				t = resize(t);
+			}
+			int index = hash & (t.length - 1);
+			entry = new Entry(path, hash, t[index]);
+			t[index] = entry;
+			entries++;
+		}
+		HTTPRequestHandler old;
+		if (type == null) {
+			old = entry.anyType;
+			entry.anyType = handler;
+		} else {
+			old = entry.putTyped(type, handler);
+		}
+		if (old == null) {
+			size++;
+		}
+		// publish the changed bucket
+		table = t;
+		return old;
+	}
+
+	/**
+	 * Removes the handler for the given path and content type.
+	 *
+	 * @param path the decoded absolute path.
+	 * @param type the content type, or <code>null</code> for every type.
+	 * @return the removed handler, or <code>null</code>.
+	 */
+	synchronized HTTPRequestHandler remove(String path, InternetMediaType type) {
+		int hash = path.hashCode();
+		Entry[] t = table;
+		Entry entry = find(t, path, path.length(), hash);
+		if (entry == null) {
+			return null;
+		}
+		HTTPRequestHandler old;
+		if (type == null) {
+			old = entry.anyType;
+			entry.anyType = null;
+		} else {
+			old = entry.removeTyped(type);
+		}
+		if (old == null) {
+			return null;
+		}
+		size--;
+		if (entry.isEmpty()) {
+			// copy the entries in front of the removed one
+			int index = hash & (t.length - 1);
+			Entry chain = entry.next;
+			for (Entry e = t[index]; e != entry; e = e.next) {
+				chain = new Entry(e, chain);
+			}
+			t[index] = chain;
+			entries--;
+		}
+		table = t;
+		return old;
+	}
+
+	/**
+	 * Returns the handler for the given path and content type. A handler
+	 * registered for the content type is preferred to one registered for every
+	 * type.
+	 * <p>
+	 * When backtracking, only handlers registered for every type are found on
+	 * the paths above the given one, as typed handlers serve their own path
+	 * only.
+	 * </p>
+	 *
+	 * @param path the decoded absolute path.
+	 * @param type the content type of the request, may be <code>null</code>.
+	 * @param backtrack <code>true</code> if the handlers registered for every
+	 *            type at the paths above the given one should be searched
+	 *            too, the deepest first.
+	 * @return the handler, or <code>null</code> if none matches.
+	 */
+	HTTPRequestHandler get(String path, InternetMediaType type, boolean backtrack) {
+		Entry[] t = table;
+		int length = path.length();
+		if (!backtrack) {
+			Entry entry = find(t, path, length, path.hashCode());
+			return (entry == null) ? null : entry.handler(type);
+		}
+		HTTPRequestHandler found = null;
+		int hash = 0;
+		for (int i = 0; i < length; i++) {
+			char c = path.charAt(i);
+			if (i == 1 || (i > 1 && c == '/')) {
+				Entry entry = find(t, path, i, hash);
+				HTTPRequestHandler handler = (entry == null) ? null : entry.anyType;
+				if (handler != null) {
+					found = handler;
+				}
+			}
+			hash = 31 * hash + c;
+		}
+		Entry entry = find(t, path, length, hash);
+		HTTPRequestHandler handler = (entry == null) ? null : entry.handler(type);
+		return (handler != null) ? handler : found;
+	}
+
+	/**
+	 * @return the number of registered handlers.
+	 */
+	synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * @return <code>true</code> if no handler is registered.
+	 */
+	synchronized boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Returns whether the given request path equals its decoded and normalized
+	 * form, i.e. whether it can be looked up without building a URI first.
+	 *
+	 * @param path the path of the request.
+	 * @return <code>true</code> if the path is absolute and contains neither
+	 *         escaped characters nor dot segments.
+	 */
+	static boolean isPlainPath(String path) {
+		int length = path.length();
+		if (length == 0 || path.charAt(0) != '/') {
+			return false;
+		}
+		for (int i = 1; i < length; i++) {
+			char c = path.charAt(i);
+			if (c == '%' || c == '+' || (c == '.' && path.charAt(i - 1) == '/')) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the entry for the first <code>length</code> characters of the
+	 * given path.
+	 */
+	private static Entry find(Entry[] t, String path, int length, int hash) {
+		for (Entry e = t[hash & (t.length - 1)]; e != null; e = e.next) {
+			if (e.hash == hash && e.path.length() == length && path.regionMatches(0, e.path, 0, length)) {
+				return e;
+			}
+		}
+		return null;
+	}
+
+	private static Entry[] resize(Entry[] t) {
+		Entry[] tmp = new Entry[t.length << 1];
+		for (int i = 0; i < t.length; i++) {
+			for (Entry e = t[i]; e != null; e = e.next) {
+				int index = e.hash & (tmp.length - 1);
+				tmp[index] = new Entry(e, tmp[index]);
+			}
+		}
+		return tmp;
+	}
+
+	/**
+	 * The handlers of one path. The chain of entries is never changed, only
+	 * replaced. The arrays of typed handlers are replaced as a whole too.
+	 */
+	private static class Entry {
+
+		final String				path;
+
+		final int					hash;
+
+		final Entry					next;
+
+		volatile HTTPRequestHandler	anyType	= null;
+
+		volatile Typed[]			typed	= NO_TYPED;
+
+		Entry(String path, int hash, Entry next) {
+			this.path = path;
+			this.hash = hash;
+			this.next = next;
+		}
+
+		/**
+		 * Copies the given entry into another chain.
+		 */
+		Entry(Entry e, Entry next) {
+			this(e.path, e.hash, next);
+			this.anyType = e.anyType;
+			this.typed = e.typed;
+		}
+
+		HTTPRequestHandler handler(InternetMediaType type) {
+			if (type != null) {
+				Typed[] t = typed;
+				for (int i = 0; i < t.length; i++) {
+					if (t[i].type.equals(type)) {
+						return t[i].handler;
+					}
+				}
+			}
+			return anyType;
+		}
+
+		HTTPRequestHandler putTyped(InternetMediaType type, HTTPRequestHandler handler) {
+			Typed[] t = typed;
+			for (int i = 0; i < t.length; i++) {
+				if (t[i].type.equals(type)) {
+					HTTPRequestHandler old = t[i].handler;
+					Typed[] tmp = new Typed[t.length];
+					System.arraycopy(t, 0, tmp, 0, t.length);
+					tmp[i] = new Typed(type, handler);
+					typed = tmp;
+					return old;
+				}
+			}
+			Typed[] tmp = new Typed[t.length + 1];
+			System.arraycopy(t, 0, tmp, 0, t.length);
+			tmp[t.length] = new Typed(type, handler);
+			typed = tmp;
+			return null;
+		}
+
+		HTTPRequestHandler removeTyped(InternetMediaType type) {
+			Typed[] t = typed;
+			for (int i = 0; i < t.length; i++) {
+				if (t[i].type.equals(type)) {
+					Typed[] tmp = new Typed[t.length - 1];
+					System.arraycopy(t, 0, tmp, 0, i);
+					System.arraycopy(t, i + 1, tmp, i, tmp.length - i);
+					typed = tmp;
+					return t[i].handler;
+				}
+			}
+			return null;
+		}
+
+		boolean isEmpty() {
+			return anyType == null && typed.length == 0;
+		}
+
+	}
+
+	/**
+	 * A handler registered for one content type.
+	 */
+	private static class Typed {
+
+		final InternetMediaType		type;
+
+		final HTTPRequestHandler	handler;
+
+		Typed(InternetMediaType type, HTTPRequestHandler handler) {
+			this.type = type;
+			this.handler = handler;
+		}
+
+	}
+
+}
@@ -27,6 +27,7 @@ import org.ws4d.java.communication.monitor.MonitorStreamFactory;
 import org.ws4d.java.communication.monitor.MonitoringContext;
 import org.ws4d.java.communication.protocol.http.ChunkedOutputStream;
 import org.ws4d.java.communication.protocol.http.HTTPGroup;
+import org.ws4d.java.communication.protocol.http.HTTPInputBuffer;
 import org.ws4d.java.communication.protocol.http.HTTPInputStream;
 import org.ws4d.java.communication.protocol.http.HTTPOutputStream;
 import org.ws4d.java.communication.protocol.http.HTTPRequestUtil;
@@ -44,6 +45,7 @@ import org.ws4d.java.structures.HashMap;
 import org.ws4d.java.structures.Iterator;
 import org.ws4d.java.structures.LinkedList;
 import org.ws4d.java.structures.List;
+import org.ws4d.java.structures.LockedMap;
 import org.ws4d.java.types.InternetMediaType;
 import org.ws4d.java.types.URI;
 import org.ws4d.java.util.Log;
@@ -102,9 +104,10 @@ public class HTTPServer {
 	private HTTPConnectionHandler	handler				= new HTTPConnectionHandler();
 
 	/**
-	 * This table contains path and handler.
+	 * This index contains path and handler. Devices and services sharing this
+	 * server register and unregister concurrently to incoming requests.
 	 */
-	private HashMap					handlers			= new HashMap();
+	private HTTPHandlerIndex		handlers			= new HTTPHandlerIndex();
 
 	/**
 	 * Indicates whether this server is running or not.
@@ -112,7 +115,8 @@ public class HTTPServer {
 	private boolean					running				= false;
 
 	/**
-	 * List of active timeouts. Necessary for correct {@link #stop()}.
+	 * List of active timeouts, one per open connection. Necessary for correct
+	 * {@link #stop()}.
 	 */
 	private List					timeouts			= new LinkedList();
 
@@ -123,10 +127,12 @@ public class HTTPServer {
 
 	/**
 	 * Simple counter representing the number of handlers handling incoming
-	 * requests at the moment.
+	 * requests at the moment, guarded by {@link #handLock}.
 	 */
 	private static int				hand				= 0;
 
+	private static final Object		handLock			= new Object();
+
 	/**
 	 * Simple request timeout value.
 	 */
@@ -153,7 +159,7 @@ public class HTTPServer {
 	/**
 	 * HTTP Authentication
 	 */
-	private HashMap					authentication		= new HashMap();
+	private HashMap					authentication		= new LockedMap();
 
 	public void setAuthentication(URI resource, HTTPGroup group) {
 		authentication.put(resource, group);
@@ -229,7 +235,7 @@ public class HTTPServer {
 	 */
 	public void register(String path, HTTPRequestHandler handler, HTTPGroup user) {
 		URI registerURI = new URI(path, base);
-		handlers.put(registerURI, handler);
+		checkReplaced(registerURI, handlers.put(registerURI.getPath(), null, handler), handler);
 		// TODO: unregister
 		if (user != null) {
 			setAuthentication(registerURI, user);
@@ -246,14 +252,32 @@ public class HTTPServer {
 	 */
 	public void register(String path, InternetMediaType type, HTTPRequestHandler handler, HTTPGroup user) {
 		URI registerURI = new URI(path, base);
-		MappingEntry entry = new MappingEntry(registerURI, type);
-		handlers.put(entry, handler);
+		checkReplaced(registerURI, handlers.put(registerURI.getPath(), type, handler), handler);
 		// TODO: unregister
 		if (user != null) {
 			setAuthentication(registerURI, user);
 		}
 	}
 
+	/**
+	 * Warns if a registration replaced the handler of another device or
+	 * service. This happens if paths collide on a shared server.
+	 */
+	private void checkReplaced(URI registerURI, Object oldHandler, HTTPRequestHandler handler) {
+		if (oldHandler != null && oldHandler != handler) {
+			Log.warn("HTTP path " + registerURI + " was already registered. Replacing " + oldHandler.getClass().getName() + ".");
+		}
+	}
+
+	/**
+	 * Returns the number of registered HTTP handlers.
+	 * 
+	 * @return the number of registered HTTP handlers.
+	 */
+	public int getHandlerCount() {
+		return handlers.size();
+	}
+
 	/**
 	 * Removes registration of a relative HTTP path for a
 	 * {@link HTTPRequestHandler}.
@@ -263,7 +287,7 @@ public class HTTPServer {
 	 */
 	public HTTPRequestHandler unregister(String path) {
 		URI registerURI = new URI(path, base);
-		HTTPRequestHandler handler = (HTTPRequestHandler) handlers.remove(registerURI);
+		HTTPRequestHandler handler = handlers.remove(registerURI.getPath(), null);
 		if (UNREGISTER_SHUTDOWN && handlers.isEmpty()) {
 			try {
 				TCPServer.close(ipAddress, port);
@@ -284,8 +308,7 @@ public class HTTPServer {
 	 */
 	public HTTPRequestHandler unregister(String path, InternetMediaType type) {
 		URI registerURI = new URI(path, base);
-		MappingEntry entry = new MappingEntry(registerURI, type);
-		HTTPRequestHandler handler = (HTTPRequestHandler) handlers.remove(entry);
+		HTTPRequestHandler handler = handlers.remove(registerURI.getPath(), type);
 		if (UNREGISTER_SHUTDOWN && handlers.isEmpty()) {
 			try {
 				TCPServer.close(ipAddress, port);
@@ -327,11 +350,13 @@ public class HTTPServer {
 		/*
 		 * Unregister all timeouts.
 		 */
-		Iterator it = timeouts.iterator();
-		while (it.hasNext()) {
-			HandlerTimeOut timeout = (HandlerTimeOut) it.next();
-			WatchDog.getInstance().unregister(timeout);
-			it.remove();
+		synchronized (timeouts) {
+			Iterator it = timeouts.iterator();
+			while (it.hasNext()) {
+				HandlerTimeOut timeout = (HandlerTimeOut) it.next();
+				WatchDog.getInstance().unregister(timeout);
+				it.remove();
+			}
 		}
 		running = false;
 	}
@@ -363,15 +388,41 @@ public class HTTPServer {
 			/*
 			 * Default HTTP 1.1 behavior.
 			 */
-			hand++;
-
-			boolean firstRequest = true;
+			synchronized (handLock) {
+				hand++;
+			}
 
 			HandlerTimeOut timeout = new HandlerTimeOut(connection, keepalive);
+			synchronized (timeouts) {
+				timeouts.add(timeout);
+			}
+			try {
+				handleRequests(connection, timeout);
+			} finally {
+				if (!timeout.keepAlive()) {
+					connection.setKeepAlive(false);
+				}
+				synchronized (timeouts) {
+					timeouts.remove(timeout);
+				}
+				synchronized (handLock) {
+					hand--;
+				}
+			}
+		}
+
+		private void handleRequests(TCPConnection connection, HandlerTimeOut timeout) throws IOException {
+			boolean firstRequest = true;
 
 			ProtocolData protocolData = connection.getProtocolData();
 			MonitorStreamFactory monFac = DPWSFramework.getMonitorStreamFactory();
 
+			/*
+			 * One read buffer for all requests, it may hold the beginning of
+			 * the next request.
+			 */
+			HTTPInputBuffer connectionIn = new HTTPInputBuffer(connection.getInputStream());
+
 			/*
 			 * Keep persistent HTTP connection.
 			 */
@@ -384,13 +435,12 @@ public class HTTPServer {
 					context = monFac.getNewMonitoringContextIn(protocolData);
 				}
 
-				InputStream in = connection.getInputStream();
+				InputStream in = connectionIn;
 				OutputStream out = connection.getOutputStream();
 
 				HTTPRequestHeader requestHeader = null;
 				try {
 					WatchDog.getInstance().register(timeout, REQUEST_TIMEOUT);
-					timeouts.add(timeout);
 					requestHeader = HTTPRequestUtil.handleRequest(in);
 					WatchDog.getInstance().unregister(timeout);
 				} catch (ProtocolException e) {
@@ -403,6 +453,7 @@ public class HTTPServer {
 					responseHeader.addHeaderFieldValue(HTTPConstants.HTTP_HEADER_CONNECTION, HTTPConstants.HTTP_HEADERVALUE_CONNECTION_CLOSE);
 					responseHeader.addHeaderFieldValue(HTTPConstants.HTTP_HEADER_CONTENT_LENGTH, "0");
 					String note = "Invalid HTTP request: " + e.getMessage();
+					timeout.setKeepAlive(false);
 					responseHeader.toStream(out);
 					out.write(note.getBytes());
 					Log.warn("Closing HTTP connection. " + note + ".");
@@ -450,6 +501,7 @@ public class HTTPServer {
 					HTTPResponseHeader response = HTTPResponseUtil.getResponseHeader(400);
 					response.addHeaderFieldValue(HTTPConstants.HTTP_HEADER_CONNECTION, HTTPConstants.HTTP_HEADERVALUE_CONNECTION_CLOSE);
 					String note = "Neither content length nor chunked encoding found. Cannot determinate content length.";
+					timeout.setKeepAlive(false);
 					response.toStream(out);
 					out.write(note.getBytes());
 					break;
@@ -628,6 +680,13 @@ public class HTTPServer {
 				}
 
 				String encodingResponse = responseHeader.getHeaderFieldValue(HTTPConstants.HTTP_HEADER_TRANSFER_ENCODING);
+				if (HTTPConstants.HTTP_HEADERVALUE_TRANSFERCODING_CHUNKED.equals(encodingResponse) && !HTTPConstants.HTTP_VERSION11.equals(requestHeader.getVersion())) {
+					/*
+					 * HTTP/1.0 knows no chunks, buffer to get the length.
+					 */
+					responseHeader.removeHeaderFieldValue(HTTPConstants.HTTP_HEADER_TRANSFER_ENCODING);
+					encodingResponse = null;
+				}
 				int contentLengthResponse = (responseHeader.getHeaderFieldValue(HTTPConstants.HTTP_HEADER_CONTENT_LENGTH) != null) ? Integer.parseInt(responseHeader.getHeaderFieldValue(HTTPConstants.HTTP_HEADER_CONTENT_LENGTH).trim()) : -1;
 
 				
@@ -715,8 +774,6 @@ public class HTTPServer {
 				 */
 				consumeStream(in);
 			}
-
-			hand--;
 		}
 
 		/**
@@ -725,14 +782,16 @@ public class HTTPServer {
 		 */
 		private void consumeStream(InputStream in) throws IOException {
 			if (EAT) {
-				int n = -1;
-				while (in.read() != -1) {
+				int n = 0;
+				byte[] b = new byte[1024];
+				int k;
+				while ((k = in.read(b, 0, b.length)) != -1) {
 					/*
 					 * Eat the omitted bytes from stream...
 					 */
-					n++;
+					n += k;
 				}
-				if (n > -1) {
+				if (n > 0) {
 					Log.warn("The registered handler has not consumed the HTTP body from the request. Eating " + n + " bytes.");
 				}
 			}
@@ -751,48 +810,14 @@ public class HTTPServer {
 	 * @return the HTTP handler which match path and content type.
 	 */
 	private HTTPRequestHandler getHTTPHandler(String path, InternetMediaType type) {
-		URI requestURI = new URI(path, base);
-		MappingEntry entry = new MappingEntry(requestURI, type);
-
-		HTTPRequestHandler handler = null;
-
-		/*
-		 * Tries to get specific handler for the given type.
-		 */
-		handler = (HTTPRequestHandler) handlers.get(entry);
-
-		/*
-		 * No specific handler found? Tries to find an handler which accepts
-		 * every type for this address.
-		 */
-		if (handler == null) {
-			handler = (HTTPRequestHandler) handlers.get(requestURI);
-		}
-
-		if (BACKTRACK) {
+		if (!HTTPHandlerIndex.isPlainPath(path)) {
 			/*
-			 * No handler found? Does some backtracking... Looks up along the
-			 * path, maybe some handler is there.
+			 * Escaped characters or dot segments? Decode and normalize the
+			 * path like the registered ones.
 			 */
-			if (handler == null && requestURI.getPathDeepness() > 0) {
-				URI backtrackURI = requestURI;
-				while (backtrackURI.getPathDeepness() > 0) {
-					int deepness = backtrackURI.getPathDeepness();
-					deepness--;
-					String backtrackPath = backtrackURI.getPath(deepness);
-					backtrackURI = new URI(backtrackURI, backtrackPath);
-					entry = new MappingEntry(requestURI, type);
-					handler = (HTTPRequestHandler) handlers.get(entry);
-					if (handler == null) {
-						handler = (HTTPRequestHandler) handlers.get(backtrackURI);
-					}
-					if (handler != null) {
-						break;
-					}
-				}
-			}
+			path = new URI(path, base).getPath();
 		}
-		return handler;
+		return handlers.get(path, type, BACKTRACK);
 	}
 
 	/**
@@ -831,48 +856,4 @@ public class HTTPServer {
 
 	}
 
-	/**
-	 * This entry contains a URI and content type.
-	 */
-	private class MappingEntry {
-
-		private URI					uri		= null;
-
-		private InternetMediaType	type	= null;
-
-		MappingEntry(URI uri, InternetMediaType type) {
-			this.uri = uri;
-			this.type = type;
-		}
-
-		public int hashCode() {
-			final int prime = 31;
-			int result = 1;
-			result = prime * result + getOuterType().hashCode();
-			result = prime * result + ((type == null) ? 0 : type.hashCode());
-			result = prime * result + ((uri == null) ? 0 : uri.hashCode());
-			return result;
-		}
-
-		public boolean equals(Object obj) {
-			if (this == obj) return true;
-			if (obj == null) return false;
-			if (getClass() != obj.getClass()) return false;
-			MappingEntry other = (MappingEntry) obj;
-			if (!getOuterType().equals(other.getOuterType())) return false;
-			if (type == null) {
-				if (other.type != null) return false;
-			} else if (!type.equals(other.type)) return false;
-			if (uri == null) {
-				if (other.uri != null) return false;
-			} else if (!uri.equals(other.uri)) return false;
-			return true;
-		}
-
-		private HTTPServer getOuterType() {
-			return HTTPServer.this;
-		}
-
-	}
-
 }
@@ -10,6 +10,7 @@
 package org.ws4d.java.communication.protocol.soap;
 
 import org.ws4d.java.DPWSFramework;
+import org.ws4d.java.communication.NoContentResponseCallback;
 import org.ws4d.java.communication.ProtocolData;
 import org.ws4d.java.communication.ResponseCallback;
 import org.ws4d.java.message.FaultMessage;
@@ -31,7 +32,7 @@ import org.ws4d.java.types.XAddressInfo;
  * to continue handling further messages, without waiting for the callback to be
  * finished.
  */
-class NonBlockingResponseCallback implements ResponseCallback {
+class NonBlockingResponseCallback implements NoContentResponseCallback {
 
 	private ResponseCallback	to					= null;
 
@@ -341,6 +342,31 @@ class NonBlockingResponseCallback implements ResponseCallback {
 		});
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see
+	 * org.ws4d.java.communication.NoContentResponseCallback#handleNoContent
+	 * (org.ws4d.java.message.Message, org.ws4d.java.communication.ProtocolData)
+	 */
+	public void handleNoContent(Message request, final ProtocolData protocolData) {
+		if (!(to instanceof NoContentResponseCallback)) {
+			return;
+		}
+		final Message req = request;
+		final NoContentResponseCallback callback = (NoContentResponseCallback) to;
+		DPWSFramework.getThreadPool().execute(new Runnable() {
+
+			/*
+			 * (non-Javadoc)
+			 * @see java.lang.Runnable#run()
+			 */
+			public void run() {
+				callback.handleNoContent(req, protocolData);
+			}
+
+		});
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see
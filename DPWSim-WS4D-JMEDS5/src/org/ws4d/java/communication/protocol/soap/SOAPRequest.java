@@ -30,6 +30,7 @@ import org.ws4d.java.communication.protocol.mime.DefaultMIMEHandler;
 import org.ws4d.java.communication.protocol.mime.MIMEEntityInput;
 import org.ws4d.java.communication.protocol.mime.MIMEHandler;
 import org.ws4d.java.communication.protocol.soap.generator.MessageReceiver;
+import org.ws4d.java.communication.protocol.soap.generator.NoContentMessageReceiver;
 import org.ws4d.java.communication.protocol.soap.generator.SOAPMessageGeneratorFactory;
 import org.ws4d.java.configuration.DPWSProperties;
 import org.ws4d.java.configuration.HTTPProperties;
@@ -103,6 +104,11 @@ public class SOAPRequest implements HTTPRequest {
 			if (request.getType() == Message.INVOKE_MESSAGE) {
 				header.addHeaderFieldValue(HTTPConstants.HTTP_HEADER_TRANSFER_ENCODING, HTTPConstants.HTTP_HEADERVALUE_TRANSFERCODING_CHUNKED);
 			}
+		} else if (chunkedMode == DPWSProperties.HTTP_CHUNKED_ON_FOR_INVOKE_AND_METADATA) {
+			int type = request.getType();
+			if (type == Message.INVOKE_MESSAGE || type == Message.GET_MESSAGE || type == Message.GET_METADATA_MESSAGE) {
+				header.addHeaderFieldValue(HTTPConstants.HTTP_HEADER_TRANSFER_ENCODING, HTTPConstants.HTTP_HEADERVALUE_TRANSFERCODING_CHUNKED);
+			}
 		}
 
 		String contentType = InternetMediaType.getSOAPXML().getMediaType();
@@ -153,6 +159,9 @@ public class SOAPRequest implements HTTPRequest {
 					int httpStatus = header.getStatus();
 					// TODO filter other potentially empty HTTP responses
 					if (httpStatus == 202 || httpStatus == 204) {
+						if (receiver instanceof NoContentMessageReceiver) {
+							((NoContentMessageReceiver) receiver).receiveNoContent(protocolData);
+						}
 						return;
 					}
 
@@ -178,7 +187,7 @@ public class SOAPRequest implements HTTPRequest {
 					}
 
 					if (hasBody) {
-						SOAPMessageGeneratorFactory.getInstance().getSOAP2MessageGeneratorForCurrentThread().deliverMessage(body, r, protocolData);
+						SOAPMessageGeneratorFactory.getInstance().deliverMessage(body, r, protocolData);
 					} else {
 						/*
 						 * regardless of the actual HTTP status code (be it a
@@ -216,7 +225,7 @@ public class SOAPRequest implements HTTPRequest {
 						r = receiver;
 					}
 
-					SOAPMessageGeneratorFactory.getInstance().getSOAP2MessageGeneratorForCurrentThread().deliverMessage(part.getBodyInputStream(), r, protocolData);
+					SOAPMessageGeneratorFactory.getInstance().deliverMessage(part.getBodyInputStream(), r, protocolData);
 				}
 
 				/*
@@ -235,6 +244,35 @@ public class SOAPRequest implements HTTPRequest {
 			});
 			mimeHandler.register(2, -1, AttachmentStoreHandler.getInstance());
 			return mimeHandler;
+		} else if (mediaType.getType() == null) {
+			/*
+			 * an empty response without content type, e.g. HTTP 202 Accepted
+			 * for a one-way message
+			 */
+			return new HTTPResponseHandler() {
+
+				/*
+				 * (non-Javadoc)
+				 * @see
+				 * org.ws4d.java.communication.protocol.http.HTTPResponseHandler
+				 * #handle(org.ws4d.java.communication.protocol.http.header.
+				 * HTTPResponseHeader, java.io.InputStream,
+				 * org.ws4d.java.communication.protocol.http.HTTPRequest,
+				 * org.ws4d.java.communication.DPWSProtocolData,
+				 * org.ws4d.java.io.monitor.MonitoringContext)
+				 */
+				public void handle(HTTPResponseHeader header, InputStream body, HTTPRequest request, ProtocolData protocolData, MonitoringContext context) throws IOException {
+					int httpStatus = header.getStatus();
+					if (httpStatus >= 200 && httpStatus < 300) {
+						if (receiver instanceof NoContentMessageReceiver) {
+							((NoContentMessageReceiver) receiver).receiveNoContent(protocolData);
+						}
+					} else {
+						receiver.receive(FaultMessage.createEndpointUnavailableFault(SOAPRequest.this.request), protocolData);
+					}
+				}
+
+			};
 		} else if (InternetMediaType.getTextHTML().equals(mediaType)) {
 			/*
 			 * we may get text/html response e.g. when other side sends a
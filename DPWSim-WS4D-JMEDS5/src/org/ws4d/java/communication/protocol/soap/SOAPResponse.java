@@ -80,6 +80,11 @@ public class SOAPResponse extends HTTPResponse {
 			if (response.getType() == Message.INVOKE_MESSAGE) {
 				header.addHeaderFieldValue(HTTPConstants.HTTP_HEADER_TRANSFER_ENCODING, HTTPConstants.HTTP_HEADERVALUE_TRANSFERCODING_CHUNKED);
 			}
+		} else if (chunkedMode == DPWSProperties.HTTP_CHUNKED_ON_FOR_INVOKE_AND_METADATA) {
+			int type = response.getType();
+			if (type == Message.INVOKE_MESSAGE || type == Message.GET_RESPONSE_MESSAGE || type == Message.GET_METADATA_RESPONSE_MESSAGE) {
+				header.addHeaderFieldValue(HTTPConstants.HTTP_HEADER_TRANSFER_ENCODING, HTTPConstants.HTTP_HEADERVALUE_TRANSFERCODING_CHUNKED);
+			}
 		}
 
 		String contentType = InternetMediaType.getSOAPXML().getMediaType();
@@ -27,14 +27,18 @@ import org.ws4d.java.communication.monitor.MonitoredMessageReceiver;
 import org.ws4d.java.communication.monitor.MonitoredOutputStream;
 import org.ws4d.java.communication.monitor.MonitoringContext;
 import org.ws4d.java.communication.protocol.soap.generator.DefaultMessageDiscarder;
+import org.ws4d.java.communication.protocol.soap.generator.Message2SOAPGenerator;
 import org.ws4d.java.communication.protocol.soap.generator.MessageReceiver;
 import org.ws4d.java.communication.protocol.soap.generator.SOAPMessageGeneratorFactory;
 import org.ws4d.java.message.Message;
 import org.ws4d.java.message.SOAPHeader;
 import org.ws4d.java.structures.HashMap;
-import org.ws4d.java.structures.MessageIdBuffer;
+import org.ws4d.java.structures.MessageIdFilter;
 import org.ws4d.java.types.ByteArrayBuffer;
+import org.ws4d.java.util.Log;
 import org.ws4d.java.util.Math;
+import org.ws4d.java.util.TimedEntry;
+import org.ws4d.java.util.WatchDog;
 
 /**
  * A SOAP-over-UDP client, which allows the sending of a SOAP message as a UDP
@@ -95,7 +99,8 @@ public class SOAPoverUDPClient {
 	 * message.
 	 * <p>
 	 * The SOAP message will be sent twice as described in the DPWS 1.1
-	 * specification.
+	 * specification. Only the first transmission happens before this method
+	 * returns, the repetitions are scheduled on the {@link WatchDog}.
 	 * </p>
 	 * 
 	 * @param dstAddress destination address of the SOAP message.
@@ -109,41 +114,38 @@ public class SOAPoverUDPClient {
 	public void send(IPAddress dstAddress, int dstPort, Message message, SOAPoverUDPHandler handler, ProtocolData protocolData) throws IOException {
 		if (client.isClosed()) return;
 
-		ByteArrayBuffer b = SOAPMessageGeneratorFactory.getInstance().getMessage2SOAPGeneratorForCurrentThread().generateSOAPMessage(message, protocolData);
-
-		boolean putToCache = client.getPort() == 0;
-		sendInternal(dstAddress, dstPort, message, handler, protocolData, b);
-		if (putToCache) {
-			String key = client.getIPAddress().getAddress() + "@" + client.getPort() + "%" + client.getIfaceName();
-			synchronized (this.getClass()) {
-				clients.put(key, this);
-			}
-		}
-
 		int repeatCount = SOAPoverUDPClient.MULTICAST_UNICAST_UDP_REPEAT;
-		if (repeatCount <= 0) {
-			return;
-		}
+		byte[] copy = null;
 
-		int delay = Math.nextInt(SOAPoverUDPClient.UDP_MIN_DELAY, SOAPoverUDPClient.UDP_MAX_DELAY);
-		while (true) {
-			try {
-				Thread.sleep(delay);
-			} catch (InterruptedException e) {
-				// ignore
-			}
+		SOAPMessageGeneratorFactory factory = SOAPMessageGeneratorFactory.getInstance();
+		Message2SOAPGenerator generator = factory.acquireMessage2SOAPGenerator();
+		try {
+			ByteArrayBuffer b = generator.generateSOAPMessage(message, protocolData);
 
+			boolean putToCache = client.getPort() == 0;
 			sendInternal(dstAddress, dstPort, message, handler, protocolData, b);
-
-			if (--repeatCount == 0) {
-				break;
+			if (putToCache) {
+				String key = client.getIPAddress().getAddress() + "@" + client.getPort() + "%" + client.getIfaceName();
+				synchronized (this.getClass()) {
+					clients.put(key, this);
+				}
 			}
 
-			delay *= 2;
-			if (delay > SOAPoverUDPClient.UDP_UPPER_DELAY) {
-				delay = SOAPoverUDPClient.UDP_UPPER_DELAY;
+			if (repeatCount > 0) {
+				// the generator reuses its buffer, keep a copy for the
+				// repetitions
+				copy = new byte[b.getContentLength()];
+				System.arraycopy(b.getBuffer(), 0, copy, 0, copy.length);
 			}
+		} finally {
+			factory.releaseMessage2SOAPGenerator(generator);
 		}
+		if (copy == null) {
+			return;
+		}
+
+		Repetition repetition = new Repetition(dstAddress, dstPort, message, handler, protocolData, new ByteArrayBuffer(copy, copy.length), repeatCount);
+		WatchDog.getInstance().register(repetition, repetition.delay);
 	}
 
 	private void sendInternal(IPAddress dstAddress, int dstPort, Message message, SOAPoverUDPHandler handler, ProtocolData protocolData, ByteArrayBuffer b) throws IOException {
@@ -238,15 +240,68 @@ public class SOAPoverUDPClient {
 				r = receiver;
 			}
 
-			SOAPMessageGeneratorFactory.getInstance().getSOAP2MessageGeneratorForCurrentThread().deliverMessage(in, r, protocolData, discarder);
+			SOAPMessageGeneratorFactory.getInstance().deliverMessage(in, r, protocolData, discarder);
 			in.close();
 		}
 
 	}
 
+	/**
+	 * Repeats a sent message with growing delays, without keeping a thread
+	 * busy in between.
+	 */
+	private class Repetition extends TimedEntry {
+
+		private final IPAddress				dstAddress;
+
+		private final int					dstPort;
+
+		private final Message				message;
+
+		private final SOAPoverUDPHandler	handler;
+
+		private final ProtocolData			protocolData;
+
+		private final ByteArrayBuffer		buffer;
+
+		private int							remaining;
+
+		int									delay	= Math.nextInt(SOAPoverUDPClient.UDP_MIN_DELAY, SOAPoverUDPClient.UDP_MAX_DELAY);
+
+		Repetition(IPAddress dstAddress, int dstPort, Message message, SOAPoverUDPHandler handler, ProtocolData protocolData, ByteArrayBuffer buffer, int remaining) {
+			this.dstAddress = dstAddress;
+			this.dstPort = dstPort;
+			this.message = message;
+			this.handler = handler;
+			this.protocolData = protocolData;
+			this.buffer = buffer;
+			this.remaining = remaining;
+		}
+
+		protected void timedOut() {
+			if (client.isClosed()) return;
+			try {
+				sendInternal(dstAddress, dstPort, message, handler, protocolData, buffer);
+			} catch (IOException e) {
+				Log.warn("Could not repeat SOAP-over-UDP message to " + dstAddress + ":" + dstPort + ". " + e.getMessage());
+				return;
+			}
+
+			if (--remaining == 0) {
+				return;
+			}
+
+			delay *= 2;
+			if (delay > SOAPoverUDPClient.UDP_UPPER_DELAY) {
+				delay = SOAPoverUDPClient.UDP_UPPER_DELAY;
+			}
+			WatchDog.getInstance().register(this, delay);
+		}
+	}
+
 	public static class DuplicateMessageDiscarder extends DefaultMessageDiscarder {
 
-		private final MessageIdBuffer	relMessages	= new MessageIdBuffer();
+		private final MessageIdFilter	relMessages	= new MessageIdFilter();
 
 		public int discardMessage(SOAPHeader header, ProtocolData protocolData) {
 			int superResult = super.discardMessage(header, protocolData);
@@ -26,12 +26,13 @@ import org.ws4d.java.constants.WSDConstants;
 import org.ws4d.java.constants.WSEConstants;
 import org.ws4d.java.constants.WSSecurityConstants;
 import org.ws4d.java.constants.XMLConstants;
+import org.ws4d.java.io.xml.UTF8Writer;
 import org.ws4d.java.io.xml.XmlSerializer;
 import org.ws4d.java.io.xml.XmlSerializerImplementation;
+import org.ws4d.java.message.BodyTemplate;
 import org.ws4d.java.message.Message;
 import org.ws4d.java.message.SOAPHeader;
 import org.ws4d.java.security.SecurityManager;
-import org.ws4d.java.structures.HashMap;
 import org.ws4d.java.types.ByteArrayBuffer;
 import org.ws4d.java.util.Log;
 import org.ws4d.java.util.WS4DIllegalStateException;
@@ -44,14 +45,16 @@ import org.xmlpull.v1.IllegalStateException;
  */
 public class DefaultMessage2SOAPGenerator implements Message2SOAPGenerator {
 
-	protected static final HashMap	BYTE_ARRAY_POOL	= new HashMap(10);
-
 	protected XmlSerializer			serializer		= new XmlSerializerImplementation();
 
 	protected MessageSerializer		msgSerializer	= new DefaultMessageSerializer();
 
 	protected ConstantsHelper		helper			= null;
 
+	private ReusableByteArrayOutputStream	byteStream		= null;
+
+	private UTF8Writer						writer			= null;
+
 	/*
 	 * (non-Javadoc)
 	 * @see
@@ -88,16 +91,15 @@ public class DefaultMessage2SOAPGenerator implements Message2SOAPGenerator {
 		return new ByteArrayBuffer(tmpOutput.getBuffer(), tmpOutput.getCurrentSize());
 	}
 
-	protected static ReusableByteArrayOutputStream getByteStream() {
-		synchronized (BYTE_ARRAY_POOL) {
-			Thread t = Thread.currentThread();
-			ReusableByteArrayOutputStream bout = (ReusableByteArrayOutputStream) BYTE_ARRAY_POOL.get(t);
-			if (bout == null) {
-				bout = new ReusableByteArrayOutputStream();
-				BYTE_ARRAY_POOL.put(t, bout);
-			}
-			return bout;
+	/**
+	 * Returns the buffer of this generator. The bytes generated last stay
+	 * valid until the next message is generated.
+	 */
+	protected ReusableByteArrayOutputStream getByteStream() {
+		if (byteStream == null) {
+			byteStream = new ReusableByteArrayOutputStream();
 		}
+		return byteStream;
 	}
 
 	/**
@@ -107,8 +109,21 @@ public class DefaultMessage2SOAPGenerator implements Message2SOAPGenerator {
 		super();
 	}
 
+	/**
+	 * Sets the stream to serialize to. The characters are encoded into the
+	 * buffer of this generator and reach <code>out</code> in blocks, so a
+	 * large message is never held as a whole.
+	 */
 	protected void setOutput(OutputStream out) throws IOException {
-		serializer.setOutput(out, XMLConstants.ENCODING);
+		if (!"UTF-8".equals(XMLConstants.ENCODING)) {
+			serializer.setOutput(out, XMLConstants.ENCODING);
+			return;
+		}
+		if (writer == null) {
+			writer = new UTF8Writer();
+		}
+		writer.setOutput(out);
+		serializer.setOutput(writer);
 	}
 
 	/**
@@ -126,10 +141,16 @@ public class DefaultMessage2SOAPGenerator implements Message2SOAPGenerator {
 
 		if (Log.isDebug()) Log.debug("<O> Communicate over :" + msg.getHeader().getProtocolInfo().getDisplayName() + ", Action: " + msg.getAction() + ", Id: " + msg.getMessageId(), Log.DEBUG_LAYER_FRAMEWORK);
 
-		if ((msg.getType() != DPWSMessageConstants.BYE_MESSAGE && msg.getType() != DPWSMessageConstants.HELLO_MESSAGE && msg.getType() != DPWSMessageConstants.PROBE_MATCHES_MESSAGE && msg.getType() != DPWSMessageConstants.RESOLVE_MATCHES_MESSAGE) || (!msg.isSecure() && serializer.getType() != XmlSerializerImplementation.XML_SERIALIZER)) {
-			XmlSerializer sz = serializer;
-			serializer = new XmlSerializerImplementation();
-			serializer.setOutput(sz.getOutput());
+		if ((msg.getType() != DPWSMessageConstants.BYE_MESSAGE && msg.getType() != DPWSMessageConstants.HELLO_MESSAGE && msg.getType() != DPWSMessageConstants.PROBE_MATCHES_MESSAGE && msg.getType() != DPWSMessageConstants.RESOLVE_MATCHES_MESSAGE) || !msg.isSecure()) {
+			/*
+			 * setOutput() has reset the serializer, only a canonical one left
+			 * from a signed message must be replaced
+			 */
+			if (serializer.getType() != XmlSerializerImplementation.XML_SERIALIZER) {
+				XmlSerializer sz = serializer;
+				serializer = new XmlSerializerImplementation();
+				serializer.setOutput(sz.getOutput());
+			}
 			// if the message should be send secure
 			// the canonical serializer is used.
 		} else if (msg.isSecure() && (msg.getType() == DPWSMessageConstants.BYE_MESSAGE || msg.getType() == DPWSMessageConstants.HELLO_MESSAGE || msg.getType() == DPWSMessageConstants.PROBE_MATCHES_MESSAGE || msg.getType() == DPWSMessageConstants.RESOLVE_MATCHES_MESSAGE)) {
@@ -164,7 +185,24 @@ public class DefaultMessage2SOAPGenerator implements Message2SOAPGenerator {
 		}
 
 		// generate Body
-		msgSerializer.serialize(msg, serializer, pd);
+		BodyTemplate template = (!msg.isSecure() && writer != null && serializer.getOutput() == writer) ? msg.getBodyTemplate() : null;
+		if (template == null) {
+			msgSerializer.serialize(msg, serializer, pd);
+		} else {
+			/*
+			 * the header is closed, so everything serialized so far is
+			 * within the writer
+			 */
+			int version = helper.getDPWSVersion();
+			byte[] body = template.getBody(version);
+			if (body != null) {
+				writer.writeBytes(body);
+			} else {
+				writer.startRecording();
+				msgSerializer.serialize(msg, serializer, pd);
+				template.setBody(version, writer.stopRecording());
+			}
+		}
 
 		// Close Envelope , Document
 		serializer.endTag(SOAPConstants.SOAP12_NAMESPACE_NAME, SOAPConstants.SOAP_ELEM_ENVELOPE);
@@ -229,6 +267,10 @@ public class DefaultMessage2SOAPGenerator implements Message2SOAPGenerator {
 		}
 	}
 
+	/**
+	 * Buffer of one datagram for {@link #generateSOAPMessage(Message,
+	 * ProtocolData)}. Messages sent over TCP are streamed instead.
+	 */
 	private static class ReusableByteArrayOutputStream extends OutputStream {
 
 		private final byte[]	buf		= new byte[FrameworkProperties.getInstance().getMaxDatagramSize()];
@@ -263,8 +305,8 @@ public class DefaultMessage2SOAPGenerator implements Message2SOAPGenerator {
 		 * @see java.io.OutputStream#write(byte[], int, int)
 		 */
 		public void write(byte[] b, int off, int len) throws IOException {
-			if (pointer + (len - off) >= buf.length) {
-				throw new IOException("Buffer size exceeded (current=" + buf.length + ", new to store=" + (len - off));
+			if (pointer + len > buf.length) {
+				throw new IOException("Buffer size exceeded (current=" + buf.length + ", new to store=" + len);
 			}
 			System.arraycopy(b, off, buf, pointer, len);
 			pointer += len;
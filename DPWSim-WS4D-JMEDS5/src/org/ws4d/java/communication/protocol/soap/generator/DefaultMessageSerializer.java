@@ -202,9 +202,9 @@ class DefaultMessageSerializer extends MessageSerializer {
 	public void serialize(InvokeMessage message, XmlSerializer serializer, ProtocolData protocolData) throws IOException {
 		// ################## Body-StartTag ##################
 		serializer.startTag(SOAPConstants.SOAP12_NAMESPACE_NAME, SOAPConstants.SOAP_ELEM_BODY);
-		ParameterValue parameters = message.getContent();
-		if (parameters != null) {
-			parameters.serialize(serializer);
+		ParameterValue[] contents = message.getContents();
+		for (int i = 0; i < contents.length; i++) {
+			contents[i].serialize(serializer);
 		}
 		// ################## BODY-EndTag ##################
 		serializer.endTag(SOAPConstants.SOAP12_NAMESPACE_NAME, SOAPConstants.SOAP_ELEM_BODY);
@@ -16,18 +16,14 @@ import java.io.InputStream;
 import org.ws4d.java.DPWSFramework;
 import org.ws4d.java.communication.CommunicationManager;
 import org.ws4d.java.communication.CommunicationUtil;
-import org.ws4d.java.communication.DPWSCommunicationManager;
 import org.ws4d.java.communication.DPWSProtocolData;
 import org.ws4d.java.communication.ProtocolData;
 import org.ws4d.java.communication.VersionMismatchException;
 import org.ws4d.java.communication.monitor.MonitorStreamFactory;
 import org.ws4d.java.communication.monitor.MonitoringContext;
 import org.ws4d.java.constants.ConstantsHelper;
-import org.ws4d.java.constants.MEXConstants;
 import org.ws4d.java.constants.SOAPConstants;
 import org.ws4d.java.constants.WSAConstants;
-import org.ws4d.java.constants.WSEConstants;
-import org.ws4d.java.constants.WXFConstants;
 import org.ws4d.java.io.xml.ElementParser;
 import org.ws4d.java.io.xml.XmlPullParserSupport;
 import org.ws4d.java.message.FaultMessage;
@@ -59,10 +55,8 @@ import org.ws4d.java.service.OperationDescription;
 import org.ws4d.java.service.parameter.ParameterDefinition;
 import org.ws4d.java.service.parameter.ParameterValue;
 import org.ws4d.java.structures.ArrayList;
-import org.ws4d.java.structures.HashSet;
 import org.ws4d.java.structures.List;
 import org.ws4d.java.types.AttributedURI;
-import org.ws4d.java.types.URI;
 import org.ws4d.java.util.Log;
 import org.ws4d.java.wsdl.WSDLOperation;
 import org.xmlpull.v1.XmlPullParser;
@@ -73,7 +67,7 @@ public class DefaultSOAP2MessageGenerator implements SOAP2MessageGenerator {
 	protected static final DefaultMessageDiscarder	DEFAULT_DISCARDER	= new DefaultMessageDiscarder();
 
 	/**
-	 * This map holds all (statically) known message handlers.
+	 * The constants of the DPWS version of the last message.
 	 */
 	protected static ConstantsHelper				helper;
 
@@ -174,7 +168,7 @@ public class DefaultSOAP2MessageGenerator implements SOAP2MessageGenerator {
 			AttributedURI relatesTo = header.getRelatesTo();
 
 			List l = new ArrayList();
-			OperationDescription operation = to.getOperation(msg.getAction().toString());
+			OperationDescription operation = to.getOperation(actionName);
 
 			while (parser.getEventType() != XmlPullParser.END_TAG) {
 				/*
@@ -188,6 +182,10 @@ public class DefaultSOAP2MessageGenerator implements SOAP2MessageGenerator {
 					element = operation.getInput();
 				}
 				l.add(ParameterDefinition.parse(parser, element, operation));
+				if (parser.getEventType() != XmlPullParser.END_TAG) {
+					// simple content leaves the parser on the text of the part
+					parser.nextTag();
+				}
 				parser.nextTag();
 			}
 
@@ -201,7 +199,15 @@ public class DefaultSOAP2MessageGenerator implements SOAP2MessageGenerator {
 					break;
 				}
 				default: {
-					throw new UnexpectedElementException("too much message parts: " + l.size() + "; next part=" + l.get(1).toString());
+					if (relatesTo != null || operation.getType() != WSDLOperation.TYPE_NOTIFICATION) {
+						throw new UnexpectedElementException("too much message parts: " + l.size() + "; next part=" + l.get(1).toString());
+					}
+					// a batch of notifications
+					ParameterValue[] contents = new ParameterValue[l.size()];
+					for (int i = 0; i < contents.length; i++) {
+						contents[i] = (ParameterValue) l.get(i);
+					}
+					msg.setContents(contents);
 				}
 			}
 			to.receive(msg, protocolData);
@@ -209,79 +215,20 @@ public class DefaultSOAP2MessageGenerator implements SOAP2MessageGenerator {
 	}
 
 	// Added 201-11-12 SSch: to ease extension
-	protected boolean handleMessage(ElementParser parser, String actionName, SOAPHeader header, MessageReceiver to, ProtocolData protocolData) throws XmlPullParserException, IOException, VersionMismatchException {
-		// The right Message parse itself.
-		if (helper.getWSDActionHello().equals(actionName)) {
-			HelloMessage hm = msgParser.parseHelloMessage(header, parser, protocolData, helper);
-			to.receive(hm, protocolData);
-		} else if (helper.getWSDActionBye().equals(actionName)) {
-			ByeMessage bm = msgParser.parseByeMessage(header, parser, protocolData, helper);
-			to.receive(bm, protocolData);
-		} else if (helper.getWSDActionProbe().equals(actionName)) {
-			ProbeMessage pm = msgParser.parseProbeMessage(header, parser, protocolData, helper);
-			to.receive(pm, protocolData);
-		} else if (helper.getWSDActionProbeMatches().equals(actionName)) {
-			ProbeMatchesMessage pmm = msgParser.parseProbeMatchesMessage(header, parser, protocolData, helper);
-			to.receive(pmm, protocolData);
-		} else if (helper.getWSDActionResolve().equals(actionName)) {
-			ResolveMessage rm = msgParser.parseResolveMessage(header, parser, protocolData, helper);
-			to.receive(rm, protocolData);
-		} else if (helper.getWSDActionResolveMatches().equals(actionName)) {
-			ResolveMatchesMessage rmm = msgParser.parseResolveMatchesMessage(header, parser, protocolData, helper);
-			to.receive(rmm, protocolData);
-		} else if (WXFConstants.WXF_ACTION_GET.equals(actionName)) {
-			URI transportAddress = protocolData.getTransportAddress();
-			if (transportAddress != null && DPWSCommunicationManager.getRegisterForGetMetadata().contains(transportAddress)) {
-				to.receive(new GetMetadataMessage(header), protocolData);
-			} else {
-				to.receive(new GetMessage(header), protocolData);
-			}
-		} else if (WXFConstants.WXF_ACTION_GETRESPONSE.equals(actionName)) {
-			HashSet check = (HashSet) DPWSCommunicationManager.getMessageIDsForGetMetadataMapping();
-			if (check.remove(header.getRelatesTo())) {
-				GetMetadataResponseMessage gmrm = msgParser.parseGetMetadataResponseMessage(header, parser, protocolData, helper);
-				to.receive(gmrm, protocolData);
-			} else {
-				GetResponseMessage grm = msgParser.parseGetResponseMessage(header, parser, protocolData, helper);
-				to.receive(grm, protocolData);
-			}
-		} else if (MEXConstants.WSX_ACTION_GETMETADATA_REQUEST.equals(actionName)) {
-			GetMetadataMessage gmm = msgParser.parseGetMetadataMessage(header, parser, protocolData, helper);
-			to.receive(gmm, protocolData);
-		} else if (MEXConstants.WSX_ACTION_GETMETADATA_RESPONSE.equals(actionName)) {
-			GetMetadataResponseMessage gmrm = msgParser.parseGetMetadataResponseMessage(header, parser, protocolData, helper);
-			to.receive(gmrm, protocolData);
-		} else if (WSEConstants.WSE_ACTION_SUBSCRIBE.equals(actionName)) {
-			SubscribeMessage sm = msgParser.parseSubscribeMessage(header, parser, protocolData, helper);
-			to.receive(sm, protocolData);
-		} else if (WSEConstants.WSE_ACTION_SUBSCRIBERESPONSE.equals(actionName)) {
-			SubscribeResponseMessage srm = msgParser.parseSubscribeResponseMessage(header, parser, protocolData, helper);
-			to.receive(srm, protocolData);
-		} else if (WSEConstants.WSE_ACTION_RENEW.equals(actionName)) {
-			RenewMessage rm = msgParser.parseRenewMessage(header, parser, protocolData, helper);
-			to.receive(rm, protocolData);
-		} else if (WSEConstants.WSE_ACTION_RENEWRESPONSE.equals(actionName)) {
-			RenewResponseMessage rrm = msgParser.parseRenewResponseMessage(header, parser, protocolData, helper);
-			to.receive(rrm, protocolData);
-		} else if (WSEConstants.WSE_ACTION_GETSTATUS.equals(actionName)) {
-			GetStatusMessage gsm = msgParser.parseGetStatusMessage(header, parser, protocolData, helper);
-			to.receive(gsm, protocolData);
-		} else if (WSEConstants.WSE_ACTION_GETSTATUSRESPONSE.equals(actionName)) {
-			GetStatusResponseMessage gsrm = msgParser.parseGetStatusResponseMessage(header, parser, protocolData, helper);
-			to.receive(gsrm, protocolData);
-		} else if (WSEConstants.WSE_ACTION_UNSUBSCRIBE.equals(actionName)) {
-			UnsubscribeMessage um = msgParser.parseUnsubscribeMessage(header, parser, protocolData, helper);
-			to.receive(um, protocolData);
-		} else if (WSEConstants.WSE_ACTION_UNSUBSCRIBERESPONSE.equals(actionName)) {
-			UnsubscribeResponseMessage urm = msgParser.parseUnsubscribeResponseMessage(header, parser, protocolData, helper);
-			to.receive(urm, protocolData);
-		} else if (WSEConstants.WSE_ACTION_SUBSCRIPTIONEND.equals(actionName)) {
-			SubscriptionEndMessage sem = msgParser.parseSubscriptionEndMessage(header, parser, protocolData, helper);
-			to.receive(sem, protocolData);
-		} else {
+	/**
+	 * Delivers the message if its action has a handler in the
+	 * {@link MessageHandlerTable}.
+	 *
+	 * @return <code>false</code> if the action has no handler, i.e. the message
+	 *         is an invoke message
+	 */
+	protected boolean handleMessage(ElementParser parser, String actionName, SOAPHeader header, MessageReceiver to, ProtocolData protocolData) throws XmlPullParserException, IOException, UnexpectedMessageException, VersionMismatchException {
+		MessageHandler handler = MessageHandlerTable.getHandler(helper, actionName);
+		if (handler == null) {
 			// unrecognized action
 			return false;
 		}
+		handler.deliverMessage(actionName, header, parser, to, protocolData);
 		return true;
 	}
 
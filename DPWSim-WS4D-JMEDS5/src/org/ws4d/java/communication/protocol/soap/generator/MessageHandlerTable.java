@@ -0,0 +1,250 @@
+/*******************************************************************************
+ * Copyright (c) 2009 MATERNA Information & Communications. All rights reserved.
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html. For further
+ * project-related information visit http://www.ws4d.org. The most recent
+ * version of the JMEDS framework can be obtained from
+ * http://sourceforge.net/projects/ws4d-javame.
+ ******************************************************************************/
+package org.ws4d.java.communication.protocol.soap.generator;
+
+import java.io.IOException;
+
+import org.ws4d.java.communication.DPWSCommunicationManager;
+import org.ws4d.java.communication.ProtocolData;
+import org.ws4d.java.communication.VersionMismatchException;
+import org.ws4d.java.constants.ConstantsHelper;
+import org.ws4d.java.constants.DPWSMessageConstants;
+import org.ws4d.java.constants.MEXConstants;
+import org.ws4d.java.constants.WSEConstants;
+import org.ws4d.java.constants.WXFConstants;
+import org.ws4d.java.io.xml.ElementParser;
+import org.ws4d.java.message.SOAPHeader;
+import org.ws4d.java.message.metadata.GetMessage;
+import org.ws4d.java.message.metadata.GetMetadataMessage;
+import org.ws4d.java.structures.HashMap;
+import org.ws4d.java.structures.HashSet;
+import org.ws4d.java.structures.Iterator;
+import org.ws4d.java.types.URI;
+import org.xmlpull.v1.XmlPullParserException;
+
+/**
+ * Maps the actions of incoming SOAP messages to the {@link MessageHandler}s
+ * which parse and deliver them.
+ * <p>
+ * There is one table per DPWS version. It is built from the
+ * {@link ConstantsHelper} of the version when the first message of that
+ * version arrives and is not changed afterwards, so looking up a handler
+ * needs no lock. Actions without a handler are invoke messages.
+ * </p>
+ * <p>
+ * Further handlers can be {@link #register(String, MessageHandler)
+ * registered}, e.g. for additional protocols. They are valid for all DPWS
+ * versions and replace a built-in handler of the same action.
+ * </p>
+ */
+public class MessageHandlerTable {
+
+	private static final MessageParser		PARSER	= new DefaultMessageParser();
+
+	/** handlers registered from outside, action -> handler */
+	private static final HashMap			CUSTOM	= new HashMap();
+
+	/** tables built so far, replaced as a whole on each change */
+	private static volatile VersionTable[]	tables	= new VersionTable[0];
+
+	/**
+	 * We are shy!
+	 */
+	private MessageHandlerTable() {
+
+	}
+
+	/**
+	 * Returns the handler for the given action.
+	 *
+	 * @param helper the constants of the DPWS version of the message
+	 * @param action the action of the message
+	 * @return the handler or <code>null</code> if the action has none, i.e.
+	 *         the message is an invoke message
+	 */
+	public static MessageHandler getHandler(ConstantsHelper helper, String action) {
+		int version = helper.getDPWSVersion();
+		VersionTable[] t = tables;
+		for (int i = 0; i < t.length; i++) {
+			if (t[i].version == version) {
+				return (MessageHandler) t[i].handlers.get(action);
+			}
+		}
+		return (MessageHandler) build(helper).get(action);
+	}
+
+	/**
+	 * Registers a handler for the messages with the given action.
+	 *
+	 * @param action the action
+	 * @param handler the handler
+	 */
+	public static synchronized void register(String action, MessageHandler handler) {
+		CUSTOM.put(action, handler);
+		tables = new VersionTable[0];
+	}
+
+	/**
+	 * Removes a handler registered with
+	 * {@link #register(String, MessageHandler)}. A replaced built-in handler
+	 * is valid again.
+	 *
+	 * @param action the action
+	 */
+	public static synchronized void unregister(String action) {
+		if (CUSTOM.remove(action) != null) {
+			tables = new VersionTable[0];
+		}
+	}
+
+	private static synchronized HashMap build(ConstantsHelper helper) {
+		int version = helper.getDPWSVersion();
+		VersionTable[] t = tables;
+		for (int i = 0; i < t.length; i++) {
+			if (t[i].version == version) {
+				return t[i].handlers;
+			}
+		}
+
+		HashMap handlers = new HashMap();
+		handlers.put(helper.getWSDActionHello(), new DefaultHandler(DPWSMessageConstants.HELLO_MESSAGE, helper));
+		handlers.put(helper.getWSDActionBye(), new DefaultHandler(DPWSMessageConstants.BYE_MESSAGE, helper));
+		handlers.put(helper.getWSDActionProbe(), new DefaultHandler(DPWSMessageConstants.PROBE_MESSAGE, helper));
+		handlers.put(helper.getWSDActionProbeMatches(), new DefaultHandler(DPWSMessageConstants.PROBE_MATCHES_MESSAGE, helper));
+		handlers.put(helper.getWSDActionResolve(), new DefaultHandler(DPWSMessageConstants.RESOLVE_MESSAGE, helper));
+		handlers.put(helper.getWSDActionResolveMatches(), new DefaultHandler(DPWSMessageConstants.RESOLVE_MATCHES_MESSAGE, helper));
+		handlers.put(WXFConstants.WXF_ACTION_GET, new DefaultHandler(DPWSMessageConstants.GET_MESSAGE, helper));
+		handlers.put(WXFConstants.WXF_ACTION_GETRESPONSE, new DefaultHandler(DPWSMessageConstants.GET_RESPONSE_MESSAGE, helper));
+		handlers.put(MEXConstants.WSX_ACTION_GETMETADATA_REQUEST, new DefaultHandler(DPWSMessageConstants.GET_METADATA_MESSAGE, helper));
+		handlers.put(MEXConstants.WSX_ACTION_GETMETADATA_RESPONSE, new DefaultHandler(DPWSMessageConstants.GET_METADATA_RESPONSE_MESSAGE, helper));
+		handlers.put(WSEConstants.WSE_ACTION_SUBSCRIBE, new DefaultHandler(DPWSMessageConstants.SUBSCRIBE_MESSAGE, helper));
+		handlers.put(WSEConstants.WSE_ACTION_SUBSCRIBERESPONSE, new DefaultHandler(DPWSMessageConstants.SUBSCRIBE_RESPONSE_MESSAGE, helper));
+		handlers.put(WSEConstants.WSE_ACTION_RENEW, new DefaultHandler(DPWSMessageConstants.RENEW_MESSAGE, helper));
+		handlers.put(WSEConstants.WSE_ACTION_RENEWRESPONSE, new DefaultHandler(DPWSMessageConstants.RENEW_RESPONSE_MESSAGE, helper));
+		handlers.put(WSEConstants.WSE_ACTION_GETSTATUS, new DefaultHandler(DPWSMessageConstants.GET_STATUS_MESSAGE, helper));
+		handlers.put(WSEConstants.WSE_ACTION_GETSTATUSRESPONSE, new DefaultHandler(DPWSMessageConstants.GET_STATUS_RESPONSE_MESSAGE, helper));
+		handlers.put(WSEConstants.WSE_ACTION_UNSUBSCRIBE, new DefaultHandler(DPWSMessageConstants.UNSUBSCRIBE_MESSAGE, helper));
+		handlers.put(WSEConstants.WSE_ACTION_UNSUBSCRIBERESPONSE, new DefaultHandler(DPWSMessageConstants.UNSUBSCRIBE_RESPONSE_MESSAGE, helper));
+		handlers.put(WSEConstants.WSE_ACTION_SUBSCRIPTIONEND, new DefaultHandler(DPWSMessageConstants.SUBSCRIPTION_END_MESSAGE, helper));
+
+		for (Iterator it = CUSTOM.entrySet().iterator(); it.hasNext();) {
+			HashMap.Entry entry = (HashMap.Entry) it.next();
+			handlers.put(entry.getKey(), entry.getValue());
+		}
+
+		VersionTable[] tmp = new VersionTable[t.length + 1];
+		System.arraycopy(t, 0, tmp, 0, t.length);
+		tmp[t.length] = new VersionTable(version, handlers);
+		tables = tmp;
+		return handlers;
+	}
+
+	private static class VersionTable {
+
+		final int		version;
+
+		final HashMap	handlers;
+
+		VersionTable(int version, HashMap handlers) {
+			this.version = version;
+			this.handlers = handlers;
+		}
+	}
+
+	/**
+	 * Parses the messages of the framework. The right message parses itself.
+	 */
+	private static class DefaultHandler implements MessageHandler {
+
+		private final int				type;
+
+		private final ConstantsHelper	helper;
+
+		DefaultHandler(int type, ConstantsHelper helper) {
+			this.type = type;
+			this.helper = helper;
+		}
+
+		public void deliverMessage(String actionName, SOAPHeader header, ElementParser parser, MessageReceiver to, ProtocolData protocolData) throws XmlPullParserException, IOException, UnexpectedMessageException, VersionMismatchException {
+			switch (type) {
+				case DPWSMessageConstants.HELLO_MESSAGE:
+					to.receive(PARSER.parseHelloMessage(header, parser, protocolData, helper), protocolData);
+					break;
+				case DPWSMessageConstants.BYE_MESSAGE:
+					to.receive(PARSER.parseByeMessage(header, parser, protocolData, helper), protocolData);
+					break;
+				case DPWSMessageConstants.PROBE_MESSAGE:
+					to.receive(PARSER.parseProbeMessage(header, parser, protocolData, helper), protocolData);
+					break;
+				case DPWSMessageConstants.PROBE_MATCHES_MESSAGE:
+					to.receive(PARSER.parseProbeMatchesMessage(header, parser, protocolData, helper), protocolData);
+					break;
+				case DPWSMessageConstants.RESOLVE_MESSAGE:
+					to.receive(PARSER.parseResolveMessage(header, parser, protocolData, helper), protocolData);
+					break;
+				case DPWSMessageConstants.RESOLVE_MATCHES_MESSAGE:
+					to.receive(PARSER.parseResolveMatchesMessage(header, parser, protocolData, helper), protocolData);
+					break;
+				case DPWSMessageConstants.GET_MESSAGE: {
+					URI transportAddress = protocolData.getTransportAddress();
+					if (transportAddress != null && DPWSCommunicationManager.getRegisterForGetMetadata().contains(transportAddress)) {
+						to.receive(new GetMetadataMessage(header), protocolData);
+					} else {
+						to.receive(new GetMessage(header), protocolData);
+					}
+					break;
+				}
+				case DPWSMessageConstants.GET_RESPONSE_MESSAGE: {
+					HashSet check = (HashSet) DPWSCommunicationManager.getMessageIDsForGetMetadataMapping();
+					if (check.remove(header.getRelatesTo())) {
+						to.receive(PARSER.parseGetMetadataResponseMessage(header, parser, protocolData, helper), protocolData);
+					} else {
+						to.receive(PARSER.parseGetResponseMessage(header, parser, protocolData, helper), protocolData);
+					}
+					break;
+				}
+				case DPWSMessageConstants.GET_METADATA_MESSAGE:
+					to.receive(PARSER.parseGetMetadataMessage(header, parser, protocolData, helper), protocolData);
+					break;
+				case DPWSMessageConstants.GET_METADATA_RESPONSE_MESSAGE:
+					to.receive(PARSER.parseGetMetadataResponseMessage(header, parser, protocolData, helper), protocolData);
+					break;
+				case DPWSMessageConstants.SUBSCRIBE_MESSAGE:
+					to.receive(PARSER.parseSubscribeMessage(header, parser, protocolData, helper), protocolData);
+					break;
+				case DPWSMessageConstants.SUBSCRIBE_RESPONSE_MESSAGE:
+					to.receive(PARSER.parseSubscribeResponseMessage(header, parser, protocolData, helper), protocolData);
+					break;
+				case DPWSMessageConstants.RENEW_MESSAGE:
+					to.receive(PARSER.parseRenewMessage(header, parser, protocolData, helper), protocolData);
+					break;
+				case DPWSMessageConstants.RENEW_RESPONSE_MESSAGE:
+					to.receive(PARSER.parseRenewResponseMessage(header, parser, protocolData, helper), protocolData);
+					break;
+				case DPWSMessageConstants.GET_STATUS_MESSAGE:
+					to.receive(PARSER.parseGetStatusMessage(header, parser, protocolData, helper), protocolData);
+					break;
+				case DPWSMessageConstants.GET_STATUS_RESPONSE_MESSAGE:
+					to.receive(PARSER.parseGetStatusResponseMessage(header, parser, protocolData, helper), protocolData);
+					break;
+				case DPWSMessageConstants.UNSUBSCRIBE_MESSAGE:
+					to.receive(PARSER.parseUnsubscribeMessage(header, parser, protocolData, helper), protocolData);
+					break;
+				case DPWSMessageConstants.UNSUBSCRIBE_RESPONSE_MESSAGE:
+					to.receive(PARSER.parseUnsubscribeResponseMessage(header, parser, protocolData, helper), protocolData);
+					break;
+				case DPWSMessageConstants.SUBSCRIPTION_END_MESSAGE:
+					to.receive(PARSER.parseSubscriptionEndMessage(header, parser, protocolData, helper), protocolData);
+					break;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,28 @@
+/*******************************************************************************
+ * Copyright (c) 2009 MATERNA Information & Communications. All rights reserved.
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html. For further
+ * project-related information visit http://www.ws4d.org. The most recent
+ * version of the JMEDS framework can be obtained from
+ * http://sourceforge.net/projects/ws4d-javame.
+ ******************************************************************************/
+package org.ws4d.java.communication.protocol.soap.generator;
+
+import org.ws4d.java.communication.ProtocolData;
+
+/**
+ * A {@link MessageReceiver} which is also told when the other side answered a
+ * request with an empty response, e.g. with HTTP 202 Accepted for a one-way
+ * message. Other receivers are not called in this case.
+ */
+public interface NoContentMessageReceiver extends MessageReceiver {
+
+	/**
+	 * Called when the other side answered a request with an empty response.
+	 * 
+	 * @param protocolData the protocol data of the response
+	 */
+	public void receiveNoContent(ProtocolData protocolData);
+
+}
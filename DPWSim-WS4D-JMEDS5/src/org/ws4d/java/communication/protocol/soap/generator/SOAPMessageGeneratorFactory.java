@@ -9,30 +9,49 @@
  ******************************************************************************/
 package org.ws4d.java.communication.protocol.soap.generator;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.ws4d.java.communication.ProtocolData;
 import org.ws4d.java.configuration.DPWSProperties;
 import org.ws4d.java.configuration.FrameworkProperties;
-import org.ws4d.java.structures.HashMap;
+import org.ws4d.java.message.Message;
+import org.ws4d.java.util.BoundedObjectPool;
 import org.ws4d.java.util.Log;
+import org.ws4d.java.util.ObjectPool.InstanceCreator;
 
 /**
  * Implementation of the factory class to get the default
  * {@link SOAP2MessageGenerator} and {@link Message2SOAPGenerator} objects.
+ * <p>
+ * Generators are pooled. A generator is acquired for one message and
+ * released right after it. The pools keep as many idle generators as the
+ * framework's thread pool has threads.
+ * </p>
  */
 public class SOAPMessageGeneratorFactory {
 
 	/**
-	 * Size this map according to the size of the framework's thread pool size.
-	 * ATTENTION! To get the correct property values, the framework must be
-	 * started before. key = Thread, value = Message Generator
+	 * Idle generators, to be sized according to the framework's thread pool
+	 * size. ATTENTION! To get the correct property values, the framework must
+	 * be started before.
 	 */
-	private static final HashMap						SOAP2MSG_GENERATOR_CACHE	= new HashMap(FrameworkProperties.getInstance().getThreadPoolSize());
+	private final BoundedObjectPool	soap2msgGenerators	= new BoundedObjectPool(new InstanceCreator() {
 
-	/**
-	 * Size this map according to the size of the framework's thread pool size.
-	 * ATTENTION! To get the correct property values, the framework must be
-	 * started before. key = Thread, value = SOAP Generator
-	 */
-	private static final HashMap						MSG2SOAP_GENERATOR_CACHE	= new HashMap(FrameworkProperties.getInstance().getThreadPoolSize());
+															public Object createInstance() {
+																return newSOAP2MessageGenerator();
+															}
+
+														}, FrameworkProperties.getInstance().getThreadPoolSize());
+
+	private final BoundedObjectPool	msg2soapGenerators	= new BoundedObjectPool(new InstanceCreator() {
+
+															public Object createInstance() {
+																return newMessage2SOAPGenerator();
+															}
+
+														}, FrameworkProperties.getInstance().getThreadPoolSize());
 
 	private static final SOAPMessageGeneratorFactory	INSTANCE;
 
@@ -66,32 +85,122 @@ public class SOAPMessageGeneratorFactory {
 	}
 
 	public static void clear() {
-		SOAP2MSG_GENERATOR_CACHE.clear();
-		MSG2SOAP_GENERATOR_CACHE.clear();
-	}
-
-	public synchronized SOAP2MessageGenerator getSOAP2MessageGeneratorForCurrentThread() {
-		Thread t = Thread.currentThread();
-		SOAP2MessageGenerator generator = (SOAP2MessageGenerator) SOAP2MSG_GENERATOR_CACHE.get(t);
-		if (generator == null) {
-			// Changed 2011-01-11 SSch Ease the extension of this class
-			// Cache could be reused
-			generator = newSOAP2MessageGenerator();
-			SOAP2MSG_GENERATOR_CACHE.put(t, generator);
+		INSTANCE.soap2msgGenerators.clear();
+		INSTANCE.msg2soapGenerators.clear();
+	}
+
+	/**
+	 * Acquires a generator to parse one message. It MUST be given back with
+	 * {@link #releaseSOAP2MessageGenerator(SOAP2MessageGenerator)} when the
+	 * message is delivered.
+	 *
+	 * @return the generator
+	 */
+	public SOAP2MessageGenerator acquireSOAP2MessageGenerator() {
+		return (SOAP2MessageGenerator) soap2msgGenerators.acquire();
+	}
+
+	public void releaseSOAP2MessageGenerator(SOAP2MessageGenerator generator) {
+		soap2msgGenerators.release(generator);
+	}
+
+	/**
+	 * Acquires a generator to serialize one message. It MUST be given back
+	 * with {@link #releaseMessage2SOAPGenerator(Message2SOAPGenerator)} when
+	 * the generated bytes are no longer used, since the generator reuses its
+	 * buffer.
+	 *
+	 * @return the generator
+	 */
+	public Message2SOAPGenerator acquireMessage2SOAPGenerator() {
+		return (Message2SOAPGenerator) msg2soapGenerators.acquire();
+	}
+
+	public void releaseMessage2SOAPGenerator(Message2SOAPGenerator generator) {
+		msg2soapGenerators.release(generator);
+	}
+
+	/**
+	 * Parses a message with a pooled generator and delivers it.
+	 *
+	 * @see SOAP2MessageGenerator#deliverMessage(InputStream, MessageReceiver,
+	 *      ProtocolData)
+	 */
+	public void deliverMessage(InputStream in, MessageReceiver to, ProtocolData protocolData) {
+		SOAP2MessageGenerator generator = acquireSOAP2MessageGenerator();
+		try {
+			generator.deliverMessage(in, to, protocolData);
+		} finally {
+			releaseSOAP2MessageGenerator(generator);
 		}
-		return generator;
 	}
 
-	public synchronized Message2SOAPGenerator getMessage2SOAPGeneratorForCurrentThread() {
-		Thread t = Thread.currentThread();
-		Message2SOAPGenerator generator = (Message2SOAPGenerator) MSG2SOAP_GENERATOR_CACHE.get(t);
-		if (generator == null) {
-			// Changed 2011-01-11 SSch Ease the extension of this class
-			// Cache could be reused
-			generator = newMessage2SOAPGenerator();
-			MSG2SOAP_GENERATOR_CACHE.put(t, generator);
+	/**
+	 * Parses a message with a pooled generator and delivers it.
+	 *
+	 * @see SOAP2MessageGenerator#deliverMessage(InputStream, MessageReceiver,
+	 *      ProtocolData, DefaultMessageDiscarder)
+	 */
+	public void deliverMessage(InputStream in, MessageReceiver to, ProtocolData protocolData, DefaultMessageDiscarder discarder) {
+		SOAP2MessageGenerator generator = acquireSOAP2MessageGenerator();
+		try {
+			generator.deliverMessage(in, to, protocolData, discarder);
+		} finally {
+			releaseSOAP2MessageGenerator(generator);
+		}
+	}
+
+	/**
+	 * Serializes a message to the stream with a pooled generator.
+	 *
+	 * @see Message2SOAPGenerator#generateSOAPMessage(OutputStream, Message,
+	 *      ProtocolData)
+	 */
+	public void generateSOAPMessage(OutputStream out, Message msg, ProtocolData pd) throws IOException {
+		Message2SOAPGenerator generator = acquireMessage2SOAPGenerator();
+		try {
+			generator.generateSOAPMessage(out, msg, pd);
+		} finally {
+			releaseMessage2SOAPGenerator(generator);
 		}
-		return generator;
+	}
+
+	/**
+	 * Returns the pool of {@link SOAP2MessageGenerator}s, e.g. to read its
+	 * occupancy.
+	 *
+	 * @return the pool
+	 */
+	public BoundedObjectPool getSOAP2MessageGeneratorPool() {
+		return soap2msgGenerators;
+	}
+
+	/**
+	 * Returns the pool of {@link Message2SOAPGenerator}s, e.g. to read its
+	 * occupancy.
+	 *
+	 * @return the pool
+	 */
+	public BoundedObjectPool getMessage2SOAPGeneratorPool() {
+		return msg2soapGenerators;
+	}
+
+	/**
+	 * @deprecated use {@link #acquireSOAP2MessageGenerator()}, this method
+	 *             creates a new generator on every call.
+	 */
+	@Deprecated
+	public SOAP2MessageGenerator getSOAP2MessageGeneratorForCurrentThread() {
+		return newSOAP2MessageGenerator();
+	}
+
+	/**
+	 * @deprecated use {@link #acquireMessage2SOAPGenerator()}, this method
+	 *             creates a new generator on every call.
+	 */
+	@Deprecated
+	public Message2SOAPGenerator getMessage2SOAPGeneratorForCurrentThread() {
+		return newMessage2SOAPGenerator();
 	}
 
 	protected Message2SOAPGenerator newMessage2SOAPGenerator() {
@@ -182,7 +182,7 @@ public class SOAPServer {
 				r = this;
 			}
 
-			SOAPMessageGeneratorFactory.getInstance().getSOAP2MessageGeneratorForCurrentThread().deliverMessage(body, r, protocolData);
+			SOAPMessageGeneratorFactory.getInstance().deliverMessage(body, r, protocolData);
 
 			/*
 			 * after delivering the request message, the corresponding response
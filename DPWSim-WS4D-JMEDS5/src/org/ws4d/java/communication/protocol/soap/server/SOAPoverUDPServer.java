@@ -28,12 +28,15 @@ import org.ws4d.java.communication.monitor.MonitoredOutputStream;
 import org.ws4d.java.communication.monitor.MonitoringContext;
 import org.ws4d.java.communication.protocol.soap.SOAPoverUDPClient;
 import org.ws4d.java.communication.protocol.soap.generator.DefaultMessageDiscarder;
+import org.ws4d.java.communication.protocol.soap.generator.Message2SOAPGenerator;
 import org.ws4d.java.communication.protocol.soap.generator.MessageReceiver;
 import org.ws4d.java.communication.protocol.soap.generator.SOAPMessageGeneratorFactory;
 import org.ws4d.java.message.Message;
 import org.ws4d.java.types.ByteArrayBuffer;
 import org.ws4d.java.util.Log;
 import org.ws4d.java.util.Math;
+import org.ws4d.java.util.TimedEntry;
+import org.ws4d.java.util.WatchDog;
 
 /**
  * SOAP-over-UDP server.
@@ -181,59 +184,116 @@ public class SOAPoverUDPServer {
 				r = this;
 			}
 
-			SOAPMessageGeneratorFactory.getInstance().getSOAP2MessageGeneratorForCurrentThread().deliverMessage(in, r, protocolData, getDiscarder());
+			SOAPMessageGeneratorFactory.getInstance().deliverMessage(in, r, protocolData, getDiscarder());
 			in.close();
 		}
 
 		protected abstract DefaultMessageDiscarder getDiscarder();
 
+		/**
+		 * Sends a response datagram. The repetitions required by DPWS are
+		 * scheduled on the {@link WatchDog}, so the calling thread does not
+		 * wait for them.
+		 */
 		protected final void respond(Message message, IPAddress destAddr, int destPort, ProtocolData pd) {
-			MonitorStreamFactory monFac = DPWSFramework.getMonitorStreamFactory();
-			MonitoringContext context = null;
 			try {
-				ByteArrayBuffer buffer = SOAPMessageGeneratorFactory.getInstance().getMessage2SOAPGeneratorForCurrentThread().generateSOAPMessage(message, pd);
-				UDPServer.send(this, destAddr, destPort, buffer.getBuffer(), buffer.getContentLength());
-
 				int repeatCount = SOAPoverUDPClient.MULTICAST_UNICAST_UDP_REPEAT;
-				if (repeatCount <= 0) {
+				byte[] copy = null;
+
+				SOAPMessageGeneratorFactory factory = SOAPMessageGeneratorFactory.getInstance();
+				Message2SOAPGenerator generator = factory.acquireMessage2SOAPGenerator();
+				try {
+					ByteArrayBuffer buffer = generator.generateSOAPMessage(message, pd);
+					UDPServer.send(this, destAddr, destPort, buffer.getBuffer(), buffer.getContentLength());
+
+					if (repeatCount > 0) {
+						// the generator reuses its buffer, keep a copy for the
+						// repetitions
+						copy = new byte[buffer.getContentLength()];
+						System.arraycopy(buffer.getBuffer(), 0, copy, 0, copy.length);
+					}
+				} finally {
+					factory.releaseMessage2SOAPGenerator(generator);
+				}
+				if (copy == null) {
 					return;
 				}
 
-				int delay = Math.nextInt(SOAPoverUDPClient.UDP_MIN_DELAY, SOAPoverUDPClient.UDP_MAX_DELAY);
-				while (true) {
-					try {
-						Thread.sleep(delay);
-					} catch (InterruptedException e) {
-						// ignore
-					}
+				Repetition repetition = new Repetition(message, destAddr, destPort, pd, copy, repeatCount);
+				WatchDog.getInstance().register(repetition, repetition.delay);
+			} catch (IOException e) {
+				Log.error("Unable to send SOAP-over-UDP response: " + e);
+				Log.printStackTrace(e);
+				MonitorStreamFactory monFac = DPWSFramework.getMonitorStreamFactory();
+				if (monFac != null) {
+					monFac.sendFault(pd, null, e);
+				}
+			}
+		}
+
+		/**
+		 * Repeats a response datagram with growing delays.
+		 */
+		private class Repetition extends TimedEntry {
+
+			private final Message		message;
+
+			private final IPAddress		destAddr;
+
+			private final int			destPort;
+
+			private final ProtocolData	pd;
+
+			private final byte[]		bytes;
+
+			private int					remaining;
+
+			int							delay	= Math.nextInt(SOAPoverUDPClient.UDP_MIN_DELAY, SOAPoverUDPClient.UDP_MAX_DELAY);
+
+			Repetition(Message message, IPAddress destAddr, int destPort, ProtocolData pd, byte[] bytes, int remaining) {
+				this.message = message;
+				this.destAddr = destAddr;
+				this.destPort = destPort;
+				this.pd = pd;
+				this.bytes = bytes;
+				this.remaining = remaining;
+			}
+
+			protected void timedOut() {
+				MonitorStreamFactory monFac = DPWSFramework.getMonitorStreamFactory();
+				MonitoringContext context = null;
+				try {
 					if (monFac != null) {
-						OutputStream o = new ByteArrayOutputStream(buffer.getContentLength());
+						OutputStream o = new ByteArrayOutputStream(bytes.length);
 						o = new MonitoredOutputStream(o, pd);
 						context = monFac.getNewMonitoringContextOut(pd);
-						o.write(buffer.getBuffer(), 0, buffer.getContentLength());
+						o.write(bytes, 0, bytes.length);
 						o.flush();
 						o.close();
 					}
-					UDPServer.send(this, destAddr, destPort, buffer.getBuffer(), buffer.getContentLength());
+					UDPServer.send(SOAPoverUDPDatagramHandler.this, destAddr, destPort, bytes, bytes.length);
 
 					if (monFac != null) {
 						monFac.send(pd, context, message);
 					}
-
-					if (--repeatCount == 0) break;
-
-					delay *= 2;
-					if (delay > SOAPoverUDPClient.UDP_UPPER_DELAY) {
-						delay = SOAPoverUDPClient.UDP_UPPER_DELAY;
+				} catch (IOException e) {
+					Log.error("Unable to send SOAP-over-UDP response: " + e);
+					Log.printStackTrace(e);
+					if (monFac != null) {
+						monFac.sendFault(pd, context, e);
 					}
+					return;
+				}
 
+				if (--remaining == 0) {
+					return;
 				}
-			} catch (IOException e) {
-				Log.error("Unable to send SOAP-over-UDP response: " + e);
-				Log.printStackTrace(e);
-				if (monFac != null) {
-					monFac.sendFault(pd, context, e);
+
+				delay *= 2;
+				if (delay > SOAPoverUDPClient.UDP_UPPER_DELAY) {
+					delay = SOAPoverUDPClient.UDP_UPPER_DELAY;
 				}
+				WatchDog.getInstance().register(this, delay);
 			}
 		}
 	}
@@ -9,10 +9,13 @@
  ******************************************************************************/
 package org.ws4d.java.concurrency;
 
+import org.ws4d.java.structures.HashSet;
 import org.ws4d.java.structures.Iterator;
 import org.ws4d.java.structures.LinkedList;
 import org.ws4d.java.structures.List;
+import org.ws4d.java.structures.Set;
 import org.ws4d.java.util.Log;
+import org.ws4d.java.util.WS4DIllegalStateException;
 
 /**
  * Implements a simple thread pool which allows dynamic creation of worker
@@ -28,6 +31,13 @@ import org.ws4d.java.util.Log;
  * myThreadPool.execute(runnableN);<br />
  * myThreadPool.shutdown();</p>
  * </code>
+ * <p>
+ * This class is also the base class for other thread pool implementations,
+ * which can be selected by the
+ * {@link org.ws4d.java.configuration.FrameworkProperties#PROP_THREADPOOL_CLASS}
+ * property. Such a class must have a public default constructor, it is set up
+ * by {@link #configure(int, long, int, int)} before its first use.
+ * </p>
  */
 
 public class ThreadPool {
@@ -35,43 +45,92 @@ public class ThreadPool {
 	/**
 	 * default size of the thread pool
 	 */
-	private static int		DEFAULT_SIZE	= 10;
+	public static final int		DEFAULT_SIZE				= 10;
 
 	/**
 	 * default time to live for idle available thread pool workers
 	 */
-	private static long		DEFAULT_TIMEOUT	= 10000;
+	public static final long	DEFAULT_TIMEOUT				= 10000;
+
+	/**
+	 * Rejection policy: a task which does not fit into the full queue is run
+	 * by the thread which submits it. This slows down the producer of the
+	 * tasks.
+	 */
+	public static final int		REJECT_CALLER_RUNS			= 0;
+
+	/**
+	 * Rejection policy: a task which does not fit into the full queue is
+	 * dropped.
+	 */
+	public static final int		REJECT_DISCARD				= 1;
+
+	/**
+	 * Rejection policy: the oldest waiting task is dropped to make room for
+	 * the new task. Tasks given to {@link #executeHandler(Runnable)} are never
+	 * dropped this way; if only such tasks wait, the new task is dropped.
+	 */
+	public static final int		REJECT_DISCARD_OLDEST		= 2;
+
+	/**
+	 * Rejection policy: a {@link WS4DIllegalStateException} is thrown to the
+	 * thread which submits the task.
+	 */
+	public static final int		REJECT_ABORT				= 3;
+
+	/**
+	 * Number of buckets of the task latency histogram. Bucket <code>i</code>
+	 * counts tasks which completed within less than <code>2^i</code> ms after
+	 * their submission, the last bucket counts all slower tasks.
+	 */
+	public static final int		LATENCY_BUCKETS				= 16;
 
 	/**
 	 * list of idle worker threads
 	 */
-	private final List		idleThreads		= new LinkedList();
+	private final List			idleThreads					= new LinkedList();
 
 	/**
-	 * list of active worker threads
+	 * set of active worker threads
 	 */
-	private final List		activeThreads	= new LinkedList();
+	private final Set			activeThreads				= new HashSet();
 
 	/**
 	 * queue with tasks waiting for any available worker thread
 	 */
-	private final List		waitingTasks	= new LinkedList();
+	private final LinkedList	waitingTasks				= new LinkedList();
 
 	/**
 	 * maximal number of threads in the pool
 	 */
-	private volatile int	size;
+	private volatile int		size;
 
 	/**
 	 * life duration of idle available thread pool workers before which the idle
 	 * threads will be disposed of
 	 */
-	private final long		timeout;
+	private long				timeout;
+
+	/**
+	 * maximal number of waiting tasks, <code>-1</code> for no limit
+	 */
+	private int					queueSize					= -1;
+
+	/**
+	 * what to do with tasks if the queue is full
+	 */
+	private int					rejectionPolicy				= REJECT_CALLER_RUNS;
+
+	private long				completedTasks				= 0;
+
+	private long				rejectedTasks				= 0;
+
+	private final long[]		latencies					= new long[LATENCY_BUCKETS];
 
 	/**
 	 * Internal lock object
 	 */
-	private final Object	lock			= new Object();
+	private final Object		lock						= new Object();
 
 	/**
 	 * The constructor of the ThreadPool class, creating a thread pool with
@@ -102,6 +161,26 @@ public class ThreadPool {
 		this(size, DEFAULT_TIMEOUT);
 	}
 
+	/**
+	 * Sets up a thread pool created through its default constructor. Must be
+	 * called before the first task is assigned to the pool.
+	 * 
+	 * @param size maximal number of threads in the pool
+	 * @param timeout life duration of idle thread pool worker
+	 * @param queueSize maximal number of tasks waiting for a thread,
+	 *            <code>-1</code> for no limit
+	 * @param rejectionPolicy what to do with tasks if the queue is full, one
+	 *            of the <code>REJECT_</code> constants
+	 */
+	public void configure(int size, long timeout, int queueSize, int rejectionPolicy) {
+		synchronized (lock) {
+			this.size = size;
+			this.timeout = timeout;
+			this.queueSize = queueSize;
+			this.rejectionPolicy = rejectionPolicy;
+		}
+	}
+
 	/**
 	 * Signalizes to the thread pool that a worker thread has finished his task
 	 * and is ready for further tasks. If there is no tasks waiting in the queue
@@ -113,8 +192,9 @@ public class ThreadPool {
 	 */
 	private void signalAvailability(WorkerThread w) {
 		synchronized (lock) {
+			completedTasks++;
 			if (waitingTasks.size() > 0) {
-				w.setTask((Runnable) waitingTasks.remove(0));
+				w.setTask((Runnable) waitingTasks.removeFirst());
 			} else {
 				idleThreads.add(w);
 				activeThreads.remove(w);
@@ -140,11 +220,85 @@ public class ThreadPool {
 	 * @param task runnable which is assigned to the thread pool
 	 */
 	public void execute(Runnable task) {
+		task = new TimedTask(task, false);
 		synchronized (lock) {
-			if (!tryAllocation(task)) {
-				waitingTasks.add(task);
+			if (enqueue(task)) {
+				return;
 			}
+			switch (rejectionPolicy) {
+				case REJECT_DISCARD:
+					if (Log.isDebug()) {
+						Log.debug("Thread pool queue full. Task discarded.", Log.DEBUG_LAYER_FRAMEWORK);
+					}
+					return;
+				case REJECT_DISCARD_OLDEST:
+					for (Iterator it = waitingTasks.iterator(); it.hasNext();) {
+						if (!((TimedTask) it.next()).handler) {
+							if (Log.isDebug()) {
+								Log.debug("Thread pool queue full. Oldest task discarded.", Log.DEBUG_LAYER_FRAMEWORK);
+							}
+							it.remove();
+							waitingTasks.add(task);
+							return;
+						}
+					}
+					// only handlers wait, they are never dropped
+					if (Log.isDebug()) {
+						Log.debug("Thread pool queue full. Task discarded.", Log.DEBUG_LAYER_FRAMEWORK);
+					}
+					return;
+				case REJECT_ABORT:
+					throw new WS4DIllegalStateException("Thread pool queue full (" + queueSize + " tasks).");
+			}
+		}
+		// REJECT_CALLER_RUNS, outside of the lock
+		task.run();
+	}
+
+	/**
+	 * Assigns a task which blocks for a long time, like the handler of an
+	 * incoming connection or datagram, for execution. If
+	 * {@link #setVirtualThreads(boolean) virtual threads} are enabled, the
+	 * task gets an own virtual thread and does not occupy a thread of the
+	 * pool.
+	 * <p>
+	 * The rejection policy does not apply to handlers, as they are handed
+	 * over by the threads which accept connections or receive datagrams.
+	 * Such a thread must neither run a handler itself nor stop on an
+	 * exception. If the queue is full, the task is not run and
+	 * <code>false</code> is returned. The caller must then close the
+	 * connection or drop the datagram.
+	 * </p>
+	 * 
+	 * @param task runnable which is assigned to the thread pool
+	 * @return <code>true</code> if the task was started or queued,
+	 *         <code>false</code> if the queue is full
+	 */
+	public boolean executeHandler(Runnable task) {
+		synchronized (lock) {
+			if (enqueue(new TimedTask(task, true))) {
+				return true;
+			}
+		}
+		if (Log.isDebug()) {
+			Log.debug("Thread pool queue full. Handler rejected.", Log.DEBUG_LAYER_FRAMEWORK);
 		}
+		return false;
+	}
+
+	/**
+	 * Enables or disables virtual threads for the tasks given to
+	 * {@link #executeHandler(Runnable)}. This thread pool does not support
+	 * virtual threads.
+	 * 
+	 * @param enabled <code>true</code> to run handlers on virtual threads
+	 * @return <code>true</code> if virtual threads are used from now on.
+	 */
+	public boolean setVirtualThreads(boolean enabled) {
+		if (enabled) {
+			Log.warn("Virtual threads are not supported by " + getClass().getName() + ".");
+		}
+		return false;
 	}
 
 	/**
@@ -158,13 +312,31 @@ public class ThreadPool {
 	 */
 	public boolean executeOrAbort(Runnable task) {
 		synchronized (lock) {
-			if (!tryAllocation(task)) {
+			if (!tryAllocation(new TimedTask(task, false))) {
 				return false;
 			}
 			return true;
 		}
 	}
 
+	/**
+	 * Starts the task or puts it into the queue. Must be called while holding
+	 * the lock.
+	 * 
+	 * @return <code>false</code> if the queue is full
+	 */
+	private boolean enqueue(Runnable task) {
+		if (tryAllocation(task)) {
+			return true;
+		}
+		if (queueSize < 0 || waitingTasks.size() < queueSize) {
+			waitingTasks.add(task);
+			return true;
+		}
+		rejectedTasks++;
+		return false;
+	}
+
 	private boolean tryAllocation(Runnable task) {
 		if (idleThreads.size() == 0) {
 			if (activeThreads.size() < size) {
@@ -221,6 +393,132 @@ public class ThreadPool {
 		}
 	}
 
+	/**
+	 * Returns the number of tasks waiting for a worker thread.
+	 * 
+	 * @return the number of waiting tasks.
+	 */
+	public int getQueueSize() {
+		synchronized (lock) {
+			return waitingTasks.size();
+		}
+	}
+
+	/**
+	 * Returns the number of threads running a task at the moment.
+	 * 
+	 * @return the number of active threads.
+	 */
+	public int getActiveCount() {
+		synchronized (lock) {
+			return activeThreads.size();
+		}
+	}
+
+	/**
+	 * Returns the maximal number of threads in the pool.
+	 * 
+	 * @return the pool size.
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of tasks which have finished since the pool was
+	 * created.
+	 * 
+	 * @return the number of completed tasks.
+	 */
+	public long getCompletedTaskCount() {
+		synchronized (lock) {
+			return completedTasks;
+		}
+	}
+
+	/**
+	 * Returns the number of tasks which did not fit into the full queue.
+	 * 
+	 * @return the number of rejected tasks.
+	 */
+	public long getRejectedTaskCount() {
+		synchronized (lock) {
+			return rejectedTasks;
+		}
+	}
+
+	/**
+	 * Returns a copy of the task latency histogram. The latency of a task is
+	 * the time between its submission and its completion.
+	 * 
+	 * @return {@link #LATENCY_BUCKETS} task counts, see there.
+	 */
+	public long[] getLatencyHistogram() {
+		long[] copy = new long[LATENCY_BUCKETS];
+		synchronized (latencies) {
+			System.arraycopy(latencies, 0, copy, 0, LATENCY_BUCKETS);
+		}
+		return copy;
+	}
+
+	/**
+	 * Records the latency of a completed task.
+	 * 
+	 * @param millis time between submission and completion of the task.
+	 */
+	protected void recordLatency(long millis) {
+		int bucket = latencyBucket(millis);
+		synchronized (latencies) {
+			latencies[bucket]++;
+		}
+	}
+
+	/**
+	 * Returns the histogram bucket for a task latency.
+	 * 
+	 * @param millis the latency in ms.
+	 * @return the bucket index.
+	 */
+	public static int latencyBucket(long millis) {
+		int bucket = 0;
+		while (millis > 0 && bucket < LATENCY_BUCKETS - 1) {
+			millis >>= 1;
+			bucket++;
+		}
+		return bucket;
+	}
+
+	public String toString() {
+		return "ThreadPool [ size=" + size + ", active=" + getActiveCount() + ", queued=" + getQueueSize() + ", completed=" + getCompletedTaskCount() + ", rejected=" + getRejectedTaskCount() + " ]";
+	}
+
+	/**
+	 * Measures the latency of a task.
+	 */
+	private class TimedTask implements Runnable {
+
+		private final Runnable	task;
+
+		private final long		submitted	= System.currentTimeMillis();
+
+		/** <code>true</code> if given to {@link #executeHandler(Runnable)} */
+		final boolean			handler;
+
+		TimedTask(Runnable task, boolean handler) {
+			this.task = task;
+			this.handler = handler;
+		}
+
+		public void run() {
+			try {
+				task.run();
+			} finally {
+				recordLatency(System.currentTimeMillis() - submitted);
+			}
+		}
+
+	}
+
 	/**
 	 * Implements a work delegation thread - worker thread class.
 	 */
@@ -43,6 +43,40 @@ public class AttachmentProperties implements PropertiesHandler {
 	 */
 	public static final String	PROP_MAX_MEM_BUFFER_SIZE		= "MaxMemBufferSize";
 
+	/**
+	 * Size in bytes above which attachments received with
+	 * {@link AttachmentStore#POLICY_MEM_BUFFER} are spooled into files at
+	 * {@link #PROP_STORE_PATH} instead of being rejected. Smaller attachments
+	 * stay in memory, up to {@link #PROP_MAX_MEM_BUFFER_SIZE}. 0 disables
+	 * spooling.<br />
+	 * Default: 65536
+	 */
+	public static final String	PROP_SPOOL_THRESHOLD			= "SpoolThreshold";
+
+	/**
+	 * Maximum number of bytes which the attachment store keeps in memory for
+	 * all received attachments together. Attachments which do not fit are
+	 * spilled into files at {@link #PROP_STORE_PATH}. 0 means no limit.<br />
+	 * Default: 4194304
+	 */
+	public static final String	PROP_MEMORY_BUDGET				= "MemoryBudget";
+
+	/**
+	 * Maximum number of bytes of all received attachments, in memory and on
+	 * disk, which the attachment store keeps. The least recently used
+	 * resolved attachments are evicted beyond. 0 means no limit.<br />
+	 * Default: 0
+	 */
+	public static final String	PROP_MAX_STORE_SIZE				= "MaxStoreSize";
+
+	/**
+	 * Time in ms after its last use after which a received attachment is
+	 * evicted from the attachment store. 0 keeps attachments until the
+	 * framework stops.<br />
+	 * Default: 0
+	 */
+	public static final String	PROP_ATTACHMENT_TIMEOUT			= "AttachmentTimeout";
+
 	/**
 	 * Path to the file system location where temporary attachment files should
 	 * be stored. <br />
@@ -79,6 +113,14 @@ public class AttachmentProperties implements PropertiesHandler {
 
 	private int					maxMemBufferSize				= 65536;
 
+	private int					spoolThreshold					= 65536;
+
+	private long				memoryBudget					= 4194304;
+
+	private long				maxStoreSize					= 0;
+
+	private long				attachmentTimeout				= 0;
+
 	private String				storePath						= "attachment_store";
 
 	private int					readBufferSize					= 8192;
@@ -149,6 +191,14 @@ public class AttachmentProperties implements PropertiesHandler {
 				maxAttachmentSize = Integer.parseInt(property.value.trim());
 			} else if (PROP_MAX_MEM_BUFFER_SIZE.equals(property.key)) {
 				maxMemBufferSize = Integer.parseInt(property.value.trim());
+			} else if (PROP_SPOOL_THRESHOLD.equals(property.key)) {
+				spoolThreshold = Integer.parseInt(property.value.trim());
+			} else if (PROP_MEMORY_BUDGET.equals(property.key)) {
+				memoryBudget = Long.parseLong(property.value.trim());
+			} else if (PROP_MAX_STORE_SIZE.equals(property.key)) {
+				maxStoreSize = Long.parseLong(property.value.trim());
+			} else if (PROP_ATTACHMENT_TIMEOUT.equals(property.key)) {
+				attachmentTimeout = Long.parseLong(property.value.trim());
 			} else if (PROP_STORE_PATH.equals(property.key)) {
 				storePath = property.value;
 			} else if (PROP_READ_BUFFER_SIZE.equals(property.key)) {
@@ -214,6 +264,62 @@ public class AttachmentProperties implements PropertiesHandler {
 		this.maxMemBufferSize = maxMemBufferSize;
 	}
 
+	/**
+	 * @return the spoolThreshold
+	 */
+	public int getSpoolThreshold() {
+		return spoolThreshold;
+	}
+
+	/**
+	 * @param spoolThreshold the spoolThreshold to set
+	 */
+	public void setSpoolThreshold(int spoolThreshold) {
+		this.spoolThreshold = spoolThreshold;
+	}
+
+	/**
+	 * @return the memoryBudget
+	 */
+	public long getMemoryBudget() {
+		return memoryBudget;
+	}
+
+	/**
+	 * @param memoryBudget the memoryBudget to set
+	 */
+	public void setMemoryBudget(long memoryBudget) {
+		this.memoryBudget = memoryBudget;
+	}
+
+	/**
+	 * @return the maxStoreSize
+	 */
+	public long getMaxStoreSize() {
+		return maxStoreSize;
+	}
+
+	/**
+	 * @param maxStoreSize the maxStoreSize to set
+	 */
+	public void setMaxStoreSize(long maxStoreSize) {
+		this.maxStoreSize = maxStoreSize;
+	}
+
+	/**
+	 * @return the attachmentTimeout
+	 */
+	public long getAttachmentTimeout() {
+		return attachmentTimeout;
+	}
+
+	/**
+	 * @param attachmentTimeout the attachmentTimeout to set
+	 */
+	public void setAttachmentTimeout(long attachmentTimeout) {
+		this.attachmentTimeout = attachmentTimeout;
+	}
+
 	/**
 	 * @return the storePath
 	 */
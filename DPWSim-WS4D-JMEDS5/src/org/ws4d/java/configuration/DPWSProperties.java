@@ -71,6 +71,18 @@ public class DPWSProperties implements PropertiesHandler {
 	 */
 	public static final String	PROP_DPWS_SOAPMSG_GENERATOR_FACTORY_CLASS	= "SOAPMessageGeneratorFactoryClass";
 
+	/* ###################### Discovery Properties ################## */
+
+	/**
+	 * Maximum number of ProbeMatch elements sent in one ProbeMatches message
+	 * when several local devices match the same multicast probe. Both
+	 * WS-Discovery versions allow more than one ProbeMatch, but the message
+	 * has only one AppSequence header, so clients which track the app
+	 * sequence of each device should keep the default. Secured responses are
+	 * never packed. default: 1
+	 */
+	public static final String	PROP_DPWS_PROBE_MATCHES_PER_MESSAGE			= "ProbeMatchesPerMessage";
+
 	// -------------------------------------------------------------------------------------------------
 
 	public static final int		DEFAULT_DPWS_VERSION						= DPWSConstants.DPWS_VERSION2009;
@@ -124,8 +136,22 @@ public class DPWSProperties implements PropertiesHandler {
 	 */
 	public static final int		HTTP_CHUNKED_ON_FOR_INVOKE					= 2;
 
+	/**
+	 * Use HTTP chunked coding for invoke messages and for metadata exchange
+	 * (wxf:Get, mex:GetMetadata). These messages are serialized straight to
+	 * the connection instead of being buffered to compute their length.
+	 */
+	public static final int		HTTP_CHUNKED_ON_FOR_INVOKE_AND_METADATA		= 3;
+
 	public static final int		DEFAULT_HTTP_CHUNKED_MODE					= HTTP_CHUNKED_ON_FOR_INVOKE;
 
+	/**
+	 * Responses are streamed, so metadata of a large device need not be
+	 * buffered. A client which sends HTTP/1.0 requests gets an unchunked
+	 * response anyway.
+	 */
+	public static final int		DEFAULT_HTTP_RESPONSE_CHUNKED_MODE			= HTTP_CHUNKED_ON_FOR_INVOKE_AND_METADATA;
+
 	/**
 	 * This field allows to configure HTTP chunked mode for responses (HTTP
 	 * server).
@@ -133,12 +159,14 @@ public class DPWSProperties implements PropertiesHandler {
 	 * <ul>
 	 * <li>0 - chunked coding off</li>
 	 * <li>1 - chunked coding on</li>
-	 * <li>2(default) - chunked coding off for metadata exchange (wxf:Get etc.)
-	 * but on for invoke messages.</li>
+	 * <li>2 - chunked coding off for metadata exchange (wxf:Get etc.) but on
+	 * for invoke messages.</li>
+	 * <li>3(default) - chunked coding on for metadata exchange and invoke
+	 * messages, both are streamed.</li>
 	 * </ul>
 	 * </p>
 	 */
-	private int					httpResponseChunkedMode						= DEFAULT_HTTP_CHUNKED_MODE;
+	private int					httpResponseChunkedMode						= DEFAULT_HTTP_RESPONSE_CHUNKED_MODE;
 
 	/**
 	 * This field allows to configure HTTP chunked mode for requests (HTTP
@@ -149,6 +177,8 @@ public class DPWSProperties implements PropertiesHandler {
 	 * <li>1 - chunked coding on</li>
 	 * <li>2(default) - chunked coding off for metadata exchange (wxf:Get etc.)
 	 * but on for invoke messages.</li>
+	 * <li>3 - chunked coding on for metadata exchange and invoke messages, both
+	 * are streamed.</li>
 	 * </ul>
 	 * </p>
 	 * </p>
@@ -163,7 +193,8 @@ public class DPWSProperties implements PropertiesHandler {
 
 	/**
 	 * This field specifies the time until the HTTP Client closes a connection
-	 * while not sending a request.
+	 * while not sending a request. A request which waits this long for a free
+	 * connection fails.
 	 */
 	private long				httpClientRequestTimeout					= 20000;
 
@@ -172,6 +203,12 @@ public class DPWSProperties implements PropertiesHandler {
 	 */
 	private String				soapMessageGeneratorFactoryClass			= null;
 
+	/**
+	 * Maximum number of ProbeMatch elements in one ProbeMatches message sent
+	 * to a multicast probe.
+	 */
+	private int					probeMatchesPerMessage						= 1;
+
 	public static DPWSProperties getInstance() {
 		// return (instance == null ? (instance = new DPWSProperties()) :
 		// instance);
@@ -225,6 +262,10 @@ public class DPWSProperties implements PropertiesHandler {
 		return soapMessageGeneratorFactoryClass;
 	}
 
+	public int getProbeMatchesPerMessage() {
+		return probeMatchesPerMessage;
+	}
+
 	public void setNativeRouterPort(int port) {
 		routerPort = port;
 	}
@@ -265,6 +306,10 @@ public class DPWSProperties implements PropertiesHandler {
 		soapMessageGeneratorFactoryClass = className;
 	}
 
+	public void setProbeMatchesPerMessage(int count) {
+		probeMatchesPerMessage = count;
+	}
+
 	public void addSupportedDPWSVersion(int versionInfo) {
 		supportedDPWSVersions.add(new Integer(versionInfo));
 	}
@@ -347,6 +392,8 @@ public class DPWSProperties implements PropertiesHandler {
 					setHTTPServerRequestTimeout(Long.parseLong(property.value.trim()));
 				} else if (PROP_DPWS_SOAPMSG_GENERATOR_FACTORY_CLASS.equals(property.key)) {
 					setSOAPMessageGeneratorFactoryClass(property.value);
+				} else if (PROP_DPWS_PROBE_MATCHES_PER_MESSAGE.equals(property.key)) {
+					setProbeMatchesPerMessage(Integer.parseInt(property.value.trim()));
 				}
 			} catch (NumberFormatException e) {
 				Log.printStackTrace(e);
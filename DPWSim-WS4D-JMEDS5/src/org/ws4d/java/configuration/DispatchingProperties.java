@@ -16,6 +16,7 @@ import org.ws4d.java.dispatch.DeviceServiceRegistry;
 import org.ws4d.java.service.reference.DeviceListener;
 import org.ws4d.java.service.reference.DeviceReference;
 import org.ws4d.java.service.reference.ServiceReference;
+import org.ws4d.java.structures.MessageIdFilter;
 
 /**
  * Class holds dispatching properties.
@@ -60,9 +61,24 @@ public class DispatchingProperties implements PropertiesHandler {
 	 * messages. <BR>
 	 * Type: int <BR>
 	 * Default: 50
+	 * 
+	 * @deprecated all filters share one table now, its size is set by
+	 *             {@link #PROP_MESSAGE_ID_FILTER_SIZE}
 	 */
+	@Deprecated
 	public static final String	PROP_MESSAGE_ID_BUFFER_SIZE			= "MessageIdBufferSize";
 
+	/**
+	 * Number of message ids kept by the filter which is used to ignore
+	 * multiplicated udp messages. The filter is shared by all devices, clients
+	 * and receivers. It keeps at least {@link MessageIdFilter#IDS_PER_FILTER}
+	 * ids per device, client and receiver, so this only needs to be raised to
+	 * remember more ids per device. <BR>
+	 * Type: int <BR>
+	 * Default: 16384
+	 */
+	public static final String	PROP_MESSAGE_ID_FILTER_SIZE			= "MessageIdFilterSize";
+
 	/**
 	 * Size of the cache for remote service references. <BR>
 	 * Type: int <BR>
@@ -102,6 +118,11 @@ public class DispatchingProperties implements PropertiesHandler {
 	 */
 	private int					msgIdBufferSize						= 50;
 
+	/**
+	 * Number of message ids kept by the shared message id filter.
+	 */
+	private int					msgIdFilterSize						= 16384;
+
 	/**
 	 * Size of the cache for remote service references.
 	 */
@@ -158,6 +179,8 @@ public class DispatchingProperties implements PropertiesHandler {
 				matchWaitTime = Integer.parseInt(property.value.trim());
 			} else if (PROP_MESSAGE_ID_BUFFER_SIZE.equals(property.key)) {
 				setMessageIdBufferSize(Integer.parseInt(property.value.trim()));
+			} else if (PROP_MESSAGE_ID_FILTER_SIZE.equals(property.key)) {
+				setMessageIdFilterSize(Integer.parseInt(property.value.trim()));
 			} else if (PROP_SERVICE_REFERENCE_CACHE_SIZE.equals(property.key)) {
 				setServiceReferenceCacheSize(Integer.parseInt(property.value.trim()));
 			} else if (PROP_DEVICE_REFERENCE_AUTO_BUILD.equals(property.key)) {
@@ -249,6 +272,27 @@ public class DispatchingProperties implements PropertiesHandler {
 		this.msgIdBufferSize = msgIdBufferSize;
 	}
 
+	/**
+	 * Gets the number of message ids kept by the filter which is used to
+	 * ignore multiple received udp messages.
+	 * 
+	 * @return the size of the shared message id filter
+	 */
+	public int getMessageIdFilterSize() {
+		return msgIdFilterSize;
+	}
+
+	/**
+	 * Sets the number of message ids kept by the filter which is used to
+	 * ignore multiple received udp messages. Must be set before the first
+	 * message is filtered.
+	 * 
+	 * @param msgIdFilterSize
+	 */
+	public void setMessageIdFilterSize(int msgIdFilterSize) {
+		this.msgIdFilterSize = msgIdFilterSize;
+	}
+
 	/**
 	 * Gets cache size of {@link ServiceReference}s of remote services not
 	 * linked to a parent device. The longest not used service reference will be
@@ -16,20 +16,98 @@ import org.ws4d.java.structures.Iterator;
 
 public class EventingProperties implements PropertiesHandler {
 
-	public static final String	PROP_CONFIGURATION_ID	= Properties.PROP_CONFIGURATION_ID;
+	public static final String	PROP_CONFIGURATION_ID				= Properties.PROP_CONFIGURATION_ID;
 
-	public static final String	PROP_BINDING			= Properties.PROP_BINDING;
+	public static final String	PROP_BINDING						= Properties.PROP_BINDING;
 
-	private Integer				tmpConfigurationId		= null;
+	/**
+	 * Maximum number of events which may wait to be sent to one remote
+	 * subscriber. <BR>
+	 * Type: int <BR>
+	 * Default: 64
+	 */
+	public static final String	PROP_NOTIFICATION_QUEUE_SIZE		= "NotificationQueueSize";
+
+	/**
+	 * What happens to an event fired while the queue of a subscriber is full,
+	 * one of {@link #OVERFLOW_DROP_OLDEST}, {@link #OVERFLOW_COALESCE} and
+	 * {@link #OVERFLOW_END_SUBSCRIPTION}. <BR>
+	 * Type: int <BR>
+	 * Default: 0
+	 */
+	public static final String	PROP_NOTIFICATION_QUEUE_OVERFLOW	= "NotificationQueueOverflow";
+
+	/**
+	 * Milliseconds an event waits for further events of the same action to be
+	 * sent with, if the subscriber requested batched delivery. <BR>
+	 * Type: int <BR>
+	 * Default: 50
+	 */
+	public static final String	PROP_NOTIFICATION_BATCH_DELAY		= "NotificationBatchDelay";
+
+	/**
+	 * Maximum number of events sent within one message, if the subscriber
+	 * requested batched delivery. <BR>
+	 * Type: int <BR>
+	 * Default: 32
+	 */
+	public static final String	PROP_NOTIFICATION_BATCH_SIZE		= "NotificationBatchSize";
+
+	/**
+	 * Maximum number of solicit messages of a solicit-response event source
+	 * which may wait in the queue of one subscriber or for its response.
+	 * Further solicit messages are not sent to the subscriber until one of
+	 * them is answered or times out. <BR>
+	 * Type: int <BR>
+	 * Default: 8
+	 */
+	public static final String	PROP_MAX_PENDING_SOLICITS			= "MaxPendingSolicits";
+
+	/*
+	 * OVERFLOW POLICIES of the notification queues
+	 */
+
+	/**
+	 * Drop the oldest waiting event.
+	 */
+	public static final int		OVERFLOW_DROP_OLDEST				= 0;
+
+	/**
+	 * Drop the waiting events of the same action, i.e. of the same event
+	 * source, so the subscriber gets the latest value. If no event of the
+	 * action waits, drop the oldest one.
+	 */
+	public static final int		OVERFLOW_COALESCE					= 1;
+
+	/**
+	 * Drop the waiting events and end the subscription with a delivery failure.
+	 */
+	public static final int		OVERFLOW_END_SUBSCRIPTION			= 2;
+
+	private Integer				tmpConfigurationId					= null;
+
+	private DataStructure		tmpBindings							= new ArrayList(1);
 
-	private DataStructure		tmpBindings				= new ArrayList(1);
+	/** events per subscriber waiting to be sent */
+	private int					notificationQueueSize				= 64;
+
+	private int					notificationQueueOverflow			= OVERFLOW_DROP_OLDEST;
+
+	/** milliseconds to wait for further events of a batch */
+	private int					notificationBatchDelay				= 50;
+
+	/** events per batch */
+	private int					notificationBatchSize				= 32;
+
+	/** solicit messages per subscriber without response */
+	private int					maxPendingSolicits					= 8;
 
 	// private static String className;
 	//
 	// private static EventingProperties handler = null;
 
 	/** map: ConfigurationId<Integer> => Bindings<List of Integer> */
-	private static HashMap		map_CID_2_Bindings		= new HashMap();
+	private static HashMap		map_CID_2_Bindings					= new HashMap();
 
 	/**
 	 * Constructor.
@@ -86,6 +164,17 @@ public class EventingProperties implements PropertiesHandler {
 	public void setProperties(PropertyHeader header, Property property) {
 		if (Properties.HEADER_SECTION_EVENTING.equals(header)) {
 			// Properties of "Devices" Section, default for devices
+			if (PROP_NOTIFICATION_QUEUE_SIZE.equals(property.key)) {
+				setNotificationQueueSize(Integer.parseInt(property.value.trim()));
+			} else if (PROP_NOTIFICATION_QUEUE_OVERFLOW.equals(property.key)) {
+				setNotificationQueueOverflow(Integer.parseInt(property.value.trim()));
+			} else if (PROP_NOTIFICATION_BATCH_DELAY.equals(property.key)) {
+				setNotificationBatchDelay(Integer.parseInt(property.value.trim()));
+			} else if (PROP_NOTIFICATION_BATCH_SIZE.equals(property.key)) {
+				setNotificationBatchSize(Integer.parseInt(property.value.trim()));
+			} else if (PROP_MAX_PENDING_SOLICITS.equals(property.key)) {
+				setMaxPendingSolicits(Integer.parseInt(property.value.trim()));
+			}
 		}
 
 		else if (Properties.HEADER_SUBSECTION_EVENT_SINK.equals(header)) {
@@ -116,4 +205,112 @@ public class EventingProperties implements PropertiesHandler {
 		return bindings;
 	}
 
+	/**
+	 * Gets the maximum number of events which may wait to be sent to one
+	 * remote subscriber.
+	 * 
+	 * @return the size of the notification queue of a subscriber
+	 */
+	public int getNotificationQueueSize() {
+		return notificationQueueSize;
+	}
+
+	/**
+	 * Sets the maximum number of events which may wait to be sent to one
+	 * remote subscriber.
+	 * 
+	 * @param notificationQueueSize the size of the notification queue of a
+	 *            subscriber, at least 1
+	 */
+	public void setNotificationQueueSize(int notificationQueueSize) {
+		this.notificationQueueSize = Math.max(notificationQueueSize, 1);
+	}
+
+	/**
+	 * Gets what happens to an event fired while the queue of a subscriber is
+	 * full.
+	 * 
+	 * @return one of {@link #OVERFLOW_DROP_OLDEST}, {@link #OVERFLOW_COALESCE}
+	 *         and {@link #OVERFLOW_END_SUBSCRIPTION}
+	 */
+	public int getNotificationQueueOverflow() {
+		return notificationQueueOverflow;
+	}
+
+	/**
+	 * Sets what happens to an event fired while the queue of a subscriber is
+	 * full.
+	 * 
+	 * @param notificationQueueOverflow one of {@link #OVERFLOW_DROP_OLDEST},
+	 *            {@link #OVERFLOW_COALESCE} and
+	 *            {@link #OVERFLOW_END_SUBSCRIPTION}
+	 */
+	public void setNotificationQueueOverflow(int notificationQueueOverflow) {
+		if (notificationQueueOverflow < OVERFLOW_DROP_OLDEST || notificationQueueOverflow > OVERFLOW_END_SUBSCRIPTION) {
+			throw new IllegalArgumentException("Unknown overflow policy: " + notificationQueueOverflow);
+		}
+		this.notificationQueueOverflow = notificationQueueOverflow;
+	}
+
+	/**
+	 * Gets how long an event waits for further events of the same action to
+	 * be sent with, if the subscriber requested batched delivery.
+	 * 
+	 * @return the delay in milliseconds
+	 */
+	public int getNotificationBatchDelay() {
+		return notificationBatchDelay;
+	}
+
+	/**
+	 * Sets how long an event waits for further events of the same action to
+	 * be sent with, if the subscriber requested batched delivery.
+	 * 
+	 * @param notificationBatchDelay the delay in milliseconds, at least 0
+	 */
+	public void setNotificationBatchDelay(int notificationBatchDelay) {
+		this.notificationBatchDelay = Math.max(notificationBatchDelay, 0);
+	}
+
+	/**
+	 * Gets the maximum number of events sent within one message, if the
+	 * subscriber requested batched delivery.
+	 * 
+	 * @return the number of events per batch
+	 */
+	public int getNotificationBatchSize() {
+		return notificationBatchSize;
+	}
+
+	/**
+	 * Sets the maximum number of events sent within one message, if the
+	 * subscriber requested batched delivery.
+	 * 
+	 * @param notificationBatchSize the number of events per batch, at least 1
+	 */
+	public void setNotificationBatchSize(int notificationBatchSize) {
+		this.notificationBatchSize = Math.max(notificationBatchSize, 1);
+	}
+
+	/**
+	 * Gets the maximum number of solicit messages which may wait in the queue
+	 * of one subscriber or for its response.
+	 * 
+	 * @return the maximum number of solicit messages without response
+	 */
+	public int getMaxPendingSolicits() {
+		return maxPendingSolicits;
+	}
+
+	/**
+	 * Sets the maximum number of solicit messages which may wait in the queue
+	 * of one subscriber or for its response.
+	 * 
+	 * @param maxPendingSolicits the maximum number of solicit messages
+	 *            without response, at least 1
+	 */
+	public void setMaxPendingSolicits(int maxPendingSolicits) {
+		this.maxPendingSolicits = Math.max(maxPendingSolicits, 1);
+	}
+
 }
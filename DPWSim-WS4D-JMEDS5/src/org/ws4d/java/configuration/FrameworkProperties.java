@@ -9,6 +9,7 @@
  ******************************************************************************/
 package org.ws4d.java.configuration;
 
+import org.ws4d.java.concurrency.ThreadPool;
 import org.ws4d.java.constants.FrameworkConstants;
 import org.ws4d.java.util.Log;
 
@@ -42,6 +43,58 @@ public class FrameworkProperties implements PropertiesHandler {
 	 */
 	public static final String	PROP_THREADPOOL_SIZE				= "ThreadPoolSize";
 
+	/**
+	 * Qualified name of the thread pool class, a subclass of
+	 * {@link org.ws4d.java.concurrency.ThreadPool} with a public default
+	 * constructor. <BR>
+	 * Type: String <BR>
+	 * Default: none (SE thread pool on Java SE, else the internal thread pool)
+	 */
+	public static final String	PROP_THREADPOOL_CLASS				= "ThreadPoolClass";
+
+	/**
+	 * Property id to specify the maximal number of tasks waiting for a thread
+	 * of the ThreadPool. <BR>
+	 * Type: int <BR>
+	 * Default: 10000, -1 for no limit
+	 */
+	public static final String	PROP_THREADPOOL_QUEUE_SIZE			= "ThreadPoolQueueSize";
+
+	/**
+	 * Property id to specify what happens to a task if the queue of the
+	 * ThreadPool is full. Handlers of incoming connections and datagrams are
+	 * dropped instead. <BR>
+	 * Type: String, one of CallerRuns, Discard, DiscardOldest, Abort <BR>
+	 * Default: CallerRuns
+	 */
+	public static final String	PROP_THREADPOOL_REJECTION_POLICY	= "ThreadPoolRejectionPolicy";
+
+	/**
+	 * Property id to run the handlers of incoming TCP connections and UDP
+	 * datagrams on virtual threads instead of the ThreadPool. Needs Java 21
+	 * or later, else the ThreadPool is used. <BR>
+	 * Type: boolean <BR>
+	 * Default: false
+	 */
+	public static final String	PROP_VIRTUAL_THREADS				= "VirtualThreads";
+
+	/**
+	 * Property id to serve incoming TCP connections with non-blocking sockets.
+	 * One thread per listener reads the requests of all connections, idle
+	 * keep-alive connections do not occupy a thread. Java SE only. <BR>
+	 * Type: boolean <BR>
+	 * Default: false
+	 */
+	public static final String	PROP_NON_BLOCKING_TCP				= "NonBlockingTCP";
+
+	/**
+	 * Property id to hand incoming UDP datagrams to the ThreadPool in batches
+	 * of this size instead of one task per datagram. <BR>
+	 * Type: int <BR>
+	 * Default: 1 (no batches)
+	 */
+	public static final String	PROP_UDP_BATCH_SIZE					= "UDPBatchSize";
+
 	/**
 	 * Property id to specify the size of the ThreadPool.
 	 */
@@ -63,6 +116,18 @@ public class FrameworkProperties implements PropertiesHandler {
 
 	private int					threadPoolSize						= 10000;
 
+	private String				threadPoolClass						= null;
+
+	private int					threadPoolQueueSize					= 10000;
+
+	private int					threadPoolRejectionPolicy			= ThreadPool.REJECT_CALLER_RUNS;
+
+	private boolean				virtualThreads						= false;
+
+	private boolean				nonBlockingTCP						= false;
+
+	private int					udpBatchSize						= 1;
+
 	private int					maxDatagramSize						= FrameworkConstants.DGRAM_MAX_SIZE;
 
 	private boolean				killOnShutdownHook					= true;
@@ -120,6 +185,18 @@ public class FrameworkProperties implements PropertiesHandler {
 					setKillOnShutdownHook("true".equals(property.value));
 				} else if (PROP_THREADPOOL_SIZE.equals(property.key)) {
 					setThreadPoolSize(Integer.valueOf(property.value).intValue());
+				} else if (PROP_THREADPOOL_CLASS.equals(property.key)) {
+					setThreadPoolClass(property.value);
+				} else if (PROP_THREADPOOL_QUEUE_SIZE.equals(property.key)) {
+					setThreadPoolQueueSize(Integer.valueOf(property.value).intValue());
+				} else if (PROP_THREADPOOL_REJECTION_POLICY.equals(property.key)) {
+					setThreadPoolRejectionPolicy(property.value);
+				} else if (PROP_VIRTUAL_THREADS.equals(property.key)) {
+					setVirtualThreads("true".equals(property.value));
+				} else if (PROP_NON_BLOCKING_TCP.equals(property.key)) {
+					setNonBlockingTCP("true".equals(property.value));
+				} else if (PROP_UDP_BATCH_SIZE.equals(property.key)) {
+					setUDPBatchSize(Integer.valueOf(property.value).intValue());
 				} else if (PROP_MAX_DGRAM_SIZE.equals(property.key)) {
 					setMaxDatagramSize(Integer.valueOf(property.value).intValue());
 				} else if (PROP_BYPASS_WSDL_REPOSITORY.equals(property.key)) {
@@ -171,6 +248,62 @@ public class FrameworkProperties implements PropertiesHandler {
 		return threadPoolSize;
 	}
 
+	/**
+	 * Get the class name of the common thread pool.
+	 * 
+	 * @return class name of the thread pool, or <code>null</code> for the
+	 *         platform default.
+	 */
+	public String getThreadPoolClass() {
+		return threadPoolClass;
+	}
+
+	/**
+	 * Get the maximal number of tasks waiting for a thread of the common
+	 * thread pool.
+	 * 
+	 * @return the queue size, <code>-1</code> for no limit.
+	 */
+	public int getThreadPoolQueueSize() {
+		return threadPoolQueueSize;
+	}
+
+	/**
+	 * Get what happens to a task if the queue of the common thread pool is
+	 * full.
+	 * 
+	 * @return one of the <code>ThreadPool.REJECT_</code> constants.
+	 */
+	public int getThreadPoolRejectionPolicy() {
+		return threadPoolRejectionPolicy;
+	}
+
+	/**
+	 * @return whether the handlers of incoming connections and datagrams
+	 *         should run on virtual threads
+	 */
+	public boolean isVirtualThreads() {
+		return virtualThreads;
+	}
+
+	/**
+	 * @return whether incoming TCP connections are served with non-blocking
+	 *         sockets
+	 */
+	public boolean isNonBlockingTCP() {
+		return nonBlockingTCP;
+	}
+
+	/**
+	 * Get the number of incoming UDP datagrams handed to the thread pool at
+	 * once.
+	 * 
+	 * @return the batch size, <code>1</code> for one task per datagram.
+	 */
+	public int getUDPBatchSize() {
+		return udpBatchSize;
+	}
+
 	/**
 	 * get the maximum UDP datagram size.
 	 * 
@@ -212,6 +345,50 @@ public class FrameworkProperties implements PropertiesHandler {
 		this.threadPoolSize = size;
 	}
 
+	public void setThreadPoolClass(String className) {
+		if (className != null && "".equals(className)) {
+			className = null;
+		}
+		this.threadPoolClass = className;
+	}
+
+	public void setThreadPoolQueueSize(int queueSize) {
+		this.threadPoolQueueSize = queueSize;
+	}
+
+	public void setThreadPoolRejectionPolicy(int policy) {
+		this.threadPoolRejectionPolicy = policy;
+	}
+
+	/**
+	 * @param policy one of CallerRuns, Discard, DiscardOldest or Abort
+	 */
+	public void setThreadPoolRejectionPolicy(String policy) {
+		if ("Discard".equals(policy)) {
+			setThreadPoolRejectionPolicy(ThreadPool.REJECT_DISCARD);
+		} else if ("DiscardOldest".equals(policy)) {
+			setThreadPoolRejectionPolicy(ThreadPool.REJECT_DISCARD_OLDEST);
+		} else if ("Abort".equals(policy)) {
+			setThreadPoolRejectionPolicy(ThreadPool.REJECT_ABORT);
+		} else if ("CallerRuns".equals(policy)) {
+			setThreadPoolRejectionPolicy(ThreadPool.REJECT_CALLER_RUNS);
+		} else {
+			Log.warn("Unknown thread pool rejection policy: " + policy);
+		}
+	}
+
+	public void setVirtualThreads(boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+	}
+
+	public void setNonBlockingTCP(boolean nonBlockingTCP) {
+		this.nonBlockingTCP = nonBlockingTCP;
+	}
+
+	public void setUDPBatchSize(int udpBatchSize) {
+		this.udpBatchSize = udpBatchSize;
+	}
+
 	public void setMaxDatagramSize(int maxDatagramSize) {
 		this.maxDatagramSize = maxDatagramSize;
 	}
@@ -16,8 +16,34 @@ public class HTTPProperties implements PropertiesHandler {
 
 	// private static HTTPProperties handler = null;
 
+	/**
+	 * Property id to specify the maximum number of connections the HTTP client
+	 * opens to one destination. <BR>
+	 * Type: int <BR>
+	 * Default: 5
+	 */
 	public static final String			PROP_MAX_CONNECTIONS					= "MaxConnections";
 
+	/**
+	 * Property id to specify the number of requests the HTTP client may send
+	 * over one connection before the first response is received. Requests are
+	 * only pipelined if all connections to the destination are in use. A value
+	 * of 1 disables pipelining. <BR>
+	 * Type: int <BR>
+	 * Default: 1
+	 */
+	public static final String			PROP_PIPELINE_DEPTH						= "PipelineDepth";
+
+	/**
+	 * Property id to specify the maximum size of an incoming HTTP request in
+	 * bytes, i.e. of its header and body, for connections which are read by
+	 * the non-blocking server socket. Larger requests are answered with
+	 * <code>413 Request Entity Too Large</code>. <BR>
+	 * Type: int <BR>
+	 * Default: 16777216 (16 MB)
+	 */
+	public static final String			PROP_MAX_REQUEST_SIZE					= "MaxRequestSize";
+
 	public static final String			PROP_ADDRESS							= "Address";
 
 	public static final String			PROP_CHUNK_MODE							= "ChunkMode";
@@ -34,6 +60,10 @@ public class HTTPProperties implements PropertiesHandler {
 
 	private int							maxCon									= 5;
 
+	private int							pipelineDepth							= 1;
+
+	private int							maxRequestSize							= 16 * 1024 * 1024;
+
 	HTTPProperties() {
 		super();
 	}
@@ -52,6 +82,18 @@ public class HTTPProperties implements PropertiesHandler {
 			} else if (PROP_CHUNK_MODE.equals(property.key)) {
 				currentConfig.setChunkMode(Integer.parseInt(property.value.trim()));
 			}
+		} else if (Properties.HEADER_SECTION_HTTP.equals(header)) {
+			try {
+				if (PROP_MAX_CONNECTIONS.equals(property.key)) {
+					setMaxConnections(Integer.parseInt(property.value.trim()));
+				} else if (PROP_PIPELINE_DEPTH.equals(property.key)) {
+					setPipelineDepth(Integer.parseInt(property.value.trim()));
+				} else if (PROP_MAX_REQUEST_SIZE.equals(property.key)) {
+					setMaxRequestSize(Integer.parseInt(property.value.trim()));
+				}
+			} catch (NumberFormatException e) {
+				Log.printStackTrace(e);
+			}
 		}
 	}
 
@@ -79,6 +121,22 @@ public class HTTPProperties implements PropertiesHandler {
 		this.maxCon = maxCon;
 	}
 
+	public int getPipelineDepth() {
+		return pipelineDepth;
+	}
+
+	public void setPipelineDepth(int pipelineDepth) {
+		this.pipelineDepth = pipelineDepth;
+	}
+
+	public int getMaxRequestSize() {
+		return maxRequestSize;
+	}
+
+	public void setMaxRequestSize(int maxRequestSize) {
+		this.maxRequestSize = maxRequestSize;
+	}
+
 	public int getChunkMode(String address) {
 		ConnectionConfig c = (ConnectionConfig) ccMap.get(address);
 		if (c != null) {
@@ -31,4 +31,10 @@ public interface WS4DConstants {
 
 	public static final QName	WS4D_FAULT_NOT_IMPLEMENTED	= new QName("NotImplemented", WS4D_NAMESPACE_NAME);
 
+	/**
+	 * WS-Eventing delivery mode, in which several notifications of the same
+	 * action are sent within the body of one message.
+	 */
+	public static final String	WS4D_DELIVERY_MODE_BATCHED	= WS4D_NAMESPACE_NAME + "/DeliveryModes/BatchedPush";
+
 }
@@ -345,6 +345,25 @@ public class DefaultEventSink implements EventSink {
 				throw new SOAPException(fault);
 			}
 
+			ParameterValue[] contents = msg.getContents();
+			if (contents.length > 1) {
+				/*
+				 * a batch of notifications, each is handed to the listener on
+				 * its own
+				 */
+				for (int i = 0; i < contents.length; i++) {
+					try {
+						eventListener.eventReceived(subscription, msg.getAction(), contents[i]);
+					} catch (RuntimeException e) {
+						// don't let one event keep the others from the listener
+						Log.error("EventSink.handleMessage(Invoke): event " + (i + 1) + " of " + contents.length + " within one message failed: " + e);
+						Log.printStackTrace(e);
+					}
+				}
+				// send HTTP response (202)
+				return null;
+			}
+
 			ParameterValue paramValue = eventListener.eventReceived(subscription, msg.getAction(), msg.getContent());
 
 			if (paramValue != null) {
@@ -0,0 +1,51 @@
+/*******************************************************************************
+ * Copyright (c) 2009 MATERNA Information & Communications. All rights reserved.
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html. For further
+ * project-related information visit http://www.ws4d.org. The most recent
+ * version of the JMEDS framework can be obtained from
+ * http://sourceforge.net/projects/ws4d-javame.
+ ******************************************************************************/
+package org.ws4d.java.io.fs;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Output stream which can write the content of a file without copying it
+ * through a buffer on the heap, e.g. by a channel transfer from the file to a
+ * socket.
+ * <p>
+ * Streams which only frame the data, like HTTP chunking, implement this
+ * interface by passing the transfer on to the stream they write to. The caller
+ * asks {@link #isTransferable(InputStream)} first and copies the file itself
+ * if the answer is <code>false</code>.
+ * </p>
+ */
+public interface FileTransferTarget {
+
+	/**
+	 * Returns whether the given file stream can be written by
+	 * {@link #transfer(InputStream, long)}.
+	 * 
+	 * @param in the stream of the file, as returned by
+	 *            {@link FileSystem#readFile(String)}.
+	 * @return <code>true</code> if the file can be transferred directly.
+	 */
+	public boolean isTransferable(InputStream in);
+
+	/**
+	 * Writes the next <code>count</code> bytes of the given file stream.
+	 * Everything written to this stream before is written first.
+	 * 
+	 * @param in the stream of the file, for which
+	 *            {@link #isTransferable(InputStream)} returned
+	 *            <code>true</code>.
+	 * @param count the number of bytes to write.
+	 * @throws IOException if writing failed or the file has less than
+	 *             <code>count</code> bytes left.
+	 */
+	public void transfer(InputStream in, long count) throws IOException;
+
+}
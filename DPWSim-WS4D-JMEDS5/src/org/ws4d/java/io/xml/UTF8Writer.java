@@ -0,0 +1,246 @@
+/*******************************************************************************
+ * Copyright (c) 2009 MATERNA Information & Communications. All rights reserved.
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html. For further
+ * project-related information visit http://www.ws4d.org. The most recent
+ * version of the JMEDS framework can be obtained from
+ * http://sourceforge.net/projects/ws4d-javame.
+ ******************************************************************************/
+package org.ws4d.java.io.xml;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * Writer which encodes characters as UTF-8 into a fixed buffer and writes the
+ * buffer to the output stream whenever it is full.
+ * <p>
+ * Unlike an <code>OutputStreamWriter</code>, the writer can be given a new
+ * output stream with {@link #setOutput(OutputStream)}, so one writer and its
+ * buffer serve any number of messages. Large documents reach the stream in
+ * blocks of the buffer size and are never held as a whole. The writer is not
+ * synchronized.
+ * </p>
+ * <p>
+ * The bytes of a part of the document can be {@link #startRecording()
+ * recorded} and later {@link #writeBytes(byte[]) written} into another
+ * document in place of serializing that part again.
+ * </p>
+ */
+public class UTF8Writer extends Writer {
+
+	/** default size of the buffer in bytes */
+	public static final int			DEFAULT_SIZE	= 8192;
+
+	private final byte[]			buffer;
+
+	private int						count			= 0;
+
+	/** high surrogate waiting for its low surrogate, or 0 */
+	private char					highSurrogate	= 0;
+
+	private OutputStream			out				= null;
+
+	/** bytes recorded so far, <code>null</code> if not recording */
+	private ByteArrayOutputStream	record			= null;
+
+	/** first byte of the buffer which belongs to the record */
+	private int						recordStart		= 0;
+
+	public UTF8Writer() {
+		this(DEFAULT_SIZE);
+	}
+
+	public UTF8Writer(int size) {
+		super();
+		buffer = new byte[Math.max(size, 4)];
+	}
+
+	/**
+	 * Sets the stream to write to. Bytes still buffered for the previous
+	 * stream are dropped.
+	 *
+	 * @param out the output stream, or <code>null</code> to release the
+	 *            previous one
+	 */
+	public void setOutput(OutputStream out) {
+		this.out = out;
+		count = 0;
+		highSurrogate = 0;
+		record = null;
+	}
+
+	/**
+	 * @return the stream written to
+	 */
+	public OutputStream getOutput() {
+		return out;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.Writer#write(int)
+	 */
+	public void write(int c) throws IOException {
+		encode((char) c);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.Writer#write(char[], int, int)
+	 */
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		int end = off + len;
+		for (int i = off; i < end; i++) {
+			char c = cbuf[i];
+			if (c < 0x80 && highSurrogate == 0 && count < buffer.length) {
+				buffer[count++] = (byte) c;
+			} else {
+				encode(c);
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.Writer#write(java.lang.String)
+	 */
+	public void write(String str) throws IOException {
+		write(str, 0, str.length());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.Writer#write(java.lang.String, int, int)
+	 */
+	public void write(String str, int off, int len) throws IOException {
+		int end = off + len;
+		for (int i = off; i < end; i++) {
+			char c = str.charAt(i);
+			if (c < 0x80 && highSurrogate == 0 && count < buffer.length) {
+				buffer[count++] = (byte) c;
+			} else {
+				encode(c);
+			}
+		}
+	}
+
+	/**
+	 * Writes bytes which are already encoded, e.g. a part of a document
+	 * recorded before.
+	 *
+	 * @param b the bytes
+	 */
+	public void writeBytes(byte[] b) throws IOException {
+		if (count + b.length > buffer.length) {
+			flushBuffer();
+		}
+		if (b.length > buffer.length) {
+			if (record != null) {
+				record.write(b, 0, b.length);
+			}
+			out.write(b, 0, b.length);
+			return;
+		}
+		System.arraycopy(b, 0, buffer, count, b.length);
+		count += b.length;
+	}
+
+	/**
+	 * Starts to record the bytes written from now on.
+	 */
+	public void startRecording() {
+		record = new ByteArrayOutputStream();
+		recordStart = count;
+	}
+
+	/**
+	 * Stops recording.
+	 *
+	 * @return the bytes written since {@link #startRecording()}
+	 */
+	public byte[] stopRecording() {
+		if (record == null) {
+			return null;
+		}
+		record.write(buffer, recordStart, count - recordStart);
+		byte[] b = record.toByteArray();
+		record = null;
+		return b;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.Writer#flush()
+	 */
+	public void flush() throws IOException {
+		flushBuffer();
+		out.flush();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.Writer#close()
+	 */
+	public void close() throws IOException {
+		if (out == null) {
+			return;
+		}
+		flushBuffer();
+		out.close();
+		out = null;
+	}
+
+	private void encode(char c) throws IOException {
+		if (count > buffer.length - 4) {
+			flushBuffer();
+		}
+		if (highSurrogate != 0) {
+			char high = highSurrogate;
+			highSurrogate = 0;
+			if (c >= 0xDC00 && c <= 0xDFFF) {
+				int cp = 0x10000 + ((high - 0xD800) << 10) + (c - 0xDC00);
+				buffer[count++] = (byte) (0xF0 | (cp >> 18));
+				buffer[count++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+				buffer[count++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+				buffer[count++] = (byte) (0x80 | (cp & 0x3F));
+				return;
+			}
+			// unpaired high surrogate
+			buffer[count++] = (byte) '?';
+			if (count > buffer.length - 4) {
+				flushBuffer();
+			}
+		}
+		if (c < 0x80) {
+			buffer[count++] = (byte) c;
+		} else if (c < 0x800) {
+			buffer[count++] = (byte) (0xC0 | (c >> 6));
+			buffer[count++] = (byte) (0x80 | (c & 0x3F));
+		} else if (c >= 0xD800 && c <= 0xDBFF) {
+			highSurrogate = c;
+		} else if (c >= 0xDC00 && c <= 0xDFFF) {
+			// unpaired low surrogate
+			buffer[count++] = (byte) '?';
+		} else {
+			buffer[count++] = (byte) (0xE0 | (c >> 12));
+			buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+			buffer[count++] = (byte) (0x80 | (c & 0x3F));
+		}
+	}
+
+	private void flushBuffer() throws IOException {
+		if (record != null) {
+			record.write(buffer, recordStart, count - recordStart);
+			recordStart = 0;
+		}
+		if (count > 0) {
+			out.write(buffer, 0, count);
+			count = 0;
+		}
+	}
+
+}
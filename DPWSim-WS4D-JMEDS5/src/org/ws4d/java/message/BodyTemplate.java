@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright (c) 2009 MATERNA Information & Communications. All rights reserved.
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html. For further
+ * project-related information visit http://www.ws4d.org. The most recent
+ * version of the JMEDS framework can be obtained from
+ * http://sourceforge.net/projects/ws4d-javame.
+ ******************************************************************************/
+package org.ws4d.java.message;
+
+/**
+ * The serialized SOAP body of messages which differ only in their header, e.g.
+ * the discovery messages of a device.
+ * <p>
+ * The first message {@link Message#setBodyTemplate(BodyTemplate) given} a
+ * template is serialized as usual and its body is kept, one per DPWS version.
+ * Further messages with the same template get the kept bytes instead of having
+ * their body serialized again. A template MUST be dropped by its owner as soon
+ * as the data within the body changes, messages created afterwards get a new
+ * one.
+ * </p>
+ */
+public class BodyTemplate {
+
+	private final Object		key;
+
+	/** bodies indexed by DPWS version, replaced as a whole */
+	private volatile byte[][]	bodies	= new byte[0][];
+
+	public BodyTemplate() {
+		this(null);
+	}
+
+	/**
+	 * @param key describes the content of the body, if the same kind of
+	 *            message may have different bodies
+	 */
+	public BodyTemplate(Object key) {
+		this.key = key;
+	}
+
+	/**
+	 * Returns whether this template was created for the given key.
+	 *
+	 * @param key the key to compare
+	 * @return <code>true</code> if both keys are equal
+	 */
+	public boolean hasKey(Object key) {
+		return (this.key == null) ? key == null : this.key.equals(key);
+	}
+
+	/**
+	 * @param dpwsVersion the DPWS version
+	 * @return the body or <code>null</code> if not yet kept
+	 */
+	public byte[] getBody(int dpwsVersion) {
+		byte[][] b = bodies;
+		return (dpwsVersion >= 0 && dpwsVersion < b.length) ? b[dpwsVersion] : null;
+	}
+
+	/**
+	 * Keeps the serialized body for the given DPWS version.
+	 *
+	 * @param dpwsVersion the DPWS version
+	 * @param body the bytes of the body element
+	 */
+	public synchronized void setBody(int dpwsVersion, byte[] body) {
+		if (dpwsVersion < 0) {
+			return;
+		}
+		byte[][] b = bodies;
+		byte[][] tmp = new byte[Math.max(b.length, dpwsVersion + 1)][];
+		System.arraycopy(b, 0, tmp, 0, b.length);
+		tmp[dpwsVersion] = body;
+		bodies = tmp;
+	}
+
+}
@@ -14,8 +14,13 @@ import org.ws4d.java.util.StringUtil;
 
 public class InvokeMessage extends Message {
 
+	private static final ParameterValue[]	NO_CONTENTS	= new ParameterValue[0];
+
 	/** object representation of the content of the message's body */
-	private ParameterValue	content	= null;
+	private ParameterValue					content		= null;
+
+	/** all parts of the body, if it has more than one */
+	private ParameterValue[]				contents	= null;
 
 	/**
 	 * Creates a new InvokeInput message containing a {@link SOAPHeader} with a
@@ -84,5 +89,31 @@ public class InvokeMessage extends Message {
 	 */
 	public void setContent(ParameterValue content) {
 		this.content = content;
+		this.contents = null;
+	}
+
+	/**
+	 * Gets all parts of the message body. The body of a batch of
+	 * notifications contains one part per notification, other messages
+	 * contain one part at most.
+	 * 
+	 * @return the parts of the body, the first one is the
+	 *         {@link #getContent() content}
+	 */
+	public ParameterValue[] getContents() {
+		if (contents != null) {
+			return contents;
+		}
+		return (content == null) ? NO_CONTENTS : new ParameterValue[] { content };
+	}
+
+	/**
+	 * Sets the parts of the message body, e.g. of a batch of notifications.
+	 * 
+	 * @param contents the parts of the body, not empty
+	 */
+	public void setContents(ParameterValue[] contents) {
+		this.content = contents[0];
+		this.contents = (contents.length > 1) ? contents : null;
 	}
 }
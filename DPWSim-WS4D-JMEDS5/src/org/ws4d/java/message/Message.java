@@ -55,6 +55,8 @@ public abstract class Message extends UnknownDataContainer implements DPWSMessag
 
 	private Object			privateKey;
 
+	private BodyTemplate	bodyTemplate				= null;
+
 	/**
 	 * Constructor.
 	 * 
@@ -186,6 +188,26 @@ public abstract class Message extends UnknownDataContainer implements DPWSMessag
 		this.secureMessage = b;
 	}
 
+	/**
+	 * Returns the template which holds the serialized body of this message.
+	 * Only used for messages which are not secure.
+	 * 
+	 * @return the template or <code>null</code>
+	 */
+	public BodyTemplate getBodyTemplate() {
+		return bodyTemplate;
+	}
+
+	/**
+	 * Sets the template which holds the serialized body of this message. The
+	 * body MUST NOT be changed afterwards.
+	 * 
+	 * @param bodyTemplate the template shared by messages with the same body
+	 */
+	public void setBodyTemplate(BodyTemplate bodyTemplate) {
+		this.bodyTemplate = bodyTemplate;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see org.ws4d.java.message.DPWSMessage#getMessageId()
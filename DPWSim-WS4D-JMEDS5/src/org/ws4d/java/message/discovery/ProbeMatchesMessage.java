@@ -115,6 +115,9 @@ public class ProbeMatchesMessage extends Message {
 		}
 		if (probeMatches == null) {
 			probeMatches = new ArrayList();
+		} else {
+			// the body now differs from the one kept for a single device
+			setBodyTemplate(null);
 		}
 		probeMatches.add(probeMatch);
 	}
@@ -0,0 +1,419 @@
+/*******************************************************************************
+ * Copyright (c) 2009 MATERNA Information & Communications. All rights reserved.
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html. For further
+ * project-related information visit http://www.ws4d.org. The most recent
+ * version of the JMEDS framework can be obtained from
+ * http://sourceforge.net/projects/ws4d-javame.
+ ******************************************************************************/
+package org.ws4d.java.platform.util;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedTransferQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import java.lang.reflect.Method;
+
+import org.ws4d.java.concurrency.ThreadPool;
+import org.ws4d.java.util.Log;
+import org.ws4d.java.util.WS4DIllegalStateException;
+
+/**
+ * Thread pool for the Java SE platform based on
+ * <code>java.util.concurrent.ThreadPoolExecutor</code>.
+ * <p>
+ * Tasks given to {@link #execute(Runnable)} are handed to an idle thread, or
+ * to a new thread if the pool is not full. Only if all threads are busy,
+ * they wait in a bounded queue. If the queue is full, the configured rejection policy is
+ * applied. Tasks given to {@link #executeOrAbort(Runnable)} are never queued,
+ * they are handed over to an idle or new thread of a second executor, or
+ * aborted.
+ * </p>
+ */
+public class SEThreadPool extends ThreadPool {
+
+	private static final AtomicInteger	POOL_NUMBER			= new AtomicInteger();
+
+	/** milliseconds {@link #shutdown()} waits for running tasks */
+	private static final long			SHUTDOWN_TIMEOUT	= 10000;
+
+	private ThreadPoolExecutor			executor;
+
+	private TaskQueue					queue;
+
+	private ThreadPoolExecutor			immediateExecutor;
+
+	private int							rejectionPolicy	= REJECT_CALLER_RUNS;
+
+	private final AtomicLong			rejected		= new AtomicLong();
+
+	private final AtomicLongArray		latencies		= new AtomicLongArray(LATENCY_BUCKETS);
+
+	private final ThreadFactory			threadFactory;
+
+	/**
+	 * the threads running a task of this pool, including the virtual threads
+	 * of connection handlers
+	 */
+	private final ConcurrentHashMap		workers			= new ConcurrentHashMap();
+
+	/**
+	 * <code>Thread.startVirtualThread(Runnable)</code>, if available and
+	 * enabled
+	 */
+	private volatile Method				startVirtualThread;
+
+	public SEThreadPool() {
+		super();
+		final String prefix = "JMEDS-Pool-" + POOL_NUMBER.incrementAndGet() + "-";
+		threadFactory = new ThreadFactory() {
+
+			private final AtomicInteger	threadNumber	= new AtomicInteger();
+
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, prefix + threadNumber.incrementAndGet());
+				t.setDaemon(false);
+				return t;
+			}
+		};
+		configure(DEFAULT_SIZE, DEFAULT_TIMEOUT, -1, REJECT_CALLER_RUNS);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.ws4d.java.concurrency.ThreadPool#configure(int, long, int, int)
+	 */
+	public synchronized void configure(int size, long timeout, int queueSize, int rejectionPolicy) {
+		super.configure(size, timeout, queueSize, rejectionPolicy);
+		if (executor != null) {
+			executor.shutdown();
+			immediateExecutor.shutdown();
+		}
+		this.rejectionPolicy = rejectionPolicy;
+
+		queue = new TaskQueue(queueSize);
+		executor = new ThreadPoolExecutor(0, size, timeout, TimeUnit.MILLISECONDS, queue, threadFactory, new Rejection());
+
+		immediateExecutor = new ThreadPoolExecutor(0, size, timeout, TimeUnit.MILLISECONDS, new SynchronousQueue(), threadFactory);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.ws4d.java.concurrency.ThreadPool#execute(java.lang.Runnable)
+	 */
+	public void execute(Runnable task) {
+		executor.execute(new TimedTask(task, false));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see
+	 * org.ws4d.java.concurrency.ThreadPool#executeHandler(java.lang.Runnable)
+	 */
+	public boolean executeHandler(Runnable task) {
+		Method start = startVirtualThread;
+		if (start != null && !executor.isShutdown()) {
+			try {
+				start.invoke(null, new Object[] { new TimedTask(task, true) });
+				return true;
+			} catch (Exception e) {
+				Log.error("Cannot start virtual thread, using the thread pool. " + e.getMessage());
+				startVirtualThread = null;
+			}
+		}
+		TimedTask handler = new TimedTask(task, true);
+		executor.execute(handler);
+		return !handler.rejected;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.ws4d.java.concurrency.ThreadPool#setVirtualThreads(boolean)
+	 */
+	public boolean setVirtualThreads(boolean enabled) {
+		if (!enabled) {
+			startVirtualThread = null;
+			return false;
+		}
+		try {
+			// Java 21 and later, looked up at runtime to stay compatible
+			startVirtualThread = Thread.class.getMethod("startVirtualThread", new Class[] { Runnable.class });
+			return true;
+		} catch (NoSuchMethodException e) {
+			Log.warn("Virtual threads are not supported by this Java runtime. Connection handlers use the thread pool.");
+			return false;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see
+	 * org.ws4d.java.concurrency.ThreadPool#executeOrAbort(java.lang.Runnable)
+	 */
+	public boolean executeOrAbort(Runnable task) {
+		try {
+			immediateExecutor.execute(new TimedTask(task, false));
+			return true;
+		} catch (RejectedExecutionException e) {
+			return false;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.ws4d.java.concurrency.ThreadPool#shutdown()
+	 */
+	public void shutdown() {
+		executor.shutdown();
+		immediateExecutor.shutdown();
+		if (workers.containsKey(Thread.currentThread())) {
+			// do not wait for ourselves
+			return;
+		}
+		long deadline = System.currentTimeMillis() + SHUTDOWN_TIMEOUT;
+		try {
+			if (executor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS) && immediateExecutor.awaitTermination(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS)) {
+				return;
+			}
+			Log.warn("Thread pool shut down with " + workers.size() + " tasks still running after " + SHUTDOWN_TIMEOUT + " ms.");
+		} catch (InterruptedException e) {
+			// void
+		}
+	}
+
+	public int getQueueSize() {
+		return executor.getQueue().size();
+	}
+
+	public int getActiveCount() {
+		return executor.getActiveCount() + immediateExecutor.getActiveCount();
+	}
+
+	public long getCompletedTaskCount() {
+		return executor.getCompletedTaskCount() + immediateExecutor.getCompletedTaskCount();
+	}
+
+	public long getRejectedTaskCount() {
+		return rejected.get();
+	}
+
+	public long[] getLatencyHistogram() {
+		long[] copy = new long[LATENCY_BUCKETS];
+		for (int i = 0; i < LATENCY_BUCKETS; i++) {
+			copy[i] = latencies.get(i);
+		}
+		return copy;
+	}
+
+	protected void recordLatency(long millis) {
+		latencies.incrementAndGet(latencyBucket(millis));
+	}
+
+	/**
+	 * Applies the rejection policy of the pool to tasks which do not fit into
+	 * the full queue. Handlers are only marked as rejected, see
+	 * {@link #executeHandler(Runnable)}.
+	 */
+	private class Rejection implements RejectedExecutionHandler {
+
+		public void rejectedExecution(Runnable r, ThreadPoolExecutor e) {
+			TimedTask task = (TimedTask) r;
+			if (e.isShutdown()) {
+				// new tasks are ignored after shutdown
+				task.rejected = true;
+				return;
+			}
+			if (queue.enqueue(task)) {
+				// all threads busy, but there is room in the queue
+				return;
+			}
+			rejected.incrementAndGet();
+			if (task.handler) {
+				task.rejected = true;
+				if (Log.isDebug()) {
+					Log.debug("Thread pool queue full. Handler rejected.", Log.DEBUG_LAYER_FRAMEWORK);
+				}
+				return;
+			}
+			switch (rejectionPolicy) {
+				case REJECT_DISCARD:
+					if (Log.isDebug()) {
+						Log.debug("Thread pool queue full. Task discarded.", Log.DEBUG_LAYER_FRAMEWORK);
+					}
+					break;
+				case REJECT_DISCARD_OLDEST:
+					if (queue.removeOldestTask()) {
+						if (Log.isDebug()) {
+							Log.debug("Thread pool queue full. Oldest task discarded.", Log.DEBUG_LAYER_FRAMEWORK);
+						}
+						queue.enqueue(task);
+					} else if (Log.isDebug()) {
+						// only handlers wait, they are never dropped
+						Log.debug("Thread pool queue full. Task discarded.", Log.DEBUG_LAYER_FRAMEWORK);
+					}
+					break;
+				case REJECT_ABORT:
+					throw new WS4DIllegalStateException("Thread pool queue full (" + e.getQueue().size() + " tasks).");
+				default:
+					r.run();
+			}
+		}
+	}
+
+	/**
+	 * Task queue which accepts a task from the executor only if an idle thread
+	 * takes it at once. The executor then starts a new thread, up to the pool
+	 * size, instead of queueing the task. When the pool is full, the rejection
+	 * handler puts the task into the queue, if the queue is not full.
+	 * <p>
+	 * The waiting tasks are counted, as <code>LinkedTransferQueue.size()</code>
+	 * traverses the queue. Tasks handed over to an idle thread never wait, so
+	 * only tasks marked as {@link TimedTask#queued queued} are counted when
+	 * they are taken.
+	 * </p>
+	 */
+	private static class TaskQueue extends LinkedTransferQueue {
+
+		private static final long	serialVersionUID	= 1L;
+
+		private final int			capacity;
+
+		/** number of waiting tasks */
+		private final AtomicInteger	waiting				= new AtomicInteger();
+
+		TaskQueue(int capacity) {
+			this.capacity = capacity;
+		}
+
+		public boolean offer(Object o) {
+			return tryTransfer(o);
+		}
+
+		boolean enqueue(TimedTask task) {
+			int n;
+			do {
+				n = waiting.get();
+				if (capacity >= 0 && n >= capacity) {
+					return false;
+				}
+			} while (!waiting.compareAndSet(n, n + 1));
+			task.queued = true;
+			return super.offer(task);
+		}
+
+		/**
+		 * Removes the oldest waiting task which is no handler. Handlers are
+		 * never dropped, see {@link SEThreadPool#executeHandler(Runnable)}.
+		 * 
+		 * @return <code>false</code> if only handlers wait
+		 */
+		boolean removeOldestTask() {
+			for (Iterator it = iterator(); it.hasNext();) {
+				Object o = it.next();
+				if (!((TimedTask) o).handler && remove(o)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		public int size() {
+			return waiting.get();
+		}
+
+		public Object poll() {
+			return taken(super.poll());
+		}
+
+		public Object poll(long timeout, TimeUnit unit) throws InterruptedException {
+			return taken(super.poll(timeout, unit));
+		}
+
+		public Object take() throws InterruptedException {
+			return taken(super.take());
+		}
+
+		public boolean remove(Object o) {
+			if (!super.remove(o)) {
+				return false;
+			}
+			taken(o);
+			return true;
+		}
+
+		public int drainTo(Collection c) {
+			return drainTo(c, Integer.MAX_VALUE);
+		}
+
+		public int drainTo(Collection c, int maxElements) {
+			int n = 0;
+			Object o;
+			while (n < maxElements && (o = poll()) != null) {
+				c.add(o);
+				n++;
+			}
+			return n;
+		}
+
+		private Object taken(Object o) {
+			if (o instanceof TimedTask) {
+				TimedTask task = (TimedTask) o;
+				if (task.queued) {
+					task.queued = false;
+					waiting.decrementAndGet();
+				}
+			}
+			return o;
+		}
+	}
+
+	/**
+	 * Measures the latency of a task.
+	 */
+	private class TimedTask implements Runnable {
+
+		private final Runnable	task;
+
+		private final long		submitted	= System.nanoTime();
+
+		/** <code>true</code> while the task waits in the {@link TaskQueue} */
+		volatile boolean		queued		= false;
+
+		/** <code>true</code> if given to {@link #executeHandler(Runnable)} */
+		final boolean			handler;
+
+		/** <code>true</code> if the task is neither started nor queued */
+		boolean					rejected	= false;
+
+		TimedTask(Runnable task, boolean handler) {
+			this.task = task;
+			this.handler = handler;
+		}
+
+		public void run() {
+			Thread current = Thread.currentThread();
+			workers.put(current, task);
+			try {
+				task.run();
+			} catch (Exception e) {
+				Log.error("Exception occurred while running thread. " + e.getMessage());
+				Log.printStackTrace(e);
+			} finally {
+				workers.remove(current);
+				recordLatency((System.nanoTime() - submitted) / 1000000);
+			}
+		}
+	}
+
+}
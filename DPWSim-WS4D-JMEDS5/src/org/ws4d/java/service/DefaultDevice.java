@@ -36,6 +36,7 @@ import org.ws4d.java.constants.DPWSMessageConstants;
 import org.ws4d.java.dispatch.DefaultDeviceReference;
 import org.ws4d.java.dispatch.DeviceServiceRegistry;
 import org.ws4d.java.dispatch.OutDispatcher;
+import org.ws4d.java.message.BodyTemplate;
 import org.ws4d.java.message.SOAPException;
 import org.ws4d.java.message.discovery.ByeMessage;
 import org.ws4d.java.message.discovery.HelloMessage;
@@ -56,7 +57,7 @@ import org.ws4d.java.structures.EmptyStructures;
 import org.ws4d.java.structures.HashMap;
 import org.ws4d.java.structures.HashSet;
 import org.ws4d.java.structures.Iterator;
-import org.ws4d.java.structures.MessageIdBuffer;
+import org.ws4d.java.structures.MessageIdFilter;
 import org.ws4d.java.structures.ReadOnlyIterator;
 import org.ws4d.java.structures.Set;
 import org.ws4d.java.types.AppSequence;
@@ -188,6 +189,35 @@ public class DefaultDevice extends DeviceCommons implements LocalDevice {
 
 	protected final AppSequenceManager		appSequencer					= new AppSequenceManager();
 
+	/*
+	 * Serialized bodies of the discovery messages, dropped whenever the
+	 * discovery data changes.
+	 */
+	private volatile BodyTemplate			helloTemplate					= null;
+
+	private volatile BodyTemplate			byeTemplate						= null;
+
+	private volatile BodyTemplate			probeMatchesTemplate			= null;
+
+	private volatile BodyTemplate			resolveMatchesTemplate			= null;
+
+	/*
+	 * Counts the resets of the templates. Hello, Bye and the metadata are
+	 * built without holding off every reset, so their templates are only kept
+	 * if no reset happened meanwhile. Guarded by templateLock.
+	 */
+	private int								templateGeneration				= 0;
+
+	private final Object					templateLock					= new Object();
+
+	/*
+	 * Serialized body of the GetResponse and the hosted parts within it,
+	 * dropped whenever the metadata of the device or of a service changes.
+	 */
+	private volatile BodyTemplate			getResponseTemplate				= null;
+
+	private volatile DataStructure			hostedMetadata					= null;
+
 	protected DataStructure					transportBindings;
 
 	protected DataStructure					inputDiscoveryBindings;
@@ -212,7 +242,7 @@ public class DefaultDevice extends DeviceCommons implements LocalDevice {
 
 	private String							namespace						= "http://ws4d.org";
 
-	private final MessageIdBuffer			messageIdBuffer					= new MessageIdBuffer();
+	private final MessageIdFilter			messageIdBuffer					= new MessageIdFilter();
 
 	public static final int					MAX_QNAME_SERIALIZATION			= 10;
 
@@ -626,6 +656,7 @@ public class DefaultDevice extends DeviceCommons implements LocalDevice {
 			}
 
 			discoveryData.addTypes(collectedDeviceTypes);
+			resetBodyTemplates();
 
 			appSequencer.reset();
 
@@ -753,11 +784,22 @@ public class DefaultDevice extends DeviceCommons implements LocalDevice {
 	 * </p>
 	 */
 	public void sendBye() {
+		int generation = getTemplateGeneration();
 		DiscoveryData data = new DiscoveryData();
 		data.setEndpointReference(discoveryData.getEndpointReference());
 		data.setXAddresInfoSet(discoveryData.getXAddressInfoSet());
 		ByeMessage bye = new ByeMessage(data, CommunicationManager.ID_NULL);
 		bye.getHeader().setAppSequence(appSequencer.getNext());
+		BodyTemplate template = byeTemplate;
+		if (template == null) {
+			template = new BodyTemplate();
+			synchronized (templateLock) {
+				if (generation == templateGeneration) {
+					byeTemplate = template;
+				}
+			}
+		}
+		bye.setBodyTemplate(template);
 
 		OutDispatcher.getInstance().send(bye, null, getOutputDiscoveryDomains());
 	}
@@ -774,6 +816,7 @@ public class DefaultDevice extends DeviceCommons implements LocalDevice {
 			// // fire hellos only if currently up
 			// return;
 			// }
+			resetBodyTemplates();
 			if (!isMetadataVersionSet) {
 				/*
 				 * We only increment version, if not set by user.
@@ -1983,6 +2026,7 @@ public class DefaultDevice extends DeviceCommons implements LocalDevice {
 	 * 
 	 */
 	private void copyDiscoveryDataIfRunning() {
+		resetBodyTemplates();
 		if (running && !discoveryDataChanged) {
 			discoveryData = new DiscoveryData(discoveryData);
 			myDeviceRef.setDiscoveryData(discoveryData);
@@ -1996,6 +2040,7 @@ public class DefaultDevice extends DeviceCommons implements LocalDevice {
 	 * @return the wsa:Hello message.
 	 */
 	private HelloMessage createHelloMessage() {
+		int generation = getTemplateGeneration();
 		// Copy discovery data! And filter types with priorities.
 		DiscoveryData d = new DiscoveryData(discoveryData);
 		QName[] qarray = QNameSet.sortPrioritiesAsArray(d.getTypes());
@@ -2011,6 +2056,16 @@ public class DefaultDevice extends DeviceCommons implements LocalDevice {
 		}
 		HelloMessage hello = new HelloMessage(d, CommunicationManager.ID_NULL);
 		hello.getHeader().setAppSequence(appSequencer.getNext());
+		BodyTemplate template = helloTemplate;
+		if (template == null) {
+			template = new BodyTemplate();
+			synchronized (templateLock) {
+				if (generation == templateGeneration) {
+					helloTemplate = template;
+				}
+			}
+		}
+		hello.setBodyTemplate(template);
 		if (isSecure()) {
 			hello.setSecure(true);
 			hello.setCertificate(this.getCertificate());
@@ -2019,6 +2074,118 @@ public class DefaultDevice extends DeviceCommons implements LocalDevice {
 		return hello;
 	}
 
+	/**
+	 * Drops the serialized bodies of the discovery messages. Called before the
+	 * discovery data changes. The exclusive lock MUST be held by the caller.
+	 */
+	private void resetBodyTemplates() {
+		synchronized (templateLock) {
+			templateGeneration++;
+			helloTemplate = null;
+			byeTemplate = null;
+		}
+		// installed under the shared lock, excluded by the exclusive lock
+		probeMatchesTemplate = null;
+		resolveMatchesTemplate = null;
+		resetMetadataTemplates();
+		for (Iterator it = services.iterator(); it.hasNext();) {
+			Object service = it.next();
+			if (service instanceof DefaultService) {
+				((DefaultService) service).resetMetadataTemplates();
+			}
+		}
+	}
+
+	private int getTemplateGeneration() {
+		synchronized (templateLock) {
+			return templateGeneration;
+		}
+	}
+
+	/**
+	 * Drops the kept GetResponse, e.g. because a hosted service was started or
+	 * stopped.
+	 */
+	void resetMetadataTemplates() {
+		synchronized (templateLock) {
+			templateGeneration++;
+			getResponseTemplate = null;
+			hostedMetadata = null;
+		}
+	}
+
+	/**
+	 * Returns the hosted parts of the relationship metadata, one for each
+	 * service. The shared lock MUST be held by the caller.
+	 * 
+	 * @param generation the template generation before the response was
+	 *            started.
+	 * @return the hosted metadata of the services.
+	 */
+	private DataStructure getHostedMetadata(int generation) {
+		DataStructure hostedParts = hostedMetadata;
+		if (hostedParts != null) {
+			return hostedParts;
+		}
+		hostedParts = new ArrayList(services.size());
+		Iterator it = getServices();
+		while (it.hasNext()) {
+			HostedMData hosted = new HostedMData();
+			Service service = (Service) it.next();
+
+			/*
+			 * Filter endpoint references which are not transport addresses.
+			 * DPWS specification 2.5 R0042
+			 */
+			Iterator eprsCurrent = service.getEprInfos();
+			EprInfoSet eprsFiltered = new EprInfoSet();
+			while (eprsCurrent.hasNext()) {
+				EprInfo epr = (EprInfo) eprsCurrent.next();
+				if (epr.getXAddress() != null) {
+					eprsFiltered.add(epr);
+				}
+			}
+			hosted.setEprInfoSet(eprsFiltered);
+			Iterator typesCurrent = service.getPortTypes();
+			QNameSet typesFilled = new QNameSet();
+			while (typesCurrent.hasNext()) {
+				QName name = (QName) typesCurrent.next();
+				typesFilled.add(name);
+			}
+			hosted.setTypes(typesFilled);
+			hosted.setServiceId(service.getServiceId());
+			hostedParts.add(hosted);
+		}
+		synchronized (templateLock) {
+			if (generation == templateGeneration) {
+				hostedMetadata = hostedParts;
+			}
+		}
+		return hostedParts;
+	}
+
+	/**
+	 * Returns the template for the body of the GetResponse. The shared lock
+	 * MUST be held by the caller.
+	 * 
+	 * @param generation the template generation before the response was
+	 *            started.
+	 * @return the template for the current metadata version.
+	 */
+	private BodyTemplate getGetResponseTemplate(int generation) {
+		Long metadataVersion = Long.valueOf(discoveryData.getMetadataVersion());
+		BodyTemplate template = getResponseTemplate;
+		if (template == null || !template.hasKey(metadataVersion)) {
+			template = new BodyTemplate(metadataVersion);
+			synchronized (templateLock) {
+				if (generation == templateGeneration) {
+					getResponseTemplate = template;
+				}
+			}
+		}
+		return template;
+	}
+
 	private DataStructure getOutputDiscoveryDomains() {
 		if (isUsingDefaultDiscoveryDomains()) {
 			return Discovery.getDefaultOutputDomains();
@@ -2052,6 +2219,7 @@ public class DefaultDevice extends DeviceCommons implements LocalDevice {
 		 * org.ws4d.java.communication.ProtocolData)
 		 */
 		public GetResponseMessage handle(GetMessage get, ProtocolData protocolData) throws SOAPException {
+			int generation = getTemplateGeneration();
 			lockSupport.sharedLock();
 			try {
 				GetResponseMessage response = new GetResponseMessage(protocolData.getCommunicationManagerId());
@@ -2071,33 +2239,8 @@ public class DefaultDevice extends DeviceCommons implements LocalDevice {
 				relationship.setHost(host);
 
 				// the hosted parts
-				Iterator it = getServices();
-				while (it.hasNext()) {
-					HostedMData hosted = new HostedMData();
-					Service service = (Service) it.next();
-
-					/*
-					 * Filter endpoint references which are not transport
-					 * addresses. DPWS specification 2.5 R0042
-					 */
-					Iterator eprsCurrent = service.getEprInfos();
-					EprInfoSet eprsFiltered = new EprInfoSet();
-					while (eprsCurrent.hasNext()) {
-						EprInfo epr = (EprInfo) eprsCurrent.next();
-						if (epr.getXAddress() != null) {
-							eprsFiltered.add(epr);
-						}
-					}
-					hosted.setEprInfoSet(eprsFiltered);
-					Iterator typesCurrent = service.getPortTypes();
-					QNameSet typesFilled = new QNameSet();
-					while (typesCurrent.hasNext()) {
-						QName name = (QName) typesCurrent.next();
-						typesFilled.add(name);
-					}
-					hosted.setTypes(typesFilled);
-					hosted.setServiceId(service.getServiceId());
-					relationship.addHosted(hosted);
+				for (Iterator it = getHostedMetadata(generation).iterator(); it.hasNext();) {
+					relationship.addHosted((HostedMData) it.next());
 				}
 
 				CommunicationManager comMan = DPWSFramework.getCommunicationManager(protocolData.getCommunicationManagerId());
@@ -2108,6 +2251,7 @@ public class DefaultDevice extends DeviceCommons implements LocalDevice {
 				if (hasCustomizeMData) {
 					response.addCustomizeMetaData(CustomizeMData.getInstance());
 				}
+				response.setBodyTemplate(getGetResponseTemplate(generation));
 				return response;
 			} finally {
 				lockSupport.releaseSharedLock();
@@ -2158,6 +2302,8 @@ public class DefaultDevice extends DeviceCommons implements LocalDevice {
 						 */
 						matchTypes = discoveryData.getTypes();
 						if (matchTypes != null) {
+							// don't change the types of the device
+							matchTypes = new QNameSet(matchTypes);
 							matchTypes.addAll(supportedDeviceTypes);
 						} else {
 							matchTypes = new QNameSet(supportedDeviceTypes);
@@ -2215,6 +2361,17 @@ public class DefaultDevice extends DeviceCommons implements LocalDevice {
 					probeMatch.setScopes(matchScopes);
 					probeMatch.setXAddresInfoSet(discoveryData.getXAddressInfoSet());
 					response.addProbeMatch(probeMatch);
+
+					/*
+					 * the types and scopes depend on the probe, the body of the
+					 * last matches is kept
+					 */
+					ProbeMatchKey key = new ProbeMatchKey(matchTypes, matchScopes);
+					BodyTemplate template = probeMatchesTemplate;
+					if (template == null || !template.hasKey(key)) {
+						probeMatchesTemplate = template = new BodyTemplate(key);
+					}
+					response.setBodyTemplate(template);
 					return response;
 				} else if (probe.isDirected()) {
 					// always return empty ProbeMatches message when directed
@@ -2257,6 +2414,11 @@ public class DefaultDevice extends DeviceCommons implements LocalDevice {
 					match.setScopes(discoveryData.getScopes());
 					match.setXAddresInfoSet(discoveryData.getXAddressInfoSet());
 					response.setResolveMatch(match);
+					BodyTemplate template = resolveMatchesTemplate;
+					if (template == null) {
+						resolveMatchesTemplate = template = new BodyTemplate();
+					}
+					response.setBodyTemplate(template);
 					return response;
 				}
 				return null;
@@ -2267,6 +2429,42 @@ public class DefaultDevice extends DeviceCommons implements LocalDevice {
 
 	}
 
+	/**
+	 * Types and scopes of a probe match, to tell whether a kept body fits.
+	 */
+	private static class ProbeMatchKey {
+
+		private final QNameSet	types;
+
+		private final String	scopes;
+
+		ProbeMatchKey(QNameSet types, ScopeSet scopes) {
+			// the types of the message may still be changed for its DPWS version
+			this.types = (types == null) ? null : new QNameSet(types);
+			this.scopes = (scopes == null || scopes.isEmpty()) ? null : scopes.getScopesAsString();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.Object#hashCode()
+		 */
+		public int hashCode() {
+			return ((types == null) ? 0 : types.hashCode()) * 31 + ((scopes == null) ? 0 : scopes.hashCode());
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		public boolean equals(Object obj) {
+			if (this == obj) return true;
+			if (!(obj instanceof ProbeMatchKey)) return false;
+			ProbeMatchKey other = (ProbeMatchKey) obj;
+			if (types == null ? other.types != null : !types.equals(other.types)) return false;
+			return (scopes == null) ? other.scopes == null : scopes.equals(other.scopes);
+		}
+	}
+
 	/**
 	 * Manages the application sequence of device.
 	 */
@@ -2351,6 +2549,7 @@ public class DefaultDevice extends DeviceCommons implements LocalDevice {
 		hasCustomizeMData = true;
 
 		this.mdata = metaData;
+		resetMetadataTemplates();
 
 		Iterator keys = mdata.keySet().iterator();
 		while (keys.hasNext()) {
@@ -11,14 +11,18 @@ package org.ws4d.java.service;
 
 import org.ws4d.java.DPWSFramework;
 import org.ws4d.java.communication.DefaultResponseCallback;
+import org.ws4d.java.communication.NoContentResponseCallback;
 import org.ws4d.java.communication.ProtocolData;
 import org.ws4d.java.communication.TimeoutException;
+import org.ws4d.java.configuration.DispatchingProperties;
+import org.ws4d.java.configuration.EventingProperties;
 import org.ws4d.java.dispatch.OutDispatcher;
 import org.ws4d.java.eventing.ClientSubscription;
 import org.ws4d.java.eventing.EventListener;
 import org.ws4d.java.eventing.EventSink;
 import org.ws4d.java.eventing.EventSource;
 import org.ws4d.java.eventing.EventingException;
+import org.ws4d.java.message.BodyTemplate;
 import org.ws4d.java.message.FaultMessage;
 import org.ws4d.java.message.InvokeMessage;
 import org.ws4d.java.message.Message;
@@ -26,17 +30,18 @@ import org.ws4d.java.message.SOAPHeader;
 import org.ws4d.java.service.parameter.ParameterValue;
 import org.ws4d.java.structures.ArrayList;
 import org.ws4d.java.structures.DataStructure;
-import org.ws4d.java.structures.HashMap;
 import org.ws4d.java.structures.HashSet;
 import org.ws4d.java.structures.Iterator;
-import org.ws4d.java.structures.LockedMap;
 import org.ws4d.java.structures.LockedSet;
+import org.ws4d.java.types.Delivery;
 import org.ws4d.java.types.QName;
 import org.ws4d.java.types.URI;
 import org.ws4d.java.types.URISet;
-import org.ws4d.java.types.XAddressInfo;
 import org.ws4d.java.util.IDGenerator;
 import org.ws4d.java.util.Log;
+import org.ws4d.java.util.ParameterUtil;
+import org.ws4d.java.util.TimedEntry;
+import org.ws4d.java.util.WatchDog;
 import org.ws4d.java.wsdl.WSDLOperation;
 
 /**
@@ -78,10 +83,8 @@ import org.ws4d.java.wsdl.WSDLOperation;
 public class DefaultEventSource extends OperationCommons implements EventSource {
 
 	/** set of all service subscriptions subscribed to this operation */
-	private LockedSet	subscriptions		= new LockedSet(new HashSet(5));
+	private LockedSet	subscriptions	= new LockedSet(new HashSet(5));
 
-	private HashMap		map_MsgId_2_Context	= new LockedMap(new HashMap(5));
-	
 	/**
 	 * default constructor
 	 * 
@@ -129,6 +132,30 @@ public class DefaultEventSource extends OperationCommons implements EventSource
 	 * method, but this is not checked for, so other means of providing reliable
 	 * correlation based on this value can also be used.
 	 * </p>
+	 * <p>
+	 * The event is added to the notification queue of each remote subscriber,
+	 * which sends one message at a time, so each subscriber gets the events
+	 * in the order they were fired. The body of the notifications is
+	 * serialized once per DPWS version, only the header with the addressing
+	 * data of each subscriber is serialized per notification. Therefore
+	 * <code>paramValue</code> MUST NOT be changed after calling this method.
+	 * If the queue of a subscriber is full, the
+	 * {@link EventingProperties#getNotificationQueueOverflow() overflow
+	 * policy} applies. A subscriber which requested
+	 * {@link Delivery#BATCHED_DELIVERY batched delivery} gets notifications of
+	 * the same action in batches.
+	 * </p>
+	 * <p>
+	 * No thread waits for the responses to solicit messages, each response is
+	 * handed to
+	 * {@link #solicitResponseReceived(ParameterValue, int, ServiceSubscription)}
+	 * when it arrives. A subscriber which has not answered
+	 * {@link EventingProperties#getMaxPendingSolicits() several} solicit
+	 * messages yet does not get further ones until it does. A subscriber which
+	 * does not answer within the
+	 * {@link DispatchingProperties#getResponseWaitTime() response wait time}
+	 * is removed.
+	 * </p>
 	 * 
 	 * @param paramValue the parameters to be sent to all subscribers with this
 	 *            event notification
@@ -138,24 +165,18 @@ public class DefaultEventSource extends OperationCommons implements EventSource
 	 *            responses} from subscribers
 	 */
 	public void fire(final ParameterValue paramValue, final int eventNumber) {
-		final ArrayList outdatedSubscriptions = new ArrayList();
+		ArrayList started = null;
+		ArrayList overflowed = null;
+		BodyTemplate template = null;
+		int queueSize = 0;
+		int overflow = 0;
+		int maxSolicits = 0;
+		boolean batchable = false;
 		subscriptions.sharedLock();
 		try {
-			long currentTime = System.currentTimeMillis();
-
 			for (Iterator it = subscriptions.iterator(); it.hasNext();) {
 				final ServiceSubscription subscription = (ServiceSubscription) it.next();
 
-				if (subscription.expirationTime < currentTime) {
-					/*
-					 * subscription is out of date
-					 */
-					outdatedSubscriptions.add(subscription);
-					continue;
-				}
-
-				final OperationDescription op = this;
-
 				if (subscription.sink != null) {
 					/*
 					 * CASE: Local Client
@@ -188,85 +209,152 @@ public class DefaultEventSource extends OperationCommons implements EventSource
 					/*
 					 * CASE: Remote client
 					 */
-					DPWSFramework.getThreadPool().execute(new Runnable() {
-
-						public void run() {
-							InvokeMessage notification = new InvokeMessage(getOutputAction(), subscription.getCommunicationManagerID());
-							notification.setContent(paramValue);
-							SOAPHeader header = notification.getHeader();
-
-							notification.setProtocolInfo(subscription.getProtocolInfo());
-							/*
-							 * Add client subscription id
-							 */
-							header.setEndpointReference(subscription.notifyTo.getEndpointReference());
-
-							// set to preferred xAddress of client / event sink
-							notification.setTargetXAddressInfo(subscription.notifyTo);
-
-							/*
-							 * Send the message
-							 */
-							if (getType() == WSDLOperation.TYPE_SOLICIT_RESPONSE) {
-								/*
-								 * CASE: Solicit response
-								 */
-								URI msgId = notification.getMessageId();
-								SolicitResponseContext msgContext = new SolicitResponseContext(msgId);
-
-								map_MsgId_2_Context.put(msgId, msgContext);
-
-								OutDispatcher.getInstance().send(notification, subscription.notifyTo, new DefaultEventSourceCallback(subscription.notifyTo, subscription, op));
-
-								synchronized (msgId) {
-									while (msgContext.waitingForNotfication) {
-										try {
-											msgId.wait();
-										} catch (InterruptedException e) {
-											e.printStackTrace();
-										}
-									}
-								}
-
-								if (msgContext.rspParamValue != null) {
-									solicitResponseReceived(msgContext.rspParamValue, eventNumber, subscription);
-								} else if (!msgContext.responseReceived) {
-									/*
-									 * Remove subscription, if no response
-									 * received
-									 */
-									Log.error("Event.fire(): No response received!");
-									subscriptions.remove(subscription);
-								}
-							} else {
-								/*
-								 * CASE: Notification
-								 */
-								OutDispatcher.getInstance().send(notification, subscription.notifyTo, new DefaultEventSourceCallback(subscription.notifyTo, subscription, op));
-							}
+					if (template == null) {
+						template = new BodyTemplate();
+						EventingProperties properties = EventingProperties.getInstance();
+						queueSize = properties.getNotificationQueueSize();
+						overflow = properties.getNotificationQueueOverflow();
+						maxSolicits = properties.getMaxPendingSolicits();
+						// attachments are sent within a MIME message of their own
+						batchable = getType() == WSDLOperation.TYPE_NOTIFICATION && paramValue != null && !ParameterUtil.hasAttachment(paramValue);
+					}
+					NotificationQueue.Entry entry = new NotificationQueue.Entry(subscription, this, paramValue, eventNumber, template, batchable);
+					int result = subscription.queue.offer(entry, queueSize, overflow, maxSolicits);
+					if (result == NotificationQueue.SEND_BATCH) {
+						// send the waiting batch instead
+						entry = subscription.queue.next();
+						result = (entry == null) ? NotificationQueue.CLOSED : NotificationQueue.SEND;
+					}
+					if (result == NotificationQueue.SEND) {
+						if (started == null) {
+							started = new ArrayList();
 						}
-					});
+						started.add(entry);
+					} else if (result == NotificationQueue.OVERFLOW) {
+						if (overflowed == null) {
+							overflowed = new ArrayList();
+						}
+						overflowed.add(subscription);
+					} else if (result == NotificationQueue.SKIPPED) {
+						Log.warn("DefaultEventSource.fire(): " + maxSolicits + " solicit messages to " + subscription.notifyTo + " wait for a response, event " + eventNumber + " is not sent");
+					}
 				}
 			}
 		} finally {
 			subscriptions.releaseSharedLock();
 		}
 
+		if (started != null) {
+			sendNotifications(started);
+		}
+
 		/*
-		 * remove outdated subscriptions
+		 * end subscriptions whose queue overflowed
 		 */
-		if (outdatedSubscriptions.size() > 0) {
-			subscriptions.exclusiveLock();
-			try {
-				for (Iterator it = outdatedSubscriptions.iterator(); it.hasNext();) {
-					subscriptions.remove(it.next());
+		if (overflowed != null) {
+			for (Iterator it = overflowed.iterator(); it.hasNext();) {
+				ServiceSubscription subscription = (ServiceSubscription) it.next();
+				Log.warn("DefaultEventSource.fire(): Notification queue of " + subscription.notifyTo + " overflowed, ending subscription");
+				if (subscription.manager != null) {
+					subscription.manager.endOverflowedSubscription(subscription);
+				} else {
+					subscription.queue.close();
+					removeSubscription(subscription);
 				}
-			} finally {
-				subscriptions.releaseExclusiveLock();
 			}
 		}
 	}
 
+	/**
+	 * Sends the given events, each the first one in the queue of its remote
+	 * subscriber. All notifications of an event share one
+	 * {@link BodyTemplate}, so the body is serialized for the first
+	 * notification of each DPWS version and copied into the others. The
+	 * notifications are given to the pooled HTTP connections of their
+	 * subscribers by one task, the connections send them in parallel.
+	 * 
+	 * @param started the events to send
+	 */
+	private static void sendNotifications(final ArrayList started) {
+		DPWSFramework.getThreadPool().execute(new Runnable() {
+
+			public void run() {
+				for (Iterator it = started.iterator(); it.hasNext();) {
+					sendQueued((NotificationQueue.Entry) it.next());
+				}
+			}
+		});
+	}
+
+	/**
+	 * Sends the given event of a notification queue. If it can not be sent,
+	 * the events waiting behind it are sent instead.
+	 * 
+	 * @param entry the event, may be <code>null</code>
+	 */
+	static void sendQueued(NotificationQueue.Entry entry) {
+		while (entry != null && !entry.source.send(entry)) {
+			entry = entry.subscription.queue.next();
+		}
+	}
+
+	/**
+	 * Sends the given event of this event source to its remote subscriber.
+	 * Responses to solicit messages are handled by the callback of each
+	 * message.
+	 * 
+	 * @return <code>false</code> if the message could not be sent
+	 */
+	private boolean send(NotificationQueue.Entry entry) {
+		ServiceSubscription subscription = entry.subscription;
+		DefaultEventSourceCallback callback = new DefaultEventSourceCallback(entry, getType() == WSDLOperation.TYPE_SOLICIT_RESPONSE);
+		try {
+			InvokeMessage notification = createNotification(subscription, entry.paramValue);
+			if (entry.batch == null) {
+				notification.setBodyTemplate(entry.template);
+			} else {
+				ParameterValue[] contents = new ParameterValue[entry.batch.size() + 1];
+				contents[0] = entry.paramValue;
+				for (int i = 1; i < contents.length; i++) {
+					contents[i] = ((NotificationQueue.Entry) entry.batch.get(i - 1)).paramValue;
+				}
+				notification.setContents(contents);
+			}
+			callback.start();
+			OutDispatcher.getInstance().send(notification, subscription.notifyTo, callback);
+			return true;
+		} catch (RuntimeException e) {
+			// don't let one event keep the others from being sent
+			synchronized (callback) {
+				callback.done = true;
+			}
+			WatchDog.getInstance().unregister(callback.timeout);
+			Log.error("DefaultEventSource.fire(): Can't send notification to " + subscription.notifyTo);
+			Log.printStackTrace(e);
+			return false;
+		}
+	}
+
+	/**
+	 * Creates the message which carries this event to the given remote
+	 * subscription.
+	 */
+	private InvokeMessage createNotification(ServiceSubscription subscription, ParameterValue paramValue) {
+		InvokeMessage notification = new InvokeMessage(getOutputAction(), subscription.getCommunicationManagerID());
+		notification.setContent(paramValue);
+		SOAPHeader header = notification.getHeader();
+
+		notification.setProtocolInfo(subscription.getProtocolInfo());
+		/*
+		 * Add client subscription id
+		 */
+		header.setEndpointReference(subscription.notifyTo.getEndpointReference());
+
+		// set to preferred xAddress of client / event sink
+		notification.setTargetXAddressInfo(subscription.notifyTo);
+		return notification;
+	}
+
 	/**
 	 * Returns the <code>transmission type</code> of this event source according
 	 * to <a href="http://www.w3.org/TR/wsdl">WSDL 1.1 specification</a>. The
@@ -380,6 +468,22 @@ public class DefaultEventSource extends OperationCommons implements EventSource
 		}
 	}
 
+	/**
+	 * Removes the given subscriptions at once.
+	 * 
+	 * @param removed the subscriptions to remove
+	 */
+	void removeSubscriptions(ArrayList removed) {
+		subscriptions.exclusiveLock();
+		try {
+			for (Iterator it = removed.iterator(); it.hasNext();) {
+				subscriptions.remove(it.next());
+			}
+		} finally {
+			subscriptions.releaseExclusiveLock();
+		}
+	}
+
 	// ADDED 2010-08-11 SSch Applications may need to know how many subscribers
 	// they have for an event
 	protected int getSubscriptionCount() {
@@ -394,35 +498,84 @@ public class DefaultEventSource extends OperationCommons implements EventSource
 
 	// =========================== INNER CLASSES ===========================
 
-	private class SolicitResponseContext {
+	/**
+	 * Callback of one notification or solicit message. The message is complete
+	 * on the first of acceptance, response, fault, transmission error and
+	 * timeout, which sends the next event waiting for the subscriber; the
+	 * others are ignored. As the HTTP client does not time out requests, the
+	 * callback times out the message itself.
+	 */
+	private class DefaultEventSourceCallback extends DefaultResponseCallback implements NoContentResponseCallback {
 
-		final URI			messageId;
+		private final NotificationQueue.Entry	entry;
 
-		ParameterValue		rspParamValue	= null;
+		private final boolean					solicit;
 
-		boolean				responseReceived;
-		
-		volatile boolean 	waitingForNotfication = true;
+		private final TimedEntry				timeout;
 
-		SolicitResponseContext(URI messageId) {
-			this.messageId = messageId;
-		}
+		private boolean							done	= false;
 
-	}
+		public DefaultEventSourceCallback(NotificationQueue.Entry entry, boolean solicit) {
+			super(entry.subscription.notifyTo);
+			this.entry = entry;
+			this.solicit = solicit;
+			timeout = new TimedEntry() {
 
-	private class DefaultEventSourceCallback extends DefaultResponseCallback {
+				protected void timedOut() {
+					handleTimeout(null);
+				}
 
-		private final ServiceSubscription	subscription;
+			};
+		}
 
-		private final OperationDescription	op;
+		/**
+		 * Starts the timeout of the message.
+		 */
+		void start() {
+			WatchDog.getInstance().register(timeout, DispatchingProperties.getInstance().getResponseWaitTime());
+		}
 
 		/**
+		 * Completes the message and sends the next event waiting for the
+		 * subscriber.
 		 * 
+		 * @return <code>true</code> on the first call
 		 */
-		public DefaultEventSourceCallback(XAddressInfo targetXAddressInfo, ServiceSubscription subscription, OperationDescription op) {
-			super(targetXAddressInfo);
-			this.subscription = subscription;
-			this.op = op;
+		boolean finish() {
+			if (!complete()) {
+				return false;
+			}
+			sendQueued(entry.subscription.queue.next());
+			return true;
+		}
+
+		/**
+		 * Completes the message and removes the subscription. The queue of the
+		 * subscriber is closed first, so no waiting event is sent to it.
+		 * 
+		 * @return <code>true</code> on the first call
+		 */
+		boolean end() {
+			if (!complete()) {
+				return false;
+			}
+			entry.subscription.queue.close();
+			removeSubscription(entry.subscription);
+			return true;
+		}
+
+		/**
+		 * @return <code>true</code> on the first call
+		 */
+		private boolean complete() {
+			synchronized (this) {
+				if (done) {
+					return false;
+				}
+				done = true;
+			}
+			WatchDog.getInstance().unregister(timeout);
+			return true;
 		}
 
 		/*
@@ -434,16 +587,24 @@ public class DefaultEventSource extends OperationCommons implements EventSource
 		 * org.ws4d.java.communication.ProtocolData)
 		 */
 		public void handle(Message request, InvokeMessage msg, ProtocolData protocolData) {
-			URI msgId = msg.getRelatesTo();
-
-			SolicitResponseContext msgContext = (SolicitResponseContext) map_MsgId_2_Context.remove(msgId);
-			if (msgContext != null) {
-				synchronized (msgContext.messageId) {
-					msgContext.responseReceived = true;
-					msgContext.rspParamValue = msg.getContent();
-					msgContext.waitingForNotfication = false;
-					msgContext.messageId.notify();
-				}
+			if (finish() && solicit) {
+				solicitResponseReceived(msg.getContent(), entry.eventNumber, entry.subscription);
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see
+		 * org.ws4d.java.communication.NoContentResponseCallback#handleNoContent
+		 * (org.ws4d.java.message.Message,
+		 * org.ws4d.java.communication.ProtocolData)
+		 */
+		public void handleNoContent(Message request, ProtocolData protocolData) {
+			if (solicit) {
+				// a solicit message needs a response
+				handleTimeout(request);
+			} else {
+				finish();
 			}
 		}
 
@@ -470,7 +631,6 @@ public class DefaultEventSource extends OperationCommons implements EventSource
 		 * java.lang.Exception, org.ws4d.java.communication.ProtocolData)
 		 */
 		public void handleMalformedResponseException(Message request, Exception exception, ProtocolData protocolData) {
-			// just remove any sent solicit response context
 			handleTimeout(request);
 		}
 
@@ -484,13 +644,9 @@ public class DefaultEventSource extends OperationCommons implements EventSource
 			/*
 			 * Remove subscription, if one error occurs
 			 */
-			subscriptions.exclusiveLock();
-			try {
-				subscriptions.remove(subscription);
+			if (end()) {
 				Log.error("DefaultEventSource.fire(): Can't send notification!");
 				Log.printStackTrace(exception);
-			} finally {
-				subscriptions.releaseExclusiveLock();
 			}
 		}
 
@@ -501,16 +657,15 @@ public class DefaultEventSource extends OperationCommons implements EventSource
 		 * .java.communication.message.Message)
 		 */
 		public void handleTimeout(Message request) {
-			URI msgId = request.getMessageId();
-			SolicitResponseContext msgContext = (SolicitResponseContext) map_MsgId_2_Context.remove(msgId);
-			if (msgContext != null) {
-				// TODO call back for timeout handling -> new class operation
-				// handler
-				synchronized (msgContext.messageId) {
-					msgContext.responseReceived = false;
-					msgContext.waitingForNotfication = false;
-					msgContext.messageId.notify();
+			if (solicit) {
+				/*
+				 * Remove subscription, if no response received
+				 */
+				if (end()) {
+					Log.error("Event.fire(): No response received!");
 				}
+			} else if (finish()) {
+				Log.warn("DefaultEventSource.fire(): Notification not accepted by " + entry.subscription.notifyTo);
 			}
 		}
 
@@ -519,7 +674,7 @@ public class DefaultEventSource extends OperationCommons implements EventSource
 		 * @see org.ws4d.java.communication.ResponseCallback#getOperation()
 		 */
 		public OperationDescription getOperation() {
-			return op;
+			return DefaultEventSource.this;
 		}
 
 	}
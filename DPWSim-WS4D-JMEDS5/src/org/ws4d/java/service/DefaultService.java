@@ -34,6 +34,7 @@ import org.ws4d.java.eventing.EventSource;
 import org.ws4d.java.eventing.EventingException;
 import org.ws4d.java.eventing.EventingFactory;
 import org.ws4d.java.eventing.SubscriptionManager;
+import org.ws4d.java.message.BodyTemplate;
 import org.ws4d.java.message.FaultMessage;
 import org.ws4d.java.message.InvokeMessage;
 import org.ws4d.java.message.SOAPException;
@@ -157,6 +158,20 @@ public class DefaultService extends ServiceCommons implements LocalService {
 	// key = CommunicationBinding, value = HashSet of URIs
 	protected final HashMap				resourceURIs					= new HashMap();
 
+	/*
+	 * Serialized bodies of the GetMetadataResponse, key = metadata locations
+	 * sent, value = BodyTemplate. Dropped whenever the service or its parent
+	 * device changes.
+	 */
+	private final HashMap				getMetadataResponseTemplates	= new HashMap();
+
+	/*
+	 * Counts the resets of the templates, a template is only kept if no reset
+	 * happened while its response was built. Guarded by
+	 * getMetadataResponseTemplates.
+	 */
+	private int							metadataGeneration				= 0;
+
 	protected byte						state							= SERVICE_STATE_UNREGISTERED;
 
 	protected SubscriptionManager		subscriptionManager				= null;
@@ -336,6 +351,7 @@ public class DefaultService extends ServiceCommons implements LocalService {
 		}
 
 		state = SERVICE_STATE_RUNNING;
+		resetParentMetadataTemplates();
 	}
 
 	/*
@@ -367,6 +383,28 @@ public class DefaultService extends ServiceCommons implements LocalService {
 			manager.unregisterService(messageTypes, binding, incomingListener);
 		}
 		state = SERVICE_STATE_UNREGISTERED;
+		resetParentMetadataTemplates();
+	}
+
+	/**
+	 * Drops the kept GetMetadataResponse bodies.
+	 */
+	void resetMetadataTemplates() {
+		synchronized (getMetadataResponseTemplates) {
+			metadataGeneration++;
+			getMetadataResponseTemplates.clear();
+		}
+	}
+
+	/**
+	 * Drops the kept GetMetadataResponse bodies and the GetResponse of the
+	 * parent device, as both contain the endpoints of this service.
+	 */
+	private void resetParentMetadataTemplates() {
+		resetMetadataTemplates();
+		if (parentDevice instanceof DefaultDevice) {
+			((DefaultDevice) parentDevice).resetMetadataTemplates();
+		}
 	}
 
 	/*
@@ -946,6 +984,7 @@ public class DefaultService extends ServiceCommons implements LocalService {
 	 */
 	public void setParentDevice(LocalDevice device) {
 		parentDevice = device;
+		resetMetadataTemplates();
 	}
 
 	/*
@@ -1641,6 +1680,28 @@ public class DefaultService extends ServiceCommons implements LocalService {
 		return subscription;
 	}
 
+	/**
+	 * Initializes event receiving from this service with the given WS-Eventing
+	 * delivery mode. Local sinks get each event directly, so the delivery mode
+	 * is ignored.
+	 * 
+	 * @param sink event sink which will receive the notifications.
+	 * @param clientSubscriptionId
+	 * @param eventActionURIs a set of action URIs to subscribe to
+	 * @param duration duration in millis of subscription. If 0, subscription
+	 *            does not expire.
+	 * @param deliveryMode the delivery mode, <code>null</code> for push
+	 *            delivery
+	 * @return subscription id (wse:identifier)
+	 * @throws EventingException
+	 * @throws TimeoutException
+	 * @see ProxyService#subscribe(EventSink, String, URISet, long, URI)
+	 */
+	public ClientSubscription subscribe(EventSink sink, String clientSubscriptionId, URISet eventActionURIs, long duration, URI deliveryMode) throws EventingException, TimeoutException {
+		// local sinks get each event directly, whatever the delivery mode
+		return subscribe(sink, clientSubscriptionId, eventActionURIs, duration);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @seeorg.ws4d.java.service.Service#unsubscribe(org.ws4d.java.eventing.
@@ -1719,6 +1780,10 @@ public class DefaultService extends ServiceCommons implements LocalService {
 			// set DPWSVersion from the Request to the Response
 			response.setProtocolInfo(getMetadata.getProtocolInfo());
 
+			int generation;
+			synchronized (getMetadataResponseTemplates) {
+				generation = metadataGeneration;
+			}
 			sharedLock();
 			try {
 				if (parentDevice != null) {
@@ -1770,6 +1835,7 @@ public class DefaultService extends ServiceCommons implements LocalService {
 					response.addRelationship(relationship, helper);
 				}
 
+				StringBuffer locations = new StringBuffer();
 				for (Iterator it = wsdlURIs.values().iterator(); it.hasNext();) {
 					Set uris = (Set) it.next();
 					if (uris == null) {
@@ -1779,8 +1845,25 @@ public class DefaultService extends ServiceCommons implements LocalService {
 						URI uri = (URI) it2.next();
 						if (protocolData.destinationMatches(uri)) {
 							response.addMetadataLocation(uri);
+							locations.append(uri).append(' ');
+						}
+					}
+				}
+
+				/*
+				 * The body differs only in the metadata locations matching the
+				 * interface the request came in on.
+				 */
+				String key = locations.toString();
+				synchronized (getMetadataResponseTemplates) {
+					BodyTemplate template = (BodyTemplate) getMetadataResponseTemplates.get(key);
+					if (template == null) {
+						template = new BodyTemplate(key);
+						if (generation == metadataGeneration) {
+							getMetadataResponseTemplates.put(key, template);
 						}
 					}
+					response.setBodyTemplate(template);
 				}
 			} finally {
 				releaseSharedLock();
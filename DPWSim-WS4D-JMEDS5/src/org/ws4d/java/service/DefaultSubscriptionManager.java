@@ -15,9 +15,11 @@ import org.ws4d.java.communication.CommunicationManagerRegistry;
 import org.ws4d.java.communication.CommunicationUtil;
 import org.ws4d.java.communication.ProtocolData;
 import org.ws4d.java.communication.TimeoutException;
+import org.ws4d.java.configuration.EventingProperties;
 import org.ws4d.java.configuration.FrameworkProperties;
 import org.ws4d.java.constants.ConstantsHelper;
 import org.ws4d.java.constants.SOAPConstants;
+import org.ws4d.java.constants.WS4DConstants;
 import org.ws4d.java.constants.WSAConstants;
 import org.ws4d.java.constants.WSEConstants;
 import org.ws4d.java.dispatch.OutDispatcher;
@@ -38,6 +40,8 @@ import org.ws4d.java.message.eventing.SubscriptionEndMessage;
 import org.ws4d.java.message.eventing.UnsubscribeMessage;
 import org.ws4d.java.message.eventing.UnsubscribeResponseMessage;
 import org.ws4d.java.schema.SchemaUtil;
+import org.ws4d.java.structures.ArrayList;
+import org.ws4d.java.structures.HashMap;
 import org.ws4d.java.structures.HashMap.Entry;
 import org.ws4d.java.structures.Iterator;
 import org.ws4d.java.structures.LockedMap;
@@ -51,8 +55,6 @@ import org.ws4d.java.types.ReferenceParametersMData;
 import org.ws4d.java.types.URI;
 import org.ws4d.java.types.URISet;
 import org.ws4d.java.util.IDGenerator;
-import org.ws4d.java.util.TimedEntry;
-import org.ws4d.java.util.WatchDog;
 
 /**
  * 
@@ -71,29 +73,25 @@ public class DefaultSubscriptionManager implements SubscriptionManager {
 
 	private static final String	EVENT_SOURCE_SHUTTING_DOWN						= "Event source shutting down.";
 
-	private static final long	REMOVAL_POLL_INTERVAL							= SchemaUtil.MILLIS_PER_MINUTE;
+	private static final String	NOTIFICATION_QUEUE_OVERFLOW						= "Too many notifications are waiting to be delivered.";
 
 	/*
 	 * key = wse:Identifier (as uuid: URN), value = service subscription entry
 	 * instance
 	 */
-	private final LockedMap		subscriptions									= new LockedMap();
+	private final LockedMap				subscriptions							= new LockedMap();
+
+	/** the subscriptions ordered by expiration time */
+	private final SubscriptionExpiries	expiries;
 
 	/** this subscription manager is associated to this service */
-	private final LocalService	service;
+	private final LocalService			service;
 
 	public DefaultSubscriptionManager(LocalService service) {
 		super();
 
 		this.service = service;
-		TimedEntry entry = new TimedEntry() {
-
-			protected void timedOut() {
-				cleanUpSubscriptions();
-				WatchDog.getInstance().register(this, REMOVAL_POLL_INTERVAL);
-			}
-		};
-		WatchDog.getInstance().register(entry, REMOVAL_POLL_INTERVAL);
+		this.expiries = new SubscriptionExpiries(this);
 	}
 
 	/**
@@ -140,22 +138,47 @@ public class DefaultSubscriptionManager implements SubscriptionManager {
 		return new EndpointReference(address, parameters);
 	}
 
-	private void cleanUpSubscriptions() {
+	/**
+	 * Removes the given subscriptions, as their expiration time has passed.
+	 * A subscription renewed in the meantime is kept. No SubscriptionEnd is
+	 * sent, as the subscriber knows the expiration time.
+	 * 
+	 * @param expired the subscriptions to remove
+	 */
+	void expireSubscriptions(ArrayList expired) {
+		// removed subscriptions by action
+		HashMap removed = new HashMap();
 		subscriptions.exclusiveLock();
 		try {
 			long now = System.currentTimeMillis();
-			for (Iterator it = subscriptions.entrySet().iterator(); it.hasNext();) {
-				Entry ent = (Entry) it.next();
-				ServiceSubscription subscription = (ServiceSubscription) ent.getValue();
-				if (subscription.expirationTime <= now) {
-					// OutDispatcher.getInstance().send(subscriptionEnd(subscription));
-					it.remove();
-					removeSubscriptionFromEventSources(subscription);
+			for (Iterator it = expired.iterator(); it.hasNext();) {
+				ServiceSubscription subscription = (ServiceSubscription) it.next();
+				if (subscription.expirationTime > now || subscriptions.get(subscription.identifier) != subscription) {
+					// renewed or already removed
+					continue;
+				}
+				subscriptions.remove(subscription.identifier);
+				subscription.queue.close();
+				for (Iterator it2 = subscription.filterActions.iterator(); it2.hasNext();) {
+					String action = ((URI) it2.next()).toString();
+					ArrayList list = (ArrayList) removed.get(action);
+					if (list == null) {
+						list = new ArrayList();
+						removed.put(action, list);
+					}
+					list.add(subscription);
 				}
 			}
 		} finally {
 			subscriptions.releaseExclusiveLock();
 		}
+		for (Iterator it = removed.entrySet().iterator(); it.hasNext();) {
+			Entry ent = (Entry) it.next();
+			DefaultEventSource ev = (DefaultEventSource) service.getEventSource((String) ent.getKey());
+			if (ev != null) {
+				ev.removeSubscriptions((ArrayList) ent.getValue());
+			}
+		}
 	}
 
 	/**
@@ -164,6 +187,8 @@ public class DefaultSubscriptionManager implements SubscriptionManager {
 	 * @param subscription subscription to from operations.
 	 */
 	private void removeSubscriptionFromEventSources(ServiceSubscription subscription) {
+		expiries.remove(subscription);
+		subscription.queue.close();
 		for (Iterator it = subscription.filterActions.iterator(); it.hasNext();) {
 			String action = ((URI) it.next()).toString();
 			DefaultEventSource ev = (DefaultEventSource) service.getEventSource(action);
@@ -217,6 +242,57 @@ public class DefaultSubscriptionManager implements SubscriptionManager {
 		return subscriptionEndMessage;
 	}
 
+	/**
+	 * Announces the end of the subscription to the subscriber.
+	 */
+	private void announceSubscriptionEnd(ServiceSubscription subscription, URI status, String reason) {
+		if (subscription.sink == null) {
+			// remote subscription
+			if (subscription.endTo != null) {
+				SubscriptionEndMessage subscriptionEnd = subscriptionEnd(subscription, status, reason);
+				OutDispatcher.getInstance().send(subscriptionEnd, subscription.endTo);
+			}
+		} else {
+			ClientSubscription clientSubscription = subscription.sink.getSubscription(subscription.clientSubscriptionId);
+			if (clientSubscription != null) {
+				subscription.sink.getEventListener().subscriptionEndReceived(clientSubscription, status);
+			}
+		}
+	}
+
+	/**
+	 * Ends the given subscription on behalf of the event source, e.g. because
+	 * its notifications can not be delivered, and announces the end to the
+	 * subscriber.
+	 * 
+	 * @param subscription the subscription to end
+	 * @param status the status of the end, e.g.
+	 *            {@link SubscriptionEndMessage#DELIVERY_FAILURE_STATUS}
+	 * @param reason the reason of the end
+	 */
+	void endSubscription(ServiceSubscription subscription, URI status, String reason) {
+		subscriptions.exclusiveLock();
+		try {
+			if (subscriptions.remove(subscription.identifier) == null) {
+				// already ended
+				return;
+			}
+		} finally {
+			subscriptions.releaseExclusiveLock();
+		}
+		removeSubscriptionFromEventSources(subscription);
+		announceSubscriptionEnd(subscription, status, reason);
+	}
+
+	/**
+	 * Ends the given subscription, as its notification queue overflowed.
+	 * 
+	 * @see org.ws4d.java.configuration.EventingProperties#OVERFLOW_END_SUBSCRIPTION
+	 */
+	void endOverflowedSubscription(ServiceSubscription subscription) {
+		endSubscription(subscription, SubscriptionEndMessage.DELIVERY_FAILURE_STATUS, NOTIFICATION_QUEUE_OVERFLOW);
+	}
+
 	// ------------------PUBLIC SUBSCRIPTION MANAGEMENT -------------------
 
 	/*
@@ -232,11 +308,16 @@ public class DefaultSubscriptionManager implements SubscriptionManager {
 			throw createDeliveryModeUnavailableFault(msg);
 		}
 		URI mode = delivery.getMode();
-		if (mode == null || !WSEConstants.WSE_DELIVERY_MODE_PUSH.equals(mode.toString())) {
+		boolean batched = (mode != null && WS4DConstants.WS4D_DELIVERY_MODE_BATCHED.equals(mode.toString()));
+		if (mode == null || !(batched || WSEConstants.WSE_DELIVERY_MODE_PUSH.equals(mode.toString()))) {
 			// Fault wse:DeliveryModeRequestedUnavailable
 			throw createDeliveryModeUnavailableFault(msg);
 		}
 		ServiceSubscription subscription = new ServiceSubscription(protocolData.getProtocolInfo());
+		if (batched) {
+			EventingProperties properties = EventingProperties.getInstance();
+			subscription.queue.setBatching(properties.getNotificationBatchSize(), properties.getNotificationBatchDelay());
+		}
 		subscription.notifyTo = new EprInfo(delivery.getNotifyTo(), protocolData.getCommunicationManagerId());
 		subscription.notifyTo.mergeProtocolInfo(protocolData.getProtocolInfo());
 		if (msg.getEndTo() != null) {
@@ -304,9 +385,12 @@ public class DefaultSubscriptionManager implements SubscriptionManager {
 			subscription.setSubscriptionManager(subscriptionManager);
 			response.setSubscriptionManager(subscriptionManager);
 			response.setExpires(SchemaUtil.createDuration(subscription.expirationTime - System.currentTimeMillis()));
+			subscription.identifier = wseIdentifier;
+			subscription.manager = this;
 			subscriptions.exclusiveLock();
 			try {
 				subscriptions.put(wseIdentifier, subscription);
+				expiries.schedule(subscription);
 			} finally {
 				subscriptions.releaseExclusiveLock();
 			}
@@ -348,9 +432,12 @@ public class DefaultSubscriptionManager implements SubscriptionManager {
 		}
 
 		String wseIdentifier = IDGenerator.URI_UUID_PREFIX + IDGenerator.getUUID();
+		entry.identifier = wseIdentifier;
+		entry.manager = this;
 		subscriptions.exclusiveLock();
 		try {
 			subscriptions.put(wseIdentifier, entry);
+			expiries.schedule(entry);
 		} finally {
 			subscriptions.releaseExclusiveLock();
 		}
@@ -457,6 +544,7 @@ public class DefaultSubscriptionManager implements SubscriptionManager {
 			}
 
 			serviceSubscription.setExpiration(msg.getExpires(), msg);
+			expiries.schedule(serviceSubscription);
 			// this MUST be done while we still hold the lock!
 			response.setExpires(SchemaUtil.createDuration(serviceSubscription.expirationTime - currentTime));
 		} finally {
@@ -490,6 +578,7 @@ public class DefaultSubscriptionManager implements SubscriptionManager {
 			}
 
 			serviceSubscription.setExpiration(duration);
+			expiries.schedule(serviceSubscription);
 			return duration;
 		} finally {
 			subscriptions.releaseExclusiveLock();
@@ -576,16 +665,7 @@ public class DefaultSubscriptionManager implements SubscriptionManager {
 				ServiceSubscription subscription = (ServiceSubscription) it.next();
 				it.remove();
 				removeSubscriptionFromEventSources(subscription);
-				if (subscription.sink == null) {
-					// remote subscription
-					SubscriptionEndMessage subscriptionEnd = subscriptionEnd(subscription, SubscriptionEndMessage.SOURCE_SHUTTING_DOWN_STATUS, EVENT_SOURCE_SHUTTING_DOWN);
-					OutDispatcher.getInstance().send(subscriptionEnd, subscription.endTo);
-				} else {
-					ClientSubscription clientSubscription = subscription.sink.getSubscription(subscription.clientSubscriptionId);
-					if (clientSubscription != null) {
-						subscription.sink.getEventListener().subscriptionEndReceived(clientSubscription, SubscriptionEndMessage.SOURCE_SHUTTING_DOWN_STATUS);
-					}
-				}
+				announceSubscriptionEnd(subscription, SubscriptionEndMessage.SOURCE_SHUTTING_DOWN_STATUS, EVENT_SOURCE_SHUTTING_DOWN);
 			}
 		} finally {
 			subscriptions.releaseExclusiveLock();
@@ -0,0 +1,368 @@
+/*******************************************************************************
+ * Copyright (c) 2009 MATERNA Information & Communications. All rights reserved.
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html. For further
+ * project-related information visit http://www.ws4d.org. The most recent
+ * version of the JMEDS framework can be obtained from
+ * http://sourceforge.net/projects/ws4d-javame.
+ ******************************************************************************/
+package org.ws4d.java.service;
+
+import org.ws4d.java.configuration.EventingProperties;
+import org.ws4d.java.message.BodyTemplate;
+import org.ws4d.java.service.parameter.ParameterValue;
+import org.ws4d.java.structures.ArrayList;
+import org.ws4d.java.structures.Iterator;
+import org.ws4d.java.structures.LinkedList;
+import org.ws4d.java.types.Delivery;
+import org.ws4d.java.util.TimedEntry;
+import org.ws4d.java.util.WatchDog;
+
+/**
+ * The events waiting to be sent to one remote subscriber.
+ * <p>
+ * Only one notification or solicit message is on its way to the subscriber at
+ * a time. The next one is sent when the subscriber has accepted or answered
+ * it, or when sending it failed, so the subscriber gets the events in the
+ * order they were fired, whichever event source fired them. The queue holds
+ * at most {@link EventingProperties#getNotificationQueueSize()} events; the
+ * {@link EventingProperties#getNotificationQueueOverflow() overflow policy}
+ * decides what happens to an event fired while it is full. Of a
+ * solicit-response event source, at most
+ * {@link EventingProperties#getMaxPendingSolicits()} solicit messages wait in
+ * the queue or for the response of the subscriber; further ones are skipped.
+ * </p>
+ * <p>
+ * If the subscriber requested {@link Delivery#BATCHED_DELIVERY batched
+ * delivery}, a notification fired while no message is on its way waits up to
+ * {@link EventingProperties#getNotificationBatchDelay()} milliseconds, or
+ * until {@link EventingProperties#getNotificationBatchSize()} events are
+ * waiting. Then the waiting notifications of the same action at the head of
+ * the queue are sent within one message.
+ * </p>
+ */
+final class NotificationQueue {
+
+	/** the event is the next one to send, it must be sent by the caller */
+	static final int	SEND		= 0;
+
+	/** the event waits for the events before it */
+	static final int	QUEUED		= 1;
+
+	/** the queue was full and the subscription must be ended */
+	static final int	OVERFLOW	= 2;
+
+	/** the subscription has ended, the event is not sent */
+	static final int	CLOSED		= 3;
+
+	/**
+	 * a batch is complete, the caller must send the events returned by
+	 * {@link #next()}
+	 */
+	static final int	SEND_BATCH	= 4;
+
+	/**
+	 * too many solicit messages wait for the response of the subscriber, the
+	 * event is not sent
+	 */
+	static final int	SKIPPED		= 5;
+
+	private final LinkedList	entries		= new LinkedList();
+
+	/** <code>true</code> while an event is on its way to the subscriber */
+	private boolean				busy		= false;
+
+	private boolean				closed		= false;
+
+	private int					peak		= 0;
+
+	/** events handed over to be sent, whether the subscriber got them or not */
+	private long				dispatched	= 0;
+
+	private long				dropped		= 0;
+
+	private long				coalesced	= 0;
+
+	private long				batches		= 0;
+
+	/** solicit messages waiting or on their way, without response */
+	private int					solicits	= 0;
+
+	/** <code>true</code> if the event on its way is a solicit message */
+	private boolean				soliciting	= false;
+
+	/** maximum number of events per message, 0 if not batched */
+	private int					batchSize	= 0;
+
+	private long				batchDelay	= 0;
+
+	/** sends a batch when the batch delay has passed */
+	private TimedEntry			flush		= null;
+
+	/**
+	 * Sends the notifications of the subscriber in batches.
+	 * 
+	 * @param batchSize the maximum number of events per message
+	 * @param batchDelay the milliseconds to wait for further events
+	 */
+	synchronized void setBatching(int batchSize, long batchDelay) {
+		if (batchSize < 2) {
+			return;
+		}
+		this.batchSize = batchSize;
+		this.batchDelay = batchDelay;
+		flush = new TimedEntry() {
+
+			protected void timedOut() {
+				Entry first;
+				synchronized (NotificationQueue.this) {
+					if (busy || closed || entries.size() == 0) {
+						return;
+					}
+					busy = true;
+					first = take();
+				}
+				DefaultEventSource.sendQueued(first);
+			}
+
+		};
+	}
+
+	/**
+	 * Adds an event to the queue.
+	 * 
+	 * @param entry the event
+	 * @param capacity the maximum number of waiting events, at least 1
+	 * @param overflow the overflow policy, one of
+	 *            {@link EventingProperties#OVERFLOW_DROP_OLDEST},
+	 *            {@link EventingProperties#OVERFLOW_COALESCE} and
+	 *            {@link EventingProperties#OVERFLOW_END_SUBSCRIPTION}
+	 * @param maxSolicits the maximum number of solicit messages without
+	 *            response, at least 1
+	 * @return {@link #SEND}, {@link #QUEUED}, {@link #OVERFLOW},
+	 *         {@link #CLOSED}, {@link #SEND_BATCH} or {@link #SKIPPED}
+	 */
+	synchronized int offer(Entry entry, int capacity, int overflow, int maxSolicits) {
+		if (closed) {
+			return CLOSED;
+		}
+		boolean solicit = entry.source.isSolicitResponse();
+		if (solicit) {
+			if (solicits >= maxSolicits) {
+				return SKIPPED;
+			}
+			solicits++;
+		}
+		if (!busy && entries.size() == 0 && (batchSize == 0 || !entry.batchable)) {
+			busy = true;
+			soliciting = solicit;
+			dispatched++;
+			return SEND;
+		}
+		if (entries.size() >= capacity) {
+			if (overflow == EventingProperties.OVERFLOW_END_SUBSCRIPTION) {
+				dropped += entries.size() + 1;
+				close();
+				return OVERFLOW;
+			}
+			int removed = 0;
+			if (overflow == EventingProperties.OVERFLOW_COALESCE) {
+				removed = removeSameAction(entry);
+				coalesced += removed;
+			}
+			if (removed == 0) {
+				removed((Entry) entries.removeFirst());
+				dropped++;
+			}
+		}
+		entries.add(entry);
+		if (entries.size() > peak) {
+			peak = entries.size();
+		}
+		if (busy) {
+			return QUEUED;
+		}
+		// the events wait for a batch
+		if (!entry.batchable || entries.size() >= batchSize || entries.size() >= capacity) {
+			WatchDog.getInstance().unregister(flush);
+			busy = true;
+			return SEND_BATCH;
+		}
+		if (entries.size() == 1) {
+			WatchDog.getInstance().register(flush, batchDelay);
+		}
+		return QUEUED;
+	}
+
+	/**
+	 * Called when the event on its way to the subscriber was accepted,
+	 * answered or failed.
+	 * 
+	 * @return the next event to send, or <code>null</code> if none waits
+	 */
+	synchronized Entry next() {
+		if (soliciting) {
+			soliciting = false;
+			solicits--;
+		}
+		if (closed || entries.size() == 0) {
+			busy = false;
+			return null;
+		}
+		return take();
+	}
+
+	/**
+	 * Drops the waiting events and refuses further ones, as the subscription
+	 * has ended.
+	 */
+	synchronized void close() {
+		entries.clear();
+		solicits = 0;
+		soliciting = false;
+		closed = true;
+		if (flush != null) {
+			WatchDog.getInstance().unregister(flush);
+		}
+	}
+
+	/**
+	 * @return the number of events waiting to be sent
+	 */
+	synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return the number of solicit messages waiting or on their way, without
+	 *         response
+	 */
+	synchronized int getPendingSolicitCount() {
+		return solicits;
+	}
+
+	/**
+	 * @return the largest number of events which waited at once
+	 */
+	synchronized int getPeakSize() {
+		return peak;
+	}
+
+	/**
+	 * @return the number of events handed over to be sent
+	 */
+	synchronized long getDispatchedCount() {
+		return dispatched;
+	}
+
+	/**
+	 * @return the number of events dropped because the queue was full
+	 */
+	synchronized long getDroppedCount() {
+		return dropped;
+	}
+
+	/**
+	 * @return the number of events replaced by a later event of the same
+	 *         action
+	 */
+	synchronized long getCoalescedCount() {
+		return coalesced;
+	}
+
+	/**
+	 * @return the number of messages sent with more than one event
+	 */
+	synchronized long getBatchCount() {
+		return batches;
+	}
+
+	/**
+	 * Removes the next event to send, together with the notifications of the
+	 * same action behind it if the events are sent in batches.
+	 */
+	private Entry take() {
+		Entry first = (Entry) entries.removeFirst();
+		soliciting = first.source.isSolicitResponse();
+		dispatched++;
+		if (batchSize > 0 && first.batchable) {
+			ArrayList batch = null;
+			while (entries.size() > 0 && ((Entry) entries.getFirst()).source == first.source && (batch == null || batch.size() + 1 < batchSize)) {
+				if (batch == null) {
+					batch = new ArrayList();
+				}
+				batch.add(entries.removeFirst());
+				dispatched++;
+			}
+			if (batch != null) {
+				first.batch = batch;
+				batches++;
+			}
+		}
+		return first;
+	}
+
+	/**
+	 * Removes the waiting events of the same action as the given one, as the
+	 * given event supersedes them. It is added at the end of the queue, so the
+	 * events are still sent in the order they were fired.
+	 * 
+	 * @return the number of removed events
+	 */
+	private int removeSameAction(Entry entry) {
+		int removed = 0;
+		for (Iterator it = entries.iterator(); it.hasNext();) {
+			Entry waiting = (Entry) it.next();
+			if (waiting.source == entry.source) {
+				it.remove();
+				removed(waiting);
+				removed++;
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * Called when a waiting event is removed without being sent.
+	 */
+	private void removed(Entry entry) {
+		if (entry.source.isSolicitResponse()) {
+			solicits--;
+		}
+	}
+
+	/**
+	 * An event to send to a subscriber.
+	 */
+	static final class Entry {
+
+		final ServiceSubscription	subscription;
+
+		final DefaultEventSource	source;
+
+		final ParameterValue		paramValue;
+
+		final int					eventNumber;
+
+		/** shared by the notifications of one event */
+		final BodyTemplate			template;
+
+		/** <code>true</code> if the event may be sent with others */
+		final boolean				batchable;
+
+		/** the events sent with this one, <code>null</code> if none */
+		ArrayList					batch	= null;
+
+		Entry(ServiceSubscription subscription, DefaultEventSource source, ParameterValue paramValue, int eventNumber, BodyTemplate template, boolean batchable) {
+			this.subscription = subscription;
+			this.source = source;
+			this.paramValue = paramValue;
+			this.eventNumber = eventNumber;
+			this.template = template;
+			this.batchable = batchable;
+		}
+
+	}
+
+}
@@ -211,6 +211,26 @@ public class ProxyService extends ServiceCommons {
 	 * @throws TimeoutException
 	 */
 	public ClientSubscription subscribe(EventSink sink, String clientSubscriptionId, URISet eventActionURIs, long duration) throws EventingException, TimeoutException {
+		return subscribe(sink, clientSubscriptionId, eventActionURIs, duration, null);
+	}
+
+	/**
+	 * Initializes event receiving from specified event sender with the given
+	 * WS-Eventing delivery mode, e.g. {@link Delivery#BATCHED_DELIVERY} to
+	 * receive several notifications within one message.
+	 * 
+	 * @param sink event sink which will receive the notifications.
+	 * @param clientSubscriptionId
+	 * @param eventActionURIs set of action URIs to subscribe to.
+	 * @param duration duration in milliseconds of subscription. If 0 no
+	 *            expiration of subscription.
+	 * @param deliveryMode the delivery mode, <code>null</code> for
+	 *            {@link Delivery#PUSH_DELIVERY push delivery}
+	 * @return subscription id (wse:identifier)
+	 * @throws EventingException
+	 * @throws TimeoutException
+	 */
+	public ClientSubscription subscribe(EventSink sink, String clientSubscriptionId, URISet eventActionURIs, long duration, URI deliveryMode) throws EventingException, TimeoutException {
 		if (!sink.isOpen()) {
 			Log.error("Cannot subscribe, event sink is not open");
 			throw new EventingException("EventSink not open");
@@ -237,7 +257,7 @@ public class ProxyService extends ServiceCommons {
 		 */
 
 		EndpointReference notifyTarget = new EndpointReference(URI.EMPTY_URI, refParams);
-		Delivery delivery = new Delivery(null, notifyTarget);
+		Delivery delivery = new Delivery(deliveryMode, notifyTarget);
 		request.setDelivery(delivery);
 		request.setEventSink(sink);
 
@@ -10,6 +10,7 @@
 package org.ws4d.java.service;
 
 import org.ws4d.java.communication.ProtocolInfo;
+import org.ws4d.java.configuration.EventingProperties;
 import org.ws4d.java.constants.WSEConstants;
 import org.ws4d.java.eventing.EventSink;
 import org.ws4d.java.eventing.EventingException;
@@ -19,6 +20,7 @@ import org.ws4d.java.schema.SchemaUtil;
 import org.ws4d.java.structures.EmptyStructures;
 import org.ws4d.java.structures.Iterator;
 import org.ws4d.java.structures.ReadOnlyIterator;
+import org.ws4d.java.types.Delivery;
 import org.ws4d.java.types.EndpointReference;
 import org.ws4d.java.types.EprInfo;
 import org.ws4d.java.types.LocalizedString;
@@ -66,6 +68,18 @@ public class ServiceSubscription {
 
 	final ProtocolInfo			pInfo;
 
+	/** wse:Identifier of the subscription at its manager */
+	String						identifier								= null;
+
+	/** the manager of the subscription, <code>null</code> if unmanaged */
+	DefaultSubscriptionManager	manager									= null;
+
+	/** events waiting to be sent to a remote subscriber */
+	final NotificationQueue		queue									= new NotificationQueue();
+
+	/** position in the expiries of the manager, -1 if not scheduled */
+	int							expiryIndex								= -1;
+
 	public ServiceSubscription(ProtocolInfo pInfo) {
 		this.pInfo = pInfo;
 	}
@@ -204,4 +218,78 @@ public class ServiceSubscription {
 		return pInfo;
 	}
 
+	/**
+	 * Returns the number of events waiting to be sent to the remote
+	 * subscriber.
+	 * 
+	 * @return the number of waiting events
+	 */
+	public int getNotificationQueueSize() {
+		return queue.size();
+	}
+
+	/**
+	 * Returns the largest number of events which waited to be sent to the
+	 * remote subscriber at once.
+	 * 
+	 * @return the peak number of waiting events
+	 */
+	public int getNotificationQueuePeakSize() {
+		return queue.getPeakSize();
+	}
+
+	/**
+	 * Returns the number of notifications and solicit messages handed over to
+	 * be sent to the remote subscriber. This includes the messages which could
+	 * not be sent or were not accepted.
+	 * 
+	 * @return the number of dispatched events
+	 */
+	public long getDispatchedNotificationCount() {
+		return queue.getDispatchedCount();
+	}
+
+	/**
+	 * Returns the number of solicit messages which wait to be sent to the
+	 * remote subscriber or for its response.
+	 * 
+	 * @return the number of solicit messages without response
+	 * @see EventingProperties#getMaxPendingSolicits()
+	 */
+	public int getPendingSolicitCount() {
+		return queue.getPendingSolicitCount();
+	}
+
+	/**
+	 * Returns the number of events not sent to the remote subscriber, because
+	 * they were fired while its queue was full.
+	 * 
+	 * @return the number of dropped events
+	 */
+	public long getDroppedNotificationCount() {
+		return queue.getDroppedCount();
+	}
+
+	/**
+	 * Returns the number of events not sent to the remote subscriber, because
+	 * a later event of the same event source replaced them.
+	 * 
+	 * @return the number of coalesced events
+	 * @see EventingProperties#OVERFLOW_COALESCE
+	 */
+	public long getCoalescedNotificationCount() {
+		return queue.getCoalescedCount();
+	}
+
+	/**
+	 * Returns the number of messages which carried more than one notification
+	 * to the remote subscriber, as it requested batched delivery.
+	 * 
+	 * @return the number of batches
+	 * @see Delivery#BATCHED_DELIVERY
+	 */
+	public long getNotificationBatchCount() {
+		return queue.getBatchCount();
+	}
+
 }
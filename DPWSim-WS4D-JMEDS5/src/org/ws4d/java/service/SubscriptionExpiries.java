@@ -0,0 +1,186 @@
+/*******************************************************************************
+ * Copyright (c) 2009 MATERNA Information & Communications. All rights reserved.
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html. For further
+ * project-related information visit http://www.ws4d.org. The most recent
+ * version of the JMEDS framework can be obtained from
+ * http://sourceforge.net/projects/ws4d-javame.
+ ******************************************************************************/
+package org.ws4d.java.service;
+
+import org.ws4d.java.structures.ArrayList;
+import org.ws4d.java.util.TimedEntry;
+import org.ws4d.java.util.WatchDog;
+
+/**
+ * The subscriptions of one {@link DefaultSubscriptionManager}, ordered by
+ * their expiration time.
+ * <p>
+ * The subscriptions are kept in a binary heap, so adding, rescheduling and
+ * removing one takes logarithmic time. Only the earliest expiration time is
+ * registered at the {@link WatchDog}. When it has passed, all subscriptions
+ * which have expired by then are handed to the manager at once, and the next
+ * expiration time is registered.
+ * </p>
+ */
+final class SubscriptionExpiries extends TimedEntry {
+
+	private static final int					INITIAL_SIZE	= 16;
+
+	private final DefaultSubscriptionManager	manager;
+
+	private ServiceSubscription[]				heap			= new ServiceSubscription[INITIAL_SIZE];
+
+	/**
+	 * the expiration times the subscriptions are ordered by, as the one of a
+	 * subscription may change before it is rescheduled
+	 */
+	private long[]								deadlines		= new long[INITIAL_SIZE];
+
+	private int									size			= 0;
+
+	SubscriptionExpiries(DefaultSubscriptionManager manager) {
+		this.manager = manager;
+	}
+
+	/**
+	 * Adds the given subscription, or moves it to its current expiration time
+	 * if already added.
+	 */
+	synchronized void schedule(ServiceSubscription subscription) {
+		int index = subscription.expiryIndex;
+		if (index < 0) {
+			if (size == heap.length) {
+				grow();
+			}
+			index = size++;
+			heap[index] = subscription;
+			subscription.expiryIndex = index;
+		}
+		deadlines[index] = subscription.expirationTime;
+		if (!siftUp(index)) {
+			siftDown(index);
+		}
+		if (heap[0] == subscription) {
+			registerFirst();
+		}
+	}
+
+	/**
+	 * Removes the given subscription, e.g. because it was unsubscribed.
+	 */
+	synchronized void remove(ServiceSubscription subscription) {
+		int index = subscription.expiryIndex;
+		if (index < 0) {
+			return;
+		}
+		removeAt(index);
+		if (index == 0) {
+			registerFirst();
+		}
+	}
+
+	/**
+	 * @return the number of subscriptions which have not expired yet
+	 */
+	synchronized int size() {
+		return size;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.ws4d.java.util.TimedEntry#timedOut()
+	 */
+	protected void timedOut() {
+		ArrayList expired = new ArrayList();
+		synchronized (this) {
+			long now = System.currentTimeMillis();
+			while (size > 0 && deadlines[0] <= now) {
+				expired.add(heap[0]);
+				removeAt(0);
+			}
+			registerFirst();
+		}
+		if (expired.size() > 0) {
+			manager.expireSubscriptions(expired);
+		}
+	}
+
+	/**
+	 * Registers the earliest expiration time at the watchdog.
+	 */
+	private void registerFirst() {
+		if (size == 0) {
+			WatchDog.getInstance().unregister(this);
+		} else {
+			WatchDog.getInstance().update(this, deadlines[0] - System.currentTimeMillis());
+		}
+	}
+
+	private void removeAt(int index) {
+		heap[index].expiryIndex = -1;
+		size--;
+		if (index < size) {
+			move(size, index);
+			if (!siftUp(index)) {
+				siftDown(index);
+			}
+		}
+		heap[size] = null;
+	}
+
+	private boolean siftUp(int index) {
+		int start = index;
+		ServiceSubscription subscription = heap[index];
+		long deadline = deadlines[index];
+		while (index > 0) {
+			int parent = (index - 1) >> 1;
+			if (deadlines[parent] <= deadline) {
+				break;
+			}
+			move(parent, index);
+			index = parent;
+		}
+		put(subscription, deadline, index);
+		return index != start;
+	}
+
+	private void siftDown(int index) {
+		ServiceSubscription subscription = heap[index];
+		long deadline = deadlines[index];
+		int half = size >> 1;
+		while (index < half) {
+			int child = (index << 1) + 1;
+			if (child + 1 < size && deadlines[child + 1] < deadlines[child]) {
+				child++;
+			}
+			if (deadline <= deadlines[child]) {
+				break;
+			}
+			move(child, index);
+			index = child;
+		}
+		put(subscription, deadline, index);
+	}
+
+	private void move(int from, int to) {
+		put(heap[from], deadlines[from], to);
+	}
+
+	private void put(ServiceSubscription subscription, long deadline, int index) {
+		heap[index] = subscription;
+		deadlines[index] = deadline;
+		subscription.expiryIndex = index;
+	}
+
+	private void grow() {
+		ServiceSubscription[] tmpHeap = new ServiceSubscription[heap.length << 1];
+		System.arraycopy(heap, 0, tmpHeap, 0, size);
+		heap = tmpHeap;
+		long[] tmpDeadlines = new long[deadlines.length << 1];
+		System.arraycopy(deadlines, 0, tmpDeadlines, 0, size);
+		deadlines = tmpDeadlines;
+	}
+
+}
@@ -0,0 +1,238 @@
+/*******************************************************************************
+ * Copyright (c) 2009 MATERNA Information & Communications. All rights reserved.
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html. For further
+ * project-related information visit http://www.ws4d.org. The most recent
+ * version of the JMEDS framework can be obtained from
+ * http://sourceforge.net/projects/ws4d-javame.
+ ******************************************************************************/
+package org.ws4d.java.structures;
+
+import org.ws4d.java.configuration.DispatchingProperties;
+import org.ws4d.java.types.URI;
+
+/**
+ * Filter for duplicate message ids, used to ignore multiplied UDP messages.
+ * <p>
+ * All filters of the framework share one table. Each filter has its own
+ * scope, so a message id seen by one device is still new for the next one.
+ * The table keeps a 128 bit hash of scope and message id instead of the
+ * {@link URI}, 16 bytes per entry, in buckets of four entries. When a bucket
+ * is full, its oldest entry is overwritten. The table holds at least
+ * {@link DispatchingProperties#PROP_MESSAGE_ID_FILTER_SIZE} entries, and at
+ * least {@link #IDS_PER_FILTER} entries per filter, as a multicast message
+ * received by many local devices takes one entry per device. It grows with
+ * the number of filters in use. A filter which is no longer used must be
+ * {@link #dispose() disposed}, so filters created e.g. per search do not
+ * grow the table without bound.
+ * </p>
+ * <p>
+ * The filter does not lock. The two halves of an entry are written one after
+ * the other, so a reader may see half an entry. This can only make a
+ * duplicate pass as new, never a new id look like a duplicate. The same is
+ * true if two threads enqueue the same id at the same moment. Both cases are
+ * rare, and duplicate filtering is only a best effort, just as with a
+ * limited number of remembered ids.
+ * </p>
+ */
+public class MessageIdFilter {
+
+	/** number of message ids the table keeps per filter at least */
+	public static final int		IDS_PER_FILTER	= 128;
+
+	private static final int	WAYS		= 4;
+
+	private static final long	SEED_HIGH	= 0x9E3779B97F4A7C15L;
+
+	private static final long	SEED_LOW	= 0xC2B2AE3D27D4EB4FL;
+
+	private static volatile Table	table		= null;
+
+	private static long			nextScope	= 0;
+
+	/** number of filters in use */
+	private static int			filters		= 0;
+
+	private volatile long		scope;
+
+	/** guarded by the class */
+	private boolean				disposed	= false;
+
+	public MessageIdFilter() {
+		scope = newScope();
+		synchronized (MessageIdFilter.class) {
+			filters++;
+			Table t = table;
+			if (t != null && t.capacity() < filters * IDS_PER_FILTER) {
+				table = t.resize(filters * IDS_PER_FILTER);
+			}
+		}
+	}
+
+	/**
+	 * Returns <code>true</code> if the message id was enqueued in this filter
+	 * and has not been overwritten since.
+	 *
+	 * @param msgId the message id to check
+	 * @return whether <code>msgId</code> is known
+	 */
+	public boolean contains(URI msgId) {
+		if (msgId == null) {
+			return false;
+		}
+		String id = msgId.toString();
+		long high = hash(id, scope, SEED_HIGH);
+		long low = hash(id, scope, SEED_LOW) | 1;
+		return getTable().find(high, low) >= 0;
+	}
+
+	/**
+	 * Returns true, if filter contains msg id, else false. If not contained,
+	 * msg id is enqueued in filter.
+	 *
+	 * @param msgId the message to check presence of or to enqueue
+	 * @return <code>true</code> if <code>msg</code> was already present,
+	 *         <code>false</code> if it was just enqueued
+	 */
+	public boolean containsOrEnqueue(URI msgId) {
+		if (msgId == null) {
+			return false;
+		}
+		String id = msgId.toString();
+		long high = hash(id, scope, SEED_HIGH);
+		long low = hash(id, scope, SEED_LOW) | 1;
+		Table t = getTable();
+		if (t.find(high, low) >= 0) {
+			return true;
+		}
+		t.add(high, low);
+		return false;
+	}
+
+	/**
+	 * Forgets all message ids of this filter. The entries stay in the shared
+	 * table until they are overwritten, but they are not found anymore.
+	 */
+	public void clear() {
+		scope = newScope();
+	}
+
+	/**
+	 * Gives back the share of the shared table this filter takes. The table
+	 * keeps its size, but does not grow for new filters until more filters
+	 * are in use than before. The filter must not be used afterwards.
+	 */
+	public void dispose() {
+		synchronized (MessageIdFilter.class) {
+			if (!disposed) {
+				disposed = true;
+				filters--;
+			}
+		}
+	}
+
+	private static synchronized long newScope() {
+		return nextScope++;
+	}
+
+	private static Table getTable() {
+		Table t = table;
+		if (t == null) {
+			synchronized (MessageIdFilter.class) {
+				if (table == null) {
+					table = new Table(Math.max(DispatchingProperties.getInstance().getMessageIdFilterSize(), filters * IDS_PER_FILTER));
+				}
+				t = table;
+			}
+		}
+		return t;
+	}
+
+	/**
+	 * Hashes the characters of a message id together with a scope into 64 bit.
+	 * Two different seeds give the two halves of the 128 bit key.
+	 */
+	private static long hash(String id, long scope, long seed) {
+		long h = seed ^ (scope * 0xFF51AFD7ED558CCDL);
+		int len = id.length();
+		for (int i = 0; i < len; i++) {
+			h = (h ^ id.charAt(i)) * 0x100000001B3L;
+			h ^= h >>> 29;
+		}
+		h ^= len;
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * Open table of 128 bit keys in two arrays. The low half is never zero, so
+	 * zero marks a free entry.
+	 */
+	private static class Table {
+
+		private final long[]	highs;
+
+		private final long[]	lows;
+
+		/** next entry to overwrite per bucket */
+		private final byte[]	cursors;
+
+		private final int		mask;
+
+		Table(int size) {
+			int buckets = 1;
+			while (buckets * WAYS < size) {
+				buckets <<= 1;
+			}
+			highs = new long[buckets * WAYS];
+			lows = new long[buckets * WAYS];
+			cursors = new byte[buckets];
+			mask = buckets - 1;
+		}
+
+		int find(long high, long low) {
+			int start = ((int) high & mask) * WAYS;
+			for (int i = start; i < start + WAYS; i++) {
+				if (lows[i] == low && highs[i] == high) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		int capacity() {
+			return lows.length;
+		}
+
+		/**
+		 * Returns a table of at least the given size with the entries of this
+		 * one. Entries added to this table while it is copied may be lost.
+		 */
+		Table resize(int size) {
+			Table t = new Table(size);
+			for (int i = 0; i < lows.length; i++) {
+				long high = highs[i];
+				long low = lows[i];
+				if (low != 0) {
+					t.add(high, low);
+				}
+			}
+			return t;
+		}
+
+		void add(long high, long low) {
+			int bucket = (int) high & mask;
+			int i = bucket * WAYS + (cursors[bucket] & (WAYS - 1));
+			cursors[bucket]++;
+			lows[i] = 0;
+			highs[i] = high;
+			lows[i] = low;
+		}
+	}
+
+}
@@ -9,6 +9,7 @@
  ******************************************************************************/
 package org.ws4d.java.types;
 
+import org.ws4d.java.constants.WS4DConstants;
 import org.ws4d.java.constants.WSEConstants;
 
 /**
@@ -16,7 +17,13 @@ import org.ws4d.java.constants.WSEConstants;
  */
 public class Delivery extends UnknownDataContainer {
 
-	public static final URI		PUSH_DELIVERY	= new URI(WSEConstants.WSE_DELIVERY_MODE_PUSH);
+	public static final URI		PUSH_DELIVERY		= new URI(WSEConstants.WSE_DELIVERY_MODE_PUSH);
+
+	/**
+	 * Push delivery, which may send several notifications of the same action
+	 * within one message.
+	 */
+	public static final URI		BATCHED_DELIVERY	= new URI(WS4DConstants.WS4D_DELIVERY_MODE_BATCHED);
 
 	private URI					mode;
 
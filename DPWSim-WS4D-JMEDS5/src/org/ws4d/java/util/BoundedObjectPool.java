@@ -0,0 +1,245 @@
+/*******************************************************************************
+ * Copyright (c) 2009 MATERNA Information & Communications. All rights reserved.
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html. For further
+ * project-related information visit http://www.ws4d.org. The most recent
+ * version of the JMEDS framework can be obtained from
+ * http://sourceforge.net/projects/ws4d-javame.
+ ******************************************************************************/
+package org.ws4d.java.util;
+
+import org.ws4d.java.util.ObjectPool.InstanceCreator;
+
+/**
+ * Pool of objects which are taken for a short time, e.g. for the generation
+ * or the parsing of one message.
+ * <p>
+ * Unlike {@link ObjectPool}, this pool never refuses an object and does not
+ * remember which objects are taken. If no idle object is left,
+ * {@link #acquire()} creates a new one. {@link #release(Object)} keeps at
+ * most <code>capacity</code> idle objects and drops the others. Nothing is
+ * kept per thread, so short-lived threads leave no objects behind.
+ * </p>
+ * <p>
+ * The idle objects are spread over several stripes. A thread starts at the
+ * stripe given by its hash code, so concurrent threads rarely meet at the
+ * same monitor, and each monitor is held only to push or pop one object.
+ * </p>
+ */
+public class BoundedObjectPool {
+
+	private static final int		MAX_STRIPES	= 8;
+
+	private final InstanceCreator	creator;
+
+	private final Stripe[]			stripes;
+
+	private final int				mask;
+
+	private final int				capacity;
+
+	/**
+	 * Creates a pool which keeps at most <code>capacity</code> idle objects.
+	 *
+	 * @param creator creates new objects if the pool is empty
+	 * @param capacity the maximum number of idle objects
+	 */
+	public BoundedObjectPool(InstanceCreator creator, int capacity) {
+		this.creator = creator;
+		if (capacity < 1) {
+			capacity = 1;
+		}
+		this.capacity = capacity;
+		int count = 1;
+		while (count < MAX_STRIPES && count * 2 <= capacity) {
+			count <<= 1;
+		}
+		stripes = new Stripe[count];
+		int perStripe = (capacity + count - 1) / count;
+		for (int i = 0; i < count; i++) {
+			stripes[i] = new Stripe(perStripe);
+		}
+		mask = count - 1;
+	}
+
+	/**
+	 * Takes an idle object or creates a new one.
+	 *
+	 * @return the object, to be given back with {@link #release(Object)}
+	 */
+	public Object acquire() {
+		int start = stripe();
+		for (int i = 0; i <= mask; i++) {
+			Object o = stripes[(start + i) & mask].pop();
+			if (o != null) {
+				return o;
+			}
+		}
+		Object o = creator.createInstance();
+		stripes[start].created();
+		return o;
+	}
+
+	/**
+	 * Gives back an object taken with {@link #acquire()}. It MUST NOT be used
+	 * afterwards.
+	 *
+	 * @param o the object
+	 */
+	public void release(Object o) {
+		if (o == null) {
+			return;
+		}
+		int start = stripe();
+		for (int i = 0; i <= mask; i++) {
+			if (stripes[(start + i) & mask].push(o)) {
+				return;
+			}
+		}
+		stripes[start].dropped();
+	}
+
+	/**
+	 * Drops all idle objects.
+	 */
+	public void clear() {
+		for (int i = 0; i <= mask; i++) {
+			stripes[i].clear();
+		}
+	}
+
+	/**
+	 * @return the maximum number of idle objects
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return the number of idle objects in the pool
+	 */
+	public int getIdleCount() {
+		int n = 0;
+		for (int i = 0; i <= mask; i++) {
+			n += stripes[i].size();
+		}
+		return n;
+	}
+
+	/**
+	 * @return the number of objects taken and not given back
+	 */
+	public int getInUseCount() {
+		long n = 0;
+		for (int i = 0; i <= mask; i++) {
+			n += stripes[i].inUse();
+		}
+		return (int) n;
+	}
+
+	/**
+	 * @return the number of objects created because the pool was empty
+	 */
+	public long getCreatedCount() {
+		long n = 0;
+		for (int i = 0; i <= mask; i++) {
+			n += stripes[i].created;
+		}
+		return n;
+	}
+
+	/**
+	 * @return the number of objects dropped because the pool was full
+	 */
+	public long getDroppedCount() {
+		long n = 0;
+		for (int i = 0; i <= mask; i++) {
+			n += stripes[i].dropped;
+		}
+		return n;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "BoundedObjectPool [ capacity=" + capacity + ", idle=" + getIdleCount() + ", inUse=" + getInUseCount() + ", created=" + getCreatedCount() + ", dropped=" + getDroppedCount() + " ]";
+	}
+
+	private int stripe() {
+		int h = Thread.currentThread().hashCode();
+		h ^= (h >>> 16);
+		return h & mask;
+	}
+
+	/**
+	 * Stack of idle objects with its own monitor. The counters are changed
+	 * within the monitor and read without it.
+	 */
+	private static class Stripe {
+
+		private final Object[]	objects;
+
+		private int				size		= 0;
+
+		/** objects taken from this stripe, created ones included */
+		private long			taken		= 0;
+
+		/** objects given back to this stripe, dropped ones included */
+		private long			returned	= 0;
+
+		volatile long			created		= 0;
+
+		volatile long			dropped		= 0;
+
+		Stripe(int capacity) {
+			objects = new Object[capacity];
+		}
+
+		synchronized Object pop() {
+			if (size == 0) {
+				return null;
+			}
+			Object o = objects[--size];
+			objects[size] = null;
+			taken++;
+			return o;
+		}
+
+		synchronized boolean push(Object o) {
+			if (size == objects.length) {
+				return false;
+			}
+			objects[size++] = o;
+			returned++;
+			return true;
+		}
+
+		synchronized void created() {
+			created++;
+			taken++;
+		}
+
+		synchronized void dropped() {
+			dropped++;
+			returned++;
+		}
+
+		synchronized void clear() {
+			while (size > 0) {
+				objects[--size] = null;
+			}
+		}
+
+		synchronized int size() {
+			return size;
+		}
+
+		synchronized long inUse() {
+			return taken - returned;
+		}
+	}
+
+}
@@ -83,7 +83,7 @@ public class ObjectPool {
 	public synchronized Object acquire() {
 		Object o;
 		if (pooledObjects.size() > 0) {
-			o = pooledObjects.remove(0);
+			o = pooledObjects.remove(pooledObjects.size() - 1);
 		} else if (maxSize == -1 || acquiredObjects.size() < maxSize) {
 			o = creator.createInstance();
 		} else {
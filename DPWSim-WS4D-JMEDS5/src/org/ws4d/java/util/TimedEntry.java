@@ -18,12 +18,17 @@ package org.ws4d.java.util;
  */
 public abstract class TimedEntry {
 
-	long	timeToRemove;
+	long		timeToRemove;
 
-	boolean	disabled	= false;
+	// wheel containing this entry, null if not registered
+	TimingWheel	wheel			= null;
 
-	// used for timed entries which are unregistered and reregistered
-	boolean	registered	= false;
+	// position within the wheel
+	int			slot;
+
+	TimedEntry	previousEntry	= null;
+
+	TimedEntry	nextEntry		= null;
 
 	/**
 	 * Sets timer, when this timed entry should be timed out and removed.
@@ -0,0 +1,208 @@
+/*******************************************************************************
+ * Copyright (c) 2009 MATERNA Information & Communications. All rights reserved.
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html. For further
+ * project-related information visit http://www.ws4d.org. The most recent
+ * version of the JMEDS framework can be obtained from
+ * http://sourceforge.net/projects/ws4d-javame.
+ ******************************************************************************/
+
+package org.ws4d.java.util;
+
+import org.ws4d.java.structures.List;
+
+/**
+ * Hierarchical timing wheel for {@link TimedEntry timed entries}.
+ * <p>
+ * Time is divided into ticks of {@link #TICK} milliseconds. The wheel has
+ * {@link #LEVELS} levels of {@link #SLOTS} slots each. An entry is put into
+ * the slot of the lowest level which covers its deadline, entries of a higher
+ * level slot are moved down when the lower level wraps around. Adding and
+ * removing an entry takes constant time, the entries of a slot are kept in a
+ * doubly linked list within the entries themselves.
+ * </p>
+ * <p>
+ * All methods are synchronized on the wheel.
+ * </p>
+ */
+class TimingWheel {
+
+	/** length of a tick in milliseconds */
+	static final int			TICK		= 50;
+
+	static final int			SLOT_BITS	= 6;
+
+	static final int			SLOTS		= 1 << SLOT_BITS;
+
+	static final int			SLOT_MASK	= SLOTS - 1;
+
+	static final int			LEVELS		= 4;
+
+	/** ticks covered by all levels */
+	static final long			SPAN		= 1L << (SLOT_BITS * LEVELS);
+
+	/** first entry of each slot, level by level */
+	private final TimedEntry[]	slots		= new TimedEntry[SLOTS * LEVELS];
+
+	/** the next tick to expire */
+	private long				currentTick;
+
+	private int					size		= 0;
+
+	TimingWheel(long currentTime) {
+		currentTick = currentTime / TICK;
+	}
+
+	synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Adds an entry or moves it to its new deadline.
+	 * 
+	 * @param entry the entry, it must belong to this wheel or to no wheel
+	 * @param timeUntilTimeout time until timeout
+	 * @return <code>true</code> if the entry was added, <code>false</code> if
+	 *         it was moved.
+	 */
+	synchronized boolean schedule(TimedEntry entry, long timeUntilTimeout) {
+		boolean added = (entry.wheel == null);
+		if (added) {
+			entry.wheel = this;
+			size++;
+		} else {
+			unlink(entry);
+		}
+		entry.setTimer(timeUntilTimeout);
+		insert(entry);
+		return added;
+	}
+
+	/**
+	 * Removes an entry from this wheel.
+	 * 
+	 * @param entry the entry
+	 * @return <code>false</code> if the entry was not in this wheel, e.g.
+	 *         because it has expired in the meantime.
+	 */
+	synchronized boolean remove(TimedEntry entry) {
+		if (entry.wheel != this) {
+			return false;
+		}
+		unlink(entry);
+		entry.wheel = null;
+		size--;
+		return true;
+	}
+
+	/**
+	 * Removes all entries up to the given time.
+	 * 
+	 * @param currentTime the current time
+	 * @param expired receives the removed entries
+	 */
+	synchronized void expire(long currentTime, List expired) {
+		long nowTick = currentTime / TICK;
+		while (currentTick <= nowTick) {
+			int index = (int) (currentTick & SLOT_MASK);
+			if (index == 0) {
+				// move the entries of the next higher level slots down
+				for (int level = 1; level < LEVELS; level++) {
+					int levelIndex = (int) ((currentTick >> (SLOT_BITS * level)) & SLOT_MASK);
+					cascade(level * SLOTS + levelIndex);
+					if (levelIndex != 0) {
+						break;
+					}
+				}
+			}
+			TimedEntry entry = slots[index];
+			slots[index] = null;
+			while (entry != null) {
+				TimedEntry next = entry.nextEntry;
+				entry.previousEntry = null;
+				entry.nextEntry = null;
+				entry.wheel = null;
+				size--;
+				expired.add(entry);
+				entry = next;
+			}
+			currentTick++;
+		}
+	}
+
+	/**
+	 * Removes all entries.
+	 * 
+	 * @param removed receives the removed entries
+	 */
+	synchronized void clear(List removed) {
+		for (int i = 0; i < slots.length; i++) {
+			TimedEntry entry = slots[i];
+			slots[i] = null;
+			while (entry != null) {
+				TimedEntry next = entry.nextEntry;
+				entry.previousEntry = null;
+				entry.nextEntry = null;
+				entry.wheel = null;
+				removed.add(entry);
+				entry = next;
+			}
+		}
+		size = 0;
+	}
+
+	// ---------------------------- PRIVATE ----------------------------
+
+	private void cascade(int slot) {
+		TimedEntry entry = slots[slot];
+		slots[slot] = null;
+		while (entry != null) {
+			TimedEntry next = entry.nextEntry;
+			insert(entry);
+			entry = next;
+		}
+	}
+
+	private void insert(TimedEntry entry) {
+		long dueTick = (entry.timeToRemove + TICK - 1) / TICK;
+		long delta = dueTick - currentTick;
+		int slot;
+		if (delta < 0) {
+			// already due, expire with the next tick
+			slot = (int) (currentTick & SLOT_MASK);
+		} else {
+			if (delta >= SPAN) {
+				// put into the farthest slot, it will be moved down later
+				dueTick = currentTick + SPAN - 1;
+				delta = SPAN - 1;
+			}
+			int level = 0;
+			while (delta >= (1L << (SLOT_BITS * (level + 1)))) {
+				level++;
+			}
+			slot = level * SLOTS + (int) ((dueTick >> (SLOT_BITS * level)) & SLOT_MASK);
+		}
+		entry.slot = slot;
+		entry.previousEntry = null;
+		entry.nextEntry = slots[slot];
+		if (entry.nextEntry != null) {
+			entry.nextEntry.previousEntry = entry;
+		}
+		slots[slot] = entry;
+	}
+
+	private void unlink(TimedEntry entry) {
+		if (entry.previousEntry == null) {
+			slots[entry.slot] = entry.nextEntry;
+		} else {
+			entry.previousEntry.nextEntry = entry.nextEntry;
+		}
+		if (entry.nextEntry != null) {
+			entry.nextEntry.previousEntry = entry.previousEntry;
+		}
+		entry.previousEntry = null;
+		entry.nextEntry = null;
+	}
+
+}
@@ -11,186 +11,85 @@
 package org.ws4d.java.util;
 
 import org.ws4d.java.DPWSFramework;
-import org.ws4d.java.concurrency.LockSupport;
 import org.ws4d.java.structures.ArrayList;
 import org.ws4d.java.structures.Iterator;
-import org.ws4d.java.structures.LinkedList;
 import org.ws4d.java.structures.List;
-import org.ws4d.java.structures.ListIterator;
 
 /**
  * Class
+ * <p>
+ * The timed entries are kept in {@link TimingWheel timing wheels}, so
+ * registering, updating and unregistering an entry takes constant time.
+ * Entries are spread over several wheels with own locks, so concurrent
+ * registrations rarely wait for each other.
+ * </p>
  * 
  * @author mspies
  */
 public class WatchDog implements Runnable {
 
-	/** extra time buffer for removing callbacks */
-	final static int			ADDITIONAL_TIME_BEFORE_CALLBACK_REMOVAL	= 50;					// milliseconds
+	/** number of timing wheels, a power of two */
+	private static final int		WHEELS		= 8;
 
-	/** list<TimedEntry> */
-	protected final LinkedList	listEntries								= new LinkedList();
+	private final TimingWheel[]		wheels		= new TimingWheel[WHEELS];
 
 	/** <code>true</code> if class was started */
-	private boolean				running									= false;
+	private volatile boolean		running		= false;
 
-	/** lock protects list */
-	protected LockSupport		lock									= new LockSupport();
+	/** <code>true</code> while the watchdog waits for the first entry */
+	private volatile boolean		idle		= false;
 
 	/** this */
-	private static WatchDog		watchdog								= new WatchDog();
+	private static WatchDog			watchdog	= new WatchDog();
 
 	/**
 	 * Private constructor.
 	 */
-	private WatchDog() {}
+	private WatchDog() {
+		long currentTime = System.currentTimeMillis();
+		for (int i = 0; i < WHEELS; i++) {
+			wheels[i] = new TimingWheel(currentTime);
+		}
+	}
 
 	public static WatchDog getInstance() {
 		return watchdog;
 	}
 
 	/**
-	 * Registers timed object to observe.
+	 * Registers timed object to observe. If the object is already registered,
+	 * its timeout is updated.
 	 * 
 	 * @param timedEntry
 	 * @param timeUntilTimeout
 	 */
 	public void register(TimedEntry timedEntry, long timeUntilTimeout) {
-
-		lock.exclusiveLock();
-		try {
-			if (timedEntry.registered) {
-				update(timedEntry, timeUntilTimeout);
-				return;
-			}
-
-			timedEntry.setTimer(timeUntilTimeout);
-
-			if (listEntries.size() == 0) {
-				listEntries.add(timedEntry);
-			} else {
-				boolean added = false;
-				ListIterator it = listEntries.listIterator(listEntries.size());
-				while (it.hasPrevious()) {
-					TimedEntry temp = (TimedEntry) it.previous();
-					if (temp.compareTo(timedEntry) < 0) {
-						if (it.hasNext()) {
-							it.next();
-						}
-						it.add(timedEntry);
-						added = true;
-						break;
-					}
-				}
-				if (!added) {
-					it.add(timedEntry);
-				}
+		if (getWheel(timedEntry).schedule(timedEntry, timeUntilTimeout) && idle) {
+			synchronized (this) {
+				this.notify();
 			}
-			timedEntry.registered = true;
-		} finally {
-			lock.releaseExclusiveLock();
-		}
-		synchronized (this) {
-			this.notify();
 		}
 	}
 
 	/**
-	 * Disables timed entry from managed objects of watchdog. Removing will
-	 * occur later.
+	 * Removes timed entry from managed objects of watchdog. Its timeout will
+	 * not be called unless it is already in progress.
 	 * 
 	 * @param timedEntry
 	 */
 	public void unregister(TimedEntry timedEntry) {
-		// lock.exclusiveLock();
-		lock.sharedLock();
-		try {
-			// XXX: Will be faster, if we can use entries of linked list.
-			// listEntries.remove(timedEntry);
-			// XXX: entry will be removed at timeout
-			timedEntry.disabled = true;
-		} finally {
-			lock.releaseSharedLock();
-			// lock.releaseExclusiveLock();
-		}
+		getWheel(timedEntry).remove(timedEntry);
 	}
 
 	/**
 	 * Updates timed entry with new time until timeout within managed objects of
-	 * watchdog.
+	 * watchdog. If the object is not registered, it is registered.
 	 * 
 	 * @param timedEntry
 	 * @param timeUntilTimeout
 	 */
 	public void update(TimedEntry timedEntry, long timeUntilTimeout) {
-		List timeoutObjects = new ArrayList(3);
-
-		lock.exclusiveLock();
-		try {
-			if (!timedEntry.registered) {
-				register(timedEntry, timeUntilTimeout);
-				return;
-			}
-
-			timedEntry.setTimer(timeUntilTimeout);
-			long currentTime = System.currentTimeMillis();
-
-			if (listEntries.size() > 1) {
-				boolean added = false;
-				ListIterator it = listEntries.listIterator();
-				while (it.hasNext()) {
-					TimedEntry entry = (TimedEntry) it.next();
-
-					if (entry.equals(timedEntry)) {
-						it.remove();
-						entry.registered = false;
-					} else if (entry.timeToRemove <= currentTime) {
-						it.remove();
-						if (!entry.disabled) {
-							// XXX previous unregistered entries won't receive
-							// timeout
-							timeoutObjects.add(entry);
-						}
-						entry.registered = false;
-						entry.disabled = false;
-					} else if (entry.compareTo(timedEntry) > 0 && !added) {
-						// if( it.hasPrevious() ){
-						// it.previous();
-						// }
-
-						it.previous();
-						it.add(timedEntry);
-						added = true;
-
-						if (!entry.registered) {
-							// we only break, if entry removed from old position
-							break;
-						}
-					} else if (!entry.registered) {
-						// we only break, if entry removed from old position
-						break;
-					}
-
-				}
-				if (!added) {
-					it.add(timedEntry);
-				}
-			}
-
-			timedEntry.registered = true;
-			timedEntry.disabled = false;
-		} finally {
-			lock.releaseExclusiveLock();
-		}
-
-		/*
-		 * timeout for all removed objects
-		 */
-		callTimeouts(timeoutObjects);
-
-		synchronized (this) {
-			this.notify();
-		}
+		register(timedEntry, timeUntilTimeout);
 	}
 
 	// ------------------------ RUNNABLE ------------------------------
@@ -201,35 +100,37 @@ public class WatchDog implements Runnable {
 	public void run() {
 		running = true;
 
+		List timeoutObjects = new ArrayList();
 		while (running) {
 			try {
-				lock.sharedLock();
-				//(INGO) potentially DANGEROUS because the variable size in class LinkedList is not volatile
-				if (listEntries.size() == 0) {
-					synchronized (this) {
-						lock.releaseSharedLock();
-						wait();
-					}
-				} else {
-					TimedEntry e = (TimedEntry) listEntries.getFirst();
-					long millis2Sleep = e.timeToRemove - System.currentTimeMillis();
+				long currentTime = System.currentTimeMillis();
+				for (int i = 0; i < WHEELS; i++) {
+					wheels[i].expire(currentTime, timeoutObjects);
+				}
+				if (timeoutObjects.size() > 0) {
+					callTimeouts(timeoutObjects);
+					timeoutObjects = new ArrayList();
+				}
 
-					if (millis2Sleep > 0) {
-						// some extra millis;
-						millis2Sleep += ADDITIONAL_TIME_BEFORE_CALLBACK_REMOVAL;
-						synchronized (this) {
-							lock.releaseSharedLock();
-							this.wait(millis2Sleep);
-						}
+				synchronized (this) {
+					if (!running) {
+						break;
+					}
+					// set before the size check, see register()
+					idle = true;
+					if (size() == 0) {
+						wait();
+						idle = false;
 					} else {
-						lock.releaseSharedLock();
+						idle = false;
+						wait(TimingWheel.TICK);
 					}
-					checkEntries();
 				}
 			} catch (InterruptedException e1) {
 				// e1.printStackTrace();
 			}
 		}
+		idle = false;
 	}
 
 	/**
@@ -245,57 +146,24 @@ public class WatchDog implements Runnable {
 
 	// ---------------------------- PRIVATE ----------------------------
 
-	private void clearEntries() {
-		List timeoutObjects = new ArrayList(listEntries.size());
+	private TimingWheel getWheel(TimedEntry timedEntry) {
+		return wheels[System.identityHashCode(timedEntry) & (WHEELS - 1)];
+	}
 
-		lock.exclusiveLock();
-		try {
-			for (Iterator it = listEntries.iterator(); it.hasNext();) {
-				final TimedEntry entry = (TimedEntry) it.next();
-				it.remove();
-				entry.registered = false;
-				entry.disabled = false;
-				timeoutObjects.add(entry);
-			}
-		} finally {
-			lock.releaseExclusiveLock();
+	private int size() {
+		int size = 0;
+		for (int i = 0; i < WHEELS; i++) {
+			size += wheels[i].size();
 		}
-
-		callTimeouts(timeoutObjects);
+		return size;
 	}
 
-	/**
-	 * Removes all entries with expired lifetime. Sends timeout to all removed
-	 * callbacks.
-	 */
-	private void checkEntries() {
-		long currentTime = System.currentTimeMillis();
-		List timeoutObjects = new ArrayList(5);
-
-		lock.exclusiveLock();
-		try {
-			for (Iterator it = listEntries.iterator(); it.hasNext();) {
-				TimedEntry entry = (TimedEntry) it.next();
-				if (entry.timeToRemove <= currentTime) {
-					it.remove();
-					if (!entry.disabled) {
-						// XXX previous unregistered entries won't receive
-						// timeout
-						timeoutObjects.add(entry);
-					}
-					entry.registered = false;
-					entry.disabled = false;
-				} else {
-					break;
-				}
-			}
-		} finally {
-			lock.releaseExclusiveLock();
+	private void clearEntries() {
+		List timeoutObjects = new ArrayList();
+		for (int i = 0; i < WHEELS; i++) {
+			wheels[i].clear(timeoutObjects);
 		}
 
-		/*
-		 * timeout for all removed objects
-		 */
 		callTimeouts(timeoutObjects);
 	}
 
@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright (c) 2009 MATERNA Information & Communications. All rights reserved.
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html. For further
+ * project-related information visit http://www.ws4d.org. The most recent
+ * version of the JMEDS framework can be obtained from
+ * http://sourceforge.net/projects/ws4d-javame.
+ ******************************************************************************/
+package org.ws4d.java.communication.protocol.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+import org.ws4d.java.communication.ProtocolException;
+
+/**
+ * Tests the request boundaries found by the {@link HTTPRequestFramer} and the
+ * limit of the request size.
+ */
+public class HTTPRequestFramerTest {
+
+	private static final String	GET			= "GET /device HTTP/1.1\r\nHost: 192.0.2.2\r\n\r\n";
+
+	private static final String	POST		= "POST /device HTTP/1.1\r\nContent-Length: 5\r\n\r\nhello";
+
+	private static final String	CHUNKED		= "POST /device HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n5;ext=1\r\nhello\r\n6\r\n world\r\n0\r\nX-Trailer: 1\r\n\r\n";
+
+	private static final int	MAX_SIZE	= 128;
+
+	@Test
+	public void testRequestByteByByte() throws ProtocolException {
+		HTTPRequestFramer framer = new HTTPRequestFramer(4, MAX_SIZE);
+		byte[] request = POST.getBytes();
+		for (int i = 0; i < request.length - 1; i++) {
+			framer.append(request, i, 1);
+			assertFalse("complete after " + (i + 1) + " bytes", framer.hasComplete());
+		}
+		framer.append(request, request.length - 1, 1);
+		assertTrue(framer.hasComplete());
+		assertFalse(framer.hasPartial());
+		assertArrayEquals(request, framer.takeComplete());
+		assertNull(framer.takeComplete());
+	}
+
+	@Test
+	public void testChunkedRequestByteByByte() throws ProtocolException {
+		HTTPRequestFramer framer = new HTTPRequestFramer(4, MAX_SIZE);
+		byte[] request = CHUNKED.getBytes();
+		for (int i = 0; i < request.length - 1; i++) {
+			framer.append(request, i, 1);
+			assertFalse("complete after " + (i + 1) + " bytes", framer.hasComplete());
+		}
+		framer.append(request, request.length - 1, 1);
+		assertArrayEquals(request, framer.takeComplete());
+	}
+
+	@Test
+	public void testPipelinedRequests() throws ProtocolException {
+		HTTPRequestFramer framer = new HTTPRequestFramer(16, MAX_SIZE);
+		byte[] data = (GET + CHUNKED + POST + GET.substring(0, 10)).getBytes();
+		framer.append(data, 0, data.length);
+		assertTrue(framer.hasComplete());
+		assertTrue(framer.hasPartial());
+		assertArrayEquals((GET + CHUNKED + POST).getBytes(), framer.takeComplete());
+
+		byte[] rest = GET.substring(10).getBytes();
+		framer.append(rest, 0, rest.length);
+		assertArrayEquals(GET.getBytes(), framer.takeComplete());
+		assertFalse(framer.hasPartial());
+	}
+
+	@Test
+	public void testLeadingEmptyLines() throws ProtocolException {
+		HTTPRequestFramer framer = new HTTPRequestFramer(16, MAX_SIZE);
+		byte[] data = ("\r\n\r\n" + GET).getBytes();
+		framer.append(data, 0, data.length);
+		assertArrayEquals(data, framer.takeComplete());
+	}
+
+	@Test
+	public void testRequestExceedingLimit() throws ProtocolException {
+		HTTPRequestFramer framer = new HTTPRequestFramer(16, MAX_SIZE);
+		byte[] header = "POST /device HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n".getBytes();
+		framer.append(header, 0, header.length);
+		byte[] chunk = "10\r\n0123456789abcdef\r\n".getBytes();
+		try {
+			for (int i = 0; i < MAX_SIZE; i++) {
+				framer.append(chunk, 0, chunk.length);
+			}
+			fail("request of more than " + MAX_SIZE + " bytes accepted");
+		} catch (HTTPRequestTooLargeException e) {
+			// expected
+		}
+	}
+
+	@Test(expected = HTTPRequestTooLargeException.class)
+	public void testContentLengthExceedingLimit() throws ProtocolException {
+		HTTPRequestFramer framer = new HTTPRequestFramer(16, MAX_SIZE);
+		// rejected as soon as the header is complete, without the body
+		byte[] header = ("POST /device HTTP/1.1\r\nContent-Length: " + MAX_SIZE + "\r\n\r\n").getBytes();
+		framer.append(header, 0, header.length);
+	}
+
+	@Test(expected = HTTPRequestTooLargeException.class)
+	public void testChunkSizeExceedingLimit() throws ProtocolException {
+		HTTPRequestFramer framer = new HTTPRequestFramer(16, MAX_SIZE);
+		byte[] header = "POST /device HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n7fffffffffffffff\r\n".getBytes();
+		framer.append(header, 0, header.length);
+	}
+
+	@Test
+	public void testHeaderExceedingLimit() throws ProtocolException {
+		HTTPRequestFramer framer = new HTTPRequestFramer(16, Integer.MAX_VALUE);
+		byte[] line = "X-Header: 0123456789abcdef0123456789abcdef\r\n".getBytes();
+		try {
+			for (int i = 0; i <= HTTPRequestFramer.MAX_HEADER_SIZE / line.length; i++) {
+				framer.append(line, 0, line.length);
+			}
+			fail("header of more than " + HTTPRequestFramer.MAX_HEADER_SIZE + " bytes accepted");
+		} catch (HTTPRequestTooLargeException e) {
+			fail("header limit reported as request size limit");
+		} catch (ProtocolException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testInvalidChunkSize() {
+		HTTPRequestFramer framer = new HTTPRequestFramer(16, MAX_SIZE);
+		byte[] request = "POST /device HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\nxyz\r\n".getBytes();
+		try {
+			framer.append(request, 0, request.length);
+			fail("invalid chunk size accepted");
+		} catch (HTTPRequestTooLargeException e) {
+			fail("invalid chunk size reported as request size limit");
+		} catch (ProtocolException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testNegativeContentLength() {
+		HTTPRequestFramer framer = new HTTPRequestFramer(16, MAX_SIZE);
+		byte[] request = "POST /device HTTP/1.1\r\nContent-Length: -1\r\n\r\n".getBytes();
+		try {
+			framer.append(request, 0, request.length);
+			fail("negative content length accepted");
+		} catch (HTTPRequestTooLargeException e) {
+			fail("negative content length reported as request size limit");
+		} catch (ProtocolException e) {
+			// expected
+		}
+	}
+
+}
@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * Copyright (c) 2009 MATERNA Information & Communications. All rights reserved.
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html. For further
+ * project-related information visit http://www.ws4d.org. The most recent
+ * version of the JMEDS framework can be obtained from
+ * http://sourceforge.net/projects/ws4d-javame.
+ ******************************************************************************/
+package org.ws4d.java.communication.protocol.http.server;
+
+import java.io.InputStream;
+
+import org.ws4d.java.communication.ProtocolData;
+import org.ws4d.java.communication.monitor.MonitoringContext;
+import org.ws4d.java.communication.protocol.http.HTTPResponse;
+import org.ws4d.java.communication.protocol.http.header.HTTPRequestHeader;
+import org.ws4d.java.structures.HashMap;
+import org.ws4d.java.structures.LockedMap;
+import org.ws4d.java.types.InternetMediaType;
+import org.ws4d.java.types.URI;
+
+/**
+ * Compares the {@link HTTPHandlerIndex} with the lookup HTTPServer used
+ * before, a map keyed by URI and content type.
+ * <p>
+ * Every simulated device registers the handlers a DPWS device registers at a
+ * shared server: typed handlers for the device and service paths and an
+ * untyped one for the WSDL. First, both lookups are checked to return the
+ * same handler for every registered path and for some escaped, unknown and
+ * backtracked paths. Then, each lookup is timed with a new path string per
+ * request, as the path of a request is always a new string.
+ * </p>
+ * Usage: <code>HTTPHandlerIndexBenchmark [devices] [lookups]</code>
+ */
+public class HTTPHandlerIndexBenchmark {
+
+	private static final URI				BASE	= new URI("http://192.0.2.2:5100");
+
+	private static final InternetMediaType	SOAP	= InternetMediaType.getSOAPXML();
+
+	private static final InternetMediaType	MIME	= InternetMediaType.getMultipartRelated();
+
+	/** keeps the results of the timed lookups alive */
+	static volatile Object					found;
+
+	public static void main(String[] args) {
+		int devices = (args.length > 0) ? Integer.parseInt(args[0]) : 5000;
+		int lookups = (args.length > 1) ? Integer.parseInt(args[1]) : 200000;
+
+		HashMap uriMap = new LockedMap();
+		HTTPHandlerIndex index = new HTTPHandlerIndex();
+		String[] paths = new String[devices * 3];
+		for (int i = 0; i < devices; i++) {
+			String device = "/D" + i + "Device";
+			String service = device + "/SwitchPower" + i;
+			String wsdl = service + "/description.wsdl";
+			register(uriMap, index, device, SOAP);
+			register(uriMap, index, device, MIME);
+			register(uriMap, index, service, SOAP);
+			register(uriMap, index, service, MIME);
+			register(uriMap, index, wsdl, null);
+			paths[i * 3] = device;
+			paths[i * 3 + 1] = service;
+			paths[i * 3 + 2] = wsdl;
+		}
+
+		InternetMediaType type = new InternetMediaType("application/soap+xml; charset=UTF-8; action=\"urn:x\"");
+		int mismatches = 0;
+		for (int i = 0; i < paths.length; i++) {
+			mismatches += compare(uriMap, index, paths[i], type, false);
+		}
+		String[] special = { "/D7Device/./SwitchPower7", "/D%37Device", "/unknown", "/D7Device/unknown", "/D7Device/SwitchPower7/description.wsdl/part" };
+		for (int i = 0; i < special.length; i++) {
+			mismatches += compare(uriMap, index, special[i], type, false);
+			mismatches += compare(uriMap, index, special[i], type, true);
+		}
+		System.out.println(index.size() + " handlers, " + mismatches + " mismatches");
+
+		long uriTime = Long.MAX_VALUE;
+		long indexTime = Long.MAX_VALUE;
+		for (int round = 0; round < 15; round++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < lookups; i++) {
+				found = uriMapGet(uriMap, new String(paths[(i * 7919) % paths.length]), type, false);
+			}
+			uriTime = Math.min(uriTime, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			for (int i = 0; i < lookups; i++) {
+				found = indexGet(index, new String(paths[(i * 7919) % paths.length]), type, false);
+			}
+			indexTime = Math.min(indexTime, System.nanoTime() - start);
+		}
+		System.out.println("URI map: " + (uriTime / lookups) + " ns per lookup");
+		System.out.println("index:   " + (indexTime / lookups) + " ns per lookup");
+	}
+
+	private static void register(HashMap uriMap, HTTPHandlerIndex index, String path, InternetMediaType type) {
+		URI uri = new URI(path, BASE);
+		HTTPRequestHandler handler = new NamedHandler(path + ((type == null) ? "" : " " + type.getMediaType()));
+		uriMap.put((type == null) ? (Object) uri : new MappingEntry(uri, type), handler);
+		index.put(uri.getPath(), type, handler);
+	}
+
+	private static int compare(HashMap uriMap, HTTPHandlerIndex index, String path, InternetMediaType type, boolean backtrack) {
+		Object expected = uriMapGet(uriMap, path, type, backtrack);
+		Object actual = indexGet(index, path, type, backtrack);
+		if (expected != actual) {
+			System.out.println("Mismatch for " + path + (backtrack ? " (backtracking)" : "") + ": " + expected + " != " + actual);
+			return 1;
+		}
+		return 0;
+	}
+
+	/**
+	 * The lookup of HTTPServer.getHTTPHandler.
+	 */
+	private static HTTPRequestHandler indexGet(HTTPHandlerIndex index, String path, InternetMediaType type, boolean backtrack) {
+		if (!HTTPHandlerIndex.isPlainPath(path)) {
+			path = new URI(path, BASE).getPath();
+		}
+		return index.get(path, type, backtrack);
+	}
+
+	/**
+	 * The lookup HTTPServer.getHTTPHandler used before the index. When
+	 * backtracking, the typed lookup keeps using the request URI, so only
+	 * untyped handlers are found above the request path. The root path has
+	 * a path deepness of one too, so the loop stops there explicitly.
+	 */
+	private static HTTPRequestHandler uriMapGet(HashMap uriMap, String path, InternetMediaType type, boolean backtrack) {
+		URI requestURI = new URI(path, BASE);
+		HTTPRequestHandler handler = (HTTPRequestHandler) uriMap.get(new MappingEntry(requestURI, type));
+		if (handler == null) {
+			handler = (HTTPRequestHandler) uriMap.get(requestURI);
+		}
+		if (backtrack && handler == null) {
+			URI backtrackURI = requestURI;
+			while (backtrackURI.getPathDeepness() > 0) {
+				backtrackURI = new URI(backtrackURI, backtrackURI.getPath(backtrackURI.getPathDeepness() - 1));
+				handler = (HTTPRequestHandler) uriMap.get(new MappingEntry(requestURI, type));
+				if (handler == null) {
+					handler = (HTTPRequestHandler) uriMap.get(backtrackURI);
+				}
+				if (handler != null || backtrackURI.getPath().length() <= 1) {
+					break;
+				}
+			}
+		}
+		return handler;
+	}
+
+	/**
+	 * The key HTTPServer used for typed handlers before the index.
+	 */
+	private static class MappingEntry {
+
+		private final URI				uri;
+
+		private final InternetMediaType	type;
+
+		MappingEntry(URI uri, InternetMediaType type) {
+			this.uri = uri;
+			this.type = type;
+		}
+
+		public int hashCode() {
+			return 31 * ((type == null) ? 0 : type.hashCode()) + uri.hashCode();
+		}
+
+		public boolean equals(Object obj) {
+			if (!(obj instanceof MappingEntry)) {
+				return false;
+			}
+			MappingEntry other = (MappingEntry) obj;
+			return ((type == null) ? other.type == null : type.equals(other.type)) && uri.equals(other.uri);
+		}
+
+	}
+
+	private static class NamedHandler implements HTTPRequestHandler {
+
+		private final String	name;
+
+		NamedHandler(String name) {
+			this.name = name;
+		}
+
+		public HTTPResponse handle(URI request, HTTPRequestHeader header, InputStream body, ProtocolData protocolData, MonitoringContext context) {
+			return null;
+		}
+
+		public String toString() {
+			return name;
+		}
+
+	}
+
+}
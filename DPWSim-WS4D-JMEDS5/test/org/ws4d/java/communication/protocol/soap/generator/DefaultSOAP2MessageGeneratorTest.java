@@ -0,0 +1,282 @@
+/*******************************************************************************
+ * Copyright (c) 2009 MATERNA Information & Communications. All rights reserved.
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html. For further
+ * project-related information visit http://www.ws4d.org. The most recent
+ * version of the JMEDS framework can be obtained from
+ * http://sourceforge.net/projects/ws4d-javame.
+ ******************************************************************************/
+package org.ws4d.java.communication.protocol.soap.generator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ws4d.java.DPWSFramework;
+import org.ws4d.java.communication.CommunicationManagerRegistry;
+import org.ws4d.java.communication.DPWSProtocolData;
+import org.ws4d.java.communication.DPWSProtocolInfo;
+import org.ws4d.java.communication.ProtocolData;
+import org.ws4d.java.constants.DPWSConstants;
+import org.ws4d.java.message.FaultMessage;
+import org.ws4d.java.message.InvokeMessage;
+import org.ws4d.java.message.discovery.ByeMessage;
+import org.ws4d.java.message.discovery.HelloMessage;
+import org.ws4d.java.message.discovery.ProbeMatchesMessage;
+import org.ws4d.java.message.discovery.ProbeMessage;
+import org.ws4d.java.message.discovery.ResolveMatchesMessage;
+import org.ws4d.java.message.discovery.ResolveMessage;
+import org.ws4d.java.message.eventing.GetStatusMessage;
+import org.ws4d.java.message.eventing.GetStatusResponseMessage;
+import org.ws4d.java.message.eventing.RenewMessage;
+import org.ws4d.java.message.eventing.RenewResponseMessage;
+import org.ws4d.java.message.eventing.SubscribeMessage;
+import org.ws4d.java.message.eventing.SubscribeResponseMessage;
+import org.ws4d.java.message.eventing.SubscriptionEndMessage;
+import org.ws4d.java.message.eventing.UnsubscribeMessage;
+import org.ws4d.java.message.eventing.UnsubscribeResponseMessage;
+import org.ws4d.java.message.metadata.GetMessage;
+import org.ws4d.java.message.metadata.GetMetadataMessage;
+import org.ws4d.java.message.metadata.GetMetadataResponseMessage;
+import org.ws4d.java.message.metadata.GetResponseMessage;
+import org.ws4d.java.schema.ComplexType;
+import org.ws4d.java.schema.Element;
+import org.ws4d.java.schema.SchemaUtil;
+import org.ws4d.java.service.DefaultEventSource;
+import org.ws4d.java.service.OperationDescription;
+import org.ws4d.java.service.parameter.ParameterValue;
+import org.ws4d.java.types.QName;
+import org.ws4d.java.util.ParameterUtil;
+
+/**
+ * Tests the parsing of invoke messages whose body holds a batch of
+ * notifications.
+ */
+public class DefaultSOAP2MessageGeneratorTest {
+
+	private static final String	NAMESPACE	= "http://example.org/sensor";
+
+	@BeforeClass
+	public static void startFramework() {
+		DPWSFramework.start(null);
+	}
+
+	@AfterClass
+	public static void stopFramework() {
+		DPWSFramework.stop();
+	}
+
+	@Test
+	public void testBatchOfSimpleContent() throws IOException {
+		DefaultEventSource source = new DefaultEventSource("Temperature", new QName("Sensor", NAMESPACE));
+		source.setOutput(new Element(new QName("temperature", NAMESPACE), SchemaUtil.getSchemaType(SchemaUtil.TYPE_STRING)));
+
+		InvokeReceiver receiver = deliver(source, batch(source, null, 3));
+		assertNull(receiver.failure);
+		ParameterValue[] contents = receiver.invoke.getContents();
+		assertEquals(3, contents.length);
+		for (int i = 0; i < contents.length; i++) {
+			assertEquals("value-" + i, ParameterUtil.getString(contents[i], null));
+		}
+		assertEquals(contents[0], receiver.invoke.getContent());
+	}
+
+	@Test
+	public void testBatchOfComplexContent() throws IOException {
+		ComplexType type = new ComplexType(new QName("ReadingType", NAMESPACE), ComplexType.CONTAINER_SEQUENCE);
+		type.addElement(new Element(new QName("value", NAMESPACE), SchemaUtil.getSchemaType(SchemaUtil.TYPE_STRING)));
+		type.addElement(new Element(new QName("unit", NAMESPACE), SchemaUtil.getSchemaType(SchemaUtil.TYPE_STRING)));
+		DefaultEventSource source = new DefaultEventSource("Reading", new QName("Sensor", NAMESPACE));
+		source.setOutput(new Element(new QName("reading", NAMESPACE), type));
+
+		InvokeReceiver receiver = deliver(source, batch(source, "value", 2));
+		assertNull(receiver.failure);
+		ParameterValue[] contents = receiver.invoke.getContents();
+		assertEquals(2, contents.length);
+		assertEquals("value-0", ParameterUtil.getString(contents[0], "value"));
+		assertEquals("value-1", ParameterUtil.getString(contents[1], "value"));
+	}
+
+	@Test
+	public void testSingleContent() throws IOException {
+		DefaultEventSource source = new DefaultEventSource("Temperature", new QName("Sensor", NAMESPACE));
+		source.setOutput(new Element(new QName("temperature", NAMESPACE), SchemaUtil.getSchemaType(SchemaUtil.TYPE_STRING)));
+
+		InvokeReceiver receiver = deliver(source, batch(source, null, 1));
+		assertNull(receiver.failure);
+		assertEquals(1, receiver.invoke.getContents().length);
+		assertEquals("value-0", ParameterUtil.getString(receiver.invoke.getContent(), null));
+	}
+
+	@Test
+	public void testSolicitWithSeveralParts() throws IOException {
+		DefaultEventSource source = new DefaultEventSource("Confirmation", new QName("Sensor", NAMESPACE));
+		source.setOutput(new Element(new QName("confirmation", NAMESPACE), SchemaUtil.getSchemaType(SchemaUtil.TYPE_STRING)));
+		source.setInput(new Element(new QName("confirmationResponse", NAMESPACE), SchemaUtil.getSchemaType(SchemaUtil.TYPE_STRING)));
+
+		// only notifications may be batched
+		InvokeReceiver receiver = deliver(source, batch(source, null, 2));
+		assertNull(receiver.invoke);
+		assertTrue(receiver.failure instanceof UnexpectedElementException);
+	}
+
+	/**
+	 * Creates a notification of the given event source with the given number
+	 * of parts. The string at the given path of each part holds its index.
+	 */
+	private static InvokeMessage batch(DefaultEventSource source, String path, int parts) {
+		ParameterValue[] contents = new ParameterValue[parts];
+		for (int i = 0; i < parts; i++) {
+			contents[i] = source.createOutputValue();
+			ParameterUtil.setString(contents[i], path, "value-" + i);
+		}
+		InvokeMessage notification = new InvokeMessage(source.getOutputAction(), CommunicationManagerRegistry.getDefault());
+		notification.setProtocolInfo(new DPWSProtocolInfo(DPWSConstants.DPWS_VERSION2009));
+		notification.setContents(contents);
+		return notification;
+	}
+
+	/**
+	 * Serializes the given message and parses it again.
+	 */
+	private static InvokeReceiver deliver(DefaultEventSource source, InvokeMessage message) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		SOAPMessageGeneratorFactory factory = SOAPMessageGeneratorFactory.getInstance();
+		factory.generateSOAPMessage(out, message, new DPWSProtocolData(null, false, "127.0.0.1", 5000, "127.0.0.1", 5001, true));
+
+		InvokeReceiver receiver = new InvokeReceiver(source);
+		factory.deliverMessage(new ByteArrayInputStream(out.toByteArray()), receiver, new DPWSProtocolData(null, true, "127.0.0.1", 5000, "127.0.0.1", 5001, true));
+		if (receiver.failure == null) {
+			assertNotNull(receiver.invoke);
+		}
+		return receiver;
+	}
+
+	/**
+	 * Receives invoke messages of one operation and fails on any other
+	 * message.
+	 */
+	private static class InvokeReceiver implements MessageReceiver {
+
+		private final OperationDescription	operation;
+
+		InvokeMessage						invoke	= null;
+
+		Exception							failure	= null;
+
+		InvokeReceiver(OperationDescription operation) {
+			this.operation = operation;
+		}
+
+		public void receive(InvokeMessage invoke, ProtocolData protocolData) {
+			this.invoke = invoke;
+		}
+
+		public void receiveFailed(Exception e, ProtocolData protocolData) {
+			failure = e;
+		}
+
+		public void sendFailed(Exception e, ProtocolData protocolData) {
+			failure = e;
+		}
+
+		public OperationDescription getOperation(String action) {
+			return operation;
+		}
+
+		public void receive(HelloMessage hello, ProtocolData protocolData) {
+			unexpected(hello);
+		}
+
+		public void receive(ByeMessage bye, ProtocolData protocolData) {
+			unexpected(bye);
+		}
+
+		public void receive(ProbeMessage probe, ProtocolData protocolData) {
+			unexpected(probe);
+		}
+
+		public void receive(ProbeMatchesMessage probeMatches, ProtocolData protocolData) {
+			unexpected(probeMatches);
+		}
+
+		public void receive(ResolveMessage resolve, ProtocolData protocolData) {
+			unexpected(resolve);
+		}
+
+		public void receive(ResolveMatchesMessage resolveMatches, ProtocolData protocolData) {
+			unexpected(resolveMatches);
+		}
+
+		public void receive(GetMessage get, ProtocolData protocolData) {
+			unexpected(get);
+		}
+
+		public void receive(GetResponseMessage getResponse, ProtocolData protocolData) {
+			unexpected(getResponse);
+		}
+
+		public void receive(GetMetadataMessage getMetadata, ProtocolData protocolData) {
+			unexpected(getMetadata);
+		}
+
+		public void receive(GetMetadataResponseMessage getMetadataResponse, ProtocolData protocolData) {
+			unexpected(getMetadataResponse);
+		}
+
+		public void receive(SubscribeMessage subscribe, ProtocolData protocolData) {
+			unexpected(subscribe);
+		}
+
+		public void receive(SubscribeResponseMessage subscribeResponse, ProtocolData protocolData) {
+			unexpected(subscribeResponse);
+		}
+
+		public void receive(GetStatusMessage getStatus, ProtocolData protocolData) {
+			unexpected(getStatus);
+		}
+
+		public void receive(GetStatusResponseMessage getStatusResponse, ProtocolData protocolData) {
+			unexpected(getStatusResponse);
+		}
+
+		public void receive(RenewMessage renew, ProtocolData protocolData) {
+			unexpected(renew);
+		}
+
+		public void receive(RenewResponseMessage renewResponse, ProtocolData protocolData) {
+			unexpected(renewResponse);
+		}
+
+		public void receive(UnsubscribeMessage unsubscribe, ProtocolData protocolData) {
+			unexpected(unsubscribe);
+		}
+
+		public void receive(UnsubscribeResponseMessage unsubscribeResponse, ProtocolData protocolData) {
+			unexpected(unsubscribeResponse);
+		}
+
+		public void receive(SubscriptionEndMessage subscriptionEnd, ProtocolData protocolData) {
+			unexpected(subscriptionEnd);
+		}
+
+		public void receive(FaultMessage fault, ProtocolData protocolData) {
+			unexpected(fault);
+		}
+
+		private void unexpected(Object message) {
+			failure = new UnexpectedMessageException(message.toString());
+		}
+
+	}
+
+}
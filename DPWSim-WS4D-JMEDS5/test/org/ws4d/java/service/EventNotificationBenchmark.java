@@ -0,0 +1,278 @@
+/*******************************************************************************
+ * Copyright (c) 2009 MATERNA Information & Communications. All rights reserved.
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html. For further
+ * project-related information visit http://www.ws4d.org. The most recent
+ * version of the JMEDS framework can be obtained from
+ * http://sourceforge.net/projects/ws4d-javame.
+ ******************************************************************************/
+package org.ws4d.java.service;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import org.ws4d.java.DPWSFramework;
+import org.ws4d.java.communication.CommunicationManagerRegistry;
+import org.ws4d.java.communication.DPWSProtocolInfo;
+import org.ws4d.java.constants.DPWSConstants;
+import org.ws4d.java.schema.ComplexType;
+import org.ws4d.java.schema.Element;
+import org.ws4d.java.schema.SchemaUtil;
+import org.ws4d.java.service.parameter.ParameterValue;
+import org.ws4d.java.types.EndpointReference;
+import org.ws4d.java.types.EprInfo;
+import org.ws4d.java.types.QName;
+import org.ws4d.java.types.URI;
+import org.ws4d.java.util.Log;
+import org.ws4d.java.util.ParameterUtil;
+
+/**
+ * Measures how many events per second a {@link DefaultEventSource} delivers
+ * to a growing number of remote subscribers.
+ * <p>
+ * The subscribers are HTTP sinks within this process, on distinct loopback
+ * addresses, so each one gets its own connection. A sink answers every
+ * notification with <code>202 Accepted</code> and checks that the SOAP
+ * envelope is complete. The event source fires with at most four events in
+ * flight. The size of the body is set by the number of string fields of the
+ * event, given by the system property <code>fields</code> (default 12, about
+ * 1.3 KB; 200 give about 14 KB).
+ * </p>
+ * Usage:
+ * <code>EventNotificationBenchmark [events for one subscriber] [subscribers...]</code>
+ */
+public class EventNotificationBenchmark {
+
+	private static final String	NAMESPACE	= "http://example.org/sensor";
+
+	/** the first port of the sinks, 250 sinks share one port */
+	private static final int	SINK_PORT	= 6001;
+
+	/** the number of events fired, but not yet delivered to all sinks */
+	private static final int	WINDOW		= 4;
+
+	private static final Object	lock		= new Object();
+
+	private static long			received	= 0;
+
+	private static long			broken		= 0;
+
+	public static void main(String[] args) throws Exception {
+		int scale = (args.length > 0) ? Integer.parseInt(args[0]) : 10000;
+		int[] counts;
+		if (args.length > 1) {
+			counts = new int[args.length - 1];
+			for (int i = 0; i < counts.length; i++) {
+				counts[i] = Integer.parseInt(args[i + 1]);
+			}
+		} else {
+			counts = new int[] { 1, 10, 100 };
+		}
+		int fields = Integer.getInteger("fields", 12).intValue();
+
+		DPWSFramework.start(null);
+		Log.setLogLevel(Log.DEBUG_LEVEL_WARN);
+		try {
+			int ports = (counts[counts.length - 1] + 249) / 250;
+			for (int i = 0; i < ports; i++) {
+				serve(SINK_PORT + i);
+			}
+
+			ComplexType type = new ComplexType(new QName("ReadingType", NAMESPACE), ComplexType.CONTAINER_SEQUENCE);
+			for (int i = 0; i < fields; i++) {
+				type.addElement(new Element(new QName("v" + i, NAMESPACE), SchemaUtil.getSchemaType(SchemaUtil.TYPE_STRING)));
+			}
+			DefaultEventSource event = new DefaultEventSource("Reading", new QName("Sensor", NAMESPACE));
+			event.setOutput(new Element(new QName("reading", NAMESPACE), type));
+			DefaultService service = new DefaultService();
+			service.addEventSource(event);
+			ParameterValue value = event.createOutputValue();
+			for (int i = 0; i < fields; i++) {
+				ParameterUtil.setString(value, "v" + i, "value-" + i + "-0123456789abcdefghijklmnopqrstuvwxyz");
+			}
+
+			int subscribers = 0;
+			int eventNumber = 0;
+			for (int c = 0; c < counts.length; c++) {
+				int n = counts[c];
+				for (; subscribers < n; subscribers++) {
+					event.addSubscription(newSubscription(subscribers));
+				}
+				int events = Math.max(20, scale / n);
+				// warm up with a quarter of the events, then measure
+				fire(event, value, eventNumber, Math.max(10, events / 4), n);
+				eventNumber += Math.max(10, events / 4);
+				long start = System.nanoTime();
+				long delivered = fire(event, value, eventNumber, events, n);
+				long time = System.nanoTime() - start;
+				eventNumber += events;
+				System.out.println("subscribers=" + n + " events=" + events + " events/s=" + (events * 1000000000L / time) + " notifications/s=" + (delivered * 1000000000L / time) + " delivered=" + delivered + " broken=" + broken() + " threads=" + Thread.activeCount());
+			}
+		} finally {
+			System.exit(0);
+		}
+	}
+
+	private static ServiceSubscription newSubscription(int i) {
+		ServiceSubscription subscription = new ServiceSubscription(new DPWSProtocolInfo(DPWSConstants.DPWS_VERSION2009));
+		subscription.communicationManagerId = CommunicationManagerRegistry.getDefault();
+		subscription.expirationTime = System.currentTimeMillis() + 3600000L;
+		URI address = new URI("http://127.0.0." + (1 + i % 250) + ":" + (SINK_PORT + i / 250) + "/sink" + i);
+		subscription.notifyTo = new EprInfo(new EndpointReference(address), subscription.communicationManagerId, subscription.pInfo);
+		return subscription;
+	}
+
+	/**
+	 * Fires the given number of events with at most {@link #WINDOW} in flight
+	 * and waits up to a minute until all of them were delivered.
+	 * 
+	 * @return the number of notifications delivered.
+	 */
+	private static long fire(DefaultEventSource event, ParameterValue value, int firstNumber, int events, int subscribers) throws InterruptedException {
+		long base = received();
+		for (int i = 0; i < events; i++) {
+			synchronized (lock) {
+				while (received - base < (long) (i - WINDOW) * subscribers) {
+					lock.wait();
+				}
+			}
+			event.fire(value, firstNumber + i);
+		}
+		long deadline = System.currentTimeMillis() + 60000;
+		synchronized (lock) {
+			long wait;
+			while (received - base < (long) events * subscribers && (wait = deadline - System.currentTimeMillis()) > 0) {
+				lock.wait(wait);
+			}
+			return received - base;
+		}
+	}
+
+	private static long received() {
+		synchronized (lock) {
+			return received;
+		}
+	}
+
+	private static long broken() {
+		synchronized (lock) {
+			return broken;
+		}
+	}
+
+	private static void serve(int port) throws IOException {
+		final ServerSocket server = new ServerSocket();
+		server.setReuseAddress(true);
+		server.bind(new InetSocketAddress("0.0.0.0", port), 1000);
+		Thread acceptor = new Thread() {
+
+			public void run() {
+				while (true) {
+					final Socket socket;
+					try {
+						socket = server.accept();
+						socket.setTcpNoDelay(true);
+					} catch (IOException e) {
+						return;
+					}
+					Thread sink = new Thread() {
+
+						public void run() {
+							try {
+								receive(socket);
+							} catch (IOException e) {
+								// connection closed
+							}
+						}
+					};
+					sink.setDaemon(true);
+					sink.start();
+				}
+			}
+		};
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	/**
+	 * Reads the notifications sent over one connection and answers each one.
+	 */
+	private static void receive(Socket socket) throws IOException {
+		InputStream in = new BufferedInputStream(socket.getInputStream());
+		OutputStream out = socket.getOutputStream();
+		byte[] accepted = "HTTP/1.1 202 Accepted\r\nContent-Length: 0\r\n\r\n".getBytes();
+		String line;
+		while ((line = readLine(in)) != null) {
+			if (line.length() == 0) {
+				continue;
+			}
+			int length = 0;
+			boolean chunked = false;
+			while ((line = readLine(in)) != null && line.length() > 0) {
+				String header = line.toLowerCase();
+				if (header.startsWith("content-length:")) {
+					length = Integer.parseInt(header.substring(15).trim());
+				} else if (header.startsWith("transfer-encoding:") && header.indexOf("chunked") >= 0) {
+					chunked = true;
+				}
+			}
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			if (chunked) {
+				while ((length = Integer.parseInt(readLine(in).split(";")[0].trim(), 16)) > 0) {
+					readFully(in, length, body);
+					readLine(in);
+				}
+				while ((line = readLine(in)) != null && line.length() > 0) {
+					// trailer
+				}
+			} else {
+				readFully(in, length, body);
+			}
+			boolean complete = body.toString("UTF-8").indexOf("Envelope>") >= 0;
+			out.write(accepted);
+			out.flush();
+			synchronized (lock) {
+				received++;
+				if (!complete) {
+					broken++;
+				}
+				lock.notifyAll();
+			}
+		}
+	}
+
+	private static void readFully(InputStream in, int length, OutputStream out) throws IOException {
+		byte[] buffer = new byte[length];
+		int read = 0;
+		while (read < length) {
+			int n = in.read(buffer, read, length - read);
+			if (n < 0) {
+				throw new IOException("Connection closed within a body");
+			}
+			read += n;
+		}
+		out.write(buffer);
+	}
+
+	private static String readLine(InputStream in) throws IOException {
+		StringBuffer line = new StringBuffer();
+		int c;
+		while ((c = in.read()) != -1 && c != '\n') {
+			if (c != '\r') {
+				line.append((char) c);
+			}
+		}
+		if (c == -1 && line.length() == 0) {
+			return null;
+		}
+		return line.toString();
+	}
+
+}
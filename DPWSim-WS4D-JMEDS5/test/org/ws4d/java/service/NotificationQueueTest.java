@@ -0,0 +1,220 @@
+/*******************************************************************************
+ * Copyright (c) 2009 MATERNA Information & Communications. All rights reserved.
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html. For further
+ * project-related information visit http://www.ws4d.org. The most recent
+ * version of the JMEDS framework can be obtained from
+ * http://sourceforge.net/projects/ws4d-javame.
+ ******************************************************************************/
+package org.ws4d.java.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+import org.ws4d.java.configuration.EventingProperties;
+import org.ws4d.java.schema.Element;
+import org.ws4d.java.schema.SchemaUtil;
+import org.ws4d.java.types.QName;
+
+/**
+ * Tests the order of the events of one subscriber, the overflow policies and
+ * the limit of the solicit messages without response.
+ */
+public class NotificationQueueTest {
+
+	private static final String			NAMESPACE		= "http://example.org/sensor";
+
+	private static final int			DROP_OLDEST		= EventingProperties.OVERFLOW_DROP_OLDEST;
+
+	private static final int			COALESCE		= EventingProperties.OVERFLOW_COALESCE;
+
+	private static final int			END				= EventingProperties.OVERFLOW_END_SUBSCRIPTION;
+
+	private final DefaultEventSource	temperature		= notification("Temperature");
+
+	private final DefaultEventSource	humidity		= notification("Humidity");
+
+	private final DefaultEventSource	confirmation	= solicitResponse("Confirmation");
+
+	@Test
+	public void testOrder() {
+		NotificationQueue queue = new NotificationQueue();
+		NotificationQueue.Entry first = entry(temperature, 1);
+		NotificationQueue.Entry second = entry(humidity, 2);
+		NotificationQueue.Entry third = entry(temperature, 3);
+		assertEquals(NotificationQueue.SEND, queue.offer(first, 10, DROP_OLDEST, 1));
+		assertEquals(NotificationQueue.QUEUED, queue.offer(second, 10, DROP_OLDEST, 1));
+		assertEquals(NotificationQueue.QUEUED, queue.offer(third, 10, DROP_OLDEST, 1));
+		assertEquals(2, queue.size());
+
+		assertSame(second, queue.next());
+		assertSame(third, queue.next());
+		assertNull(queue.next());
+		// nothing on its way any more
+		assertEquals(NotificationQueue.SEND, queue.offer(entry(humidity, 4), 10, DROP_OLDEST, 1));
+		assertEquals(4, queue.getDispatchedCount());
+		assertEquals(2, queue.getPeakSize());
+	}
+
+	@Test
+	public void testDropOldest() {
+		NotificationQueue queue = new NotificationQueue();
+		NotificationQueue.Entry third = entry(temperature, 3);
+		NotificationQueue.Entry fourth = entry(temperature, 4);
+		queue.offer(entry(temperature, 1), 2, DROP_OLDEST, 1);
+		queue.offer(entry(temperature, 2), 2, DROP_OLDEST, 1);
+		queue.offer(third, 2, DROP_OLDEST, 1);
+		assertEquals(NotificationQueue.QUEUED, queue.offer(fourth, 2, DROP_OLDEST, 1));
+		assertEquals(1, queue.getDroppedCount());
+
+		assertSame(third, queue.next());
+		assertSame(fourth, queue.next());
+		assertNull(queue.next());
+	}
+
+	@Test
+	public void testCoalesce() {
+		NotificationQueue queue = new NotificationQueue();
+		NotificationQueue.Entry humidity2 = entry(humidity, 2);
+		NotificationQueue.Entry temperature4 = entry(temperature, 4);
+		queue.offer(entry(temperature, 0), 2, COALESCE, 1);
+		queue.offer(entry(temperature, 1), 2, COALESCE, 1);
+		queue.offer(humidity2, 2, COALESCE, 1);
+		assertEquals(NotificationQueue.QUEUED, queue.offer(temperature4, 2, COALESCE, 1));
+		assertEquals(1, queue.getCoalescedCount());
+		assertEquals(0, queue.getDroppedCount());
+
+		// the later event is sent after the events fired before it
+		assertSame(humidity2, queue.next());
+		assertSame(temperature4, queue.next());
+	}
+
+	@Test
+	public void testCoalesceWithoutSameAction() {
+		NotificationQueue queue = new NotificationQueue();
+		NotificationQueue.Entry humidity3 = entry(humidity, 3);
+		queue.offer(entry(temperature, 0), 2, COALESCE, 1);
+		queue.offer(entry(temperature, 1), 2, COALESCE, 1);
+		queue.offer(entry(temperature, 2), 2, COALESCE, 1);
+		assertEquals(NotificationQueue.QUEUED, queue.offer(humidity3, 2, COALESCE, 1));
+		assertEquals(0, queue.getCoalescedCount());
+		assertEquals(1, queue.getDroppedCount());
+
+		assertEquals(2, queue.next().eventNumber);
+		assertSame(humidity3, queue.next());
+	}
+
+	@Test
+	public void testOverflowEndsSubscription() {
+		NotificationQueue queue = new NotificationQueue();
+		queue.offer(entry(temperature, 1), 1, END, 1);
+		queue.offer(entry(temperature, 2), 1, END, 1);
+		assertEquals(NotificationQueue.OVERFLOW, queue.offer(entry(temperature, 3), 1, END, 1));
+		assertEquals(2, queue.getDroppedCount());
+		assertEquals(0, queue.size());
+
+		// the event on its way finishes, nothing follows
+		assertNull(queue.next());
+		assertEquals(NotificationQueue.CLOSED, queue.offer(entry(temperature, 4), 1, END, 1));
+		assertEquals(1, queue.getDispatchedCount());
+	}
+
+	@Test
+	public void testClose() {
+		NotificationQueue queue = new NotificationQueue();
+		queue.offer(entry(confirmation, 1), 10, DROP_OLDEST, 4);
+		queue.offer(entry(confirmation, 2), 10, DROP_OLDEST, 4);
+		queue.offer(entry(temperature, 3), 10, DROP_OLDEST, 4);
+		// e.g. sending the first event failed
+		queue.close();
+		assertEquals(0, queue.size());
+		assertEquals(0, queue.getPendingSolicitCount());
+		assertNull(queue.next());
+		assertEquals(0, queue.getPendingSolicitCount());
+		assertEquals(NotificationQueue.CLOSED, queue.offer(entry(temperature, 4), 10, DROP_OLDEST, 4));
+	}
+
+	@Test
+	public void testPendingSolicits() {
+		NotificationQueue queue = new NotificationQueue();
+		assertEquals(NotificationQueue.SEND, queue.offer(entry(confirmation, 1), 10, DROP_OLDEST, 2));
+		assertEquals(NotificationQueue.QUEUED, queue.offer(entry(confirmation, 2), 10, DROP_OLDEST, 2));
+		assertEquals(NotificationQueue.SKIPPED, queue.offer(entry(confirmation, 3), 10, DROP_OLDEST, 2));
+		// notifications are not limited
+		assertEquals(NotificationQueue.QUEUED, queue.offer(entry(temperature, 4), 10, DROP_OLDEST, 2));
+		assertEquals(2, queue.getPendingSolicitCount());
+
+		// the subscriber answered the first solicit message
+		assertEquals(2, queue.next().eventNumber);
+		assertEquals(1, queue.getPendingSolicitCount());
+		assertEquals(NotificationQueue.QUEUED, queue.offer(entry(confirmation, 5), 10, DROP_OLDEST, 2));
+		assertEquals(NotificationQueue.SKIPPED, queue.offer(entry(confirmation, 6), 10, DROP_OLDEST, 2));
+
+		assertEquals(4, queue.next().eventNumber);
+		assertEquals(1, queue.getPendingSolicitCount());
+		assertEquals(5, queue.next().eventNumber);
+		assertNull(queue.next());
+		assertEquals(0, queue.getPendingSolicitCount());
+	}
+
+	@Test
+	public void testDroppedSolicits() {
+		NotificationQueue queue = new NotificationQueue();
+		queue.offer(entry(confirmation, 1), 1, DROP_OLDEST, 3);
+		queue.offer(entry(confirmation, 2), 1, DROP_OLDEST, 3);
+		// drops the second one, which frees its place
+		assertEquals(NotificationQueue.QUEUED, queue.offer(entry(confirmation, 3), 1, DROP_OLDEST, 3));
+		assertEquals(2, queue.getPendingSolicitCount());
+
+		assertEquals(3, queue.next().eventNumber);
+		assertNull(queue.next());
+		assertEquals(0, queue.getPendingSolicitCount());
+	}
+
+	@Test
+	public void testBatching() {
+		NotificationQueue queue = new NotificationQueue();
+		queue.setBatching(3, 60000);
+		NotificationQueue.Entry first = batchableEntry(temperature, 1);
+		assertEquals(NotificationQueue.QUEUED, queue.offer(first, 10, DROP_OLDEST, 1));
+		assertEquals(NotificationQueue.QUEUED, queue.offer(batchableEntry(temperature, 2), 10, DROP_OLDEST, 1));
+		assertEquals(NotificationQueue.SEND_BATCH, queue.offer(batchableEntry(temperature, 3), 10, DROP_OLDEST, 1));
+		assertEquals(NotificationQueue.QUEUED, queue.offer(batchableEntry(humidity, 4), 10, DROP_OLDEST, 1));
+
+		assertSame(first, queue.next());
+		assertEquals(2, first.batch.size());
+		assertEquals(3, queue.getDispatchedCount());
+		assertEquals(1, queue.getBatchCount());
+
+		// a batch holds the events of one action only
+		NotificationQueue.Entry next = queue.next();
+		assertEquals(4, next.eventNumber);
+		assertNull(next.batch);
+		assertNull(queue.next());
+		queue.close();
+	}
+
+	private static NotificationQueue.Entry entry(DefaultEventSource source, int eventNumber) {
+		return new NotificationQueue.Entry(null, source, null, eventNumber, null, false);
+	}
+
+	private static NotificationQueue.Entry batchableEntry(DefaultEventSource source, int eventNumber) {
+		return new NotificationQueue.Entry(null, source, null, eventNumber, null, true);
+	}
+
+	private static DefaultEventSource notification(String name) {
+		DefaultEventSource source = new DefaultEventSource(name, new QName("Sensor", NAMESPACE));
+		source.setOutput(new Element(new QName(name.toLowerCase(), NAMESPACE), SchemaUtil.getSchemaType(SchemaUtil.TYPE_STRING)));
+		return source;
+	}
+
+	private static DefaultEventSource solicitResponse(String name) {
+		DefaultEventSource source = notification(name);
+		source.setInput(new Element(new QName(name.toLowerCase() + "Response", NAMESPACE), SchemaUtil.getSchemaType(SchemaUtil.TYPE_STRING)));
+		return source;
+	}
+
+}
@@ -0,0 +1,110 @@
+package eu.telecom.sudparis.dpwsim.headless;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Description of one simulated device, as read from a DPWSim space file or
+ * generated for a load test. Does not reference any Swing class.
+ *
+ * @date	2026/10/18
+ * @version 1.0
+ */
+public class DeviceSpec {
+
+	private String				name;
+	private String				manufacturer;
+	private String				namespace;
+	private String				ipAddress;
+	private int					port;
+	private String				deviceType;
+	private List<String[]>		operations	= new ArrayList<>();
+	private List<String[]>		events		= new ArrayList<>();
+
+	public DeviceSpec(String name,
+			String manufacturer,
+			String namespace,
+			String ipAddress,
+			int port,
+			String deviceType) {
+		this.name = name;
+		this.manufacturer = manufacturer;
+		this.namespace = namespace;
+		this.ipAddress = ipAddress;
+		this.port = port;
+		this.deviceType = deviceType;
+	}
+
+	/**
+	 * Adds an operation.
+	 *
+	 * @param opName operation name
+	 * @param param parameter name
+	 */
+	public void addOperation(String opName, String param) {
+		operations.add(new String[] { opName, param });
+	}
+
+	/**
+	 * Adds an event.
+	 *
+	 * @param evtName event name
+	 * @param param parameter name
+	 * @param message event message
+	 * @param frequency firing period in ms, <code>0</code> for no automatic
+	 *            firing
+	 */
+	public void addEvent(String evtName, String param, String message, int frequency) {
+		events.add(new String[] { evtName, param, message, Integer.toString(frequency) });
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getManufacturer() {
+		return manufacturer;
+	}
+
+	public String getNamespace() {
+		return namespace;
+	}
+
+	public String getIpAddress() {
+		return ipAddress;
+	}
+
+	public void setIpAddress(String ipAddress) {
+		this.ipAddress = ipAddress;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	public void setPort(int port) {
+		this.port = port;
+	}
+
+	public String getDeviceType() {
+		return deviceType;
+	}
+
+	/**
+	 * @return operations as [Operation Name, Parameter]
+	 */
+	public List<String[]> getOperations() {
+		return operations;
+	}
+
+	/**
+	 * @return events as [Event Name, Parameter, Message, Frequency]
+	 */
+	public List<String[]> getEvents() {
+		return events;
+	}
+
+	public String toString() {
+		return "DEVICE," + name + "," + manufacturer + "," + namespace + "," + ipAddress + "," + port + "," + deviceType;
+	}
+}
@@ -0,0 +1,247 @@
+package eu.telecom.sudparis.dpwsim.headless;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.ws4d.java.DPWSFramework;
+import org.ws4d.java.service.parameter.ParameterValue;
+import org.ws4d.java.util.ParameterUtil;
+
+import eu.telecom.sudparis.dpws.GenericDevice;
+import eu.telecom.sudparis.dpws.GenericEvent;
+import eu.telecom.sudparis.dpws.OperationCommand;
+
+/**
+ * Headless DPWSim: brings up the devices of a space file, or a generated
+ * number of devices, without the Swing user interface and reports startup
+ * time and memory per device.
+ * <p>
+ * Usage:
+ * </p>
+ * <pre>
+ * HeadlessSimulator &lt;file.dpwsim&gt; [options]
+ * HeadlessSimulator -generate &lt;count&gt; [options]
+ *
+ *   -ip &lt;address&gt;     binding address (default: 127.0.0.1 or the one in the file)
+ *   -port &lt;port&gt;      port of the first generated device (default: 4567, 0 = any)
+ *   -prefix &lt;name&gt;    name prefix of generated devices (default: D)
+ *   -event &lt;ms&gt;       event period of generated devices (default: 0 = off)
+ *   -shared           all devices share one HTTP server on the -port port
+ *   -props &lt;file&gt;     JMEDS properties file
+ *   -exit             stop all devices after the report
+ * </pre>
+ *
+ * @date	2026/10/18
+ * @version 1.0
+ */
+public class HeadlessSimulator {
+
+	private List<GenericDevice>	devices	= new ArrayList<>();
+
+	/* One timer thread fires the periodic events of all devices */
+	private Timer				timer	= null;
+
+	public static void main(String[] args) {
+		String file = null;
+		int count = -1;
+		String ipAddress = null;
+		int basePort = 4567;
+		String prefix = "D";
+		int eventFrequency = 0;
+		String props = null;
+		boolean exit = false;
+		boolean shared = false;
+
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if ("-generate".equals(args[i])) {
+					count = Integer.parseInt(args[++i]);
+				} else if ("-ip".equals(args[i])) {
+					ipAddress = args[++i];
+				} else if ("-port".equals(args[i])) {
+					basePort = Integer.parseInt(args[++i]);
+				} else if ("-prefix".equals(args[i])) {
+					prefix = args[++i];
+				} else if ("-event".equals(args[i])) {
+					eventFrequency = Integer.parseInt(args[++i]);
+				} else if ("-props".equals(args[i])) {
+					props = args[++i];
+				} else if ("-exit".equals(args[i])) {
+					exit = true;
+				} else if ("-shared".equals(args[i])) {
+					shared = true;
+				} else {
+					file = args[i];
+				}
+			}
+		} catch (RuntimeException e) {
+			usage();
+			return;
+		}
+
+		List<DeviceSpec> specs;
+		if (file != null) {
+			try {
+				specs = SpaceFileReader.read(new File(file), ipAddress);
+			} catch (IOException e) {
+				System.err.println(e.getMessage());
+				return;
+			}
+		} else if (count > 0) {
+			specs = SpaceFileReader.generate(count, prefix, (ipAddress == null) ? "127.0.0.1" : ipAddress, basePort, eventFrequency);
+		} else {
+			usage();
+			return;
+		}
+
+		if (shared) {
+			// one listener routes by the device and service paths
+			for (DeviceSpec spec : specs) {
+				spec.setPort(basePort);
+			}
+		}
+
+		DPWSFramework.start((props == null) ? null : new String[] { props });
+
+		final HeadlessSimulator simulator = new HeadlessSimulator();
+		simulator.run(specs);
+
+		if (exit) {
+			simulator.stop();
+			DPWSFramework.stop();
+		} else {
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				@Override
+				public void run() {
+					simulator.stop();
+					DPWSFramework.stop();
+				}
+			});
+		}
+	}
+
+	private static void usage() {
+		System.out.println("Usage: HeadlessSimulator <file.dpwsim> | -generate <count>"
+				+ " [-ip address] [-port basePort] [-prefix name] [-event ms] [-shared] [-props file] [-exit]");
+	}
+
+	/**
+	 * Creates and starts the devices and prints the report.
+	 *
+	 * @param specs device descriptions
+	 */
+	public void run(List<DeviceSpec> specs) {
+		long memBefore = usedMemory();
+		long start = System.nanoTime();
+
+		for (DeviceSpec spec : specs) {
+			devices.add(createDevice(spec));
+		}
+		long created = System.nanoTime();
+
+		int failed = 0;
+		for (GenericDevice device : devices) {
+			try {
+				device.start();
+			} catch (IOException e) {
+				failed++;
+				System.err.println("Cannot start " + device.getFriendlyName("en-US") + ": " + e.getMessage());
+			}
+		}
+		long started = System.nanoTime();
+		long memAfter = usedMemory();
+
+		int n = Math.max(devices.size(), 1);
+		System.out.println("Devices:           " + devices.size() + " (" + failed + " failed)");
+		System.out.println("Creation time:     " + (created - start) / 1000000 + " ms");
+		System.out.println("Start time:        " + (started - created) / 1000000 + " ms");
+		System.out.println("Startup / device:  " + (started - start) / 1000 / n + " us");
+		System.out.println("Heap used:         " + (memAfter - memBefore) / 1024 + " KB");
+		System.out.println("Heap / device:     " + (memAfter - memBefore) / n + " bytes");
+	}
+
+	/**
+	 * Stops all running devices.
+	 */
+	public void stop() {
+		if (timer != null) timer.cancel();
+		for (GenericDevice device : devices) {
+			if (device.isRunning()) {
+				try {
+					device.stop();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	public List<GenericDevice> getDevices() {
+		return devices;
+	}
+
+	private GenericDevice createDevice(DeviceSpec spec) {
+		GenericDevice device = new GenericDevice(spec.getName(), spec.getDeviceType(), spec.getManufacturer(),
+				spec.getNamespace(), spec.getIpAddress(), spec.getPort());
+
+		for (String[] op : spec.getOperations()) {
+			device.addOperation(op[0], new HeadlessOperationCommand());
+		}
+		for (String[] ev : spec.getEvents()) {
+			device.addEvent(ev[0]);
+			int frequency = Integer.parseInt(ev[3]);
+			if (frequency > 0) {
+				if (timer == null) timer = new Timer("DPWSim-Events", true);
+				GenericEvent event = (GenericEvent) device.getEventSource(ev[0]);
+				timer.scheduleAtFixedRate(new PeriodicEvent(event, ev[2]), frequency, frequency);
+			}
+		}
+		return device;
+	}
+
+	private static long usedMemory() {
+		Runtime rt = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return rt.totalMemory() - rt.freeMemory();
+	}
+
+	/**
+	 * Operation behavior without status icons.
+	 */
+	private static class HeadlessOperationCommand implements OperationCommand {
+
+		@Override
+		public String execute(String paramValue) {
+			return "default";
+		}
+	}
+
+	/**
+	 * Fires an event periodically, like EventProvider but without a thread per
+	 * event.
+	 */
+	private static class PeriodicEvent extends TimerTask {
+
+		private GenericEvent	event;
+		private String			message;
+		private int				eventCounter	= 0;
+
+		PeriodicEvent(GenericEvent event, String message) {
+			this.event = event;
+			this.message = message;
+		}
+
+		@Override
+		public void run() {
+			ParameterValue paramValue = event.createOutputValue();
+			ParameterUtil.setString(paramValue, "param", message + "(" + eventCounter + ")");
+			event.fire(paramValue, eventCounter++);
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package eu.telecom.sudparis.dpwsim.headless;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the device descriptions of a <code>.dpwsim</code> space or standalone
+ * device file (the format written by the Save menu), or generates them for a
+ * load test.
+ *
+ * @date	2026/10/18
+ * @version 1.0
+ */
+public class SpaceFileReader {
+
+	/* First line of a file, same values as the MainMenu entries */
+	public static final String	MODE_SPACE		= "Space";
+	public static final String	MODE_STANDALONE	= "Standalone Device";
+
+	public static final String	DEVICE			= "DEVICE";
+	public static final String	OPERATION		= "OPERATION";
+	public static final String	EVENT			= "EVENT";
+
+	/**
+	 * Reads all devices of a DPWSim file.
+	 *
+	 * @param file the DPWSim file
+	 * @param ipAddress binding address overriding the one in the file, or
+	 *            <code>null</code> to keep it
+	 * @return the device descriptions in file order
+	 * @throws IOException if the file cannot be read or is not a DPWSim file
+	 */
+	public static List<DeviceSpec> read(File file, String ipAddress) throws IOException {
+		List<DeviceSpec> specs = new ArrayList<>();
+
+		try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+			String mode = reader.readLine();
+			if (mode == null) {
+				throw new IOException("Not a DPWSim file: " + file);
+			}
+
+			String spaceAddress = null;
+			if (mode.indexOf(MODE_SPACE) >= 0) {
+				// name, layout, ip address
+				String line = reader.readLine();
+				String[] infos = (line == null) ? new String[0] : line.split(",");
+				if (infos.length > 2) spaceAddress = infos[2].trim();
+			} else if (mode.indexOf(MODE_STANDALONE) < 0) {
+				throw new IOException("Not a DPWSim file: " + file);
+			}
+
+			DeviceSpec current = null;
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				String[] infos = line.split(",");
+				if (line.startsWith(DEVICE) && infos.length >= 7) {
+					String address = infos[4];
+					if (spaceAddress != null) address = spaceAddress;
+					if (ipAddress != null) address = ipAddress;
+					current = new DeviceSpec(infos[1], infos[2], infos[3], address,
+							Integer.parseInt(infos[5].trim()), infos[6]);
+					specs.add(current);
+				} else if (line.startsWith(OPERATION) && current != null && infos.length >= 3) {
+					current.addOperation(infos[1], infos[2]);
+				} else if (line.startsWith(EVENT) && current != null && infos.length >= 4) {
+					int frequency = 0;
+					if (infos.length >= 5) {
+						try {
+							frequency = Integer.parseInt(infos[4].trim());
+						} catch (NumberFormatException e) {
+							frequency = 0;
+						}
+					}
+					current.addEvent(infos[1], infos[2], infos[3], frequency);
+				}
+				// blank lines and device coordinates are not needed here
+			}
+		}
+		return specs;
+	}
+
+	/**
+	 * Generates identical devices with one operation and one event each.
+	 *
+	 * @param count number of devices
+	 * @param prefix device name prefix
+	 * @param ipAddress binding address
+	 * @param basePort port of the first device, the following devices use the
+	 *            next ports; if <code>0</code> the ports are chosen by the system
+	 * @param eventFrequency event period in ms, <code>0</code> to disable
+	 * @return the device descriptions
+	 */
+	public static List<DeviceSpec> generate(int count, String prefix, String ipAddress, int basePort, int eventFrequency) {
+		List<DeviceSpec> specs = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			DeviceSpec spec = new DeviceSpec(prefix + i, "Telecom SudParis", "http://telecom-sudparis.eu",
+					ipAddress, (basePort == 0) ? 0 : basePort + i, "SimulatedDevice");
+			spec.addOperation("Switch", "state");
+			spec.addEvent("Toggle", "state", "SWITCH", eventFrequency);
+			specs.add(spec);
+		}
+		return specs;
+	}
+}